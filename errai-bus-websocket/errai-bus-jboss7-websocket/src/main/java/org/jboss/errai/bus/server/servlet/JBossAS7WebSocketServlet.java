@@ -33,6 +33,7 @@ import org.jboss.as.websockets.frame.TextFrame;
 import org.jboss.as.websockets.servlet.WebSocketServlet;
 import org.jboss.errai.bus.client.api.QueueSession;
 import org.jboss.errai.bus.client.api.messaging.Message;
+import org.jboss.errai.bus.client.protocols.CompactWireCodec;
 import org.jboss.errai.bus.server.api.SessionProvider;
 import org.jboss.errai.bus.server.io.MessageFactory;
 import org.jboss.errai.bus.server.service.ErraiService;
@@ -54,6 +55,7 @@ public class JBossAS7WebSocketServlet extends WebSocketServlet {
   /* A default Http session provider */
   protected SessionProvider<HttpSession> sessionProvider;
   private final Map<WebSocket, QueueSession> activeChannels = new ConcurrentHashMap<WebSocket, QueueSession>();
+  private final Map<WebSocket, CompactWireCodec> wireCodecs = new ConcurrentHashMap<WebSocket, CompactWireCodec>();
 
   public JBossAS7WebSocketServlet() {
     super("J.REP1.0/ErraiBus");
@@ -69,6 +71,7 @@ public class JBossAS7WebSocketServlet extends WebSocketServlet {
   @Override
   public void destroy() {
     activeChannels.clear();
+    wireCodecs.clear();
     service.stopService();
   }
 
@@ -78,6 +81,7 @@ public class JBossAS7WebSocketServlet extends WebSocketServlet {
 
   @Override
   protected void onSocketClosed(final WebSocket socket) throws IOException {
+    wireCodecs.remove(socket);
     QueueSession session = activeChannels.remove(socket);
     service.getBus().getQueue(session).setDeliveryHandlerToDefault();
   }
@@ -98,7 +102,13 @@ public class JBossAS7WebSocketServlet extends WebSocketServlet {
       }
     }
 
-    final EJValue val = JSONDecoder.decode(((TextFrame) frame).getText());
+    String text = ((TextFrame) frame).getText();
+    final CompactWireCodec wireCodec = wireCodecs.get(socket);
+    if (wireCodec != null) {
+      text = wireCodec.decode(text);
+    }
+
+    final EJValue val = JSONDecoder.decode(text);
     // this is not an active channel.
     if (!activeChannels.containsKey(socket)) {
       final QueueSession queueSession = 
@@ -106,6 +116,11 @@ public class JBossAS7WebSocketServlet extends WebSocketServlet {
       
       if (queueSession != null) {
         activeChannels.put(socket, queueSession);
+
+        final CompactWireCodec negotiatedCodec = WebSocketNegotiationHandler.getWireCodec(queueSession);
+        if (negotiatedCodec != null) {
+          wireCodecs.put(socket, negotiatedCodec);
+        }
       }
     }
     else {
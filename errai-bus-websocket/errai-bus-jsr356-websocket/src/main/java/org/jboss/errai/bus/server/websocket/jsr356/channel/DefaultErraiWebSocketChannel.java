@@ -20,7 +20,11 @@ import org.jboss.errai.bus.client.api.QueueSession;
 import org.jboss.errai.bus.client.api.SessionEndEvent;
 import org.jboss.errai.bus.client.api.SessionEndListener;
 import org.jboss.errai.bus.client.api.messaging.Message;
+import org.jboss.errai.bus.client.protocols.CompactWireCodec;
+import org.jboss.errai.bus.server.api.MessageQueue;
+import org.jboss.errai.bus.server.io.FlowControlledChannel;
 import org.jboss.errai.bus.server.io.MessageFactory;
+import org.jboss.errai.bus.server.service.ErraiConfigAttribs;
 import org.jboss.errai.bus.server.service.ErraiService;
 import org.jboss.errai.bus.server.service.ErraiServiceSingleton;
 import org.jboss.errai.bus.server.servlet.websocket.WebSocketNegotiationHandler;
@@ -31,38 +35,107 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.servlet.http.HttpSession;
+import javax.websocket.CloseReason;
+import javax.websocket.SendHandler;
+import javax.websocket.SendResult;
 import javax.websocket.Session;
 
 import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Handler for websocket messages for both receiving and sending. There is one
  * instance for each {@link javax.websocket.Session} and each one has a relation
  * to its {@link javax.servlet.http.HttpSession}.
+ * <p>
+ * Outbound messages are sent asynchronously, so that a slow client never blocks the bus worker that delivers to
+ * it. While a send is in flight, further messages are queued and then coalesced into a single frame once the send
+ * completes. What happens when the queue is full is determined by the configured {@link SendOverflowPolicy}.
  * 
  * @author Michel Werren
  */
-public class DefaultErraiWebSocketChannel implements ErraiWebSocketChannel {
+public class DefaultErraiWebSocketChannel implements ErraiWebSocketChannel, FlowControlledChannel {
 
   private static final Logger LOGGER = LoggerFactory.getLogger(DefaultErraiWebSocketChannel.class.getName());
 
+  /**
+   * The approximate number of characters after which no further queued messages are added to a coalesced frame.
+   */
+  private static final int MAX_FRAME_CHARS = 1024 * 64;
+
+  private static final AtomicLong IN_FLIGHT_SENDS = new AtomicLong();
+
   protected final Session session;
 
   protected final ErraiService erraiService;
 
   protected final HttpSession httpSession;
 
-  protected QueueSession queueSession = null;
+  protected volatile QueueSession queueSession = null;
+
+  /**
+   * The codec for incoming messages if the compact wire protocol was negotiated for this socket.
+   */
+  private volatile CompactWireCodec wireCodec;
+
+  private final int sendQueueSize;
+
+  private final SendOverflowPolicy overflowPolicy;
+
+  /**
+   * Messages waiting for the send in flight to complete. Guarded by <tt>this</tt>, as are all fields below which
+   * are not atomic.
+   */
+  private final Deque<String> sendQueue = new ArrayDeque<String>();
+
+  private boolean sending;
+
+  private int inFlightSize;
+
+  private int inFlightCount;
+
+  /**
+   * The time at which the send queue became full, or 0 if it is not full.
+   */
+  private long blockedSince;
+
+  private final AtomicLong pendingBytes = new AtomicLong();
+  private final AtomicLong messagesSent = new AtomicLong();
+  private final AtomicLong framesSent = new AtomicLong();
+  private final AtomicLong messagesDropped = new AtomicLong();
+  private final AtomicLong blockedNanos = new AtomicLong();
+
+  private final SendHandler sendHandler = new SendHandler() {
+    @Override
+    public void onResult(final SendResult result) {
+      onSendComplete(result);
+    }
+  };
 
   public DefaultErraiWebSocketChannel(Session session, HttpSession httpSession) {
+    this(session, httpSession, getInitializedService());
+  }
+
+  DefaultErraiWebSocketChannel(Session session, HttpSession httpSession, ErraiService erraiService) {
     this.session = session;
     this.httpSession = httpSession;
+    this.erraiService = erraiService;
 
+    this.sendQueueSize = Math.max(1,
+            ErraiConfigAttribs.WEBSOCKET_SERVLET_SEND_QUEUE_SIZE.getInt(erraiService.getConfiguration()));
+    this.overflowPolicy = SendOverflowPolicy.fromName(
+            ErraiConfigAttribs.WEBSOCKET_SERVLET_OVERFLOW_POLICY.get(erraiService.getConfiguration()));
+  }
+
+  private static ErraiService getInitializedService() {
     if (ErraiServiceSingleton.isInitialized()) {
-      erraiService = ErraiServiceSingleton.getService();
+      return ErraiServiceSingleton.getService();
     }
     else {
       throw new IllegalStateException(
@@ -70,7 +143,10 @@ public class DefaultErraiWebSocketChannel implements ErraiWebSocketChannel {
     }
   }
 
-  public void doErraiMessage(final String message) {
+  public void doErraiMessage(String message) {
+    if (wireCodec != null) {
+      message = wireCodec.decode(message);
+    }
 
     final EJValue val = JSONDecoder.decode(message);
     // this is not an active channel.
@@ -79,6 +155,7 @@ public class DefaultErraiWebSocketChannel implements ErraiWebSocketChannel {
         queueSession = WebSocketNegotiationHandler.establishNegotiation(val,
                 this, erraiService);
         if (queueSession != null) {
+          wireCodec = WebSocketNegotiationHandler.getWireCodec(queueSession);
           LOGGER.trace(
                   "Negotiation done for errai session: {} on websocket session: {}",
                   queueSession.getSessionId(), session.getId());
@@ -119,13 +196,312 @@ public class DefaultErraiWebSocketChannel implements ErraiWebSocketChannel {
     return session.isOpen();
   }
 
+  /**
+   * Returns false while the send queue is full and the overflow policy is {@link SendOverflowPolicy#BUFFER}, so
+   * that messages are held in the bus buffer instead. The session's queue is woken once the send queue has drained.
+   */
+  @Override
+  public boolean isWritable() {
+    if (overflowPolicy != SendOverflowPolicy.BUFFER) {
+      return true;
+    }
+    synchronized (this) {
+      return sendQueue.size() < sendQueueSize;
+    }
+  }
+
   @Override
   public void write(String data) throws IOException {
-    session.getBasicRemote().sendText(data);
+    synchronized (this) {
+      if (sending) {
+        if (sendQueue.size() >= sendQueueSize) {
+          if (overflowPolicy == SendOverflowPolicy.DROP) {
+            // a frame defining compact protocol tokens is queued regardless, as the client could not decode any
+            // later frame referring to them. Frames without definitions leave the client's dictionary unchanged.
+            if (!hasWireDefinitions(data)) {
+              messagesDropped.incrementAndGet();
+              return;
+            }
+          }
+          else if (overflowPolicy == SendOverflowPolicy.DISCONNECT) {
+            discardQueue();
+            disconnect();
+            throw new IOException("send queue overflow on websocket session: " + session.getId());
+          }
+          // with the buffer policy the queue may still grow by the few messages which were delivered while it
+          // filled up. Everything after that is held in the bus buffer.
+        }
+
+        sendQueue.add(data);
+        pendingBytes.addAndGet(data.length());
+        if (blockedSince == 0 && sendQueue.size() >= sendQueueSize) {
+          blockedSince = System.nanoTime();
+        }
+        return;
+      }
+
+      sending = true;
+      inFlightSize = data.length();
+      inFlightCount = 1;
+      pendingBytes.addAndGet(data.length());
+    }
+
+    try {
+      send(data);
+    }
+    catch (RuntimeException e) {
+      synchronized (this) {
+        sending = false;
+        pendingBytes.addAndGet(-inFlightSize);
+        discardQueue();
+      }
+      closeIfDictionaryLost();
+      throw new IOException("could not send to websocket session: " + session.getId(), e);
+    }
+  }
+
+  private void send(final String frame) {
+    IN_FLIGHT_SENDS.incrementAndGet();
+    framesSent.incrementAndGet();
+    try {
+      session.getAsyncRemote().sendText(frame, sendHandler);
+    }
+    catch (RuntimeException e) {
+      IN_FLIGHT_SENDS.decrementAndGet();
+      throw e;
+    }
+  }
+
+  private void onSendComplete(final SendResult result) {
+    IN_FLIGHT_SENDS.decrementAndGet();
+
+    final String next;
+    boolean unblocked = false;
+    boolean failed = false;
+    synchronized (this) {
+      pendingBytes.addAndGet(-inFlightSize);
+
+      if (result.isOK()) {
+        messagesSent.addAndGet(inFlightCount);
+        next = nextFrame();
+      }
+      else {
+        LOGGER.debug("could not send to websocket session: " + session.getId(), result.getException());
+        messagesDropped.addAndGet(inFlightCount);
+        discardQueue();
+        next = null;
+        failed = true;
+      }
+
+      if (next == null) {
+        sending = false;
+      }
+
+      if (blockedSince != 0 && sendQueue.size() < sendQueueSize) {
+        blockedNanos.addAndGet(System.nanoTime() - blockedSince);
+        blockedSince = 0;
+        unblocked = true;
+      }
+    }
+
+    if (next != null) {
+      try {
+        send(next);
+      }
+      catch (RuntimeException e) {
+        LOGGER.debug("could not send to websocket session: " + session.getId(), e);
+        synchronized (this) {
+          sending = false;
+          pendingBytes.addAndGet(-inFlightSize);
+          messagesDropped.addAndGet(inFlightCount);
+          discardQueue();
+        }
+        failed = true;
+      }
+    }
+
+    if (failed) {
+      closeIfDictionaryLost();
+    }
+
+    if (unblocked && overflowPolicy == SendOverflowPolicy.BUFFER) {
+      wakeQueue();
+    }
+  }
+
+  /**
+   * Takes the next frame off the send queue and records its size and message count as in flight. Consecutive
+   * payloads which are JSON arrays are merged into one array. Must be called while holding the lock.
+   */
+  private String nextFrame() {
+    String data = sendQueue.poll();
+    if (data == null) {
+      return null;
+    }
+
+    inFlightSize = data.length();
+    inFlightCount = 1;
+    if (!isJSONArray(data) || !isJSONArray(sendQueue.peek())) {
+      return data;
+    }
+
+    final StringBuilder frame = new StringBuilder(Math.min(MAX_FRAME_CHARS, data.length() * 2)).append('[');
+    boolean empty = appendElements(frame, data, true);
+    while (frame.length() < MAX_FRAME_CHARS && isJSONArray(sendQueue.peek())) {
+      data = sendQueue.poll();
+      inFlightSize += data.length();
+      inFlightCount++;
+      empty = appendElements(frame, data, empty);
+    }
+    return frame.append(']').toString();
+  }
+
+  private static boolean appendElements(final StringBuilder frame, final String array, final boolean empty) {
+    for (int i = 1; i < array.length() - 1; i++) {
+      if (!Character.isWhitespace(array.charAt(i))) {
+        if (!empty) {
+          frame.append(',');
+        }
+        frame.append(array, 1, array.length() - 1);
+        return false;
+      }
+    }
+    return empty;
+  }
+
+  /**
+   * Returns true if the payload was encoded by the compact wire protocol and adds entries to the client's
+   * dictionary. The marker cannot occur unescaped in a plain JSON payload.
+   */
+  private static boolean hasWireDefinitions(final String data) {
+    return data.indexOf(CompactWireCodec.DEFINITION) != -1;
+  }
+
+  private static boolean isJSONArray(final String data) {
+    return data != null && data.length() > 1 && data.charAt(0) == '[' && data.charAt(data.length() - 1) == ']';
+  }
+
+  /**
+   * Drops all queued messages. Must be called while holding the lock.
+   */
+  private void discardQueue() {
+    String data;
+    while ((data = sendQueue.poll()) != null) {
+      pendingBytes.addAndGet(-data.length());
+      messagesDropped.incrementAndGet();
+    }
+    if (blockedSince != 0) {
+      blockedNanos.addAndGet(System.nanoTime() - blockedSince);
+      blockedSince = 0;
+    }
+  }
+
+  private void disconnect() {
+    LOGGER.warn("closing websocket session {} because its send queue is full", session.getId());
+    try {
+      session.close(new CloseReason(CloseReason.CloseCodes.TRY_AGAIN_LATER, "send queue overflow"));
+    }
+    catch (IOException e) {
+      LOGGER.debug("could not close websocket session: " + session.getId(), e);
+    }
+  }
+
+  /**
+   * Closes the session after outbound messages were lost on a socket using the compact wire protocol. They may have
+   * defined dictionary entries, without which the client cannot decode what follows. The client reconnects and
+   * negotiates a new dictionary.
+   */
+  private void closeIfDictionaryLost() {
+    if (wireCodec == null || !session.isOpen()) {
+      return;
+    }
+    LOGGER.warn("closing websocket session {} because messages using the compact wire protocol were lost",
+            session.getId());
+    try {
+      session.close(new CloseReason(CloseReason.CloseCodes.TRY_AGAIN_LATER, "compact dictionary lost"));
+    }
+    catch (IOException e) {
+      LOGGER.debug("could not close websocket session: " + session.getId(), e);
+    }
+  }
+
+  private void wakeQueue() {
+    final QueueSession qs = queueSession;
+    if (qs != null) {
+      final MessageQueue queue = erraiService.getBus().getQueueBySession(qs.getSessionId());
+      if (queue != null) {
+        queue.wake();
+      }
+    }
   }
 
   @Override
   public void onSessionClosed() {
+    synchronized (this) {
+      discardQueue();
+    }
+  }
+
+  /**
+   * Returns the number of characters handed to this channel which have not yet been sent to the client.
+   */
+  @Override
+  public long getPendingBytes() {
+    return pendingBytes.get();
+  }
+
+  /**
+   * Returns the number of messages waiting for the send in flight to complete.
+   */
+  public synchronized int getQueuedMessageCount() {
+    return sendQueue.size();
+  }
+
+  /**
+   * Returns true while an asynchronous send on this channel has not completed.
+   */
+  public synchronized boolean isSendInFlight() {
+    return sending;
+  }
+
+  /**
+   * Returns the number of messages which were sent to the client.
+   */
+  public long getMessagesSent() {
+    return messagesSent.get();
+  }
+
+  /**
+   * Returns the number of frames the sent messages were coalesced into.
+   */
+  public long getFramesSent() {
+    return framesSent.get();
+  }
+
+  /**
+   * Returns the number of messages which were discarded because the send queue was full or a send failed.
+   */
+  public long getMessagesDropped() {
+    return messagesDropped.get();
+  }
+
+  /**
+   * Returns the total time in milliseconds during which the send queue of this channel was full.
+   */
+  public long getBlockedTime() {
+    long nanos = blockedNanos.get();
+    synchronized (this) {
+      if (blockedSince != 0) {
+        nanos += System.nanoTime() - blockedSince;
+      }
+    }
+    return TimeUnit.NANOSECONDS.toMillis(nanos);
+  }
 
+  /**
+   * Returns the number of asynchronous sends which have not yet completed, across all channels.
+   */
+  public static long getInFlightSendCount() {
+    return IN_FLIGHT_SENDS.get();
   }
 }
@@ -0,0 +1,56 @@
+/*
+ * Copyright (C) 2016 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.jboss.errai.bus.server.websocket.jsr356.channel;
+
+/**
+ * Determines what a {@link DefaultErraiWebSocketChannel} does with outbound messages once its send queue is full.
+ *
+ * @see org.jboss.errai.bus.server.service.ErraiConfigAttribs#WEBSOCKET_SERVLET_OVERFLOW_POLICY
+ */
+public enum SendOverflowPolicy {
+  /**
+   * The channel reports itself as not writable, so that messages are held in the bus buffer of the session's queue
+   * until the send queue has drained.
+   */
+  BUFFER,
+
+  /**
+   * Messages are discarded. Messages defining entries of the compact wire protocol's dictionary are queued
+   * regardless, so that the client can decode the messages which follow them.
+   */
+  DROP,
+
+  /**
+   * The WebSocket session is closed.
+   */
+  DISCONNECT;
+
+  /**
+   * Returns the policy with the given name, ignoring case, or {@link #BUFFER} if the name is not recognised.
+   */
+  public static SendOverflowPolicy fromName(final String name) {
+    if (name != null) {
+      for (final SendOverflowPolicy policy : values()) {
+        if (policy.name().equalsIgnoreCase(name.trim())) {
+          return policy;
+        }
+      }
+    }
+    return BUFFER;
+  }
+}
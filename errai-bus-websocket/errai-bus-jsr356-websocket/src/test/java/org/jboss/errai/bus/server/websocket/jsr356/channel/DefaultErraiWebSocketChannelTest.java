@@ -0,0 +1,258 @@
+/*
+ * Copyright (C) 2016 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.errai.bus.server.websocket.jsr356.channel;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.websocket.CloseReason;
+import javax.websocket.RemoteEndpoint;
+import javax.websocket.SendHandler;
+import javax.websocket.SendResult;
+import javax.websocket.Session;
+
+import org.jboss.errai.bus.client.api.QueueSession;
+import org.jboss.errai.bus.client.protocols.CompactWireCodec;
+import org.jboss.errai.bus.server.api.MessageQueue;
+import org.jboss.errai.bus.server.api.ServerMessageBus;
+import org.jboss.errai.bus.server.service.ErraiConfigAttribs;
+import org.jboss.errai.bus.server.service.ErraiService;
+import org.jboss.errai.bus.server.service.ErraiServiceConfigurator;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+/**
+ * Tests the asynchronous sending of {@link DefaultErraiWebSocketChannel} against a mocked
+ * {@link RemoteEndpoint.Async}. Sends only complete when a test completes them.
+ */
+public class DefaultErraiWebSocketChannelTest {
+
+  private final List<String> sentFrames = new ArrayList<String>();
+  private final List<SendHandler> pendingHandlers = new ArrayList<SendHandler>();
+
+  private Session session;
+  private RemoteEndpoint.Async remote;
+  private MessageQueue messageQueue;
+
+  @Before
+  public void setUp() {
+    remote = mock(RemoteEndpoint.Async.class);
+    doAnswer(new Answer<Void>() {
+      @Override
+      public Void answer(final InvocationOnMock invocation) {
+        sentFrames.add((String) invocation.getArguments()[0]);
+        pendingHandlers.add((SendHandler) invocation.getArguments()[1]);
+        return null;
+      }
+    }).when(remote).sendText(anyString(), any(SendHandler.class));
+
+    session = mock(Session.class);
+    when(session.getId()).thenReturn("websocket-session");
+    when(session.isOpen()).thenReturn(true);
+    when(session.getAsyncRemote()).thenReturn(remote);
+
+    messageQueue = mock(MessageQueue.class);
+  }
+
+  @Test
+  public void testOnlyOneSendIsInFlight() throws IOException {
+    final DefaultErraiWebSocketChannel channel = createChannel(8, SendOverflowPolicy.BUFFER);
+
+    channel.write("[1]");
+    channel.write("[2]");
+    channel.write("[3]");
+
+    assertEquals(1, sentFrames.size());
+    assertEquals("[1]", sentFrames.get(0));
+    assertTrue(channel.isSendInFlight());
+    assertEquals(2, channel.getQueuedMessageCount());
+    assertEquals(9, channel.getPendingBytes());
+  }
+
+  @Test
+  public void testQueuedMessagesAreCoalescedWhenSendCompletes() throws IOException {
+    final DefaultErraiWebSocketChannel channel = createChannel(8, SendOverflowPolicy.BUFFER);
+
+    channel.write("[1]");
+    channel.write("[2]");
+    channel.write("[ ]");
+    channel.write("[3,4]");
+    channel.write("{\"not\":\"an array\"}");
+
+    completeSend();
+    assertEquals(2, sentFrames.size());
+    assertEquals("[2,3,4]", sentFrames.get(1));
+    assertEquals(1, channel.getQueuedMessageCount());
+
+    completeSend();
+    assertEquals("{\"not\":\"an array\"}", sentFrames.get(2));
+
+    completeSend();
+    assertFalse(channel.isSendInFlight());
+    assertEquals(5, channel.getMessagesSent());
+    assertEquals(3, channel.getFramesSent());
+    assertEquals(0, channel.getPendingBytes());
+
+    channel.write("[5]");
+    assertEquals("an idle channel sends right away", 4, sentFrames.size());
+  }
+
+  @Test
+  public void testBufferPolicyStopsWritingAndWakesQueueWhenDrained() throws IOException {
+    final DefaultErraiWebSocketChannel channel = createChannel(2, SendOverflowPolicy.BUFFER);
+
+    channel.write("[1]");
+    channel.write("[2]");
+    assertTrue(channel.isWritable());
+    channel.write("[3]");
+    assertFalse(channel.isWritable());
+
+    // messages delivered while the queue filled up are still accepted.
+    channel.write("[4]");
+    assertEquals(3, channel.getQueuedMessageCount());
+    assertEquals(0, channel.getMessagesDropped());
+    verify(messageQueue, never()).wake();
+
+    completeSend();
+    assertEquals("[2,3,4]", sentFrames.get(1));
+    assertTrue(channel.isWritable());
+    verify(messageQueue).wake();
+  }
+
+  @Test
+  public void testDropPolicyDiscardsMessagesExceptDefinitions() throws IOException {
+    final DefaultErraiWebSocketChannel channel = createChannel(1, SendOverflowPolicy.DROP);
+    final String definition = "[\"" + CompactWireCodec.DEFINITION + "0:subject\"]";
+
+    channel.write("[1]");
+    channel.write("[2]");
+    channel.write("[3]");
+    channel.write(definition);
+
+    assertTrue(channel.isWritable());
+    assertEquals(1, channel.getMessagesDropped());
+    assertEquals(2, channel.getQueuedMessageCount());
+
+    completeSend();
+    assertEquals("[2," + definition.substring(1), sentFrames.get(1));
+    completeSend();
+    assertEquals(3, channel.getMessagesSent());
+    verify(messageQueue, never()).wake();
+  }
+
+  @Test
+  public void testDisconnectPolicyClosesSession() throws Exception {
+    final DefaultErraiWebSocketChannel channel = createChannel(1, SendOverflowPolicy.DISCONNECT);
+
+    channel.write("[1]");
+    channel.write("[2]");
+    try {
+      channel.write("[3]");
+      fail("expected an IOException");
+    }
+    catch (IOException e) {
+      // expected
+    }
+
+    verify(session).close(any(CloseReason.class));
+    assertEquals(0, channel.getQueuedMessageCount());
+    assertEquals(1, channel.getMessagesDropped());
+  }
+
+  @Test
+  public void testFailedSendDiscardsQueue() throws IOException {
+    final DefaultErraiWebSocketChannel channel = createChannel(8, SendOverflowPolicy.BUFFER);
+
+    channel.write("[1]");
+    channel.write("[2]");
+    channel.write("[3]");
+    pendingHandlers.remove(0).onResult(new SendResult(new IOException("connection reset")));
+
+    assertEquals(1, sentFrames.size());
+    assertFalse(channel.isSendInFlight());
+    assertEquals(0, channel.getQueuedMessageCount());
+    assertEquals(3, channel.getMessagesDropped());
+    assertEquals(0, channel.getMessagesSent());
+    assertEquals(0, channel.getPendingBytes());
+
+    channel.write("[4]");
+    assertEquals("the channel sends again after a failure", 2, sentFrames.size());
+  }
+
+  @Test
+  public void testSendThrowingIsReportedAsIOException() {
+    final DefaultErraiWebSocketChannel channel = createChannel(8, SendOverflowPolicy.BUFFER);
+    doAnswer(new Answer<Void>() {
+      @Override
+      public Void answer(final InvocationOnMock invocation) {
+        throw new IllegalStateException("closed");
+      }
+    }).when(remote).sendText(anyString(), any(SendHandler.class));
+
+    try {
+      channel.write("[1]");
+      fail("expected an IOException");
+    }
+    catch (IOException e) {
+      assertTrue(e.getCause() instanceof IllegalStateException);
+    }
+    assertFalse(channel.isSendInFlight());
+    assertEquals(0, channel.getPendingBytes());
+  }
+
+  private void completeSend() {
+    pendingHandlers.remove(0).onResult(new SendResult());
+  }
+
+  private DefaultErraiWebSocketChannel createChannel(final int sendQueueSize, final SendOverflowPolicy policy) {
+    final ErraiServiceConfigurator configurator = mock(ErraiServiceConfigurator.class);
+    when(configurator.hasProperty(anyString())).thenReturn(true);
+    when(configurator.getIntProperty(ErraiConfigAttribs.WEBSOCKET_SERVLET_SEND_QUEUE_SIZE.getAttributeName()))
+        .thenReturn(sendQueueSize);
+    when(configurator.getProperty(ErraiConfigAttribs.WEBSOCKET_SERVLET_OVERFLOW_POLICY.getAttributeName()))
+        .thenReturn(policy.name());
+
+    final ServerMessageBus bus = mock(ServerMessageBus.class);
+    when(bus.getQueueBySession("queue-session")).thenReturn(messageQueue);
+
+    final ErraiService<?> erraiService = mock(ErraiService.class);
+    when(erraiService.getConfiguration()).thenReturn(configurator);
+    when(erraiService.getBus()).thenReturn(bus);
+
+    final QueueSession queueSession = mock(QueueSession.class);
+    when(queueSession.getSessionId()).thenReturn("queue-session");
+
+    final DefaultErraiWebSocketChannel channel = new DefaultErraiWebSocketChannel(session, null, erraiService);
+    channel.queueSession = queueSession;
+    return channel;
+  }
+}
@@ -281,6 +281,11 @@ public class ClientMessageBusImpl implements ClientMessageBus {
 
   private Timer initialConnectTimer;
 
+  /**
+   * Batches outbound messages per event loop turn, or null if outbound batching is not enabled.
+   */
+  private final OutboundMessageBatcher outboundBatcher;
+
   private static final Logger logger = LoggerFactory.getLogger(ClientMessageBusImpl.class);
 
   public ClientMessageBusImpl() {
@@ -288,6 +293,9 @@ public class ClientMessageBusImpl implements ClientMessageBus {
 
     managementConsole = new ManagementConsole(this);
 
+    outboundBatcher = BusToolsCli.isOutboundBatchingEnabled()
+        ? new OutboundMessageBatcher(this, BusToolsCli.getOutboundBatchMaxBytes()) : null;
+
     clientId = String.valueOf(com.google.gwt.user.client.Random.nextInt(99999)) + "-"
         + (System.currentTimeMillis() % (com.google.gwt.user.client.Random.nextInt(99999) + 1));
 
@@ -528,6 +536,9 @@ public class ClientMessageBusImpl implements ClientMessageBus {
           .set(MessageParts.PriorityProcessing, "1"));
     }
 
+    if (outboundBatcher != null) {
+      outboundBatcher.flush();
+    }
     deferredMessages.addAll(transportHandler.stop(true));
   }
 
@@ -860,7 +871,12 @@ public class ClientMessageBusImpl implements ClientMessageBus {
       return;
     }
 
-    transportHandler.transmit(Collections.singletonList(message));
+    if (outboundBatcher != null) {
+      outboundBatcher.add(message);
+    }
+    else {
+      transportHandler.transmit(Collections.singletonList(message));
+    }
   }
 
   private void addSubscriptionEntry(final String subject, final MessageCallback reference) {
@@ -1113,6 +1129,13 @@ public class ClientMessageBusImpl implements ClientMessageBus {
     return transportHandler;
   }
 
+  /**
+   * Returns the batcher for outbound messages, or null if outbound batching is not enabled.
+   */
+  public OutboundMessageBatcher getOutboundBatcher() {
+    return outboundBatcher;
+  }
+
   public Collection<TransportHandler> getAllAvailableHandlers() {
     return availableHandlers.values();
   }
@@ -0,0 +1,158 @@
+/*
+ * Copyright (C) 2016 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.jboss.errai.bus.client.framework;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.jboss.errai.bus.client.api.HasEncoded;
+import org.jboss.errai.bus.client.api.messaging.Message;
+import org.jboss.errai.bus.client.framework.transports.TransportHandler;
+import org.jboss.errai.bus.client.util.BusToolsCli;
+import org.jboss.errai.common.client.api.ResourceProvider;
+
+import com.google.gwt.core.client.Scheduler;
+import com.google.gwt.core.client.Scheduler.ScheduledCommand;
+
+/**
+ * Collects the messages the client bus sends to the server during one turn of the browser event loop and hands
+ * them to the transport as a single list once the turn ends, so that they go out in one request or one WebSocket
+ * frame. A batch is handed over early when it grows beyond the configured size. Messages keep their order and are
+ * passed on unchanged, so their error callbacks are invoked by the transport as before. Each message is encoded once,
+ * to measure it, and the transport reuses that encoding (see {@link BusToolsCli#ENCODED_MESSAGE_RESOURCE}).
+ *
+ * @see BusToolsCli#isOutboundBatchingEnabled()
+ */
+public class OutboundMessageBatcher {
+  private final ResourceProvider<TransportHandler> transportHandler;
+  private final int maxBatchSize;
+  private final Scheduler scheduler;
+
+  private List<Message> batch = new ArrayList<Message>();
+  private int batchSize;
+  private boolean flushScheduled;
+
+  private int batchesSent;
+  private int messagesBatched;
+  private int sizeLimitFlushes;
+
+  private final ScheduledCommand flushCommand = new ScheduledCommand() {
+    @Override
+    public void execute() {
+      flushScheduled = false;
+      flush();
+    }
+  };
+
+  OutboundMessageBatcher(final ClientMessageBusImpl messageBus, final int maxBatchSize) {
+    this(new ResourceProvider<TransportHandler>() {
+      @Override
+      public TransportHandler get() {
+        return messageBus.getTransportHandler();
+      }
+    }, maxBatchSize, Scheduler.get());
+  }
+
+  OutboundMessageBatcher(final ResourceProvider<TransportHandler> transportHandler, final int maxBatchSize,
+          final Scheduler scheduler) {
+    this.transportHandler = transportHandler;
+    this.maxBatchSize = maxBatchSize;
+    this.scheduler = scheduler;
+  }
+
+  /**
+   * Adds the specified message to the current batch.
+   */
+  public void add(final Message message) {
+    // the transports require these to be sent on their own.
+    if (message.hasResource(TransportHandler.EXTRA_URI_PARMS_RESOURCE)) {
+      flush();
+      transmit(Collections.singletonList(message));
+      return;
+    }
+
+    final String encoded = BusToolsCli.encodeMessage(message);
+    if (!(message instanceof HasEncoded)) {
+      message.setResource(BusToolsCli.ENCODED_MESSAGE_RESOURCE, encoded);
+    }
+
+    final int size = encoded.length();
+    if (!batch.isEmpty() && batchSize + size > maxBatchSize) {
+      sizeLimitFlushes++;
+      flush();
+    }
+
+    batch.add(message);
+    batchSize += size;
+
+    if (!flushScheduled) {
+      flushScheduled = true;
+      scheduler.scheduleFinally(flushCommand);
+    }
+  }
+
+  /**
+   * Hands the current batch to the transport immediately.
+   */
+  public void flush() {
+    if (batch.isEmpty()) {
+      return;
+    }
+
+    final List<Message> toSend = batch;
+    batch = new ArrayList<Message>();
+    batchSize = 0;
+
+    transmit(toSend);
+  }
+
+  private void transmit(final List<Message> messages) {
+    batchesSent++;
+    messagesBatched += messages.size();
+    transportHandler.get().transmit(messages);
+  }
+
+  /**
+   * Returns the number of messages waiting for the current event loop turn to end.
+   */
+  public int getPendingMessages() {
+    return batch.size();
+  }
+
+  /**
+   * Returns the number of batches handed to the transport.
+   */
+  public int getBatchesSent() {
+    return batchesSent;
+  }
+
+  /**
+   * Returns the number of messages handed to the transport in all batches.
+   */
+  public int getMessagesBatched() {
+    return messagesBatched;
+  }
+
+  /**
+   * Returns the number of batches which were handed to the transport early because they reached the size limit.
+   */
+  public int getSizeLimitFlushes() {
+    return sizeLimitFlushes;
+  }
+}
@@ -32,6 +32,7 @@ import org.jboss.errai.bus.client.api.base.TransportIOException;
 import org.jboss.errai.bus.client.api.messaging.Message;
 import org.jboss.errai.bus.client.framework.BusState;
 import org.jboss.errai.bus.client.framework.ClientMessageBusImpl;
+import org.jboss.errai.bus.client.framework.OutboundMessageBatcher;
 import org.jboss.errai.bus.client.util.BusToolsCli;
 import org.jboss.errai.common.client.protocols.MessageParts;
 import org.slf4j.Logger;
@@ -690,6 +691,18 @@ public class HttpPollingHandler implements TransportHandler, TransportStatistics
     return heldMessages.size();
   }
 
+  @Override
+  public int getBatchesSent() {
+    final OutboundMessageBatcher batcher = messageBus.getOutboundBatcher();
+    return batcher == null ? 0 : batcher.getBatchesSent();
+  }
+
+  @Override
+  public int getMessagesBatched() {
+    final OutboundMessageBatcher batcher = messageBus.getOutboundBatcher();
+    return batcher == null ? 0 : batcher.getMessagesBatched();
+  }
+
   private class RemoteRequestCallback implements RequestCallback {
     private final long startTime;
     private final List<Message> toSend;
@@ -307,6 +307,16 @@ public class SSEHandler implements TransportHandler, TransportStatistics {
     return pollingHandler.getStatistics().getPendingMessages();
   }
 
+  @Override
+  public int getBatchesSent() {
+    return pollingHandler.getBatchesSent();
+  }
+
+  @Override
+  public int getMessagesBatched() {
+    return pollingHandler.getMessagesBatched();
+  }
+
   @Override
   public void close() {
     if (!stopped) {
@@ -31,4 +31,15 @@ public interface TransportStatistics {
   public String getRxEndpoint();
   public String getTxEndpoint();
   public int getPendingMessages();
+
+  /**
+   * Returns the number of batches of outbound messages the client bus has handed to its transports, or 0 if
+   * outbound batching is not enabled.
+   */
+  public int getBatchesSent();
+
+  /**
+   * Returns the number of messages contained in the batches counted by {@link #getBatchesSent()}.
+   */
+  public int getMessagesBatched();
 }
@@ -25,7 +25,9 @@ import org.jboss.errai.bus.client.api.messaging.Message;
 import org.jboss.errai.bus.client.framework.BuiltInServices;
 import org.jboss.errai.bus.client.framework.BusState;
 import org.jboss.errai.bus.client.framework.ClientMessageBusImpl;
+import org.jboss.errai.bus.client.framework.OutboundMessageBatcher;
 import org.jboss.errai.bus.client.protocols.BusCommand;
+import org.jboss.errai.bus.client.protocols.CompactWireCodec;
 import org.jboss.errai.bus.client.util.BusToolsCli;
 import org.jboss.errai.common.client.api.Assert;
 import org.jboss.errai.common.client.protocols.MessageParts;
@@ -57,6 +59,17 @@ public class WebsocketHandler implements TransportHandler, TransportStatistics {
 
   private int retries;
 
+  /**
+   * The codec of the current socket. Payloads received are always passed through it, as the server may start
+   * sending compact payloads as soon as it has accepted the compact wire protocol.
+   */
+  private CompactWireCodec wireCodec;
+
+  /**
+   * True once the compact wire protocol has been agreed on for the current socket.
+   */
+  private boolean compactWireProtocol;
+
   private String unsupportedReason = UNSUPPORTED_MESSAGE_NO_SERVER_SUPPORT;
   
   private static Logger logger = LoggerFactory.getLogger(WebsocketHandler.class);
@@ -104,7 +117,11 @@ public class WebsocketHandler implements TransportHandler, TransportStatistics {
   public void transmit(final List<Message> txMessages) {
     // The HTTP long polling handler is cancelled when the websocket channel becomes available
     if (longPollingTransport.isCancelled()) {
-      boolean success = transmitToSocket(webSocketChannel, BusToolsCli.encodeMessages(txMessages));
+      String payload = BusToolsCli.encodeMessages(txMessages);
+      if (compactWireProtocol) {
+        payload = wireCodec.encode(payload);
+      }
+      boolean success = transmitToSocket(webSocketChannel, payload);
       if (!success) {
         logger.error("failed to deliver " + txMessages.size() + " message(s) using websocket");
       }
@@ -131,8 +148,14 @@ public class WebsocketHandler implements TransportHandler, TransportStatistics {
         if (messageBus.getState() == BusState.CONNECTION_INTERRUPTED)
           messageBus.setState(BusState.CONNECTED);
 
-        // send final message to open the channel
-        transmitToSocket(webSocketChannel, getWebSocketNegotiationString());
+        // send final message to open the channel, accepting the compact wire protocol if the server offers it.
+        final boolean acceptCompact = !compactWireProtocol
+            && CompactWireCodec.PROTOCOL_NAME.equals(message.get(String.class, MessageParts.WireProtocol));
+        transmitToSocket(webSocketChannel, getWebSocketNegotiationString(acceptCompact));
+        if (acceptCompact) {
+          compactWireProtocol = true;
+          logger.info("using compact wire protocol for web socket");
+        }
 
         longPollingTransport.stop(false);
         webSocketToken = message.get(String.class, MessageParts.WebSocketToken);
@@ -171,19 +194,23 @@ public class WebsocketHandler implements TransportHandler, TransportStatistics {
 
   public void attachWebSocketChannel(final Object o) {
     logger.info("web socket opened. sending negotiation message.");
-    transmitToSocket(o, getWebSocketNegotiationString());
+    wireCodec = new CompactWireCodec();
+    compactWireProtocol = false;
+    transmitToSocket(o, getWebSocketNegotiationString(false));
     webSocketChannel = o;
     connectedTime = System.currentTimeMillis();
   }
 
-  private String getWebSocketNegotiationString() {
+  private String getWebSocketNegotiationString(final boolean acceptCompact) {
     return "{\"" + MessageParts.CommandType.name() + "\":\"" + BusCommand.Associate.name() + "\", \""
         + MessageParts.ConnectionSessionKey + "\":\"" + messageBus.getSessionId() + "\"" + ",\""
-        + MessageParts.WebSocketToken + "\":\"" + webSocketToken + "\"}";
+        + MessageParts.WebSocketToken + "\":\"" + webSocketToken + "\""
+        + (acceptCompact ? ",\"" + MessageParts.WireProtocol + "\":\"" + CompactWireCodec.PROTOCOL_NAME + "\"" : "")
+        + "}";
   }
 
   private void handleReceived(String json) {
-    BusToolsCli.decodeToCallback(json, messageBus);
+    BusToolsCli.decodeToCallback(wireCodec != null ? wireCodec.decode(json) : json, messageBus);
     rxCount++;
     lastTransmission = System.currentTimeMillis();
   }
@@ -331,6 +358,18 @@ public class WebsocketHandler implements TransportHandler, TransportStatistics {
     return 0;
   }
 
+  @Override
+  public int getBatchesSent() {
+    final OutboundMessageBatcher batcher = messageBus.getOutboundBatcher();
+    return batcher == null ? 0 : batcher.getBatchesSent();
+  }
+
+  @Override
+  public int getMessagesBatched() {
+    final OutboundMessageBatcher batcher = messageBus.getOutboundBatcher();
+    return batcher == null ? 0 : batcher.getMessagesBatched();
+  }
+
   @Override
   public void close() {
     if (!stopped) {
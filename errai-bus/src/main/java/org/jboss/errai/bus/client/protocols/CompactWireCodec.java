@@ -0,0 +1,267 @@
+/*
+ * Copyright (C) 2016 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.jboss.errai.bus.client.protocols;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.jboss.errai.common.client.protocols.MessageParts;
+import org.jboss.errai.common.client.protocols.SerializationParts;
+
+/**
+ * Encodes and decodes the compact wire protocol for one connection. The compact protocol is the regular JSON
+ * protocol with frequently repeated strings replaced by short tokens. Part names, type names and subjects are kept
+ * in a dictionary which starts out with the names known to both buses and grows as new strings are seen. Every
+ * string is spelled out in full once, marked as a definition, and referenced by its index after that.
+ * <p>
+ * A string literal beginning with {@link #REFERENCE} refers to a dictionary entry by its base 36 index. A string
+ * literal beginning with {@link #DEFINITION} contains a string which is added to the end of the dictionary. Both
+ * characters are always escaped by the Errai marshallers, so they cannot occur unescaped in a plain JSON payload,
+ * which therefore decodes to itself.
+ * <p>
+ * Each direction of a connection has a dictionary of its own: the encoder for outgoing payloads must mirror the
+ * decoder on the remote side. Payloads therefore have to be decoded in the order in which they were encoded.
+ * Instances are not thread-safe.
+ */
+public class CompactWireCodec {
+  /**
+   * The value of {@link MessageParts#WireProtocol} with which the compact protocol is negotiated.
+   */
+  public static final String PROTOCOL_NAME = "compact-1";
+
+  public static final char REFERENCE = '\u0080';
+  public static final char DEFINITION = '\u0081';
+
+  /**
+   * The maximum number of entries per dictionary.
+   */
+  private static final int MAX_ENTRIES = 4096;
+
+  /**
+   * Strings longer than this are never added to a dictionary.
+   */
+  private static final int MAX_ENTRY_LENGTH = 128;
+
+  /**
+   * Strings shorter than this are never added to a dictionary, as a reference would not be shorter.
+   */
+  private static final int MIN_ENTRY_LENGTH = 4;
+
+  private static final List<String> STATIC_ENTRIES = new ArrayList<String>();
+
+  /**
+   * The keys whose string values are added to the dictionary. All keys are added.
+   */
+  private static final Map<String, Boolean> DICTIONARY_VALUE_KEYS = new HashMap<String, Boolean>();
+
+  static {
+    for (final MessageParts part : MessageParts.values()) {
+      STATIC_ENTRIES.add(part.name());
+    }
+    for (final BusCommand command : BusCommand.values()) {
+      STATIC_ENTRIES.add(command.name());
+    }
+
+    final String[] common = {
+        SerializationParts.MARSHALLED_TYPES, SerializationParts.ENCODED_TYPE, SerializationParts.OBJECT_ID,
+        SerializationParts.INSTANTIATE_ONLY, SerializationParts.NUMERIC_VALUE, SerializationParts.NULL_VALUE,
+        SerializationParts.QUALIFIED_VALUE, SerializationParts.ENUM_STRING_VALUE,
+        "ClientBus", "ServerBus", "ClientBusErrors",
+        "java.lang.String", "java.lang.Integer", "java.lang.Long", "java.lang.Double", "java.lang.Float",
+        "java.lang.Short", "java.lang.Byte", "java.lang.Boolean", "java.lang.Character", "java.lang.Object",
+        "java.util.ArrayList", "java.util.LinkedList", "java.util.HashMap", "java.util.LinkedHashMap",
+        "java.util.HashSet", "java.util.LinkedHashSet", "java.util.TreeMap", "java.util.TreeSet",
+        "java.util.Arrays$ArrayList", "java.util.Collections$UnmodifiableRandomAccessList",
+        "java.util.Collections$EmptyList", "java.util.Date", "java.math.BigDecimal", "java.math.BigInteger"
+    };
+    for (final String entry : common) {
+      STATIC_ENTRIES.add(entry);
+    }
+
+    DICTIONARY_VALUE_KEYS.put(MessageParts.ToSubject.name(), Boolean.TRUE);
+    DICTIONARY_VALUE_KEYS.put(MessageParts.Subject.name(), Boolean.TRUE);
+    DICTIONARY_VALUE_KEYS.put(MessageParts.ReplyTo.name(), Boolean.TRUE);
+    DICTIONARY_VALUE_KEYS.put(MessageParts.CommandType.name(), Boolean.TRUE);
+    DICTIONARY_VALUE_KEYS.put(SerializationParts.ENCODED_TYPE, Boolean.TRUE);
+    DICTIONARY_VALUE_KEYS.put(SerializationParts.ENUM_STRING_VALUE, Boolean.TRUE);
+  }
+
+  private final Map<String, Integer> outbound = new HashMap<String, Integer>();
+  private final List<String> inbound = new ArrayList<String>(STATIC_ENTRIES);
+  private int nextOutboundIndex = STATIC_ENTRIES.size();
+
+  public CompactWireCodec() {
+    for (int i = STATIC_ENTRIES.size() - 1; i >= 0; i--) {
+      outbound.put(STATIC_ENTRIES.get(i), i);
+    }
+  }
+
+  /**
+   * Encodes a plain JSON payload for transmission to the remote side.
+   */
+  public String encode(final String json) {
+    final int length = json.length();
+    final StringBuilder out = new StringBuilder(length);
+
+    String pendingKey = null;
+    int i = 0;
+    while (i < length) {
+      final char c = json.charAt(i);
+      if (c != '"') {
+        if (c != ':' && !isWhitespace(c)) {
+          pendingKey = null;
+        }
+        out.append(c);
+        i++;
+        continue;
+      }
+
+      final int end = endOfString(json, i);
+      final boolean isKey = isFollowedByColon(json, end + 1);
+      final boolean eligible = isKey || (pendingKey != null && DICTIONARY_VALUE_KEYS.containsKey(pendingKey));
+      final String raw = json.substring(i + 1, end);
+
+      out.append('"');
+      if (eligible) {
+        appendToken(out, raw);
+      }
+      else {
+        appendEscaped(out, raw);
+      }
+      out.append('"');
+
+      pendingKey = isKey ? raw : null;
+      i = end + 1;
+    }
+
+    return out.toString();
+  }
+
+  /**
+   * Decodes a payload received from the remote side back into plain JSON. A plain JSON payload is returned as is.
+   */
+  public String decode(final String payload) {
+    if (payload.indexOf(REFERENCE) == -1 && payload.indexOf(DEFINITION) == -1) {
+      return payload;
+    }
+
+    final int length = payload.length();
+    final StringBuilder out = new StringBuilder(length * 2);
+
+    int i = 0;
+    while (i < length) {
+      final char c = payload.charAt(i);
+      if (c != '"') {
+        out.append(c);
+        i++;
+        continue;
+      }
+
+      final int end = endOfString(payload, i);
+      out.append('"');
+      if (end > i + 1 && payload.charAt(i + 1) == REFERENCE) {
+        final int index = Integer.parseInt(payload.substring(i + 2, end), 36);
+        if (index >= inbound.size()) {
+          throw new IllegalStateException("undefined dictionary reference in compact payload: " + index);
+        }
+        out.append(inbound.get(index));
+      }
+      else if (end > i + 1 && payload.charAt(i + 1) == DEFINITION) {
+        final String raw = payload.substring(i + 2, end);
+        if (inbound.size() >= MAX_ENTRIES || raw.length() > MAX_ENTRY_LENGTH) {
+          throw new IllegalStateException("dictionary limit exceeded by compact payload");
+        }
+        inbound.add(raw);
+        out.append(raw);
+      }
+      else {
+        out.append(payload, i + 1, end);
+      }
+      out.append('"');
+
+      i = end + 1;
+    }
+
+    return out.toString();
+  }
+
+  private void appendToken(final StringBuilder out, final String raw) {
+    final Integer index = outbound.get(raw);
+    if (index != null) {
+      final String token = Integer.toString(index, 36);
+      if (token.length() < raw.length()) {
+        out.append(REFERENCE).append(token);
+        return;
+      }
+    }
+    else if (nextOutboundIndex < MAX_ENTRIES
+        && raw.length() >= MIN_ENTRY_LENGTH && raw.length() <= MAX_ENTRY_LENGTH) {
+      outbound.put(raw, nextOutboundIndex++);
+      out.append(DEFINITION).append(raw);
+      return;
+    }
+    appendEscaped(out, raw);
+  }
+
+  /**
+   * Appends a string literal's content, escaping a leading marker character so that it is not taken for a token.
+   */
+  private static void appendEscaped(final StringBuilder out, final String raw) {
+    if (raw.length() > 0 && (raw.charAt(0) == REFERENCE || raw.charAt(0) == DEFINITION)) {
+      out.append(raw.charAt(0) == REFERENCE ? "\\u0080" : "\\u0081").append(raw, 1, raw.length());
+    }
+    else {
+      out.append(raw);
+    }
+  }
+
+  /**
+   * Returns the index of the quote which closes the string literal opened at the specified index.
+   */
+  private static int endOfString(final String json, final int start) {
+    int i = start + 1;
+    final int length = json.length();
+    while (i < length) {
+      final char c = json.charAt(i);
+      if (c == '\\') {
+        i += 2;
+      }
+      else if (c == '"') {
+        return i;
+      }
+      else {
+        i++;
+      }
+    }
+    throw new IllegalArgumentException("unterminated string literal in payload");
+  }
+
+  private static boolean isFollowedByColon(final String json, int i) {
+    final int length = json.length();
+    while (i < length && isWhitespace(json.charAt(i))) {
+      i++;
+    }
+    return i < length && json.charAt(i) == ':';
+  }
+
+  private static boolean isWhitespace(final char c) {
+    return c == ' ' || c == '\t' || c == '\n' || c == '\r';
+  }
+}
@@ -44,6 +44,12 @@ import com.google.gwt.json.client.JSONParser;
 import com.google.gwt.json.client.JSONValue;
 
 public class BusToolsCli {
+  /**
+   * The resource under which the encoding of a message is kept once it has been encoded for sending, so that it is not
+   * encoded again when the transport builds its payload. A message must not be changed once it has been sent.
+   */
+  public static final String ENCODED_MESSAGE_RESOURCE = "^EncodedMessage";
+
   private static boolean autoDemarshall = true;
 
   public static boolean decodeToCallback(final String jsonString, final ClientMessageBus bus) {
@@ -79,9 +85,12 @@ public class BusToolsCli {
     if (message instanceof HasEncoded) {
       return ((HasEncoded) message).getEncoded();
     }
-    else {
-      return ErraiProtocol.encodePayload(message.getParts());
+
+    final String encoded = message.getResource(String.class, ENCODED_MESSAGE_RESOURCE);
+    if (encoded != null) {
+      return encoded;
     }
+    return ErraiProtocol.encodePayload(message.getParts());
   }
 
   public static String encodeMessages(final Collection<Message> messages) {
@@ -245,4 +254,35 @@ public class BusToolsCli {
           return $wnd.erraiBusRemoteCommunicationEnabled;
       }
   }-*/;
+
+  /**
+   * Checks whether messages sent to the server are batched per browser event loop turn.
+   * <p/>
+   * The JavaScript variable <code>erraiBusOutboundBatching</code> can be used to control this value. If the
+   * variable is not present in the window object, the default value <code>false</code> is returned.
+   *
+   * @return true if outbound batching is enabled, otherwise false.
+   */
+  public static native boolean isOutboundBatchingEnabled() /*-{
+      //noinspection JSUnresolvedVariable
+      return $wnd.erraiBusOutboundBatching === true || $wnd.erraiBusOutboundBatching === "true";
+  }-*/;
+
+  /**
+   * Returns the approximate number of characters after which an outbound batch is transmitted, even though the
+   * current event loop turn has not ended yet.
+   * <p/>
+   * The JavaScript variable <code>erraiBusOutboundBatchMaxBytes</code> can be used to control this value. If the
+   * variable is not present in the window object, the default value <code>65536</code> is returned.
+   *
+   * @return the maximum size of an outbound batch.
+   */
+  public static native int getOutboundBatchMaxBytes() /*-{
+      //noinspection JSUnresolvedVariable
+      if (typeof $wnd.erraiBusOutboundBatchMaxBytes === "number" && $wnd.erraiBusOutboundBatchMaxBytes > 0) {
+          //noinspection JSUnresolvedVariable
+          return $wnd.erraiBusOutboundBatchMaxBytes;
+      }
+      return 65536;
+  }-*/;
 }
@@ -134,6 +134,9 @@ public class ManagementConsole {
       logger.info("  Pending Transmissions : " + (stats.getPendingMessages()));
       logger.info("");
       logger.info("  TX Count              : " + (stats.getMessagesSent()));
+      if (stats.getBatchesSent() > 0) {
+        logger.info("  TX Batches (Messages) : " + stats.getBatchesSent() + " (" + stats.getMessagesBatched() + ")");
+      }
       logger.info("  RX Count              : " + (stats.getMessagesReceived()));
       final long connectedTime = stats.getConnectedTime();
       if (connectedTime == -1) {
@@ -21,6 +21,8 @@ import com.google.inject.Singleton;
 import org.jboss.errai.bus.client.api.messaging.Message;
 import org.jboss.errai.bus.client.api.messaging.RequestDispatcher;
 import org.jboss.errai.common.client.protocols.MessageParts;
+import org.jboss.errai.bus.server.metrics.BusMetrics;
+import org.jboss.errai.bus.server.metrics.Gauge;
 import org.jboss.errai.bus.server.service.ErraiService;
 
 /**
@@ -36,6 +38,9 @@ import org.jboss.errai.bus.server.service.ErraiService;
  */
 @Singleton
 public class AsyncDispatcher implements RequestDispatcher {
+  private static final String QUEUE_DEPTH_GAUGE = "dispatcher.queue_depth";
+  private static final String DISPATCH_COUNT_GAUGE = "dispatcher.dispatch_count";
+
   private WorkerFactory workerFactory;
   private ErraiService service;
 
@@ -50,9 +55,24 @@ public class AsyncDispatcher implements RequestDispatcher {
     this.service = service;
     this.workerFactory = new WorkerFactory(service);
 
+    BusMetrics.registerGauge(QUEUE_DEPTH_GAUGE, new Gauge() {
+      @Override
+      public long getValue() {
+        return workerFactory.getQueueDepth();
+      }
+    });
+    BusMetrics.registerGauge(DISPATCH_COUNT_GAUGE, new Gauge() {
+      @Override
+      public long getValue() {
+        return workerFactory.getDispatchCount();
+      }
+    });
+
     service.addShutdownHook(new Runnable() {
       @Override
       public void run() {
+        BusMetrics.unregisterGauge(QUEUE_DEPTH_GAUGE);
+        BusMetrics.unregisterGauge(DISPATCH_COUNT_GAUGE);
         workerFactory.stopPool();
       }
     });
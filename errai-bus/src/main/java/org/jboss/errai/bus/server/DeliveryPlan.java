@@ -49,13 +49,7 @@ public class DeliveryPlan {
   }
 
   public Collection<MessageCallback> getDeliverTo() {
-    final MessageCallback[] newArray = new MessageCallback[deliverTo.length];
-
-    //noinspection ManualArrayCopy
-    for (int i = 0; i < deliverTo.length; i++) {
-      newArray[i] = deliverTo[i];
-    }
-    return Arrays.asList(newArray);
+    return Arrays.asList(Arrays.copyOf(deliverTo, deliverTo.length));
   }
 
   public int getTotalReceivers() {
@@ -67,12 +61,7 @@ public class DeliveryPlan {
       throw new NullPointerException("null callback");
     }
 
-    final MessageCallback[] newPlan = new MessageCallback[deliverTo.length + 1];
-
-    //noinspection ManualArrayCopy
-    for (int i = 0; i < deliverTo.length; i++) {
-      newPlan[i] = deliverTo[i];
-    }
+    final MessageCallback[] newPlan = Arrays.copyOf(deliverTo, deliverTo.length + 1);
     newPlan[newPlan.length - 1] = callback;
 
     return new DeliveryPlan(newPlan);
@@ -0,0 +1,245 @@
+/*
+ * Copyright (C) 2016 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.errai.bus.server;
+
+import static org.slf4j.LoggerFactory.getLogger;
+
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.jboss.errai.bus.client.api.SubscribeListener;
+import org.jboss.errai.bus.client.framework.SubscriptionEvent;
+import org.slf4j.Logger;
+
+/**
+ * A hashed-wheel timer for re-attempting the delivery of messages that had no subscribers at the time they were sent.
+ * <p/>
+ * Scheduling a retry is O(1) and does not create a task on the bus scheduler. Instead, the scheduler calls
+ * {@link #tick()} at a fixed rate, and each tick runs the retries that fall due in its slot of the wheel. The number
+ * of pending retries is bounded; {@link #schedule(String, long, Runnable)} refuses new retries once the capacity is
+ * reached.
+ * <p/>
+ * Pending retries are also indexed by subject. As soon as a subscription to a subject appears, all retries waiting
+ * for that subject are run together, without waiting for their slot to come up.
+ */
+public class DeliveryRetryTimer implements SubscribeListener {
+  private static final Logger log = getLogger(DeliveryRetryTimer.class);
+
+  private static final String LOCAL_PREFIX = "local:";
+
+  private static final int WHEEL_SIZE = 64;
+  private static final int WHEEL_MASK = WHEEL_SIZE - 1;
+
+  private final long tickMillis;
+  private final int capacity;
+  private final Executor executor;
+
+  private final Queue<RetryEntry>[] wheel;
+  private final ConcurrentMap<String, Queue<RetryEntry>> pendingBySubject
+      = new ConcurrentHashMap<String, Queue<RetryEntry>>();
+
+  private final AtomicInteger pendingRetries = new AtomicInteger();
+  private final AtomicLong retryDrops = new AtomicLong();
+  private final AtomicLong retryCount = new AtomicLong();
+
+  /**
+   * Only ever written by the thread calling {@link #tick()}.
+   */
+  private volatile long currentTick;
+
+  /**
+   * @param tickMillis
+   *     the resolution of the timer in milliseconds. {@link #tick()} must be called at this rate.
+   * @param capacity
+   *     the maximum number of pending retries.
+   * @param executor
+   *     the executor used to run the retries for a subject once a subscription to it appears.
+   */
+  @SuppressWarnings("unchecked")
+  public DeliveryRetryTimer(final long tickMillis, final int capacity, final Executor executor) {
+    this.tickMillis = tickMillis;
+    this.capacity = capacity;
+    this.executor = executor;
+    this.wheel = new Queue[WHEEL_SIZE];
+    for (int i = 0; i < WHEEL_SIZE; i++) {
+      wheel[i] = new ConcurrentLinkedQueue<RetryEntry>();
+    }
+  }
+
+  /**
+   * Schedules a retry.
+   *
+   * @param subject
+   *     the subject the retried message is addressed to.
+   * @param delayMillis
+   *     the time to wait before retrying, unless a subscription to the subject appears earlier.
+   * @param task
+   *     the task re-attempting the delivery.
+   *
+   * @return true if the retry was scheduled, false if the timer is at capacity and the retry was dropped.
+   */
+  public boolean schedule(final String subject, final long delayMillis, final Runnable task) {
+    if (pendingRetries.incrementAndGet() > capacity) {
+      pendingRetries.decrementAndGet();
+      retryDrops.incrementAndGet();
+      return false;
+    }
+    retryCount.incrementAndGet();
+
+    final long ticks = Math.max(1, (delayMillis + tickMillis - 1) / tickMillis);
+    final RetryEntry entry = new RetryEntry(task, currentTick + ticks);
+
+    wheel[(int) (entry.deadline & WHEEL_MASK)].add(entry);
+
+    Queue<RetryEntry> forSubject = pendingBySubject.get(subject);
+    if (forSubject == null) {
+      final Queue<RetryEntry> newQueue = new ConcurrentLinkedQueue<RetryEntry>();
+      forSubject = pendingBySubject.putIfAbsent(subject, newQueue);
+      if (forSubject == null) {
+        forSubject = newQueue;
+      }
+    }
+    forSubject.add(entry);
+
+    return true;
+  }
+
+  /**
+   * Advances the wheel by one slot and runs the retries that are due. Must be called by a single thread at the rate
+   * given at construction time.
+   */
+  public void tick() {
+    final long tick = ++currentTick;
+
+    final Iterator<RetryEntry> iterator = wheel[(int) (tick & WHEEL_MASK)].iterator();
+    while (iterator.hasNext()) {
+      final RetryEntry entry = iterator.next();
+      if (entry.isClaimed()) {
+        iterator.remove();
+      }
+      else if (entry.deadline <= tick) {
+        iterator.remove();
+        run(entry);
+      }
+    }
+
+    if ((tick & WHEEL_MASK) == 0) {
+      purgeClaimed();
+    }
+  }
+
+  @Override
+  public void onSubscribe(final SubscriptionEvent event) {
+    final String subject = event.getSubject();
+    final Queue<RetryEntry> waiting = pendingBySubject.remove(subject.startsWith(LOCAL_PREFIX)
+        ? subject.substring(LOCAL_PREFIX.length()) : subject);
+
+    if (waiting == null || waiting.isEmpty()) {
+      return;
+    }
+
+    executor.execute(new Runnable() {
+      @Override
+      public void run() {
+        for (final RetryEntry entry : waiting) {
+          DeliveryRetryTimer.this.run(entry);
+        }
+      }
+    });
+  }
+
+  /**
+   * Returns the number of retries currently waiting to run.
+   */
+  public int getPendingRetryCount() {
+    return pendingRetries.get();
+  }
+
+  /**
+   * Returns the number of retries that have been scheduled.
+   */
+  public long getRetryCount() {
+    return retryCount.get();
+  }
+
+  /**
+   * Returns the number of retries that were refused because the timer was at capacity.
+   */
+  public long getRetryDropCount() {
+    return retryDrops.get();
+  }
+
+  private void run(final RetryEntry entry) {
+    if (!entry.claim()) {
+      return;
+    }
+
+    pendingRetries.decrementAndGet();
+    try {
+      entry.task.run();
+    }
+    catch (Throwable t) {
+      log.debug("message delivery retry failed", t);
+    }
+  }
+
+  /**
+   * Drops the entries that have already run from the subject index. Done once per rotation of the wheel so that
+   * running a retry never has to search the index.
+   */
+  private void purgeClaimed() {
+    final Iterator<Queue<RetryEntry>> subjectIterator = pendingBySubject.values().iterator();
+    while (subjectIterator.hasNext()) {
+      final Queue<RetryEntry> forSubject = subjectIterator.next();
+      final Iterator<RetryEntry> iterator = forSubject.iterator();
+      while (iterator.hasNext()) {
+        if (iterator.next().isClaimed()) {
+          iterator.remove();
+        }
+      }
+      if (forSubject.isEmpty()) {
+        subjectIterator.remove();
+      }
+    }
+  }
+
+  private static class RetryEntry {
+    private final Runnable task;
+    private final long deadline;
+    private final AtomicBoolean claimed = new AtomicBoolean();
+
+    private RetryEntry(final Runnable task, final long deadline) {
+      this.task = task;
+      this.deadline = deadline;
+    }
+
+    private boolean claim() {
+      return claimed.compareAndSet(false, true);
+    }
+
+    private boolean isClaimed() {
+      return claimed.get();
+    }
+  }
+}
@@ -18,9 +18,14 @@ package org.jboss.errai.bus.server;
 
 import static org.slf4j.LoggerFactory.getLogger;
 
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 
 import org.jboss.errai.bus.client.api.QueueSession;
 import org.jboss.errai.bus.client.api.messaging.Message;
@@ -31,11 +36,14 @@ import org.jboss.errai.bus.server.io.Buffered;
 import org.jboss.errai.bus.server.io.ByteWriteAdapter;
 import org.jboss.errai.bus.server.io.Cleanable;
 import org.jboss.errai.bus.server.io.DirectChannel;
+import org.jboss.errai.bus.server.io.Drainable;
+import org.jboss.errai.bus.server.io.MessageConflator;
 import org.jboss.errai.bus.server.io.MessageDeliveryHandler;
 import org.jboss.errai.bus.server.io.Wakeable;
 import org.jboss.errai.bus.server.io.buffers.Buffer;
 import org.jboss.errai.bus.server.io.buffers.BufferColor;
 import org.jboss.errai.bus.server.io.buffers.TransmissionBuffer;
+import org.jboss.errai.bus.server.metrics.BusMetrics;
 import org.slf4j.Logger;
 
 /**
@@ -62,14 +70,35 @@ public class MessageQueueImpl implements MessageQueue {
   private final Object activationLock = new Object();
   private final Object pageLock = new Object();
   private final AtomicInteger messageCount = new AtomicInteger();
+  private final LongAdder offeredMessages = new LongAdder();
+
+  /**
+   * The {@link System#nanoTime()} at which the oldest message that has not yet been drained was offered, or 0.
+   */
+  private final AtomicLong pendingSince = new AtomicLong();
+
+  private final MessageConflator conflator;
+
+  /**
+   * Conflated messages held back until the queue has drained, by conflation key. Guarded by itself.
+   */
+  private final Map<Object, Message> conflated = new LinkedHashMap<Object, Message>();
 
   private static final Logger log = getLogger(MessageQueueImpl.class);
 
   public MessageQueueImpl(final TransmissionBuffer buffer, final QueueSession session, final int timeoutSecs) {
+    this(buffer, session, timeoutSecs, null);
+  }
+
+  public MessageQueueImpl(final TransmissionBuffer buffer,
+                          final QueueSession session,
+                          final int timeoutSecs,
+                          final MessageConflator conflator) {
     this.buffer = buffer;
     this.session = session;
     this.bufferColor = BufferColor.getNewColorFromHead(buffer);
     this.timeout = (timeoutSecs * 1000);
+    this.conflator = conflator;
   }
 
   @Override
@@ -79,6 +108,7 @@ public class MessageQueueImpl implements MessageQueue {
     }
 
     if (deliveryHandler instanceof Buffered) {
+      flushConflated();
       return ((Buffered) deliveryHandler).copyFromBuffer(this, stream);
     }
     else {
@@ -96,6 +126,7 @@ public class MessageQueueImpl implements MessageQueue {
     }
 
     if (deliveryHandler instanceof Buffered) {
+      flushConflated();
       return ((Buffered) deliveryHandler).copyFromBuffer(timeUnit, time, this, stream);
     }
     else {
@@ -120,7 +151,64 @@ public class MessageQueueImpl implements MessageQueue {
       throw new QueueUnavailableException("queue is not available");
     }
 
-    return deliveryHandler.deliver(this, message);
+    offeredMessages.increment();
+    if (BusMetrics.isEnabled() && pendingSince.get() == 0) {
+      pendingSince.compareAndSet(0, System.nanoTime());
+    }
+
+    final Object key = conflator != null ? conflator.getConflationKey(message) : null;
+    final boolean delivered = key != null ? offerConflated(key, message) : deliveryHandler.deliver(this, message);
+
+    // buffered queues are drained by poll(), which resets the message count.
+    if (!(deliveryHandler instanceof Buffered) && isDrained()) {
+      markDrained();
+    }
+    return delivered;
+  }
+
+  /**
+   * Holds the specified message back while the queue has not drained, replacing any pending message with the same
+   * key. Once the queue has drained, the pending messages are delivered in the order their keys were first seen.
+   */
+  private boolean offerConflated(final Object key, final Message message) throws IOException {
+    synchronized (conflated) {
+      if (conflated.put(key, message) != null) {
+        conflator.messageConflated(message.getSubject());
+      }
+    }
+
+    if (isDrained()) {
+      flushConflated();
+    }
+    return true;
+  }
+
+  private boolean isDrained() {
+    return !(deliveryHandler instanceof Drainable) || ((Drainable) deliveryHandler).isDrained(this);
+  }
+
+  /**
+   * Records the time the oldest pending message took to be drained from the queue.
+   */
+  private void markDrained() {
+    final long since;
+    if (pendingSince.get() != 0 && (since = pendingSince.getAndSet(0)) != 0) {
+      BusMetrics.recordDeliveryLatency(System.nanoTime() - since);
+    }
+  }
+
+  private void flushConflated() throws IOException {
+    synchronized (conflated) {
+      if (conflated.isEmpty()) return;
+
+      final List<Message> pending = new ArrayList<Message>(conflated.values());
+      conflated.clear();
+
+      // delivering while holding the lock keeps messages with the same key in order.
+      for (final Message message : pending) {
+        deliveryHandler.deliver(this, message);
+      }
+    }
   }
 
   @Override
@@ -140,6 +228,14 @@ public class MessageQueueImpl implements MessageQueue {
         deliveryHandler.noop(this);
       }
 
+      if (isDrained()) {
+        flushConflated();
+      }
+
+      if (!(deliveryHandler instanceof Buffered) && isDrained()) {
+        markDrained();
+      }
+
       fireActivationCallback();
     }
     catch (Throwable e) {
@@ -241,9 +337,15 @@ public class MessageQueueImpl implements MessageQueue {
   @Override
   public void discard() {
     queueRunning = false;
+    synchronized (conflated) {
+      conflated.clear();
+    }
     if (deliveryHandler instanceof Cleanable) {
       ((Cleanable) deliveryHandler).clean(this);
     }
+
+    // hand the color back so it can be re-used once the buffer has wrapped around.
+    bufferColor.release(buffer);
   }
 
   /**
@@ -258,7 +360,7 @@ public class MessageQueueImpl implements MessageQueue {
        * we write a single byte to the buffer, with the color for this queue. this is to knock any
        * waiting thread loose and return it to the work pool.
        */
-      buffer.write(1, new ByteArrayInputStream(new byte[]{-1}), bufferColor);
+      buffer.write(new byte[]{-1}, 0, 1, bufferColor);
     }
     catch (Exception e) {
       throw new RuntimeException("error trying to stop queue");
@@ -309,6 +411,14 @@ public class MessageQueueImpl implements MessageQueue {
   @Override
   public void resetMessageCount() {
     messageCount.set(0);
+    markDrained();
+  }
+
+  /**
+   * Returns the number of messages that have been offered to this queue.
+   */
+  public long getOfferedMessageCount() {
+    return offeredMessages.sum();
   }
 
   @Override
@@ -321,6 +431,11 @@ public class MessageQueueImpl implements MessageQueue {
     this.timeout = timeout;
   }
 
+  @Override
+  public long getTimeout() {
+    return timeout;
+  }
+
   @Override
   public String toString() {
     return "MessageQueueImpl{" +
@@ -0,0 +1,274 @@
+/*
+ * Copyright (C) 2016 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.errai.bus.server;
+
+import static org.slf4j.LoggerFactory.getLogger;
+
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.jboss.errai.bus.server.api.MessageQueue;
+import org.jboss.errai.bus.server.io.PageUtil;
+import org.jboss.errai.bus.server.io.Pageable;
+import org.slf4j.Logger;
+
+/**
+ * A hashed-wheel timer that expires stale queues and pages out queues that have not been polled for a while, in
+ * place of a periodic sweep over all queues.
+ * <p/>
+ * Every queue has one entry in the wheel, in the slot of the next time it may become stale or need paging. A heartbeat
+ * does not touch the wheel: it only updates the queue's last transmission time. When the entry comes due, the queue is
+ * checked, and if it has been active since, the entry is moved to the slot of its new deadline. Each {@link #tick()}
+ * therefore only looks at the queues in its slot, and keeping a queue alive costs O(1) regardless of the number of
+ * queues.
+ */
+public class QueueReaper {
+  private static final Logger log = getLogger(QueueReaper.class);
+
+  private static final int WHEEL_SIZE = 128;
+  private static final int WHEEL_MASK = WHEEL_SIZE - 1;
+
+  /**
+   * Notified, from the thread calling {@link #tick()}, of queues that have become stale.
+   */
+  public interface ExpiryListener {
+    void onExpired(MessageQueue queue);
+  }
+
+  private final long tickMillis;
+  private final long pageAfterMillis;
+  private final ExpiryListener listener;
+
+  private final Queue<ReaperEntry>[] wheel;
+  private final ConcurrentMap<MessageQueue, ReaperEntry> entries = new ConcurrentHashMap<MessageQueue, ReaperEntry>();
+
+  /**
+   * Only ever written by the thread calling {@link #tick()}.
+   */
+  private volatile long currentTick;
+
+  private final AtomicLong tickCount = new AtomicLong();
+  private final AtomicLong tickNanos = new AtomicLong();
+  private volatile long lastTickNanos;
+  private volatile long maxTickNanos;
+  private volatile int lastTickChecks;
+
+  private final AtomicLong expiredCount = new AtomicLong();
+  private final AtomicLong pageOutCount = new AtomicLong();
+  private final AtomicLong rescheduleCount = new AtomicLong();
+
+  /**
+   * @param tickMillis
+   *     the resolution of the timer in milliseconds. {@link #tick()} must be called at this rate.
+   * @param pageAfterMillis
+   *     the time a queue with a {@link Pageable} delivery handler may go without being polled before the data waiting
+   *     for it is paged out.
+   * @param listener
+   *     notified of queues that have become stale.
+   */
+  @SuppressWarnings("unchecked")
+  public QueueReaper(final long tickMillis, final long pageAfterMillis, final ExpiryListener listener) {
+    this.tickMillis = tickMillis;
+    this.pageAfterMillis = pageAfterMillis;
+    this.listener = listener;
+    this.wheel = new Queue[WHEEL_SIZE];
+    for (int i = 0; i < WHEEL_SIZE; i++) {
+      wheel[i] = new ConcurrentLinkedQueue<ReaperEntry>();
+    }
+  }
+
+  /**
+   * Starts watching the specified queue. Has no effect if the queue is watched already.
+   */
+  public void add(final MessageQueue queue) {
+    final ReaperEntry entry = new ReaperEntry(queue);
+    if (entries.putIfAbsent(queue, entry) == null) {
+      schedule(entry, System.currentTimeMillis());
+    }
+  }
+
+  /**
+   * Stops watching the specified queue. Its entry is dropped from the wheel the next time its slot comes up.
+   */
+  public void remove(final MessageQueue queue) {
+    final ReaperEntry entry = entries.remove(queue);
+    if (entry != null) {
+      entry.cancelled = true;
+    }
+  }
+
+  /**
+   * Advances the wheel by one slot and checks the queues that are due. Must be called by a single thread at the rate
+   * given at construction time.
+   */
+  public void tick() {
+    final long start = System.nanoTime();
+    final long tick = ++currentTick;
+    final long now = System.currentTimeMillis();
+    int checks = 0;
+
+    final Iterator<ReaperEntry> iterator = wheel[(int) (tick & WHEEL_MASK)].iterator();
+    while (iterator.hasNext()) {
+      final ReaperEntry entry = iterator.next();
+      if (entry.cancelled) {
+        iterator.remove();
+      }
+      else if (entry.deadline <= tick) {
+        iterator.remove();
+        checks++;
+        check(entry, now);
+      }
+    }
+
+    final long elapsed = System.nanoTime() - start;
+    tickCount.incrementAndGet();
+    tickNanos.addAndGet(elapsed);
+    lastTickNanos = elapsed;
+    lastTickChecks = checks;
+    if (elapsed > maxTickNanos) {
+      maxTickNanos = elapsed;
+    }
+  }
+
+  private void check(final ReaperEntry entry, final long now) {
+    final MessageQueue queue = entry.queue;
+
+    if (queue.isStale()) {
+      entries.remove(queue, entry);
+      expiredCount.incrementAndGet();
+      try {
+        listener.onExpired(queue);
+      }
+      catch (Throwable t) {
+        log.warn("error expiring queue for session " + queue.getSession().getSessionId(), t);
+      }
+      return;
+    }
+
+    if (PageUtil.pageIfStraddling(queue)) {
+      pageOutCount.incrementAndGet();
+    }
+
+    rescheduleCount.incrementAndGet();
+    schedule(entry, now);
+  }
+
+  /**
+   * Puts the entry in the slot of the next time its queue may become stale or, if its delivery handler is
+   * {@link Pageable}, may need paging out.
+   */
+  private void schedule(final ReaperEntry entry, final long now) {
+    final MessageQueue queue = entry.queue;
+    final long lastTransmission = queue.getLastTransmissionTime();
+    final long timeout = queue.getTimeout();
+
+    // a queue is stale once it has been idle for longer than the timeout. if it is past that but not stale, it is
+    // kept alive by an open direct channel and is checked again after another timeout.
+    long due = lastTransmission + timeout + 1;
+    if (due <= now) {
+      due = now + timeout + 1;
+    }
+
+    if (queue.getDeliveryHandler() instanceof Pageable) {
+      long pageDue = lastTransmission + pageAfterMillis + 1;
+      if (pageDue <= now) {
+        pageDue = now + pageAfterMillis + 1;
+      }
+      due = Math.min(due, pageDue);
+    }
+
+    final long ticks = Math.max(1, (due - now + tickMillis - 1) / tickMillis);
+    entry.deadline = currentTick + ticks;
+
+    wheel[(int) (entry.deadline & WHEEL_MASK)].add(entry);
+  }
+
+  /**
+   * Returns the number of queues being watched.
+   */
+  public int getQueueCount() {
+    return entries.size();
+  }
+
+  public long getTickCount() {
+    return tickCount.get();
+  }
+
+  /**
+   * Returns the time, in nanoseconds, the last tick took.
+   */
+  public long getLastTickNanos() {
+    return lastTickNanos;
+  }
+
+  /**
+   * Returns the longest time, in nanoseconds, a tick took.
+   */
+  public long getMaxTickNanos() {
+    return maxTickNanos;
+  }
+
+  /**
+   * Returns the mean time, in nanoseconds, a tick took, or 0 if the wheel has not ticked yet.
+   */
+  public long getMeanTickNanos() {
+    final long count = tickCount.get();
+    return count == 0 ? 0 : tickNanos.get() / count;
+  }
+
+  /**
+   * Returns the number of queues that were checked in the last tick.
+   */
+  public int getLastTickCheckCount() {
+    return lastTickChecks;
+  }
+
+  /**
+   * Returns the number of queues that were found stale.
+   */
+  public long getExpiredCount() {
+    return expiredCount.get();
+  }
+
+  /**
+   * Returns the number of times the waiting data of a queue was paged out.
+   */
+  public long getPageOutCount() {
+    return pageOutCount.get();
+  }
+
+  /**
+   * Returns the number of times a queue was found active when its entry came due, and was moved to a later slot.
+   */
+  public long getRescheduleCount() {
+    return rescheduleCount.get();
+  }
+
+  private static class ReaperEntry {
+    private final MessageQueue queue;
+    private long deadline;
+    private volatile boolean cancelled;
+
+    private ReaperEntry(final MessageQueue queue) {
+      this.queue = queue;
+    }
+  }
+}
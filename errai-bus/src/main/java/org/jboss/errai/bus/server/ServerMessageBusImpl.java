@@ -28,20 +28,21 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.ConcurrentModificationException;
 import java.util.HashSet;
 import java.util.Iterator;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Random;
 import java.util.Set;
+import java.util.TreeMap;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 
+import javax.management.ObjectName;
 import javax.servlet.http.HttpServletRequest;
 
 import org.jboss.errai.bus.client.api.BusMonitor;
@@ -54,11 +55,14 @@ import org.jboss.errai.bus.client.api.base.Capabilities;
 import org.jboss.errai.bus.client.api.base.ConversationMessage;
 import org.jboss.errai.bus.client.api.base.MessageBuilder;
 import org.jboss.errai.bus.client.api.base.NoSubscribersToDeliverTo;
+import org.jboss.errai.bus.client.api.builder.MessageBuildParms;
+import org.jboss.errai.bus.client.api.builder.MessageReplySendable;
 import org.jboss.errai.bus.client.api.messaging.Message;
 import org.jboss.errai.bus.client.api.messaging.MessageCallback;
 import org.jboss.errai.bus.client.framework.BuiltInServices;
 import org.jboss.errai.bus.client.framework.SubscriptionEvent;
 import org.jboss.errai.bus.client.protocols.BusCommand;
+import org.jboss.errai.bus.client.protocols.CompactWireCodec;
 import org.jboss.errai.bus.client.util.BusTools;
 import org.jboss.errai.bus.server.api.MessageQueue;
 import org.jboss.errai.bus.server.api.QueueCloseEvent;
@@ -66,11 +70,16 @@ import org.jboss.errai.bus.server.api.QueueClosedListener;
 import org.jboss.errai.bus.server.api.ServerMessageBus;
 import org.jboss.errai.bus.server.cluster.ClusteringProvider;
 import org.jboss.errai.bus.server.io.BufferHelper;
+import org.jboss.errai.bus.server.io.MessageConflator;
 import org.jboss.errai.bus.server.io.PageUtil;
 import org.jboss.errai.bus.server.io.buffers.BufferColor;
 import org.jboss.errai.bus.server.io.buffers.TransmissionBuffer;
 import org.jboss.errai.bus.server.io.websockets.WebSocketServerHandler;
 import org.jboss.errai.bus.server.io.websockets.WebSocketTokenManager;
+import org.jboss.errai.bus.server.metrics.BusMetrics;
+import org.jboss.errai.bus.server.metrics.BusMetricsView;
+import org.jboss.errai.bus.server.metrics.MetricsExporter;
+import org.jboss.errai.bus.server.metrics.MetricsSnapshot;
 import org.jboss.errai.bus.server.service.ErraiConfigAttribs;
 import org.jboss.errai.bus.server.service.ErraiService;
 import org.jboss.errai.bus.server.service.ErraiServiceConfigurator;
@@ -100,10 +109,25 @@ public class ServerMessageBusImpl implements ServerMessageBus {
   private final Set<String> globalSubscriptions = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
   private final Map<String, RemoteMessageCallback> remoteSubscriptions = new ConcurrentHashMap<String, RemoteMessageCallback>();
 
+  /**
+   * The routes derived from {@link #subscriptions} and {@link #remoteSubscriptions}, republished whenever either
+   * changes for a subject. Message routing only ever reads from this map.
+   */
+  private final Map<String, SubjectRoute> routes = new ConcurrentHashMap<String, SubjectRoute>();
+
+  private final MessageConflator conflator = new MessageConflator();
+
   private final Map<QueueSession, MessageQueue> messageQueues = new ConcurrentHashMap<QueueSession, MessageQueue>();
 
   private final Map<MessageQueue, List<Message>> deferredQueue = new ConcurrentHashMap<MessageQueue, List<Message>>();
   private final Map<String, QueueSession> sessionLookup = new ConcurrentHashMap<String, QueueSession>();
+
+  /**
+   * The sessions and remote subjects of every queue, so that a queue can be closed without searching
+   * {@link #messageQueues}, {@link #sessionLookup} and {@link #remoteSubscriptions}.
+   */
+  private final ConcurrentMap<MessageQueue, QueueRegistration> queueRegistrations
+      = new ConcurrentHashMap<MessageQueue, QueueRegistration>();
   private final Map<String, ClusterWaitEntry> deadLetter = new ConcurrentHashMap<String, ClusterWaitEntry>();
 
   private final List<SubscribeListener> subscribeListeners = new ArrayList<SubscribeListener>();
@@ -111,11 +135,20 @@ public class ServerMessageBusImpl implements ServerMessageBus {
   private final List<QueueClosedListener> queueClosedListeners = new ArrayList<QueueClosedListener>();
 
   private final ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(1);
+  private final DeliveryRetryTimer retryTimer;
+  private final QueueReaper reaper;
+
+  private static final long RETRY_DELAY_MILLIS = 250;
+  private static final long RETRY_TICK_MILLIS = 50;
+  private static final long REAPER_TICK_MILLIS = 1000;
 
   private static final Logger log = getLogger(ServerMessageBus.class);
 
   private BusMonitor busMonitor;
 
+  private final List<MetricsExporter> metricsExporters = new ArrayList<MetricsExporter>();
+  private ObjectName metricsName;
+
   private final Set<String> reservedNames = new HashSet<String>();
 
   private final boolean hostedModeTesting;
@@ -125,6 +158,7 @@ public class ServerMessageBusImpl implements ServerMessageBus {
   private final boolean webSocketServlet;
   private final boolean webSocketServer;
   private final boolean useSecureWebsocket;
+  private final boolean compactWireProtocol;
 
   private final boolean clustering;
   private final ClusteringProvider clusteringProvider;
@@ -143,6 +177,7 @@ public class ServerMessageBusImpl implements ServerMessageBus {
     this.messageQueueTimeoutSecs = ErraiConfigAttribs.MESSAGE_QUEUE_TIMEOUT_SECS.getInt(config);
     this.sseEnabled = ErraiConfigAttribs.ENABLE_SSE_SUPPORT.getBoolean(config);
     this.webSocketServer = ErraiConfigAttribs.ENABLE_WEB_SOCKET_SERVER.getBoolean(config);
+    this.compactWireProtocol = ErraiConfigAttribs.WEBSOCKET_COMPACT_PROTOCOL.getBoolean(config);
 
     final int webSocketPort;
     final String webSocketPath;
@@ -214,6 +249,18 @@ public class ServerMessageBusImpl implements ServerMessageBus {
 
     transmissionbuffer = buffer;
 
+    PageUtil.configure(config);
+    BusMetrics.configure(config);
+
+    final Integer retryCapacity = ErraiConfigAttribs.BUS_RETRY_CAPACITY.getInt(config);
+    retryTimer = new DeliveryRetryTimer(RETRY_TICK_MILLIS, retryCapacity != null ? retryCapacity : 50000, scheduler);
+    reaper = new QueueReaper(REAPER_TICK_MILLIS, PageUtil.getPageOutDelay(), new QueueReaper.ExpiryListener() {
+      @Override
+      public void onExpired(final MessageQueue queue) {
+        endExpiredQueue(queue);
+      }
+    });
+
     /**
      * Define the default ServerBus service used for intrabus communication.
      */
@@ -221,8 +268,33 @@ public class ServerMessageBusImpl implements ServerMessageBus {
 
     addSubscribeListener(new DefaultSubscribeListener());
     addUnsubscribeListener(new DefaultUnsubscribeListener());
+    addSubscribeListener(retryTimer);
 
     scheduler.scheduleAtFixedRate(new HousekeeeperRunnable(), 8, 8, TimeUnit.SECONDS);
+    scheduler.scheduleAtFixedRate(new Runnable() {
+      @Override
+      public void run() {
+        retryTimer.tick();
+      }
+    }, RETRY_TICK_MILLIS, RETRY_TICK_MILLIS, TimeUnit.MILLISECONDS);
+    scheduler.scheduleAtFixedRate(new Runnable() {
+      @Override
+      public void run() {
+        reaper.tick();
+      }
+
+      @Override
+      public String toString() {
+        return "Queue Reaper";
+      }
+    }, REAPER_TICK_MILLIS, REAPER_TICK_MILLIS, TimeUnit.MILLISECONDS);
+
+    if (BusMetrics.isEnabled()) {
+      if (ErraiConfigAttribs.BUS_METRICS_JMX.getBoolean(config)) {
+        metricsName = BusMetricsView.register(this);
+      }
+      startMetricsExporters(config);
+    }
 
     try {
       clustering = ErraiConfigAttribs.ENABLE_CLUSTERING.getBoolean(config);
@@ -242,9 +314,89 @@ public class ServerMessageBusImpl implements ServerMessageBus {
     }
   }
 
+  private void startMetricsExporters(final ErraiServiceConfigurator config) {
+    final String exporterClasses = ErraiConfigAttribs.BUS_METRICS_EXPORTERS.get(config);
+    if (exporterClasses == null || exporterClasses.trim().isEmpty()) {
+      return;
+    }
+
+    for (final String exporterClass : exporterClasses.split(",")) {
+      try {
+        metricsExporters.add((MetricsExporter) Class.forName(exporterClass.trim()).newInstance());
+      }
+      catch (Exception e) {
+        throw new ErraiBootstrapFailure("could not create metrics exporter: " + exporterClass.trim(), e);
+      }
+    }
+
+    final int interval = ErraiConfigAttribs.BUS_METRICS_EXPORT_INTERVAL.getInt(config);
+    scheduler.scheduleAtFixedRate(new Runnable() {
+      @Override
+      public void run() {
+        final MetricsSnapshot snapshot = getMetrics();
+        for (final MetricsExporter exporter : metricsExporters) {
+          try {
+            exporter.export(snapshot);
+          }
+          catch (Throwable t) {
+            log.warn("metrics exporter failed: " + exporter.getClass().getName(), t);
+          }
+        }
+      }
+
+      @Override
+      public String toString() {
+        return "Bus Metrics Exporter";
+      }
+    }, interval, interval, TimeUnit.SECONDS);
+  }
+
   private void addQueue(final QueueSession session, final MessageQueue queue) {
-    messageQueues.put(session, queue);
+    final MessageQueue previous = messageQueues.put(session, queue);
     sessionLookup.put(session.getSessionId(), session);
+    registrationOf(queue).addSession(session, session.getSessionId());
+
+    if (previous != null && previous != queue) {
+      reaper.remove(previous);
+      // the session now belongs to the new queue, so closing the previous one must not remove it.
+      final QueueRegistration previousRegistration = queueRegistrations.get(previous);
+      if (previousRegistration != null) {
+        previousRegistration.removeSession(session, session.getSessionId());
+        if (previousRegistration.subjects.isEmpty()) {
+          queueRegistrations.remove(previous);
+        }
+      }
+    }
+    reaper.add(queue);
+  }
+
+  private QueueRegistration registrationOf(final MessageQueue queue) {
+    QueueRegistration registration = queueRegistrations.get(queue);
+    if (registration == null) {
+      final QueueRegistration newRegistration = new QueueRegistration();
+      registration = queueRegistrations.putIfAbsent(queue, newRegistration);
+      if (registration == null) {
+        registration = newRegistration;
+      }
+    }
+    return registration;
+  }
+
+  /**
+   * Closes a queue that has become stale and ends its session.
+   */
+  private void endExpiredQueue(final MessageQueue queue) {
+    final QueueRegistration registration = queueRegistrations.get(queue);
+    if (registration != null) {
+      for (final String subject : registration.subjects) {
+        remoteUnsubscribe(queue.getSession(), queue, subject);
+      }
+    }
+
+    closeQueue(queue);
+    queue.getSession().endSession();
+    deferredQueue.remove(queue);
+    queue.discard();
   }
 
   /**
@@ -266,9 +418,9 @@ public class ServerMessageBusImpl implements ServerMessageBus {
   public void sendGlobal(final Message message) {
     message.commit();
     final String subject = message.getSubject();
+    final SubjectRoute route = routes.get(subject);
 
-    if (!subscriptions.containsKey(subject) && !subscriptions.containsKey("local:".concat(subject))
-            && !remoteSubscriptions.containsKey(subject)) {
+    if (route == null) {
 
       delayOrFail(message, new Runnable() {
         @Override
@@ -286,28 +438,24 @@ public class ServerMessageBusImpl implements ServerMessageBus {
             message.getResource(QueueSession.class, Resources.Session.name()).getSessionId(), message);
       }
       else {
-        if (subscriptions.containsKey(subject)) {
+        if (route.hasGlobalPlan()) {
           busMonitor.notifyInBusMessage(message);
         }
       }
     }
 
-    if (subscriptions.containsKey(subject)) {
-      subscriptions.get(subject).deliver(message);
-    }
-    else if (subscriptions.containsKey("local:".concat(subject))) {
-      subscriptions.get("local:".concat(subject)).deliver(message);
+    BusMetrics.recordMessage(subject);
+
+    final DeliveryPlan plan = route.getDeliveryPlan();
+    if (plan != null) {
+      plan.deliver(message);
     }
   }
 
   private void delayOrFail(final Message message, final Runnable deliveryTaskRunnable) {
     if (message.isFlagSet(RoutingFlag.RetryDelivery)
         && message.getResource(Integer.class, Resources.RetryAttempts.name()) > 3) {
-      final NoSubscribersToDeliverTo ntdt = new NoSubscribersToDeliverTo(message.getSubject());
-      if (message.getErrorCallback() != null) {
-        message.getErrorCallback().error(message, ntdt);
-      }
-      throw ntdt;
+      failDelivery(message);
     }
     message.setFlag(RoutingFlag.RetryDelivery);
     if (!message.hasResource(Resources.RetryAttempts.name())) {
@@ -315,12 +463,18 @@ public class ServerMessageBusImpl implements ServerMessageBus {
     }
     message.setResource(Resources.RetryAttempts.name(),
         message.getResource(Integer.class, Resources.RetryAttempts.name()) + 1);
-    getScheduler().schedule(new Runnable() {
-      @Override
-      public void run() {
-        deliveryTaskRunnable.run();
-      }
-    }, 250, TimeUnit.MILLISECONDS);
+
+    if (!retryTimer.schedule(message.getSubject(), RETRY_DELAY_MILLIS, deliveryTaskRunnable)) {
+      failDelivery(message);
+    }
+  }
+
+  private static void failDelivery(final Message message) {
+    final NoSubscribersToDeliverTo ntdt = new NoSubscribersToDeliverTo(message.getSubject());
+    if (message.getErrorCallback() != null) {
+      message.getErrorCallback().error(message, ntdt);
+    }
+    throw ntdt;
   }
 
   /**
@@ -334,10 +488,12 @@ public class ServerMessageBusImpl implements ServerMessageBus {
     message.commit();
     if (message.hasResource(Resources.Session.name())) {
       message.setFlag(RoutingFlag.NonGlobalRouting);
+      BusMetrics.recordMessage(message.getSubject());
       send(getQueueByMessage(message), message, true);
     }
     else if (message.hasPart(MessageParts.SessionID)) {
       message.setFlag(RoutingFlag.NonGlobalRouting);
+      BusMetrics.recordMessage(message.getSubject());
       try {
         send(getQueueBySession(message.get(String.class, MessageParts.SessionID)), message, true);
       }
@@ -378,6 +534,7 @@ public class ServerMessageBusImpl implements ServerMessageBus {
           "cannot automatically route message. no session contained in message.", null, false);
     }
 
+    BusMetrics.recordMessage(message.getSubject());
     send(message.hasPart(MessageParts.SessionID) ? getQueueBySession(message.get(String.class, MessageParts.SessionID)) :
         getQueueByMessage(message), message, fireListeners);
   }
@@ -388,6 +545,8 @@ public class ServerMessageBusImpl implements ServerMessageBus {
         busMonitor.notifyOutgoingMessageToRemote(queue.getSession().getSessionId(), message);
       }
 
+      // the message itself was counted when it was sent to the bus.
+      BusMetrics.recordDeliveries(message.getSubject(), 1);
       enqueueForDelivery(queue, message);
     }
     catch (NoSubscribersToDeliverTo nstdt) {
@@ -513,14 +672,32 @@ public class ServerMessageBusImpl implements ServerMessageBus {
    */
   @Override
   public void closeQueue(final MessageQueue queue) {
-    messageQueues.values().remove(queue);
-    sessionLookup.values().remove(queue.getSession());
-
-    for (Iterator<RemoteMessageCallback> iterator = remoteSubscriptions.values().iterator(); iterator.hasNext(); ) {
-      final RemoteMessageCallback cb = iterator.next();
-      cb.removeQueue(queue);
-      if (cb.getQueueCount() == 0) {
-        iterator.remove();
+    reaper.remove(queue);
+
+    // the queue may be registered under more than one session (see associateNewQueue).
+    final QueueRegistration registration = queueRegistrations.remove(queue);
+    if (registration != null) {
+      for (final QueueSession session : registration.sessions) {
+        messageQueues.remove(session, queue);
+      }
+      for (final String sessionId : registration.sessionIds) {
+        sessionLookup.remove(sessionId);
+      }
+
+      for (final String subject : registration.subjects) {
+        final RemoteMessageCallback cb = remoteSubscriptions.get(subject);
+        if (cb == null) {
+          continue;
+        }
+
+        final boolean removed;
+        synchronized (remoteSubscriptions) {
+          cb.removeQueue(queue);
+          removed = cb.getQueueCount() == 0 && remoteSubscriptions.remove(subject) != null;
+        }
+        if (removed) {
+          updateRoute(subject);
+        }
       }
     }
 
@@ -554,7 +731,7 @@ public class ServerMessageBusImpl implements ServerMessageBus {
     if (reservedNames.contains(subject))
       throw new IllegalArgumentException("cannot modify or subscribe to reserved service: " + subject);
 
-    final String toSubscribe = "local:".concat(subject);
+    final String toSubscribe = LOCAL_PREFIX.concat(subject);
 
     final DeliveryPlan plan = createOrAddDeliveryPlan(toSubscribe, receiver);
 
@@ -578,6 +755,7 @@ public class ServerMessageBusImpl implements ServerMessageBus {
     else {
       subscriptions.put(subject, plan.newDeliveryPlanWith(receiver));
     }
+    updateRoute(subject);
 
     return plan;
   }
@@ -587,6 +765,7 @@ public class ServerMessageBusImpl implements ServerMessageBus {
 
     if (plan != null) {
       subscriptions.put(subject, plan.newDeliveryPlanWithOut(receiver));
+      updateRoute(subject);
       fireUnsubscribeListeners(
           new SubscriptionEvent(false, "InBus", plan.getTotalReceivers(), false, subject));
     }
@@ -594,6 +773,35 @@ public class ServerMessageBusImpl implements ServerMessageBus {
     return plan;
   }
 
+  private static final String LOCAL_PREFIX = "local:";
+
+  /**
+   * Republishes the routes affected by a change to the subscriptions registered under the specified key.
+   *
+   * @param key
+   *     - the subject, or the local subject (prefixed with <tt>local:</tt>), whose subscriptions changed
+   */
+  private void updateRoute(final String key) {
+    synchronized (routes) {
+      publishRoute(key);
+      if (key.startsWith(LOCAL_PREFIX)) {
+        publishRoute(key.substring(LOCAL_PREFIX.length()));
+      }
+    }
+  }
+
+  private void publishRoute(final String subject) {
+    final SubjectRoute route = new SubjectRoute(subscriptions.get(subject),
+        subscriptions.get(LOCAL_PREFIX.concat(subject)), remoteSubscriptions.get(subject));
+
+    if (route.isEmpty()) {
+      routes.remove(subject);
+    }
+    else {
+      routes.put(subject, route);
+    }
+  }
+
   private static final Set<String> broadcastExclusionSet = new HashSet<String>() {
     {
       add(BuiltInServices.ClientBus.name());
@@ -632,12 +840,33 @@ public class ServerMessageBusImpl implements ServerMessageBus {
         rmc.addQueue(queue);
       }
     }
+    registrationOf(queue).subjects.add(subject);
 
     fireSubscribeListeners(
         new SubscriptionEvent(true, sessionContext.getSessionId(), rmc.getQueueCount(), isNew, subject)
     );
   }
 
+  /**
+   * The sessions a queue is registered under and the subjects it has subscribed to remotely. Subjects stay listed
+   * after a remote unsubscribe, so that the subscription is pruned once the queue is closed if it has no queues left.
+   */
+  private static class QueueRegistration {
+    private final Set<QueueSession> sessions = Collections.newSetFromMap(new ConcurrentHashMap<QueueSession, Boolean>());
+    private final Set<String> sessionIds = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+    private final Set<String> subjects = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+    private void addSession(final QueueSession session, final String sessionId) {
+      sessions.add(session);
+      sessionIds.add(sessionId);
+    }
+
+    private void removeSession(final QueueSession session, final String sessionId) {
+      sessions.remove(session);
+      sessionIds.remove(sessionId);
+    }
+  }
+
   public class RemoteMessageCallback implements MessageCallback {
 
     private final String svc;
@@ -653,8 +882,10 @@ public class ServerMessageBusImpl implements ServerMessageBus {
 
     @Override
     public void callback(final Message message) {
-      // do not pipeline if this message is addressed to a specified session.
-      if (broadcastable && !message.isFlagSet(RoutingFlag.NonGlobalRouting) && queues.size() == messageQueues.size()) {
+      // do not pipeline if this message is addressed to a specified session, or if the subject is conflated, in which
+      // case each queue has to decide whether the message is still pending.
+      if (broadcastable && !message.isFlagSet(RoutingFlag.NonGlobalRouting) && queues.size() == messageQueues.size()
+          && !conflator.isConflated(svc)) {
         // all queues are listening to this subject. therefore we can save memory and time by
         // writing to the broadcast color on the buffer
 
@@ -662,6 +893,7 @@ public class ServerMessageBusImpl implements ServerMessageBus {
           if (queues.isEmpty()) return;
 
           BufferHelper.encodeAndWrite(transmissionbuffer, BufferColor.getAllBuffersColor(), message);
+          BusMetrics.recordDeliveries(message.getSubject(), queues.size());
 
           for (final MessageQueue q : queues) {
             q.wake();
@@ -751,6 +983,7 @@ public class ServerMessageBusImpl implements ServerMessageBus {
 
     subscriptions.remove(subject);
     globalSubscriptions.remove(subject);
+    updateRoute(subject);
 
     fireUnsubscribeListeners(new SubscriptionEvent(false, null, 0, false, subject));
   }
@@ -769,9 +1002,13 @@ public class ServerMessageBusImpl implements ServerMessageBus {
   }
 
   private boolean isAnyoneListening(final MessageQueue queue, final String subject) {
-    return (subject.endsWith(":RespondTo:RPC") || subject.endsWith(":Errors:RPC")
-        || subscriptions.containsKey(subject) || (remoteSubscriptions.containsKey(subject)
-        && remoteSubscriptions.get(subject).contains(queue)));
+    if (subject.endsWith(":RespondTo:RPC") || subject.endsWith(":Errors:RPC")) {
+      return true;
+    }
+
+    final SubjectRoute route = routes.get(subject);
+    return route != null && (route.hasGlobalPlan()
+        || (route.getRemoteCallback() != null && route.getRemoteCallback().contains(queue)));
   }
 
   @Override
@@ -779,6 +1016,23 @@ public class ServerMessageBusImpl implements ServerMessageBus {
     return remoteSubscriptions.containsKey(subject);
   }
 
+  @Override
+  public void conflate(final String subject, final String keyPart) {
+    conflator.conflate(subject, keyPart);
+  }
+
+  @Override
+  public long getConflatedMessageCount(final String subject) {
+    return conflator.getConflatedCount(subject);
+  }
+
+  /**
+   * Returns the number of messages conflated away so far, by subject.
+   */
+  public Map<String, Long> getConflatedMessageCounts() {
+    return conflator.getConflatedCounts();
+  }
+
   @Override
   public boolean hasRemoteSubscription(final String sessionId, final String subject) {
     return remoteSubscriptions.containsKey(subject) && remoteSubscriptions.get(subject)
@@ -882,8 +1136,10 @@ public class ServerMessageBusImpl implements ServerMessageBus {
 
   @Override
   public void associateNewQueue(final QueueSession oldSession, final QueueSession newSession) {
+    final MessageQueue queue = getQueue(oldSession);
     sessionLookup.put(newSession.getSessionId(), oldSession);
-    messageQueues.put(newSession, getQueue(oldSession));
+    messageQueues.put(newSession, queue);
+    registrationOf(queue).addSession(newSession, newSession.getSessionId());
   }
 
   @Override
@@ -921,6 +1177,63 @@ public class ServerMessageBusImpl implements ServerMessageBus {
     return scheduler;
   }
 
+  /**
+   * Returns the number of messages waiting to have their delivery re-attempted because nobody was subscribed to
+   * their subject when they were sent.
+   *
+   * @return the number of pending retries
+   */
+  public int getPendingRetryCount() {
+    return retryTimer.getPendingRetryCount();
+  }
+
+  /**
+   * Returns the number of messages that failed immediately, rather than being retried, because too many retries were
+   * already pending (see {@link ErraiConfigAttribs#BUS_RETRY_CAPACITY}).
+   *
+   * @return the number of dropped retries
+   */
+  public long getRetryDropCount() {
+    return retryTimer.getRetryDropCount();
+  }
+
+  /**
+   * Takes a snapshot of the bus metrics, including the state of every open queue.
+   *
+   * @see BusMetrics
+   */
+  public MetricsSnapshot getMetrics() {
+    return BusMetrics.snapshot(messageQueues.values(), getBusGauges());
+  }
+
+  /**
+   * Samples the gauges of this bus along with those registered with {@link BusMetrics}, by name.
+   */
+  public Map<String, Long> getMetricGauges() {
+    final Map<String, Long> gauges = BusMetrics.getGaugeValues();
+    gauges.putAll(getBusGauges());
+    return gauges;
+  }
+
+  private Map<String, Long> getBusGauges() {
+    final Map<String, Long> gauges = new TreeMap<String, Long>();
+    gauges.put("bus.sessions", (long) messageQueues.size());
+    gauges.put("bus.buffer.free_bytes", (long) bufferStatus().getFreeBytes());
+    gauges.put("bus.retries.scheduled", retryTimer.getRetryCount());
+    gauges.put("bus.retries.pending", (long) retryTimer.getPendingRetryCount());
+    gauges.put("bus.retries.dropped", retryTimer.getRetryDropCount());
+    gauges.put("bus.paging.page_outs", PageUtil.getPageOutCount());
+    gauges.put("bus.paging.page_ins", PageUtil.getPageInCount());
+    gauges.put("bus.paging.disk_usage", PageUtil.getDiskUsage());
+    gauges.put("bus.reaper.expired", reaper.getExpiredCount());
+    gauges.put("bus.reaper.page_outs", reaper.getPageOutCount());
+    gauges.put("bus.reaper.last_tick_checks", (long) reaper.getLastTickCheckCount());
+    gauges.put("bus.reaper.last_tick_nanos", reaper.getLastTickNanos());
+    gauges.put("bus.reaper.max_tick_nanos", reaper.getMaxTickNanos());
+    gauges.put("bus.reaper.mean_tick_nanos", reaper.getMeanTickNanos());
+    return gauges;
+  }
+
   @Override
   public void addQueueClosedListener(final QueueClosedListener listener) {
     synchronized (queueClosedListeners) {
@@ -984,11 +1297,22 @@ public class ServerMessageBusImpl implements ServerMessageBus {
 
     scheduler.shutdown();
 
+    if (metricsName != null) {
+      BusMetricsView.unregister(metricsName);
+      metricsName = null;
+    }
+    for (final MetricsExporter exporter : metricsExporters) {
+      exporter.stop();
+    }
+    metricsExporters.clear();
+
     transmissionbuffer.clear();
     subscriptions.clear();
     remoteSubscriptions.clear();
+    routes.clear();
     deferredQueue.clear();
     sessionLookup.clear();
+    queueRegistrations.clear();
   }
 
   public void finishInit() {
@@ -1072,7 +1396,7 @@ public class ServerMessageBusImpl implements ServerMessageBus {
                 messageQueues.get(session).stopQueue();
               }
 
-              queue = new MessageQueueImpl(transmissionbuffer, session, messageQueueTimeoutSecs);
+              queue = new MessageQueueImpl(transmissionbuffer, session, messageQueueTimeoutSecs, conflator);
 
               addQueue(session, queue);
 
@@ -1167,11 +1491,17 @@ public class ServerMessageBusImpl implements ServerMessageBus {
                 localContext.setAttribute(WebSocketServerHandler.SESSION_ATTR_WS_STATUS,
                     WebSocketServerHandler.WEBSOCKET_ACTIVE);
 
-                createConversation(message)
+                final MessageBuildParms<MessageReplySendable> reply = createConversation(message)
                     .toSubject(BuiltInServices.ClientBus.name())
                     .command(BusCommand.WebsocketChannelOpen)
-                    .with(MessageParts.WebSocketToken, reconnectionToken)
-                    .done().sendNowWith(ServerMessageBusImpl.this, false);
+                    .with(MessageParts.WebSocketToken, reconnectionToken);
+
+                // offer the compact wire protocol. The client confirms it when it associates the web socket.
+                if (compactWireProtocol) {
+                  reply.with(MessageParts.WireProtocol, CompactWireCodec.PROTOCOL_NAME);
+                }
+
+                reply.done().sendNowWith(ServerMessageBusImpl.this, false);
               }
               else {
               }
@@ -1266,48 +1596,6 @@ public class ServerMessageBusImpl implements ServerMessageBus {
     @Override
     public void run() {
       runCount++;
-      boolean houseKeepingPerformed = false;
-      final List<MessageQueue> endSessions = new LinkedList<MessageQueue>();
-
-      int paged = 0, killed = 0;
-
-      while (!houseKeepingPerformed) {
-        try {
-          final Iterator<MessageQueue> iter = ServerMessageBusImpl.this.messageQueues.values().iterator();
-          MessageQueue q;
-          while (iter.hasNext()) {
-            if ((q = iter.next()).isStale()) {
-              iter.remove();
-              endSessions.add(q);
-              killed++;
-            }
-
-            if (PageUtil.pageIfStraddling(q)) {
-              paged++;
-            }
-          }
-
-          houseKeepingPerformed = true;
-        }
-        catch (ConcurrentModificationException cme) {
-          // fall-through and try again.
-        }
-      }
-
-      if (paged > 0 || killed > 0) {
-        log.debug("[bus] killed " + killed + " sessions and paged out " + paged + " queues");
-      }
-
-      for (final MessageQueue ref : endSessions) {
-        for (final String subject : new HashSet<String>(ServerMessageBusImpl.this.remoteSubscriptions.keySet())) {
-          ServerMessageBusImpl.this.remoteUnsubscribe(ref.getSession(), ref, subject);
-        }
-
-        ServerMessageBusImpl.this.closeQueue(ref);
-        ref.getSession().endSession();
-        deferredQueue.remove(ref);
-        ref.discard();
-      }
 
       final Iterator<ClusterWaitEntry> entryIterator = deadLetter.values().iterator();
 
@@ -1324,6 +1612,11 @@ public class ServerMessageBusImpl implements ServerMessageBus {
         }
       }
 
+      // the buffer status is only logged, and computing it visits every queue.
+      if (!log.isDebugEnabled()) {
+        return;
+      }
+
       final BufferStatus stat = bufferStatus();
       if (stat.getFree() == 1.0f) {
         if (lastWasEmpty) {
@@ -1383,6 +1676,7 @@ public class ServerMessageBusImpl implements ServerMessageBus {
       if (removeFromDeliveryPlan(subject, receiver).getTotalReceivers() == 0) {
         globalSubscriptions.remove(subject);
         subscriptions.remove(subject);
+        updateRoute(subject);
       }
       else {
         boolean nonRemote = true;
@@ -1395,6 +1689,7 @@ public class ServerMessageBusImpl implements ServerMessageBus {
         if (nonRemote) {
           globalSubscriptions.remove(subject);
           subscriptions.remove(subject);
+          updateRoute(subject);
         }
       }
     }
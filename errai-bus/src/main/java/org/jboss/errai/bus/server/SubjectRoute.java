@@ -0,0 +1,61 @@
+/*
+ * Copyright (C) 2016 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.errai.bus.server;
+
+import org.jboss.errai.bus.server.ServerMessageBusImpl.RemoteMessageCallback;
+
+/**
+ * An immutable snapshot of everything the bus needs to route a message to a subject: the global delivery plan, the
+ * delivery plan of the local-only subscribers and the callback forwarding to remote subscribers. A new route is
+ * published whenever the subscriptions of a subject change, so that routing a message takes a single lookup.
+ */
+final class SubjectRoute {
+  private final DeliveryPlan globalPlan;
+  private final DeliveryPlan localPlan;
+  private final RemoteMessageCallback remoteCallback;
+
+  SubjectRoute(final DeliveryPlan globalPlan,
+               final DeliveryPlan localPlan,
+               final RemoteMessageCallback remoteCallback) {
+    this.globalPlan = globalPlan;
+    this.localPlan = localPlan;
+    this.remoteCallback = remoteCallback;
+  }
+
+  /**
+   * Returns the delivery plan for the subject, or null if there are no subscribers. Global subscribers take
+   * precedence over local-only subscribers.
+   */
+  DeliveryPlan getDeliveryPlan() {
+    return globalPlan != null ? globalPlan : localPlan;
+  }
+
+  /**
+   * Returns true if there are global (non-local) subscribers to the subject.
+   */
+  boolean hasGlobalPlan() {
+    return globalPlan != null;
+  }
+
+  RemoteMessageCallback getRemoteCallback() {
+    return remoteCallback;
+  }
+
+  boolean isEmpty() {
+    return globalPlan == null && localPlan == null && remoteCallback == null;
+  }
+}
@@ -24,6 +24,8 @@ import org.slf4j.Logger;
 
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
 
 import static java.lang.System.currentTimeMillis;
 import static org.jboss.errai.bus.client.util.ErrorHelper.handleMessageDeliveryFailure;
@@ -34,9 +36,17 @@ import static org.slf4j.LoggerFactory.getLogger;
  * A <tt>Worker</tt> is a specialized thread made to work with the messages and services of Errai
  */
 public class Worker extends Thread {
+  /**
+   * How long an idle worker with its own queue waits to be woken before looking in all queues again.
+   */
+  private static final long IDLE_PARK_NANOS = TimeUnit.SECONDS.toNanos(60);
+
+  private WorkerFactory factory;
   private MessageBus bus;
   private BlockingQueue<Message> messages;
+  private int shard = -1;
   private long timeout;
+  private final AtomicBoolean idle = new AtomicBoolean();
 
   private volatile boolean active = true;
   private volatile boolean exited = false;
@@ -53,6 +63,7 @@ public class Worker extends Thread {
    */
   public Worker(WorkerFactory factory, ErraiService svc) {
     super("Dispatch Worker Thread");
+    this.factory = factory;
     this.timeout = factory.getWorkerTimeout();
     this.messages = factory.getMessages();
     this.bus = svc.getBus();
@@ -60,6 +71,20 @@ public class Worker extends Thread {
     setDaemon(true);
   }
 
+  /**
+   * Initializes a worker that takes messages from its own queue, and from the queues of other workers when its own
+   * is empty.
+   *
+   * @param factory - the factory this worker thread will belong to
+   * @param svc     - the service the thread is attached to
+   * @param shard   - the index of the queue of this worker
+   */
+  public Worker(WorkerFactory factory, ErraiService svc, int shard) {
+    this(factory, svc);
+    this.shard = shard;
+    this.messages = factory.getShard(shard);
+  }
+
   /**
    * Sets the <tt>Worker</tt> to an active or inactive state
    *
@@ -106,8 +131,9 @@ public class Worker extends Thread {
         // looping inside a catch block is cheaper than entering and leaving it
         // every time.
         while (true) {
-          if ((message = messages.poll(60, TimeUnit.SECONDS)) != null) {
+          if ((message = nextMessage()) != null) {
             workExpiry = currentTimeMillis() + timeout;
+            factory.recordDispatch(message);
             deliverToBus(bus, message);
             workExpiry = 0;
           }
@@ -138,6 +164,52 @@ public class Worker extends Thread {
   }
 
 
+  private Message nextMessage() throws InterruptedException {
+    if (shard < 0) {
+      return messages.poll(60, TimeUnit.SECONDS);
+    }
+
+    Message m = takeOrSteal();
+    if (m != null) {
+      return m;
+    }
+
+    // announce that this worker is idle before looking again, so that a message offered in between wakes it.
+    if (idle.compareAndSet(false, true)) {
+      factory.idleWorkersChanged(1);
+    }
+    if ((m = takeOrSteal()) == null) {
+      LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+    }
+    if (idle.compareAndSet(true, false)) {
+      factory.idleWorkersChanged(-1);
+    }
+
+    if (m == null && Thread.interrupted()) {
+      throw new InterruptedException();
+    }
+    return m;
+  }
+
+  private Message takeOrSteal() {
+    final Message m = messages.poll();
+    return m != null ? m : factory.steal(shard);
+  }
+
+  /**
+   * Wakes this worker if it is waiting for work.
+   *
+   * @return true if this worker was idle.
+   */
+  boolean wake() {
+    if (idle.compareAndSet(true, false)) {
+      factory.idleWorkersChanged(-1);
+      LockSupport.unpark(this);
+      return true;
+    }
+    return false;
+  }
+
   public static void deliverToBus(MessageBus bus, Message message) {
     if (message.isFlagSet(RoutingFlag.NonGlobalRouting)) {
       bus.send(message);
@@ -20,6 +20,8 @@ import org.jboss.errai.bus.client.api.RoutingFlag;
 import org.jboss.errai.bus.client.api.base.MessageDeliveryFailure;
 import org.jboss.errai.bus.client.api.messaging.Message;
 import org.jboss.errai.bus.client.util.ErrorHelper;
+import org.jboss.errai.bus.server.metrics.BusMetrics;
+import org.jboss.errai.bus.server.service.ErraiConfigAttribs;
 import org.jboss.errai.bus.server.service.ErraiService;
 import org.jboss.errai.bus.server.service.ErraiServiceConfigurator;
 import org.slf4j.Logger;
@@ -27,11 +29,22 @@ import org.slf4j.LoggerFactory;
 
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.LockSupport;
 
+import static org.jboss.errai.bus.client.util.ErrorHelper.handleMessageDeliveryFailure;
+
 /**
- * The <tt>WorkerFactory</tt> maintains a pool of <tt>Worker</tt>s, and takes care of running and terminating them
+ * The <tt>WorkerFactory</tt> maintains a pool of <tt>Worker</tt>s, and takes care of running and terminating them.
+ * <p/>
+ * How messages are handed to the workers is determined by the {@link DispatchMode} configured with
+ * {@link ErraiConfigAttribs#ASYNC_DISPATCH_MODE}.
  */
 public class WorkerFactory {
   private static final int DEFAULT_DELIVERY_QUEUE_SIZE = 100;
@@ -41,6 +54,13 @@ public class WorkerFactory {
   private static final String CONFIG_ASYNC_WORKER_TIMEOUT = "errai.async.worker.timeout";
   private static final String CONFIG_ASYNC_DELIVERY_QUEUE_SIZE = "errai.async.delivery.queue_size";
 
+  static final String ENQUEUED_AT = "DispatchEnqueuedAt";
+
+  /**
+   * The smallest queue a worker is given in {@link DispatchMode#WorkStealing} mode.
+   */
+  private static final int MIN_SHARD_SIZE = 16;
+
   private Worker[] workerPool;
 
   private ErraiService svc;
@@ -49,6 +69,19 @@ public class WorkerFactory {
 
   private BlockingQueue<Message> messages;
 
+  private final DispatchMode dispatchMode;
+  private BlockingQueue<Message>[] shards;
+  private final AtomicInteger nextShard = new AtomicInteger();
+  private final AtomicInteger idleWorkers = new AtomicInteger();
+
+  private ExecutorService perMessageExecutor;
+  private Semaphore perMessagePermits;
+  private final AtomicInteger perMessagePending = new AtomicInteger();
+
+  private final AtomicLong dispatchCount = new AtomicLong();
+  private final AtomicLong dispatchLatencyNanos = new AtomicLong();
+  private final AtomicLong dispatchLatencySamples = new AtomicLong();
+
   private int poolSize = DEFAULT_THREAD_POOL_SIZE;
   private long workerTimeout = Boolean.getBoolean("org.jboss.errai.debugmode") ? seconds(360) : seconds(30);
 
@@ -60,6 +93,7 @@ public class WorkerFactory {
    *
    * @param svc - the <tt>ErraiService</tt> that is to be associated to this factory of workers
    */
+  @SuppressWarnings("unchecked")
   public WorkerFactory(final ErraiService svc) {
     this.svc = svc;
 
@@ -79,14 +113,46 @@ public class WorkerFactory {
       workerTimeout = seconds(Integer.parseInt(cfg.getProperty(CONFIG_ASYNC_WORKER_TIMEOUT)));
     }
 
-    this.messages = new ArrayBlockingQueue<Message>(deliveryQueueSize);
+    final String mode = ErraiConfigAttribs.ASYNC_DISPATCH_MODE.get(cfg);
+    try {
+      this.dispatchMode = mode == null ? DispatchMode.SharedQueue : DispatchMode.valueOf(mode);
+    }
+    catch (IllegalArgumentException e) {
+      throw new RuntimeException("unrecognized option for property "
+          + ErraiConfigAttribs.ASYNC_DISPATCH_MODE.getAttributeName() + ": " + mode);
+    }
+
+    log.debug("initializing async worker pools (poolSize: " + poolSize + "; workerTimeout: " + workerTimeout
+        + "; dispatchMode: " + dispatchMode + ")");
+
+    switch (dispatchMode) {
+      case SharedQueue:
+        this.messages = new ArrayBlockingQueue<Message>(deliveryQueueSize);
+        this.workerPool = new Worker[poolSize];
+
+        for (int i = 0; i < poolSize; i++) {
+          workerPool[i] = new Worker(this, svc);
+        }
+        break;
 
-    log.debug("initializing async worker pools (poolSize: " + poolSize + "; workerTimeout: " + workerTimeout + ")");
+      case WorkStealing:
+        this.shards = new BlockingQueue[poolSize];
+        this.workerPool = new Worker[poolSize];
 
-    this.workerPool = new Worker[poolSize];
+        final int shardSize = Math.max(MIN_SHARD_SIZE, deliveryQueueSize / poolSize);
+        for (int i = 0; i < poolSize; i++) {
+          shards[i] = new ArrayBlockingQueue<Message>(shardSize);
+        }
+        for (int i = 0; i < poolSize; i++) {
+          workerPool[i] = new Worker(this, svc, i);
+        }
+        break;
 
-    for (int i = 0; i < poolSize; i++) {
-      workerPool[i] = new Worker(this, svc);
+      case ThreadPerMessage:
+        this.workerPool = new Worker[0];
+        this.perMessagePermits = new Semaphore(deliveryQueueSize);
+        this.perMessageExecutor = createPerMessageExecutor();
+        break;
     }
 
     if (svc.getBus() instanceof ServerMessageBusImpl) {
@@ -122,7 +188,7 @@ public class WorkerFactory {
    * @param m - message to be delivered
    */
   public void deliverGlobal(Message m) throws InterruptedException {
-    if (messages.offer(m, 30, java.util.concurrent.TimeUnit.SECONDS)) {
+    if (enqueue(m)) {
       return;
     }
     else {
@@ -144,7 +210,7 @@ public class WorkerFactory {
    */
   public void deliver(Message m) throws InterruptedException {
     m.setFlag(RoutingFlag.NonGlobalRouting);
-    if (messages.offer(m, 30, java.util.concurrent.TimeUnit.SECONDS)) {
+    if (enqueue(m)) {
       return;
     }
     else {
@@ -159,6 +225,199 @@ public class WorkerFactory {
     }
   }
 
+  /**
+   * Hands the message to the workers according to the dispatch mode, waiting up to 30 seconds for room.
+   *
+   * @return false if the message could not be accepted in time, in which case the saturation policy applies.
+   */
+  private boolean enqueue(final Message m) throws InterruptedException {
+    if (BusMetrics.isEnabled()) {
+      m.setResource(ENQUEUED_AT, System.nanoTime());
+    }
+
+    switch (dispatchMode) {
+      case WorkStealing: {
+        // offer to the shorter of two neighbouring shards, then to any shard with room, before waiting.
+        final int first = (nextShard.getAndIncrement() & Integer.MAX_VALUE) % shards.length;
+        final int second = (first + 1) % shards.length;
+        final int preferred = shards[second].size() < shards[first].size() ? second : first;
+
+        for (int i = 0; i < shards.length; i++) {
+          final int shard = (preferred + i) % shards.length;
+          if (shards[shard].offer(m)) {
+            wakeWorkerFor(shard);
+            return true;
+          }
+        }
+        if (shards[preferred].offer(m, 30, TimeUnit.SECONDS)) {
+          wakeWorkerFor(preferred);
+          return true;
+        }
+        return false;
+      }
+
+      case ThreadPerMessage:
+        if (!perMessagePermits.tryAcquire(30, TimeUnit.SECONDS)) {
+          return false;
+        }
+        perMessagePending.incrementAndGet();
+        try {
+          perMessageExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+              perMessagePending.decrementAndGet();
+              try {
+                recordDispatch(m);
+                Worker.deliverToBus(svc.getBus(), m);
+              }
+              catch (QueueUnavailableException e) {
+                log.debug("queue not available", e);
+              }
+              catch (Throwable e) {
+                m.setResource("Exception", e.getCause());
+                handleMessageDeliveryFailure(svc.getBus(), m, "Error calling remote service: " + m.getSubject(), e,
+                    false);
+              }
+              finally {
+                perMessagePermits.release();
+              }
+            }
+          });
+        }
+        catch (RuntimeException e) {
+          perMessagePending.decrementAndGet();
+          perMessagePermits.release();
+          throw e;
+        }
+        return true;
+
+      default:
+        return messages.offer(m, 30, TimeUnit.SECONDS);
+    }
+  }
+
+  /**
+   * Records the time the specified message waited between being accepted and being picked up for delivery, if it
+   * was accepted while the bus metrics were enabled.
+   */
+  void recordDispatch(final Message m) {
+    final Long enqueuedAt = m.getResource(Long.class, ENQUEUED_AT);
+    if (enqueuedAt != null) {
+      dispatchLatencyNanos.addAndGet(System.nanoTime() - enqueuedAt);
+      dispatchLatencySamples.incrementAndGet();
+    }
+    dispatchCount.incrementAndGet();
+  }
+
+  /**
+   * Wakes the worker of the specified shard if it is idle, or otherwise any idle worker, which then takes the new
+   * message from that shard.
+   */
+  private void wakeWorkerFor(final int shard) {
+    if (idleWorkers.get() == 0) {
+      return;
+    }
+    for (int i = 0; i < workerPool.length; i++) {
+      if (workerPool[(shard + i) % workerPool.length].wake()) {
+        return;
+      }
+    }
+  }
+
+  /**
+   * Called by a worker in {@link DispatchMode#WorkStealing} mode when it starts or stops waiting for work.
+   */
+  void idleWorkersChanged(final int delta) {
+    idleWorkers.addAndGet(delta);
+  }
+
+  /**
+   * Takes a message from the queue of another worker, for a worker whose own queue is empty.
+   *
+   * @param shard
+   *     the index of the queue of the idle worker.
+   *
+   * @return a message, or null if all queues are empty.
+   */
+  Message steal(final int shard) {
+    for (int i = 1; i < shards.length; i++) {
+      final Message m = shards[(shard + i) % shards.length].poll();
+      if (m != null) {
+        return m;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Creates the executor for {@link DispatchMode#ThreadPerMessage}: a virtual thread per task where the JVM provides
+   * them, otherwise a pool of daemon threads that grows as needed.
+   */
+  private ExecutorService createPerMessageExecutor() {
+    try {
+      final ExecutorService virtual = (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor")
+          .invoke(null);
+      log.debug("dispatching each message on a virtual thread");
+      return virtual;
+    }
+    catch (Exception e) {
+      log.debug("virtual threads not available; dispatching each message on a pooled thread");
+    }
+
+    return Executors.newCachedThreadPool(new ThreadFactory() {
+      @Override
+      public Thread newThread(final Runnable r) {
+        final Thread thread = new Thread(r, "Dispatch Worker Thread");
+        thread.setPriority(Thread.MIN_PRIORITY);
+        thread.setDaemon(true);
+        return thread;
+      }
+    });
+  }
+
+  /**
+   * Returns the dispatch mode of this factory.
+   */
+  public DispatchMode getDispatchMode() {
+    return dispatchMode;
+  }
+
+  /**
+   * Returns the number of messages that have been accepted but not yet picked up for delivery.
+   */
+  public int getQueueDepth() {
+    switch (dispatchMode) {
+      case WorkStealing:
+        int depth = 0;
+        for (final BlockingQueue<Message> shard : shards) {
+          depth += shard.size();
+        }
+        return depth;
+
+      case ThreadPerMessage:
+        return perMessagePending.get();
+
+      default:
+        return messages.size();
+    }
+  }
+
+  /**
+   * Returns the number of messages that have been picked up for delivery.
+   */
+  public long getDispatchCount() {
+    return dispatchCount.get();
+  }
+
+  /**
+   * Returns the mean time, in nanoseconds, that messages waited between being accepted and being picked up for
+   * delivery. Only messages accepted while the bus metrics were enabled are measured.
+   */
+  public long getMeanDispatchLatencyNanos() {
+    final long count = dispatchLatencySamples.get();
+    return count == 0 ? 0 : dispatchLatencyNanos.get() / count;
+  }
+
   private void sendDeliveryFailure(Message m) {
     MessageDeliveryFailure mdf
             = new MessageDeliveryFailure("could not deliver message because the outgoing queue is full");
@@ -178,6 +437,15 @@ public class WorkerFactory {
     return messages;
   }
 
+  /**
+   * Gets the queue of the specified worker in {@link DispatchMode#WorkStealing} mode
+   *
+   * @return the queue of the worker
+   */
+  protected BlockingQueue<Message> getShard(final int index) {
+    return shards[index];
+  }
+
   /**
    * Gets the timeout
    *
@@ -192,8 +460,8 @@ public class WorkerFactory {
    */
   public void startPool() {
     log.debug("starting worker pool.");
-    for (int i = 0; i < poolSize; i++) {
-      workerPool[i].start();
+    for (final Worker worker : workerPool) {
+      worker.start();
     }
   }
 
@@ -201,9 +469,13 @@ public class WorkerFactory {
     synchronized (this) {
 
       log.info("stopping worker pool.");
-      for (int i = 0; i < poolSize; i++) {
-        workerPool[i].setActive(false);
-        workerPool[i].interrupt();
+      for (final Worker worker : workerPool) {
+        worker.setActive(false);
+        worker.interrupt();
+      }
+
+      if (perMessageExecutor != null) {
+        perMessageExecutor.shutdownNow();
       }
 
       Thread shutdownThread = new Thread() {
@@ -249,4 +521,26 @@ public class WorkerFactory {
   enum SaturationPolicy {
     Fail, CallerRuns
   }
+
+  /**
+   * The ways in which messages can be handed to the workers.
+   */
+  public enum DispatchMode {
+    /**
+     * All workers take messages from a single queue.
+     */
+    SharedQueue,
+
+    /**
+     * Every worker has its own queue. Workers with an empty queue take messages from the queues of the others.
+     */
+    WorkStealing,
+
+    /**
+     * Every message is delivered on a thread of its own: a virtual thread where the JVM provides them, otherwise a
+     * thread from a pool that grows as needed. Suited to services that block. Worker timeouts are not enforced in
+     * this mode.
+     */
+    ThreadPerMessage
+  }
 }
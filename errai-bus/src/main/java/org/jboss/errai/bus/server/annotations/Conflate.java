@@ -0,0 +1,49 @@
+/*
+ * Copyright (C) 2016 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.errai.bus.server.annotations;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Enables conflation for the subject of a {@link Service}. Messages sent to remote subscribers of a conflated subject
+ * do not pile up for a client that has not yet received its previous messages: only the most recent message for each
+ * key is kept pending, and the ones it replaces are discarded. This suits subjects such as price tickers, where a slow
+ * client only cares about the latest value.
+ *
+ * <pre>
+ *     {@code @Service("PriceTicker")}
+ *     {@code @Conflate(key = "symbol")}
+ *     public class PriceTickerService implements MessageCallback {
+ *       ...
+ *     }
+ * </pre>
+ *
+ * @see org.jboss.errai.bus.server.api.ServerMessageBus#conflate(String, String)
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ElementType.TYPE, ElementType.METHOD, ElementType.FIELD})
+public @interface Conflate {
+
+  /**
+   * The message part whose value, together with the subject, identifies the messages which replace each other. If
+   * left empty, all messages to the subject replace each other. Messages which lack the part are never conflated.
+   */
+  String key() default "";
+}
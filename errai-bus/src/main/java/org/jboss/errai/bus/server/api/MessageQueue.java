@@ -86,4 +86,6 @@ public interface MessageQueue {
   long getLastTransmissionTime();
 
   void setTimeout(long timeout);
+
+  long getTimeout();
 }
@@ -90,6 +90,26 @@ public interface ServerMessageBus extends MessageBus {
 
   public boolean hasRemoteSubscriptions(String subject);
 
+  /**
+   * Enables conflation of the messages sent to remote subscribers of the specified subject: while a client has
+   * messages that have not yet been sent to it, only the most recent message for each key remains pending.
+   *
+   * @param subject the subject to conflate.
+   * @param keyPart the message part identifying the messages which replace each other, or an empty string if all
+   *                messages to the subject replace each other.
+   * @see org.jboss.errai.bus.server.annotations.Conflate
+   */
+  public void conflate(String subject, String keyPart);
+
+  /**
+   * Returns the number of messages to the specified subject which were not sent to a client because a newer message
+   * replaced them.
+   *
+   * @param subject The subject.
+   * @return the number of messages conflated away, summed over all clients.
+   */
+  public long getConflatedMessageCount(String subject);
+
   public boolean hasRemoteSubscription(String sessionId, String subject);
 
   public Map<QueueSession, MessageQueue> getMessageQueues();
@@ -49,7 +49,7 @@ public class PooledExecutorService implements TaskProvider {
 
   private final SchedulerThread schedulerThread;
 
-  private final ReentrantLock mutex = new ReentrantLock(true);
+  private final ReentrantLock mutex = new ReentrantLock();
   private final int maxQueueSize;
 
   private final SaturationPolicy saturationPolicy;
@@ -43,5 +43,16 @@ public enum ClusterCommands {
    * The <tt>InvalidRoute</tt> verb is used in a point-to-point message to indicate that the bus was
    * forwarded a message which it is not or no longer responsible for.
    */
-  InvalidRoute
+  InvalidRoute,
+
+  /**
+   * The <tt>SessionOwned</tt> verb is broadcast to the cluster by a bus when it starts handling a session, so that
+   * the other buses can forward messages for that session to it directly instead of sending <tt>WhoHandles</tt>.
+   */
+  SessionOwned,
+
+  /**
+   * The <tt>SessionReleased</tt> verb is broadcast to the cluster by a bus when it stops handling a session.
+   */
+  SessionReleased
 }
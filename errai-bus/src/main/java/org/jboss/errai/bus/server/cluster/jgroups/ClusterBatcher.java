@@ -0,0 +1,203 @@
+/*
+ * Copyright (C) 2016 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.errai.bus.server.cluster.jgroups;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.jboss.errai.bus.client.api.messaging.Message;
+import org.jboss.errai.bus.server.cluster.ClusterParts;
+import org.jboss.errai.marshalling.client.protocols.ErraiProtocol;
+import org.jgroups.Address;
+import org.jgroups.JChannel;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Collects outgoing cluster messages per destination and sends them as one {@link ClusterFrame}. A batch is sent as
+ * soon as it holds the maximum number of messages or the maximum number of UTF-8 encoded payload bytes, and otherwise
+ * when {@link #flush()} is next called, which the provider does every few milliseconds. The messages for a
+ * destination are sent in the order they were queued.
+ * <p/>
+ * With batching turned off, every message is sent on its own as a JSON payload, which is the format that nodes
+ * without batching support understand.
+ */
+final class ClusterBatcher {
+  private static final Logger log = LoggerFactory.getLogger(ClusterBatcher.class);
+
+  /**
+   * Stands in for the broadcast destination, as <tt>null</tt> is not a usable map key.
+   */
+  private static final Object BROADCAST = new Object();
+
+  private final JChannel jchannel;
+  private final int maxMessages;
+  private final int maxBytes;
+  private final boolean batching;
+
+  /**
+   * The batch of every destination messages have been sent to. A batch is also the lock which orders the sends to its
+   * destination, so batches are never removed; there is one per node of the cluster.
+   */
+  private final ConcurrentMap<Object, Batch> batches = new ConcurrentHashMap<Object, Batch>();
+
+  private final AtomicLong messagesSent = new AtomicLong();
+  private final AtomicLong framesSent = new AtomicLong();
+
+  /**
+   * @param jchannel
+   *     the channel to send frames on.
+   * @param maxMessages
+   *     the number of messages at which a batch is sent at once. With 1 or less, batching is off and every message is
+   *     sent on its own in the JSON format.
+   * @param maxBytes
+   *     the number of UTF-8 encoded payload bytes at which a batch is sent at once.
+   */
+  ClusterBatcher(final JChannel jchannel, final int maxMessages, final int maxBytes) {
+    this.jchannel = jchannel;
+    this.maxMessages = Math.min(Math.max(1, maxMessages), ClusterFrame.MAX_MESSAGES);
+    this.maxBytes = maxBytes;
+    this.batching = this.maxMessages > 1;
+  }
+
+  /**
+   * Returns true if messages are batched into {@link ClusterFrame}s, which only nodes with batching support can read.
+   */
+  boolean isBatching() {
+    return batching;
+  }
+
+  /**
+   * Queues a message for the specified destination.
+   *
+   * @param dest
+   *     the node to send to, or null to send to all nodes.
+   * @param message
+   *     the cluster service message.
+   */
+  void send(final Address dest, final Message message) {
+    if (!batching) {
+      transmitUnbatched(dest, message);
+      return;
+    }
+
+    final Object key = dest == null ? BROADCAST : dest;
+    Batch batch = batches.get(key);
+    if (batch == null) {
+      final Batch newBatch = new Batch();
+      batch = batches.putIfAbsent(key, newBatch);
+      if (batch == null) {
+        batch = newBatch;
+      }
+    }
+
+    final String payload = message.get(String.class, ClusterParts.Payload);
+    synchronized (batch) {
+      batch.messages.add(message);
+      batch.bytes += payload == null ? 0 : utf8Length(payload);
+
+      if (batch.messages.size() >= maxMessages || batch.bytes >= maxBytes) {
+        // sending while holding the lock keeps a later flush from overtaking this batch.
+        transmit(dest, batch.take());
+      }
+    }
+  }
+
+  /**
+   * Sends all pending batches.
+   */
+  void flush() {
+    for (final Map.Entry<Object, Batch> entry : batches.entrySet()) {
+      final Batch batch = entry.getValue();
+      synchronized (batch) {
+        if (!batch.messages.isEmpty()) {
+          final Object key = entry.getKey();
+          transmit(key == BROADCAST ? null : (Address) key, batch.take());
+        }
+      }
+    }
+  }
+
+  long getMessagesSent() {
+    return messagesSent.get();
+  }
+
+  long getFramesSent() {
+    return framesSent.get();
+  }
+
+  private void transmit(final Address dest, final List<Message> messages) {
+    try {
+      jchannel.send(new org.jgroups.Message(dest, ClusterFrame.encode(messages)));
+      framesSent.incrementAndGet();
+      messagesSent.addAndGet(messages.size());
+    }
+    catch (Exception e) {
+      log.error("failed to send " + messages.size() + " message(s) to " + (dest == null ? "cluster" : dest), e);
+    }
+  }
+
+  private void transmitUnbatched(final Address dest, final Message message) {
+    try {
+      jchannel.send(new org.jgroups.Message(dest, null, ErraiProtocol.encodePayload(message.getParts())));
+      messagesSent.incrementAndGet();
+    }
+    catch (Exception e) {
+      log.error("failed to send message to " + (dest == null ? "cluster" : dest), e);
+    }
+  }
+
+  /**
+   * Returns the number of bytes the specified string takes up when encoded as UTF-8.
+   */
+  static int utf8Length(final String s) {
+    int length = 0;
+    for (int i = 0; i < s.length(); i++) {
+      final char c = s.charAt(i);
+      if (c < 0x80) {
+        length++;
+      }
+      else if (c < 0x800) {
+        length += 2;
+      }
+      else if (Character.isHighSurrogate(c) && i + 1 < s.length() && Character.isLowSurrogate(s.charAt(i + 1))) {
+        length += 4;
+        i++;
+      }
+      else {
+        length += 3;
+      }
+    }
+    return length;
+  }
+
+  private static class Batch {
+    private List<Message> messages = new ArrayList<Message>();
+    private int bytes;
+
+    private List<Message> take() {
+      final List<Message> taken = messages;
+      messages = new ArrayList<Message>();
+      bytes = 0;
+      return taken;
+    }
+  }
+}
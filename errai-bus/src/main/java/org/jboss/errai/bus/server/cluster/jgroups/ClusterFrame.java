@@ -0,0 +1,244 @@
+/*
+ * Copyright (C) 2016 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.errai.bus.server.cluster.jgroups;
+
+import static org.jboss.errai.bus.server.cluster.ClusterParts.BusId;
+import static org.jboss.errai.bus.server.cluster.ClusterParts.MessageId;
+import static org.jboss.errai.bus.server.cluster.ClusterParts.Payload;
+import static org.jboss.errai.bus.server.cluster.ClusterParts.SessId;
+import static org.jboss.errai.bus.server.cluster.ClusterParts.Subject;
+import static org.jboss.errai.common.client.protocols.MessageParts.CommandType;
+import static org.jboss.errai.common.client.protocols.MessageParts.ToSubject;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.jboss.errai.bus.client.api.RoutingFlag;
+import org.jboss.errai.bus.client.api.base.CommandMessage;
+import org.jboss.errai.bus.client.api.messaging.Message;
+import org.jboss.errai.bus.server.cluster.ClusterCommands;
+import org.jboss.errai.bus.server.cluster.IntrabusQueueSession;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The binary format used between the nodes of a cluster. A frame carries one or more cluster service messages:
+ *
+ * <pre>
+ *   frame   := MAGIC VERSION count:u16 message*
+ *   message := command:u8 present:u8 [busId:utf] [sessId:utf] [messageId:utf] [subject:utf] [payload:bytes]
+ *   bytes   := length:i32 UTF-8*
+ * </pre>
+ *
+ * The bits of <tt>present</tt> tell which of the optional parts follow. Commands are identified by the fixed codes
+ * assigned in {@link #codeOf(ClusterCommands)}, never by their position in {@link ClusterCommands}, so that nodes
+ * still understand each other when commands are added. Messages with a command a node does not know are skipped. The
+ * forwarded payload is carried as raw UTF-8 rather than as a string embedded, and escaped, in a JSON envelope.
+ */
+final class ClusterFrame {
+  private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+  private static final byte MAGIC = (byte) 0xEB;
+  private static final byte VERSION = 2;
+
+  private static final int HAS_SESS_ID = 1;
+  private static final int HAS_MESSAGE_ID = 1 << 1;
+  private static final int HAS_SUBJECT = 1 << 2;
+  private static final int HAS_PAYLOAD = 1 << 3;
+  private static final int HAS_BUS_ID = 1 << 4;
+
+  /**
+   * The largest number of messages a single frame can carry.
+   */
+  static final int MAX_MESSAGES = 0xFFFF;
+
+  private static final Logger log = LoggerFactory.getLogger(ClusterFrame.class);
+
+  private ClusterFrame() {
+  }
+
+  /**
+   * Returns the code identifying the specified command on the wire. Codes must never be changed or reused.
+   */
+  static int codeOf(final ClusterCommands command) {
+    switch (command) {
+      case WhoHandles:
+        return 0;
+      case NotifyOwner:
+        return 1;
+      case MessageForward:
+        return 2;
+      case InvalidRoute:
+        return 3;
+      case SessionOwned:
+        return 4;
+      case SessionReleased:
+        return 5;
+      default:
+        throw new IllegalArgumentException("no wire code assigned to cluster command: " + command);
+    }
+  }
+
+  /**
+   * Returns the command identified by the specified code, or null if the code is unknown.
+   */
+  static ClusterCommands commandOf(final int code) {
+    switch (code) {
+      case 0:
+        return ClusterCommands.WhoHandles;
+      case 1:
+        return ClusterCommands.NotifyOwner;
+      case 2:
+        return ClusterCommands.MessageForward;
+      case 3:
+        return ClusterCommands.InvalidRoute;
+      case 4:
+        return ClusterCommands.SessionOwned;
+      case 5:
+        return ClusterCommands.SessionReleased;
+      default:
+        return null;
+    }
+  }
+
+  /**
+   * Returns true if the specified bytes start with a cluster frame, as opposed to a JSON message sent by a node
+   * running an earlier version.
+   */
+  static boolean isFrame(final byte[] buf, final int offset, final int length) {
+    return buf != null && length > 2 && buf[offset] == MAGIC && buf[offset + 1] == VERSION;
+  }
+
+  static byte[] encode(final List<Message> messages) {
+    if (messages.size() > MAX_MESSAGES) {
+      throw new IllegalArgumentException("too many messages for one frame: " + messages.size());
+    }
+
+    final ByteArrayOutputStream bytes = new ByteArrayOutputStream(128 * messages.size());
+    final DataOutputStream out = new DataOutputStream(bytes);
+
+    try {
+      out.writeByte(MAGIC);
+      out.writeByte(VERSION);
+      out.writeShort(messages.size());
+
+      for (final Message message : messages) {
+        final String busId = message.get(String.class, BusId);
+        final String sessId = message.get(String.class, SessId);
+        final String messageId = message.get(String.class, MessageId);
+        final String subject = message.get(String.class, Subject);
+        final String payload = message.get(String.class, Payload);
+
+        out.writeByte(codeOf(ClusterCommands.valueOf(message.getCommandType())));
+        out.writeByte((busId != null ? HAS_BUS_ID : 0)
+            | (sessId != null ? HAS_SESS_ID : 0)
+            | (messageId != null ? HAS_MESSAGE_ID : 0)
+            | (subject != null ? HAS_SUBJECT : 0)
+            | (payload != null ? HAS_PAYLOAD : 0));
+
+        if (busId != null) {
+          out.writeUTF(busId);
+        }
+        if (sessId != null) {
+          out.writeUTF(sessId);
+        }
+        if (messageId != null) {
+          out.writeUTF(messageId);
+        }
+        if (subject != null) {
+          out.writeUTF(subject);
+        }
+        if (payload != null) {
+          final byte[] payloadBytes = payload.getBytes(UTF_8);
+          out.writeInt(payloadBytes.length);
+          out.write(payloadBytes);
+        }
+      }
+      out.flush();
+    }
+    catch (IOException e) {
+      throw new RuntimeException("could not encode cluster frame", e);
+    }
+
+    return bytes.toByteArray();
+  }
+
+  /**
+   * Decodes the messages in a frame, addressed to the specified cluster service.
+   */
+  static List<Message> decode(final byte[] buf, final int offset, final int length, final String clusterService) {
+    final DataInputStream in = new DataInputStream(new ByteArrayInputStream(buf, offset, length));
+
+    try {
+      in.readByte();
+      in.readByte();
+      final int count = in.readUnsignedShort();
+      final List<Message> messages = new ArrayList<Message>(count);
+
+      for (int i = 0; i < count; i++) {
+        final int code = in.readUnsignedByte();
+        final ClusterCommands command = commandOf(code);
+        final int present = in.readUnsignedByte();
+
+        final Message message = CommandMessage.create()
+            .set(ToSubject, clusterService);
+
+        if ((present & HAS_BUS_ID) != 0) {
+          message.set(BusId, in.readUTF());
+        }
+        if ((present & HAS_SESS_ID) != 0) {
+          message.set(SessId, in.readUTF());
+        }
+        if ((present & HAS_MESSAGE_ID) != 0) {
+          message.set(MessageId, in.readUTF());
+        }
+        if ((present & HAS_SUBJECT) != 0) {
+          message.set(Subject, in.readUTF());
+        }
+        if ((present & HAS_PAYLOAD) != 0) {
+          final byte[] payloadBytes = new byte[in.readInt()];
+          in.readFully(payloadBytes);
+          message.set(Payload, new String(payloadBytes, UTF_8));
+        }
+
+        if (command == null) {
+          log.warn("skipping cluster message with unknown command code " + code + " from bus "
+              + message.get(String.class, BusId));
+          continue;
+        }
+        message.set(CommandType, command.name());
+
+        message.setResource("Session", IntrabusQueueSession.INSTANCE)
+            .setResource("SessionID", IntrabusQueueSession.INSTANCE.getSessionId());
+        message.setFlag(RoutingFlag.FromRemote);
+
+        messages.add(message);
+      }
+
+      return messages;
+    }
+    catch (IOException e) {
+      throw new RuntimeException("could not decode cluster frame", e);
+    }
+  }
+}
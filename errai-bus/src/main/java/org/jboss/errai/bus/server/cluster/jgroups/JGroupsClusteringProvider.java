@@ -25,16 +25,32 @@ import static org.jboss.errai.common.client.protocols.MessageParts.CommandType;
 import static org.jboss.errai.common.client.protocols.MessageParts.SessionID;
 import static org.jboss.errai.common.client.protocols.MessageParts.ToSubject;
 
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
 import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
 import com.google.inject.Inject;
 import org.jboss.errai.bus.client.api.QueueSession;
 import org.jboss.errai.bus.client.api.RoutingFlag;
+import org.jboss.errai.bus.client.api.SubscribeListener;
 import org.jboss.errai.bus.client.api.base.CommandMessage;
 import org.jboss.errai.bus.client.api.messaging.Message;
 import org.jboss.errai.bus.client.api.messaging.MessageCallback;
+import org.jboss.errai.bus.client.framework.SubscriptionEvent;
 import org.jboss.errai.bus.server.QueueUnavailableException;
 import org.jboss.errai.bus.server.api.MessageQueue;
+import org.jboss.errai.bus.server.api.QueueCloseEvent;
+import org.jboss.errai.bus.server.api.QueueClosedListener;
 import org.jboss.errai.bus.server.api.ServerMessageBus;
 import org.jboss.errai.bus.server.cluster.ClusterCommands;
 import org.jboss.errai.bus.server.cluster.ClusterParts;
@@ -50,10 +66,16 @@ import org.jboss.errai.marshalling.client.protocols.ErraiProtocol;
 import org.jgroups.Address;
 import org.jgroups.JChannel;
 import org.jgroups.ReceiverAdapter;
+import org.jgroups.View;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
+ * Messages between nodes are sent by a {@link ClusterBatcher}. Once batching is turned on, they are batched per
+ * destination into {@link ClusterFrame}s, and every node announces the sessions it handles, so that messages for a
+ * session can be sent straight to the node that handles it; a <tt>WhoHandles</tt> broadcast is only needed for sessions
+ * that have not been announced. Nodes without batching support understand neither, so with batching off, the default,
+ * messages are sent in the JSON format and sessions are not announced.
  *
  * @author Mike Brock
  */
@@ -67,6 +89,11 @@ public class JGroupsClusteringProvider extends ReceiverAdapter implements Cluste
 
   final Cache<String, Address> sessionToNodeCache;
 
+  private final Set<String> ownedSessions = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+  private final ClusterBatcher batcher;
+  private final ScheduledExecutorService flushScheduler;
+
   private final static String JGROUPS_MESSAGE_RESOURCE = "JGroupsMessage";
 
   private static Logger log = LoggerFactory.getLogger(JGroupsClusteringProvider.class);
@@ -88,42 +115,111 @@ public class JGroupsClusteringProvider extends ReceiverAdapter implements Cluste
       throw new RuntimeException(e);
     }
 
+    batcher = new ClusterBatcher(jchannel,
+        JGroupsConfigAttribs.JGROUPS_BATCH_MAX_MESSAGES.getInt(config),
+        JGroupsConfigAttribs.JGROUPS_BATCH_MAX_BYTES.getInt(config));
+
+    final int lingerMillis = JGroupsConfigAttribs.JGROUPS_BATCH_LINGER_MILLIS.getInt(config);
+    flushScheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+      @Override
+      public Thread newThread(final Runnable r) {
+        final Thread thread = new Thread(r, "Errai Cluster Batch Flusher");
+        thread.setDaemon(true);
+        return thread;
+      }
+    });
+    flushScheduler.scheduleAtFixedRate(new Runnable() {
+      @Override
+      public void run() {
+        batcher.flush();
+      }
+    }, lingerMillis, Math.max(1, lingerMillis), TimeUnit.MILLISECONDS);
+
+    sessionToNodeCache = CacheBuilder.newBuilder()
+        .maximumSize(JGroupsConfigAttribs.JGROUPS_SESSION_DIRECTORY_SIZE.getInt(config))
+        .build();
+
     serverMessageBus.subscribe(CLUSTER_SERVICE, this);
     jchannel.setReceiver(this);
 
+    serverMessageBus.addSubscribeListener(new SubscribeListener() {
+      @Override
+      public void onSubscribe(final SubscriptionEvent event) {
+        final String sessionId = event.getSessionId();
+        if (batcher.isBatching() && event.isRemote() && sessionId != null && ownedSessions.add(sessionId)) {
+          batcher.send(null, createSessionOwnershipMessage(ClusterCommands.SessionOwned, sessionId));
+        }
+      }
+    });
+
+    serverMessageBus.addQueueClosedListener(new QueueClosedListener() {
+      @Override
+      public void onQueueClosed(final QueueCloseEvent event) {
+        final String sessionId = event.getQueue().getSession().getSessionId();
+        if (ownedSessions.remove(sessionId)) {
+          batcher.send(null, createSessionOwnershipMessage(ClusterCommands.SessionReleased, sessionId));
+        }
+      }
+    });
+
     erraiService.addShutdownHook(new Runnable() {
       @Override
       public void run() {
+        flushScheduler.shutdown();
+        batcher.flush();
         jchannel.close();
         log.info("shut down jgroups clustering service");
       }
     });
 
-    sessionToNodeCache = CacheBuilder.newBuilder()
-        .maximumSize(100)
-        .build();
-
     log.info("starting errai clustering service.");
   }
 
   @Override
   public void receive(final org.jgroups.Message msg) {
     try {
-      final Message erraiMessage = getErraiMessage(msg);
-      erraiMessage.setResource(JGROUPS_MESSAGE_RESOURCE, msg);
+      if (ClusterFrame.isFrame(msg.getRawBuffer(), msg.getOffset(), msg.getLength())) {
+        final List<Message> erraiMessages
+            = ClusterFrame.decode(msg.getRawBuffer(), msg.getOffset(), msg.getLength(), CLUSTER_SERVICE);
 
-      if (busId.equals(erraiMessage.get(String.class, BusId))) {
-        return;
+        for (final Message erraiMessage : erraiMessages) {
+          dispatch(msg, erraiMessage);
+        }
+      }
+      else {
+        dispatch(msg, getErraiMessage(msg));
       }
-      erraiMessage.setFlag(RoutingFlag.FromPeer);
-
-      serverMessageBus.sendGlobal(erraiMessage);
     }
     catch (Exception e) {
       e.printStackTrace();
     }
   }
 
+  private void dispatch(final org.jgroups.Message msg, final Message erraiMessage) {
+    erraiMessage.setResource(JGROUPS_MESSAGE_RESOURCE, msg);
+
+    if (busId.equals(erraiMessage.get(String.class, BusId))) {
+      return;
+    }
+    erraiMessage.setFlag(RoutingFlag.FromPeer);
+
+    serverMessageBus.sendGlobal(erraiMessage);
+  }
+
+  /**
+   * Forgets the sessions of nodes that have left the cluster.
+   */
+  @Override
+  public void viewAccepted(final View view) {
+    final Set<Address> members = new HashSet<Address>(view.getMembers());
+    final Iterator<Map.Entry<String, Address>> iterator = sessionToNodeCache.asMap().entrySet().iterator();
+    while (iterator.hasNext()) {
+      if (!members.contains(iterator.next().getValue())) {
+        iterator.remove();
+      }
+    }
+  }
+
   @Override
   public void callback(final Message message) {
     final QueueSession queueSession = message.getResource(QueueSession.class, "Session");
@@ -157,12 +253,7 @@ public class JGroupsClusteringProvider extends ReceiverAdapter implements Cluste
               .copy(MessageId, message)
               .set(ClusterParts.SessId, sessionIdRequested);
 
-          try {
-            jchannel.send(jgroupsMessage.getSrc(), ErraiProtocol.encodePayload(replyMsg.getParts()));
-          }
-          catch (Exception e) {
-            e.printStackTrace();
-          }
+          batcher.send(jgroupsMessage.getSrc(), replyMsg);
         }
       }
       break;
@@ -181,12 +272,7 @@ public class JGroupsClusteringProvider extends ReceiverAdapter implements Cluste
         if (deferredMessage != null) {
           final Message dMessage = createForwardMessageFor(deferredMessage, messageId);
 
-          try {
-            jchannel.send(jgroupsMessage.getSrc(), ErraiProtocol.encodePayload(dMessage.getParts()));
-          }
-          catch (Exception e) {
-            e.printStackTrace();
-          }
+          batcher.send(jgroupsMessage.getSrc(), dMessage);
         }
       }
       break;
@@ -200,16 +286,28 @@ public class JGroupsClusteringProvider extends ReceiverAdapter implements Cluste
 
         final Message whoMessage = createWhoHandlesMessage(sessionId, subject, messageId);
 
-        try {
-          jchannel.send(getJGroupsMessage(whoMessage));
-        }
-        catch (Exception e) {
-          e.printStackTrace();
-        }
+        batcher.send(null, whoMessage);
 
         break;
       }
 
+      case SessionOwned: {
+        final org.jgroups.Message jgroupsMessage
+            = message.getResource(org.jgroups.Message.class, JGROUPS_MESSAGE_RESOURCE);
+
+        sessionToNodeCache.put(message.get(String.class, SessId), jgroupsMessage.getSrc());
+      }
+      break;
+
+      case SessionReleased: {
+        final String sessionId = message.get(String.class, SessId);
+        final org.jgroups.Message jgroupsMessage
+            = message.getResource(org.jgroups.Message.class, JGROUPS_MESSAGE_RESOURCE);
+
+        sessionToNodeCache.asMap().remove(sessionId, jgroupsMessage.getSrc());
+      }
+      break;
+
       case MessageForward: {
         final String payload = message.get(String.class, Payload);
         final Message forwardMessage = MessageFactory.createCommandMessage(IntrabusQueueSession.INSTANCE, payload);
@@ -232,12 +330,7 @@ public class JGroupsClusteringProvider extends ReceiverAdapter implements Cluste
             final String messageId = message.get(String.class, MessageId);
             final Message invalidRoute = createInvalidRouteMessage(sessId, forwardMessage.getSubject(), messageId);
 
-            try {
-              jchannel.send(jgroupsMessage.getSrc(), ErraiProtocol.encodePayload(invalidRoute.getParts()));
-            }
-            catch (Exception e2) {
-              e2.printStackTrace();
-            }
+            batcher.send(jgroupsMessage.getSrc(), invalidRoute);
             return;
           }
 
@@ -255,21 +348,11 @@ public class JGroupsClusteringProvider extends ReceiverAdapter implements Cluste
     final Address knownAddress = sessionToNodeCache.getIfPresent(sessionId);
     if (knownAddress != null) {
       final Message forwardMessage = createForwardMessageFor(serverMessageBus.getDeadLetterMessage(messageId), messageId);
-      try {
-        jchannel.send(knownAddress, ErraiProtocol.encodePayload(forwardMessage.getParts()));
-      }
-      catch (Exception e) {
-        e.printStackTrace();
-      }
+      batcher.send(knownAddress, forwardMessage);
     }
     else {
       final Message whoHandlesMessage = createWhoHandlesMessage(sessionId, subject, messageId);
-      try {
-        jchannel.send(getJGroupsMessage(whoHandlesMessage));
-      }
-      catch (Exception e) {
-        e.printStackTrace();
-      }
+      batcher.send(null, whoHandlesMessage);
     }
   }
 
@@ -314,21 +397,20 @@ public class JGroupsClusteringProvider extends ReceiverAdapter implements Cluste
         .set(MessageId, messageId);
   }
 
+  private Message createSessionOwnershipMessage(final ClusterCommands command, final String sessionId) {
+    return CommandMessage.create()
+        .set(ToSubject, CLUSTER_SERVICE)
+        .set(CommandType, command.name())
+        .set(SessId, sessionId)
+        .set(BusId, busId);
+  }
+
   @Override
   public void clusterTransmitGlobal(final Message message) {
-    try {
-      jchannel.send(getJGroupsMessage(createForwardMessageFor(message, null)));
-    }
-    catch (Exception e) {
-      e.printStackTrace();
-    }
+    batcher.send(null, createForwardMessageFor(message, null));
   }
 
   public static Message getErraiMessage(final org.jgroups.Message message) {
     return MessageFactory.createCommandMessage(IntrabusQueueSession.INSTANCE, String.valueOf(message.getObject()));
   }
-
-  private static org.jgroups.Message getJGroupsMessage(final Message message) {
-    return new org.jgroups.Message(null, null, ErraiProtocol.encodePayload(message.getParts()));
-  }
 }
@@ -23,7 +23,29 @@ import org.jgroups.JChannel;
  * @author Mike Brock
  */
 public enum JGroupsConfigAttribs {
-  JGROUPS_PROTOCOL_STACK("errai.jgroups.protocol_stack", JChannel.DEFAULT_PROTOCOL_STACK);
+  JGROUPS_PROTOCOL_STACK("errai.jgroups.protocol_stack", JChannel.DEFAULT_PROTOCOL_STACK),
+
+  /**
+   * The largest number of messages sent to another node in one frame. A value of 1, the default, turns batching off
+   * and sends every message on its own in the format that nodes without batching support understand. Batching can
+   * only be turned on once every node in the cluster supports it.
+   */
+  JGROUPS_BATCH_MAX_MESSAGES("errai.jgroups.batch.max_messages", "1"),
+
+  /**
+   * The number of UTF-8 encoded payload bytes at which a batch of messages is sent without waiting for more.
+   */
+  JGROUPS_BATCH_MAX_BYTES("errai.jgroups.batch.max_bytes", "65536"),
+
+  /**
+   * How long, in milliseconds, messages may wait to be batched before they are sent.
+   */
+  JGROUPS_BATCH_LINGER_MILLIS("errai.jgroups.batch.linger_ms", "2"),
+
+  /**
+   * The number of sessions for which the node that handles them is remembered.
+   */
+  JGROUPS_SESSION_DIRECTORY_SIZE("errai.jgroups.session_directory_size", "100000");
 
   protected final String attributeName;
   protected final String defaultValue;
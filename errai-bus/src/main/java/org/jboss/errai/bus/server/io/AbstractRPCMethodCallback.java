@@ -39,6 +39,7 @@ public abstract class AbstractRPCMethodCallback implements MessageCallback {
   protected final ServiceInstanceProvider serviceProvider;
   protected final Class[] targetTypes;
   protected final Method method;
+  protected final MethodInvoker invoker;
   protected final MessageBus bus;
 
   protected AbstractRPCMethodCallback(final ServiceInstanceProvider genericSvc,
@@ -46,6 +47,7 @@ public abstract class AbstractRPCMethodCallback implements MessageCallback {
                                       final MessageBus bus) {
     this.serviceProvider = genericSvc;
     this.targetTypes = (this.method = method).getParameterTypes();
+    this.invoker = MethodInvoker.of(method);
     this.bus = bus;
   }
 
@@ -61,7 +63,7 @@ public abstract class AbstractRPCMethodCallback implements MessageCallback {
 
     try {
       RpcContext.set(message);
-      return method.invoke(serviceProvider.get(message), parms.toArray(new Object[parms.size()]));
+      return invoker.invoke(serviceProvider.get(message), parms);
     }
     catch (QueueUnavailableException e) {
       throw e;
@@ -21,6 +21,7 @@ import org.jboss.errai.bus.server.api.MessageQueue;
 import org.jboss.errai.bus.server.io.buffers.Buffer;
 import org.jboss.errai.bus.server.io.buffers.BufferColor;
 import org.jboss.errai.bus.server.io.buffers.BufferOverflowException;
+import org.jboss.errai.bus.server.io.buffers.TransmissionBuffer;
 import org.jboss.errai.bus.server.util.MarkedByteWriteAdapter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -34,7 +35,7 @@ import java.util.concurrent.TimeUnit;
  *
  * @author Mike Brock
  */
-public class BufferDeliveryHandler implements MessageDeliveryHandler, Buffered, Cleanable {
+public class BufferDeliveryHandler implements MessageDeliveryHandler, Buffered, Cleanable, Drainable {
   private static Logger log = LoggerFactory.getLogger(BufferDeliveryHandler.class);
   private static final BufferDeliveryHandler singleton = new BufferDeliveryHandler();
 
@@ -63,7 +64,20 @@ public class BufferDeliveryHandler implements MessageDeliveryHandler, Buffered,
 
   @Override
   public void noop(final MessageQueue queue) throws IOException {
-    BufferHelper.encodeAndWriteNoop(queue.getBuffer(), queue.getBufferColor());
+    final Buffer buffer = queue.getBuffer();
+    final BufferColor bufferColor = queue.getBufferColor();
+
+    // the noop only has to make the reader look at the buffer. if data is already waiting, waking the reader does that
+    // without taking a segment, so that waking many queues after a broadcast does not overwrite the broadcast.
+    if (buffer instanceof TransmissionBuffer && ((TransmissionBuffer) buffer).wakeIfDataWaiting(bufferColor)) {
+      return;
+    }
+    BufferHelper.encodeAndWriteNoop(buffer, bufferColor);
+  }
+
+  @Override
+  public boolean isDrained(final MessageQueue queue) {
+    return !queue.messagesWaiting();
   }
 
   @Override
@@ -89,7 +103,8 @@ public class BufferDeliveryHandler implements MessageDeliveryHandler, Buffered,
     }
     catch (BufferOverflowException e) {
       queue.getBufferColor().getSequence().set(queue.getBuffer().getHeadSequence());
-      log.warn("buffer data was evicted for session " + queue.getSession().getSessionId()
+      log.warn(e.getLostMessageCount() + " message(s) were evicted from the buffer for session "
+          + queue.getSession().getSessionId()
           + " due to overflow condition. (consider increasing buffer size with errai.bus.buffer_size "
           + "in ErraiService.properties)");
     }
@@ -113,7 +128,8 @@ public class BufferDeliveryHandler implements MessageDeliveryHandler, Buffered,
     }
     catch (BufferOverflowException e) {
       queue.getBufferColor().getSequence().set(queue.getBuffer().getHeadSequence());
-      log.warn("buffer data was evicted for session " + queue.getSession().getSessionId()
+      log.warn(e.getLostMessageCount() + " message(s) were evicted from the buffer for session "
+          + queue.getSession().getSessionId()
           + " due to overflow condition. (consider increasing buffer size with errai.bus.buffer_size "
           + "in ErraiService.properties)");
     }
@@ -16,26 +16,68 @@
 
 package org.jboss.errai.bus.server.io;
 
-import static org.jboss.errai.marshalling.server.protocol.ErraiProtocolServer.encodePayloadToByteArrayInputStream;
-
 import org.jboss.errai.bus.client.api.messaging.Message;
 import org.jboss.errai.bus.server.io.buffers.Buffer;
 import org.jboss.errai.bus.server.io.buffers.BufferColor;
+import org.jboss.errai.bus.server.metrics.BusMetrics;
+import org.jboss.errai.marshalling.server.protocol.ErraiProtocolServer;
+import org.jboss.errai.marshalling.server.util.UnwrappedByteArrayOutputStream;
 
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
 
 /**
  * @author Mike Brock
  */
 public final class BufferHelper {
+  /**
+   * Scratch streams larger than this are not retained by the encoding thread after use.
+   */
+  private static final int MAX_RETAINED_SCRATCH_SIZE = 1024 * 256;
+
+  private static final ThreadLocal<UnwrappedByteArrayOutputStream> encodeScratch
+      = new ThreadLocal<UnwrappedByteArrayOutputStream>() {
+    @Override
+    protected UnwrappedByteArrayOutputStream initialValue() {
+      return new UnwrappedByteArrayOutputStream();
+    }
+  };
+
   private BufferHelper() {
   }
 
+  /**
+   * Encodes the message as UTF-8 into a per-thread scratch stream, which is reused from message to message, and then
+   * copies it into the buffer. The buffer needs the size of the payload before it allocates, so the payload cannot be
+   * encoded into the buffer itself. What this saves is the <tt>String</tt> for the envelope and a new <tt>byte[]</tt>
+   * for every message; values may still be built as strings, see
+   * {@link ErraiProtocolServer#encodePayload(java.io.OutputStream, java.util.Map)}. Messages which already carry an
+   * {@link EncodedPayload} are written without being encoded again.
+   */
   public static void encodeAndWrite(final Buffer buffer, final BufferColor bufferColor, final Message message)
           throws IOException {
 
-    buffer.write(encodePayloadToByteArrayInputStream(message.getParts()), bufferColor);
+    if (message instanceof PreEncodedMessage) {
+      final EncodedPayload payload = ((PreEncodedMessage) message).getEncodedPayload();
+      buffer.write(payload.getBytes(), 0, payload.getLength(), bufferColor);
+      payload.markDelivered();
+      BusMetrics.recordBytes(message.getSubject(), payload.getLength());
+      return;
+    }
+
+    final UnwrappedByteArrayOutputStream scratch = encodeScratch.get();
+    try {
+      ErraiProtocolServer.encodePayload(scratch, message.getParts());
+      buffer.write(scratch.toByteArray(), 0, scratch.size(), bufferColor);
+      BusMetrics.recordBytes(message.getSubject(), scratch.size());
+    }
+    finally {
+      if (scratch.toByteArray().length > MAX_RETAINED_SCRATCH_SIZE) {
+        encodeScratch.remove();
+      }
+      else {
+        scratch.reset();
+      }
+    }
   }
 
   private static final byte[] NOOP_ARRAY = new byte[0];
@@ -43,6 +85,6 @@ public final class BufferHelper {
   public static void encodeAndWriteNoop(final Buffer buffer, final BufferColor bufferColor)
           throws IOException {
 
-    buffer.write(NOOP_ARRAY.length, new ByteArrayInputStream(NOOP_ARRAY), bufferColor);
+    buffer.write(NOOP_ARRAY, 0, NOOP_ARRAY.length, bufferColor);
   }
 }
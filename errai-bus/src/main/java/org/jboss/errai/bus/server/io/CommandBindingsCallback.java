@@ -16,7 +16,6 @@
 
 package org.jboss.errai.bus.server.io;
 
-import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.util.HashMap;
 import java.util.Map;
@@ -41,8 +40,6 @@ public class CommandBindingsCallback extends MethodBindingCallback {
 
       verifyMethodSignature(method);
 
-      method.setAccessible(true);
-
       methodDispatchers.put(entry.getKey(), parmTypes.length == 0 ? new NoParamMethodDispatcher(delegate, method)
               : new DefaultMethodDispatcher(delegate, method));
     }
@@ -75,11 +72,11 @@ public class CommandBindingsCallback extends MethodBindingCallback {
 
   private abstract class MethodDispatcher {
     protected Object delegate;
-    protected Method method;
+    protected MethodInvoker invoker;
 
     protected MethodDispatcher(final Object delegate, final Method method) {
       this.delegate = delegate;
-      this.method = method;
+      this.invoker = MethodInvoker.of(method);
     }
 
     abstract void dispatch(Message m) throws Exception;
@@ -92,7 +89,7 @@ public class CommandBindingsCallback extends MethodBindingCallback {
 
     @Override
     void dispatch(final Message m) throws Exception {
-      method.invoke(delegate);
+      invoker.invoke(delegate);
     }
   }
 
@@ -102,8 +99,8 @@ public class CommandBindingsCallback extends MethodBindingCallback {
     }
 
     @Override
-    void dispatch(final Message m) throws IllegalArgumentException, IllegalAccessException, InvocationTargetException {
-      method.invoke(delegate, m);
+    void dispatch(final Message m) throws Exception {
+      invoker.invoke(delegate, m);
     }
   }
 }
@@ -0,0 +1,59 @@
+/*
+ * Copyright (C) 2016 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.jboss.errai.bus.server.io;
+
+import org.jboss.errai.bus.client.protocols.CompactWireCodec;
+
+import java.io.IOException;
+
+/**
+ * A {@link QueueChannel} which encodes all payloads with the {@link CompactWireCodec compact wire protocol} before
+ * writing them to the underlying channel. Payloads are encoded and handed on under a lock, so that they reach the
+ * underlying channel in the order the codec's dictionary was built in.
+ */
+public class CompactWireChannel implements FlowControlledChannel {
+  private final QueueChannel channel;
+  private final FlowControlledChannel flowControlledChannel;
+  private final CompactWireCodec codec;
+
+  public CompactWireChannel(final QueueChannel channel, final CompactWireCodec codec) {
+    this.channel = channel;
+    this.flowControlledChannel = channel instanceof FlowControlledChannel ? (FlowControlledChannel) channel : null;
+    this.codec = codec;
+  }
+
+  @Override
+  public synchronized void write(final String data) throws IOException {
+    channel.write(codec.encode(data));
+  }
+
+  @Override
+  public boolean isConnected() {
+    return channel.isConnected();
+  }
+
+  @Override
+  public boolean isWritable() {
+    return flowControlledChannel == null || flowControlledChannel.isWritable();
+  }
+
+  @Override
+  public long getPendingBytes() {
+    return flowControlledChannel == null ? 0 : flowControlledChannel.getPendingBytes();
+  }
+}
@@ -19,19 +19,33 @@ package org.jboss.errai.bus.server.io;
 import org.jboss.errai.bus.client.api.messaging.Message;
 import org.jboss.errai.bus.client.util.BusToolsCli;
 import org.jboss.errai.bus.server.api.MessageQueue;
+import org.jboss.errai.bus.server.io.buffers.BufferOverflowException;
+import org.jboss.errai.bus.server.metrics.BusMetrics;
 import org.jboss.errai.bus.server.util.LocalContext;
+import org.jboss.errai.bus.server.util.MarkedByteWriteAdapter;
 import org.jboss.errai.marshalling.server.util.UnwrappedByteArrayOutputStream;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 
 /**
+ * Delivers messages straight to a {@link QueueChannel}. If the channel is a {@link FlowControlledChannel} which is
+ * not writable, messages are stored in the queue's buffer instead, and every message that follows is buffered too
+ * until the queue is woken up and the backlog has been written to the channel.
+ *
  * @author Mike Brock
  */
-public class DirectDeliveryHandler implements MessageDeliveryHandler, Wakeable, DirectChannel {
+public class DirectDeliveryHandler implements MessageDeliveryHandler, Wakeable, DirectChannel, Drainable {
   private static final Logger log = LoggerFactory.getLogger(DirectDeliveryHandler.class);
   private final QueueChannel directSocketChannel;
+  private final FlowControlledChannel flowControlledChannel;
+
+  /**
+   * True while messages are being held in the queue's buffer. Guarded by <tt>this</tt>.
+   */
+  private volatile boolean backlogged;
 
   public static MessageDeliveryHandler createFor(final QueueChannel channel) {
     return new DirectDeliveryHandler(channel);
@@ -39,12 +53,37 @@ public class DirectDeliveryHandler implements MessageDeliveryHandler, Wakeable,
 
   private DirectDeliveryHandler(final QueueChannel directSocketChannel) {
     this.directSocketChannel = directSocketChannel;
+    this.flowControlledChannel = directSocketChannel instanceof FlowControlledChannel
+        ? (FlowControlledChannel) directSocketChannel : null;
   }
 
   @Override
   public boolean deliver(final MessageQueue queue, final Message message) throws IOException {
     try {
-      directSocketChannel.write("[" + BusToolsCli.encodeMessage(message) + "]");
+      if (flowControlledChannel != null && (backlogged || !flowControlledChannel.isWritable())) {
+        synchronized (this) {
+          if (backlogged || !flowControlledChannel.isWritable()) {
+            backlogged = true;
+            BufferHelper.encodeAndWrite(queue.getBuffer(), queue.getBufferColor(), message);
+
+            // the channel may have become writable again before the message was buffered, in which case no
+            // wake-up will follow.
+            if (flowControlledChannel.isWritable()) {
+              drain(queue);
+              backlogged = false;
+            }
+            return true;
+          }
+        }
+      }
+
+      final String encoded = BusToolsCli.encodeMessage(message);
+      directSocketChannel.write("[" + encoded + "]");
+      // the channel encodes the frame, so this counts characters; they only differ from bytes outside of ASCII.
+      BusMetrics.recordBytes(message.getSubject(), encoded.length());
+      if (message instanceof PreEncodedMessage) {
+        ((PreEncodedMessage) message).getEncodedPayload().markDelivered();
+      }
       return true;
     }
     catch (Throwable e) {
@@ -58,11 +97,54 @@ public class DirectDeliveryHandler implements MessageDeliveryHandler, Wakeable,
 
   @Override
   public void onWake(MessageQueue queue) throws IOException {
-    UnwrappedByteArrayOutputStream outputStream = new UnwrappedByteArrayOutputStream();
-    ByteWriteAdapter adapter = new OutputStreamWriteAdapter(outputStream);
-    queue.getBuffer().read(adapter, queue.getBufferColor(), new MultiMessageFilter());
+    if (flowControlledChannel == null) {
+      drain(queue);
+      return;
+    }
+
+    synchronized (this) {
+      if (flowControlledChannel.isWritable()) {
+        drain(queue);
+        backlogged = false;
+      }
+    }
+  }
+
+  private void drain(final MessageQueue queue) throws IOException {
+    final UnwrappedByteArrayOutputStream outputStream = new UnwrappedByteArrayOutputStream();
+    final MarkedByteWriteAdapter adapter = new MarkedByteWriteAdapter(new OutputStreamWriteAdapter(outputStream));
+    try {
+      queue.getBuffer().read(adapter, queue.getBufferColor(), new MultiMessageFilter());
+    }
+    catch (BufferOverflowException e) {
+      log.warn(e.getLostMessageCount() + " message(s) were evicted from the buffer for session "
+          + queue.getSession().getSessionId() + " while the socket was not writable");
+      return;
+    }
+
+    if (adapter.getBytesWritten() > 2) {
+      directSocketChannel.write(new String(outputStream.toByteArray(), 0, outputStream.size(), StandardCharsets.UTF_8));
+    }
+  }
 
-    directSocketChannel.write(new String(outputStream.toByteArray(), 0, outputStream.size()));
+  /**
+   * Returns the number of bytes written to the channel which have not yet been sent, or 0 if the channel does not
+   * report it.
+   */
+  public long getPendingBytes() {
+    return flowControlledChannel == null ? 0 : flowControlledChannel.getPendingBytes();
+  }
+
+  /**
+   * Returns true if messages are currently being held in the queue's buffer because the channel is not writable.
+   */
+  public boolean isBacklogged() {
+    return backlogged;
+  }
+
+  @Override
+  public boolean isDrained(final MessageQueue queue) {
+    return flowControlledChannel == null || (!backlogged && flowControlledChannel.isWritable());
   }
 
   @Override
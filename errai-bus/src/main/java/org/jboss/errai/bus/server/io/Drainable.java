@@ -0,0 +1,28 @@
+/*
+ * Copyright (C) 2016 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.errai.bus.server.io;
+
+import org.jboss.errai.bus.server.api.MessageQueue;
+
+/**
+ * Implementing this interface on a {@link MessageDeliveryHandler} indicates that the handler can tell whether the
+ * messages delivered to a queue have been sent on to the remote bus. Queues hold back conflated messages until they
+ * have drained, see {@link MessageConflator}.
+ */
+public interface Drainable {
+  public boolean isDrained(MessageQueue queue);
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright (C) 2016 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.errai.bus.server.io;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.jboss.errai.marshalling.server.protocol.ErraiProtocolServer;
+
+/**
+ * A message payload that has been encoded to the wire format once, so that it can be written to any number of
+ * queues without being marshalled again. The encoding never includes the
+ * {@link org.jboss.errai.common.client.protocols.MessageParts#SessionID} part, which is what makes a payload
+ * addressed to many sessions shareable.
+ *
+ * @see PreEncodedMessage
+ */
+public final class EncodedPayload {
+  private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+  private final byte[] bytes;
+  private volatile String string;
+  private final AtomicInteger deliveries = new AtomicInteger();
+  private final AtomicLong bytesDelivered;
+
+  private EncodedPayload(final byte[] bytes, final AtomicLong bytesDelivered) {
+    this.bytes = bytes;
+    this.bytesDelivered = bytesDelivered;
+  }
+
+  /**
+   * Encodes the specified message parts.
+   *
+   * @param parts
+   *     the message parts to encode.
+   *
+   * @return the encoded payload.
+   */
+  public static EncodedPayload encode(final Map<String, Object> parts) {
+    return encode(parts, null);
+  }
+
+  /**
+   * Encodes the specified message parts. Whenever the payload is written to a queue, its length is added to the
+   * specified counter. Since messages may be written to their queues after they were sent, this is the only point at
+   * which the delivered bytes are known.
+   *
+   * @param parts
+   *     the message parts to encode.
+   * @param bytesDelivered
+   *     the counter of delivered bytes, or null.
+   *
+   * @return the encoded payload.
+   */
+  public static EncodedPayload encode(final Map<String, Object> parts, final AtomicLong bytesDelivered) {
+    final ByteArrayOutputStream stream = new ByteArrayOutputStream(1024);
+    try {
+      ErraiProtocolServer.encodePayload(stream, parts);
+    }
+    catch (IOException e) {
+      throw new AssertionError("writing to an in-memory stream cannot fail");
+    }
+    return new EncodedPayload(stream.toByteArray(), bytesDelivered);
+  }
+
+  /**
+   * Returns the UTF-8 encoded payload. The returned array is shared and must not be modified.
+   */
+  public byte[] getBytes() {
+    return bytes;
+  }
+
+  public int getLength() {
+    return bytes.length;
+  }
+
+  /**
+   * Records that this payload has been written to a queue.
+   */
+  public void markDelivered() {
+    deliveries.incrementAndGet();
+    if (bytesDelivered != null) {
+      bytesDelivered.addAndGet(bytes.length);
+    }
+  }
+
+  /**
+   * Returns the number of queues this payload has been written to.
+   */
+  public int getDeliveryCount() {
+    return deliveries.get();
+  }
+
+  @Override
+  public String toString() {
+    String s = string;
+    if (s == null) {
+      string = s = new String(bytes, UTF_8);
+    }
+    return s;
+  }
+}
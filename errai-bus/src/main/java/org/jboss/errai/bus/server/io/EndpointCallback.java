@@ -19,7 +19,6 @@ package org.jboss.errai.bus.server.io;
 import org.jboss.errai.bus.client.api.messaging.Message;
 import org.jboss.errai.bus.client.api.messaging.MessageCallback;
 import org.jboss.errai.bus.client.api.base.MessageDeliveryFailure;
-import org.mvel2.DataConversion;
 
 import java.lang.reflect.Method;
 import java.util.List;
@@ -31,7 +30,7 @@ import java.util.List;
 public class EndpointCallback implements MessageCallback {
   private final Object genericSvc;
   private final Class[] targetTypes;
-  private final Method method;
+  private final MethodInvoker invoker;
 
   /**
    * Initializes the service and endpoint method
@@ -43,7 +42,8 @@ public class EndpointCallback implements MessageCallback {
    */
   public EndpointCallback(final Object genericSvc, final Method method) {
     this.genericSvc = genericSvc;
-    this.targetTypes = (this.method = method).getParameterTypes();
+    this.targetTypes = method.getParameterTypes();
+    this.invoker = MethodInvoker.withConversion(method);
   }
 
   /**
@@ -60,23 +60,12 @@ public class EndpointCallback implements MessageCallback {
       throw new MessageDeliveryFailure("wrong number of arguments sent to endpoint. (received: "
               + (parms == null ? 0 : parms.size()) + "; required: " + targetTypes.length + ")");
     }
-    else if (parms != null) {
-      for (int i = 0; i < parms.size(); i++) {
-        final Object p = parms.get(i);
-
-        if (p != null && !targetTypes[i].isAssignableFrom(p.getClass())) {
-          if (DataConversion.canConvert(targetTypes[i], p.getClass())) {
-            parms.set(i, DataConversion.convert(p, targetTypes[i]));
-          }
-          else {
-            throw new MessageDeliveryFailure("type mismatch in method parameters");
-          }
-        }
-      }
-    }
 
     try {
-      method.invoke(genericSvc, parms);
+      invoker.invoke(genericSvc, parms);
+    }
+    catch (IllegalArgumentException e) {
+      throw new MessageDeliveryFailure("type mismatch in method parameters", e);
     }
     catch (Exception e) {
       throw new MessageDeliveryFailure("error invoking endpoint", e);
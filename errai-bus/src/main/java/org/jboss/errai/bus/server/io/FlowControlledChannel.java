@@ -0,0 +1,36 @@
+/*
+ * Copyright (C) 2016 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.jboss.errai.bus.server.io;
+
+/**
+ * A {@link QueueChannel} whose transport applies back-pressure. While the channel is not writable,
+ * {@link DirectDeliveryHandler} stores messages in the queue's buffer instead of writing them to the channel. The
+ * transport must {@link org.jboss.errai.bus.server.api.MessageQueue#wake() wake} the queue once it becomes writable
+ * again, so that the buffered messages are written.
+ */
+public interface FlowControlledChannel extends QueueChannel {
+  /**
+   * Returns true if data written to the channel now would be sent without queueing up beyond the transport's limits.
+   */
+  public boolean isWritable();
+
+  /**
+   * Returns the number of bytes that have been written to the channel but not yet sent to the remote side.
+   */
+  public long getPendingBytes();
+}
@@ -0,0 +1,142 @@
+/*
+ * Copyright (C) 2016 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.errai.bus.server.io;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.jboss.errai.bus.client.api.messaging.Message;
+
+/**
+ * Keeps track of the subjects for which outbound messages are conflated, and of how many messages were conflated away
+ * for each of them. A queue holds conflated messages back while it has messages that have not yet been sent to the
+ * remote bus, and a newer message with the same {@link #getConflationKey(Message) conflation key} replaces the one
+ * that is pending.
+ */
+public class MessageConflator {
+  /**
+   * The key part of subjects whose messages all replace each other.
+   */
+  private static final String SUBJECT_ONLY = "";
+
+  private final Map<String, String> keyParts = new ConcurrentHashMap<String, String>();
+  private final Map<String, AtomicLong> conflatedCounts = new ConcurrentHashMap<String, AtomicLong>();
+
+  /**
+   * Enables conflation for the specified subject.
+   *
+   * @param subject
+   *     the subject to conflate.
+   * @param keyPart
+   *     the message part identifying the messages which replace each other, or null or an empty string if all
+   *     messages to the subject replace each other.
+   */
+  public void conflate(final String subject, final String keyPart) {
+    keyParts.put(subject, keyPart == null ? SUBJECT_ONLY : keyPart);
+    if (!conflatedCounts.containsKey(subject)) {
+      conflatedCounts.put(subject, new AtomicLong());
+    }
+  }
+
+  public boolean isConflated(final String subject) {
+    return subject != null && keyParts.containsKey(subject);
+  }
+
+  /**
+   * Returns the key under which the specified message replaces earlier pending messages, or null if the message is not
+   * to be conflated.
+   */
+  public Object getConflationKey(final Message message) {
+    final String subject = message.getSubject();
+    if (subject == null) {
+      return null;
+    }
+
+    final String keyPart = keyParts.get(subject);
+    if (keyPart == null) {
+      return null;
+    }
+    else if (keyPart.equals(SUBJECT_ONLY)) {
+      return new ConflationKey(subject, null);
+    }
+
+    final Object value = message.getParts().get(keyPart);
+    return value == null ? null : new ConflationKey(subject, value);
+  }
+
+  /**
+   * Records that a pending message to the specified subject was replaced by a newer one.
+   */
+  public void messageConflated(final String subject) {
+    final AtomicLong count = conflatedCounts.get(subject);
+    if (count != null) {
+      count.incrementAndGet();
+    }
+  }
+
+  /**
+   * Returns the number of messages to the specified subject which were discarded because a newer message replaced
+   * them.
+   */
+  public long getConflatedCount(final String subject) {
+    final AtomicLong count = conflatedCounts.get(subject);
+    return count == null ? 0 : count.get();
+  }
+
+  /**
+   * Returns the number of messages conflated away so far, by subject.
+   */
+  public Map<String, Long> getConflatedCounts() {
+    final Map<String, Long> counts = new HashMap<String, Long>();
+    for (final Map.Entry<String, AtomicLong> entry : conflatedCounts.entrySet()) {
+      counts.put(entry.getKey(), entry.getValue().get());
+    }
+    return Collections.unmodifiableMap(counts);
+  }
+
+  private static final class ConflationKey {
+    private final String subject;
+    private final Object value;
+
+    private ConflationKey(final String subject, final Object value) {
+      this.subject = subject;
+      this.value = value;
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+      if (this == o) return true;
+      if (!(o instanceof ConflationKey)) return false;
+
+      final ConflationKey that = (ConflationKey) o;
+      return subject.equals(that.subject) && (value == null ? that.value == null : value.equals(that.value));
+    }
+
+    @Override
+    public int hashCode() {
+      return 31 * subject.hashCode() + (value == null ? 0 : value.hashCode());
+    }
+
+    @Override
+    public String toString() {
+      return value == null ? subject : subject + ":" + value;
+    }
+  }
+}
@@ -89,7 +89,16 @@ public class MessageFactory {
 
 
   public static List<Message> createCommandMessage(QueueSession session, HttpServletRequest request) throws IOException {
-    EJValue value = JSONStreamDecoder.decode(request.getInputStream());
+    return createCommandMessage(session, request, request.getInputStream());
+  }
+
+  /**
+   * Creates the command messages of a request whose body has already been read, for instance by a non-blocking
+   * {@link javax.servlet.ReadListener}.
+   */
+  public static List<Message> createCommandMessage(QueueSession session, HttpServletRequest request,
+                                                   InputStream body) throws IOException {
+    EJValue value = JSONStreamDecoder.decode(body);
     if (value.isObject() != null) {
       return Collections.singletonList(from(getParts(value), session, request));
     }
@@ -0,0 +1,346 @@
+/*
+ * Copyright (C) 2016 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.errai.bus.server.io;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.List;
+
+import org.mvel2.DataConversion;
+
+/**
+ * Invokes a service method through a {@link MethodHandle} that is bound once, when the endpoint is registered,
+ * instead of through {@link Method#invoke(Object, Object...)}.
+ * <p/>
+ * Methods with up to four parameters are called with their arguments taken straight from the list of parameters in
+ * the message, without allocating an <tt>Object[]</tt>. The check (and, optionally, conversion) applied to each
+ * argument is also decided up front, from the declared parameter types.
+ * <p/>
+ * Failures follow the contract of {@link Method#invoke(Object, Object...)}: an exception thrown by the method itself
+ * is wrapped in an {@link InvocationTargetException}, and an argument that is not compatible with its parameter
+ * results in an {@link IllegalArgumentException}.
+ */
+public final class MethodInvoker {
+  private static final int MAX_UNSPREAD_ARITY = 4;
+
+  private final Method method;
+  private final MethodHandle handle;
+  private final Class<?>[] parameterTypes;
+  private final Class<?>[] checkedTypes;
+  private final boolean convertArguments;
+
+  private MethodInvoker(final Method method, final boolean convertArguments) {
+    this.method = method;
+    this.parameterTypes = method.getParameterTypes();
+    this.convertArguments = convertArguments;
+    this.checkedTypes = new Class<?>[parameterTypes.length];
+    for (int i = 0; i < parameterTypes.length; i++) {
+      // Object parameters accept anything, so no check is planned for them.
+      checkedTypes[i] = parameterTypes[i] == Object.class ? null : box(parameterTypes[i]);
+    }
+    this.handle = createHandle(method);
+  }
+
+  /**
+   * Creates an invoker for the specified method. Arguments must be instances of the declared parameter types, or
+   * for primitive parameters, wrappers of a primitive that widens to the parameter type.
+   *
+   * @param method
+   *     the method to invoke.
+   *
+   * @return an invoker for the method.
+   */
+  public static MethodInvoker of(final Method method) {
+    return new MethodInvoker(method, false);
+  }
+
+  /**
+   * Creates an invoker for the specified method. Arguments that are not instances of the declared parameter types
+   * are converted using {@link DataConversion} where possible.
+   *
+   * @param method
+   *     the method to invoke.
+   *
+   * @return an invoker for the method.
+   */
+  public static MethodInvoker withConversion(final Method method) {
+    return new MethodInvoker(method, true);
+  }
+
+  public Method getMethod() {
+    return method;
+  }
+
+  public int getParameterCount() {
+    return parameterTypes.length;
+  }
+
+  /**
+   * Invokes the method on the specified instance with no arguments.
+   *
+   * @param target
+   *     the instance to invoke the method on. Ignored for static methods.
+   *
+   * @return the value returned by the method, or null for a void method.
+   */
+  public Object invoke(final Object target) throws InvocationTargetException {
+    return invoke(target, (Object[]) null);
+  }
+
+  /**
+   * Invokes the method on the specified instance.
+   *
+   * @param target
+   *     the instance to invoke the method on. Ignored for static methods.
+   * @param args
+   *     the arguments to pass to the method. May be null for a method without parameters. If this invoker converts
+   *     arguments, converted values are written back to the list.
+   *
+   * @return the value returned by the method, or null for a void method.
+   */
+  public Object invoke(final Object target, final List<Object> args) throws InvocationTargetException {
+    checkArgumentCount(args == null ? 0 : args.size());
+    for (int i = 0; i < parameterTypes.length; i++) {
+      final Object arg = args.get(i);
+      final Object checked = checkArgument(i, arg);
+      if (checked != arg) {
+        args.set(i, checked);
+      }
+    }
+
+    try {
+      switch (parameterTypes.length) {
+        case 0:
+          return handle.invokeExact(target);
+        case 1:
+          return handle.invokeExact(target, args.get(0));
+        case 2:
+          return handle.invokeExact(target, args.get(0), args.get(1));
+        case 3:
+          return handle.invokeExact(target, args.get(0), args.get(1), args.get(2));
+        case 4:
+          return handle.invokeExact(target, args.get(0), args.get(1), args.get(2), args.get(3));
+        default:
+          return handle.invokeExact(target, args.toArray(new Object[args.size()]));
+      }
+    }
+    catch (Throwable t) {
+      throw new InvocationTargetException(t);
+    }
+  }
+
+  /**
+   * Invokes the method on the specified instance.
+   *
+   * @param target
+   *     the instance to invoke the method on. Ignored for static methods.
+   * @param args
+   *     the arguments to pass to the method. May be null for a method without parameters. If this invoker converts
+   *     arguments, converted values are written back to the array.
+   *
+   * @return the value returned by the method, or null for a void method.
+   */
+  public Object invoke(final Object target, final Object... args) throws InvocationTargetException {
+    checkArgumentCount(args == null ? 0 : args.length);
+    for (int i = 0; i < parameterTypes.length; i++) {
+      args[i] = checkArgument(i, args[i]);
+    }
+
+    try {
+      switch (parameterTypes.length) {
+        case 0:
+          return handle.invokeExact(target);
+        case 1:
+          return handle.invokeExact(target, args[0]);
+        case 2:
+          return handle.invokeExact(target, args[0], args[1]);
+        case 3:
+          return handle.invokeExact(target, args[0], args[1], args[2]);
+        case 4:
+          return handle.invokeExact(target, args[0], args[1], args[2], args[3]);
+        default:
+          return handle.invokeExact(target, args);
+      }
+    }
+    catch (Throwable t) {
+      throw new InvocationTargetException(t);
+    }
+  }
+
+  private void checkArgumentCount(final int count) {
+    if (count != parameterTypes.length) {
+      throw new IllegalArgumentException("wrong number of arguments for " + method + " (received: " + count
+          + "; required: " + parameterTypes.length + ")");
+    }
+  }
+
+  private Object checkArgument(final int index, final Object arg) {
+    final Class<?> checkedType = checkedTypes[index];
+
+    if (arg == null) {
+      if (parameterTypes[index].isPrimitive()) {
+        throw new IllegalArgumentException("null passed for primitive parameter " + index + " of " + method);
+      }
+      return null;
+    }
+    else if (checkedType == null || checkedType.isInstance(arg)) {
+      return arg;
+    }
+
+    if (parameterTypes[index].isPrimitive()) {
+      final Object widened = widen(arg, parameterTypes[index]);
+      if (widened != null) {
+        return widened;
+      }
+    }
+
+    if (convertArguments && DataConversion.canConvert(parameterTypes[index], arg.getClass())) {
+      return DataConversion.convert(arg, parameterTypes[index]);
+    }
+    else {
+      throw new IllegalArgumentException("type mismatch for parameter " + index + " of " + method + ": expected "
+          + parameterTypes[index].getName() + " but got " + arg.getClass().getName());
+    }
+  }
+
+  /**
+   * Applies a widening primitive conversion (JLS 5.1.2) to a boxed argument, as
+   * {@link Method#invoke(Object, Object...)} does, e.g. to pass an {@link Integer} to a <tt>long</tt> parameter.
+   *
+   * @return the widened value, boxed as the parameter type, or null if the argument does not widen to it.
+   */
+  private static Object widen(final Object arg, final Class<?> type) {
+    final int from = wideningRank(arg.getClass());
+    if (from < 0 || type == char.class || wideningRank(box(type)) <= from) {
+      return null;
+    }
+
+    final Number number = arg instanceof Character ? Integer.valueOf((Character) arg) : (Number) arg;
+    if (type == short.class) {
+      return number.shortValue();
+    }
+    else if (type == int.class) {
+      return number.intValue();
+    }
+    else if (type == long.class) {
+      return number.longValue();
+    }
+    else if (type == float.class) {
+      return number.floatValue();
+    }
+    else {
+      return number.doubleValue();
+    }
+  }
+
+  /**
+   * Orders the wrapper types so that a primitive widens to every type of a higher rank, with the exception of
+   * <tt>char</tt>, which nothing widens to.
+   *
+   * @return the rank of the wrapper type, or -1 for any other type.
+   */
+  private static int wideningRank(final Class<?> type) {
+    if (type == Byte.class) {
+      return 0;
+    }
+    else if (type == Short.class || type == Character.class) {
+      return 1;
+    }
+    else if (type == Integer.class) {
+      return 2;
+    }
+    else if (type == Long.class) {
+      return 3;
+    }
+    else if (type == Float.class) {
+      return 4;
+    }
+    else if (type == Double.class) {
+      return 5;
+    }
+    else {
+      return -1;
+    }
+  }
+
+  /**
+   * Adapts the method to the shape <tt>(Object target, Object arg0, ..., Object argN) Object</tt> for up to
+   * {@link #MAX_UNSPREAD_ARITY} parameters, and <tt>(Object target, Object[] args) Object</tt> beyond that, so that
+   * it can be called with {@link MethodHandle#invokeExact(Object...)}.
+   */
+  private static MethodHandle createHandle(final Method method) {
+    try {
+      method.setAccessible(true);
+    }
+    catch (SecurityException e) {
+      // fall back to the accessibility of the method itself
+    }
+
+    MethodHandle handle;
+    try {
+      handle = MethodHandles.lookup().unreflect(method);
+    }
+    catch (IllegalAccessException e) {
+      throw new RuntimeException("cannot access method: " + method, e);
+    }
+
+    if (Modifier.isStatic(method.getModifiers())) {
+      handle = MethodHandles.dropArguments(handle, 0, Object.class);
+    }
+
+    final int arity = method.getParameterTypes().length;
+    handle = handle.asType(MethodType.genericMethodType(arity + 1));
+    if (arity > MAX_UNSPREAD_ARITY) {
+      handle = handle.asSpreader(Object[].class, arity);
+    }
+    return handle;
+  }
+
+  private static Class<?> box(final Class<?> type) {
+    if (!type.isPrimitive()) {
+      return type;
+    }
+    else if (type == int.class) {
+      return Integer.class;
+    }
+    else if (type == long.class) {
+      return Long.class;
+    }
+    else if (type == boolean.class) {
+      return Boolean.class;
+    }
+    else if (type == double.class) {
+      return Double.class;
+    }
+    else if (type == float.class) {
+      return Float.class;
+    }
+    else if (type == short.class) {
+      return Short.class;
+    }
+    else if (type == byte.class) {
+      return Byte.class;
+    }
+    else {
+      return Character.class;
+    }
+  }
+}
@@ -16,33 +16,106 @@
 
 package org.jboss.errai.bus.server.io;
 
-import static java.lang.System.nanoTime;
-
 import org.jboss.errai.bus.server.api.MessageQueue;
 import org.jboss.errai.bus.server.io.buffers.BufferFilter;
+import org.jboss.errai.bus.server.service.ErraiConfigAttribs;
+import org.jboss.errai.bus.server.service.ErraiServiceConfigurator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
-import java.io.BufferedInputStream;
-import java.io.BufferedOutputStream;
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
+ * Pages the waiting data of a {@link MessageQueue} out of the transmission buffer to a file on disk, and back in.
+ * <p/>
+ * All file I/O goes through {@link FileChannel}s in chunks of {@value #CHUNK_SIZE} bytes. The total amount of
+ * page data on disk is bounded by a global quota (see {@link ErraiConfigAttribs#BUS_PAGING_DISK_QUOTA}). What
+ * happens to a queue which cannot be paged within the quota is decided by the {@link EvictionPolicy}, configured
+ * with {@link ErraiConfigAttribs#BUS_PAGING_EVICTION_POLICY}.
+ *
  * @author Mike Brock
  */
 public final class PageUtil {
   private PageUtil() {
   }
 
+  private static final Logger log = LoggerFactory.getLogger(PageUtil.class);
+
+  /**
+   * Decides what happens to a queue whose waiting data does not fit into the disk quota.
+   */
+  public enum EvictionPolicy {
+    /**
+     * The data is left in the transmission buffer, where it may eventually be overwritten by newer data.
+     */
+    KeepInBuffer,
+
+    /**
+     * The data already paged out for the queue is discarded to make room for the data that is waiting now.
+     */
+    DiscardPaged
+  }
+
+  private static final int CHUNK_SIZE = 1024 * 64;
+
   private static final long DOWNGRADE_THRESHOLD = Boolean.getBoolean("org.jboss.errai.debugmode") ?
-      TimeUnit.SECONDS.toNanos(1600) : TimeUnit.SECONDS.toNanos(10);
+      TimeUnit.SECONDS.toMillis(1600) : TimeUnit.SECONDS.toMillis(10);
 
   private static final String tempDir = System.getProperty("java.io.tmpdir");
 
+  private static volatile long diskQuota = 256L * 1024 * 1024;
+  private static volatile EvictionPolicy evictionPolicy = EvictionPolicy.KeepInBuffer;
+
+  private static final AtomicLong diskUsage = new AtomicLong();
+  private static final AtomicInteger spillFileCount = new AtomicInteger();
+  private static final AtomicLong pageOutCount = new AtomicLong();
+  private static final AtomicLong pagedOutBytes = new AtomicLong();
+  private static final AtomicLong pagedInBytes = new AtomicLong();
+  private static final AtomicLong pageInCount = new AtomicLong();
+  private static final AtomicLong pageInNanos = new AtomicLong();
+  private static final AtomicLong evictedBytes = new AtomicLong();
+  private static final AtomicLong rejectedPageOuts = new AtomicLong();
+
+  private static final ThreadLocal<ByteBuffer> chunkBuffer = new ThreadLocal<ByteBuffer>() {
+    @Override
+    protected ByteBuffer initialValue() {
+      return ByteBuffer.allocateDirect(CHUNK_SIZE);
+    }
+  };
+
+  /**
+   * Reads the paging quota and eviction policy from the specified configuration.
+   */
+  public static void configure(final ErraiServiceConfigurator config) {
+    final Integer quota = ErraiConfigAttribs.BUS_PAGING_DISK_QUOTA.getInt(config);
+    if (quota != null) {
+      diskQuota = quota * 1024L * 1024L;
+    }
+
+    final String policy = ErraiConfigAttribs.BUS_PAGING_EVICTION_POLICY.get(config);
+    if (policy == null) {
+      return;
+    }
+
+    try {
+      evictionPolicy = EvictionPolicy.valueOf(policy);
+    }
+    catch (IllegalArgumentException e) {
+      throw new RuntimeException("unrecognized option for property "
+          + ErraiConfigAttribs.BUS_PAGING_EVICTION_POLICY.getAttributeName() + ": " + policy);
+    }
+  }
+
   public static String getPageFileName(final MessageQueue queue) {
     return tempDir + "/queuecache/" + queue.getSession().getSessionId().replaceAll("\\-", "_");
   }
@@ -51,41 +124,95 @@ public final class PageUtil {
     final File pageFile = new File(getPageFileName(queue));
     if (!pageFile.exists()) {
       pageFile.getParentFile().mkdirs();
-      pageFile.createNewFile();
+      if (pageFile.createNewFile()) {
+        spillFileCount.incrementAndGet();
+      }
       pageFile.deleteOnExit();
     }
     return pageFile;
   }
 
   public static void writeToPageFile(final MessageQueue queue, final InputStream inputStream, final boolean append) {
+    synchronized (queue.getPageLock()) {
+      try {
+        final File pageFile = getOrCreatePageFile(queue);
+        final RandomAccessFile file = new RandomAccessFile(pageFile, "rw");
+        try {
+          final FileChannel channel = file.getChannel();
+          final long previousSize = channel.size();
+          final long start;
+          if (append) {
+            start = previousSize;
+          }
+          else {
+            channel.truncate(0);
+            start = 0;
+          }
 
-    try {
-      final OutputStream outputStream
-          = new BufferedOutputStream(new FileOutputStream(getOrCreatePageFile(queue), append));
-
-      int read;
-      while ((read = inputStream.read()) != -1) outputStream.write(read);
-
-      outputStream.flush();
-      outputStream.close();
+          final ReadableByteChannel source = Channels.newChannel(inputStream);
+          long position = start;
+          long transferred;
+          while ((transferred = channel.transferFrom(source, position, CHUNK_SIZE)) > 0) {
+            position += transferred;
+          }
 
-    }
-    catch (IOException e) {
-      throw new RuntimeException("paging error", e);
+          diskUsage.addAndGet(position - previousSize);
+          pageOutCount.incrementAndGet();
+          pagedOutBytes.addAndGet(position - start);
+        }
+        finally {
+          file.close();
+        }
+      }
+      catch (IOException e) {
+        throw new RuntimeException("paging error", e);
+      }
     }
   }
 
+  /**
+   * Pages the data waiting for the specified queue out to disk, after any data paged out for it earlier.
+   *
+   * @return true if the queue still has data paged out by an earlier call, which is not the case if that data was
+   *         discarded under the {@link EvictionPolicy#DiscardPaged} policy to stay within the disk quota.
+   */
   public static boolean pageWaitingToDisk(final MessageQueue queue) {
     synchronized (queue.getPageLock()) {
       try {
+        // reserving space may discard the data paged out earlier, so only look at the paged state afterwards.
+        if (!reserveDiskSpace(queue)) {
+          return queue.isPaged();
+        }
+
         final boolean alreadyPaged = queue.isPaged();
 
-        final OutputStream outputStream = new BufferedOutputStream(new FileOutputStream(getOrCreatePageFile(queue), alreadyPaged));
-        final ByteWriteAdapter writeAdapter = new OutputStreamWriteAdapter(outputStream);
+        final File pageFile = getOrCreatePageFile(queue);
+        final RandomAccessFile file = new RandomAccessFile(pageFile, "rw");
+        try {
+          final FileChannel channel = file.getChannel();
+          final long previousSize;
+          if (alreadyPaged) {
+            previousSize = channel.size();
+            channel.position(previousSize);
+          }
+          else {
+            previousSize = 0;
+            diskUsage.addAndGet(-channel.size());
+            channel.truncate(0);
+          }
+
+          final ChannelWriteAdapter writeAdapter = new ChannelWriteAdapter(channel, chunkBuffer.get());
+          queue.getBuffer().read(writeAdapter, queue.getBufferColor());
+          writeAdapter.flush();
 
-        queue.getBuffer().read(writeAdapter, queue.getBufferColor());
-        outputStream.flush();
-        outputStream.close();
+          final long written = channel.size() - previousSize;
+          diskUsage.addAndGet(written);
+          pageOutCount.incrementAndGet();
+          pagedOutBytes.addAndGet(written);
+        }
+        finally {
+          file.close();
+        }
 
         queue.setPaged(true);
 
@@ -109,17 +236,37 @@ public final class PageUtil {
             return;
           }
 
-          final InputStream inputStream = new BufferedInputStream(new FileInputStream(pageFile));
+          final long start = System.nanoTime();
+          final ByteBuffer chunk = chunkBuffer.get();
+          final RandomAccessFile file = new RandomAccessFile(pageFile, "r");
+          long read = 0;
+          try {
+            final FileChannel channel = file.getChannel();
+
+            callback.before(outputStream);
 
-          callback.before(outputStream);
+            chunk.clear();
+            int r;
+            while ((r = channel.read(chunk)) != -1) {
+              read += r;
+              chunk.flip();
+              while (chunk.hasRemaining()) {
+                outputStream.write(callback.each(chunk.get() & 0xFF, outputStream));
+              }
+              chunk.clear();
+            }
 
-          int read;
-          while ((read = inputStream.read()) != -1) {
-            outputStream.write(callback.each(read, outputStream));
+            callback.after(outputStream);
+          }
+          finally {
+            file.close();
           }
-          inputStream.close();
 
-          callback.after(outputStream);
+          deletePageFile(pageFile);
+
+          pagedInBytes.addAndGet(read);
+          pageInCount.incrementAndGet();
+          pageInNanos.addAndGet(System.nanoTime() - start);
 
           queue.setPaged(false);
         }
@@ -131,22 +278,177 @@ public final class PageUtil {
   }
 
   public static void discardPageData(final MessageQueue queue) {
-    if (queue.isPaged()) {
-      File pageFile = new File(getPageFileName(queue));
-      if (pageFile.exists()) {
-        pageFile.delete();
+    synchronized (queue.getPageLock()) {
+      if (queue.isPaged()) {
+        final File pageFile = new File(getPageFileName(queue));
+        if (pageFile.exists()) {
+          deletePageFile(pageFile);
+        }
+        queue.setPaged(false);
       }
     }
   }
 
+  private static void deletePageFile(final File pageFile) {
+    final long length = pageFile.length();
+    if (pageFile.delete()) {
+      diskUsage.addAndGet(-length);
+      spillFileCount.decrementAndGet();
+    }
+  }
+
   public static boolean pageIfStraddling(final MessageQueue queue) {
     if (queue.getDeliveryHandler() instanceof Pageable) {
 
-      if (((nanoTime() - queue.getLastTransmissionTime()) > DOWNGRADE_THRESHOLD)) {
+      if (((System.currentTimeMillis() - queue.getLastTransmissionTime()) > DOWNGRADE_THRESHOLD)) {
         ((Pageable) queue.getDeliveryHandler()).pageOut(queue);
         return true;
       }
     }
     return false;
   }
+
+  /**
+   * Returns the time, in milliseconds, a queue may go without being polled before the data waiting for it is paged
+   * out by {@link #pageIfStraddling(MessageQueue)}.
+   */
+  public static long getPageOutDelay() {
+    return DOWNGRADE_THRESHOLD;
+  }
+
+  /**
+   * Returns the number of bytes of page data currently on disk.
+   */
+  public static long getDiskUsage() {
+    return diskUsage.get();
+  }
+
+  public static long getDiskQuota() {
+    return diskQuota;
+  }
+
+  public static EvictionPolicy getEvictionPolicy() {
+    return evictionPolicy;
+  }
+
+  /**
+   * Returns the number of page files currently on disk.
+   */
+  public static int getSpillFileCount() {
+    return spillFileCount.get();
+  }
+
+  /**
+   * Returns the number of times waiting queue data was paged out to disk.
+   */
+  public static long getPageOutCount() {
+    return pageOutCount.get();
+  }
+
+  /**
+   * Returns the total number of bytes paged out to disk.
+   */
+  public static long getPagedOutBytes() {
+    return pagedOutBytes.get();
+  }
+
+  /**
+   * Returns the total number of bytes paged back in from disk.
+   */
+  public static long getPagedInBytes() {
+    return pagedInBytes.get();
+  }
+
+  /**
+   * Returns the number of page files that have been read back in.
+   */
+  public static long getPageInCount() {
+    return pageInCount.get();
+  }
+
+  /**
+   * Returns the mean time in nanoseconds it took to read a page file back in, or 0 if nothing was paged in yet.
+   */
+  public static long getMeanPageInNanos() {
+    final long count = pageInCount.get();
+    return count == 0 ? 0 : pageInNanos.get() / count;
+  }
+
+  /**
+   * Returns the number of bytes of page data discarded under the {@link EvictionPolicy#DiscardPaged} policy.
+   */
+  public static long getEvictedBytes() {
+    return evictedBytes.get();
+  }
+
+  /**
+   * Returns the number of page-outs that were skipped because the disk quota was exhausted.
+   */
+  public static long getRejectedPageOuts() {
+    return rejectedPageOuts.get();
+  }
+
+  /**
+   * Checks whether the waiting data of the specified queue may be paged out under the disk quota, applying the
+   * {@link EvictionPolicy} if it may not. The quota is checked before any data is taken from the buffer, so a single
+   * page-out may exceed it by at most the amount of data waiting for one queue.
+   */
+  private static boolean reserveDiskSpace(final MessageQueue queue) {
+    if (diskUsage.get() < diskQuota) {
+      return true;
+    }
+
+    if (evictionPolicy == EvictionPolicy.DiscardPaged && queue.isPaged()) {
+      final File pageFile = new File(getPageFileName(queue));
+      final long discarded = pageFile.length();
+      deletePageFile(pageFile);
+      queue.setPaged(false);
+      evictedBytes.addAndGet(discarded);
+
+      log.warn("discarded " + discarded + " bytes of page data for session " + queue.getSession().getSessionId()
+          + " as the paging disk quota was exhausted. (consider increasing "
+          + ErraiConfigAttribs.BUS_PAGING_DISK_QUOTA.getAttributeName() + " in ErraiService.properties)");
+
+      if (diskUsage.get() < diskQuota) {
+        return true;
+      }
+    }
+
+    rejectedPageOuts.incrementAndGet();
+    log.warn("did not page out data for session " + queue.getSession().getSessionId()
+        + " as the paging disk quota was exhausted. (consider increasing "
+        + ErraiConfigAttribs.BUS_PAGING_DISK_QUOTA.getAttributeName() + " in ErraiService.properties)");
+    return false;
+  }
+
+  /**
+   * Collects the bytes read from the transmission buffer and writes them to the page file a chunk at a time.
+   */
+  private static class ChannelWriteAdapter extends AbstractByteWriteAdapter {
+    private final FileChannel channel;
+    private final ByteBuffer chunk;
+
+    private ChannelWriteAdapter(final FileChannel channel, final ByteBuffer chunk) {
+      this.channel = channel;
+      this.chunk = chunk;
+      chunk.clear();
+    }
+
+    @Override
+    public void write(final byte b) throws IOException {
+      if (!chunk.hasRemaining()) {
+        flush();
+      }
+      chunk.put(b);
+    }
+
+    @Override
+    public void flush() throws IOException {
+      chunk.flip();
+      while (chunk.hasRemaining()) {
+        channel.write(chunk);
+      }
+      chunk.clear();
+    }
+  }
 }
@@ -0,0 +1,47 @@
+/*
+ * Copyright (C) 2016 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.errai.bus.server.io;
+
+import java.util.Map;
+
+import org.jboss.errai.bus.client.api.HasEncoded;
+import org.jboss.errai.bus.client.api.base.CommandMessage;
+
+/**
+ * A {@link CommandMessage} which carries a shared {@link EncodedPayload}. Delivery handlers write the payload as-is
+ * instead of marshalling the message parts again, so one encoding can be fanned out to any number of sessions.
+ * <p>
+ * The parts of this message must not be changed after the payload has been encoded, except for the
+ * {@link org.jboss.errai.common.client.protocols.MessageParts#SessionID} part which is never encoded.
+ */
+public class PreEncodedMessage extends CommandMessage implements HasEncoded {
+  private final EncodedPayload payload;
+
+  public PreEncodedMessage(final Map<String, Object> parts, final EncodedPayload payload) {
+    super(parts, 0);
+    this.payload = payload;
+  }
+
+  public EncodedPayload getEncodedPayload() {
+    return payload;
+  }
+
+  @Override
+  public String getEncoded() {
+    return payload.toString();
+  }
+}
@@ -29,7 +29,7 @@ import org.jboss.errai.bus.client.api.messaging.Message;
 public class ServiceMethodCallback extends MethodBindingCallback {
 
   private Object delegate;
-  private Method service;
+  private MethodInvoker service;
   private boolean noArgs;
 
   /**
@@ -42,8 +42,7 @@ public class ServiceMethodCallback extends MethodBindingCallback {
    */
   public ServiceMethodCallback(Object delegate, Method service) {
     this.delegate = delegate;
-    this.service = service;
-    this.service.setAccessible(true);
+    this.service = MethodInvoker.of(service);
 
     noArgs = (service.getParameterTypes().length == 0);
     verifyMethodSignature(service);
@@ -23,13 +23,17 @@ import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * Defines a buffer color, which is a unique identifier for data within a {@link TransmissionBuffer}.
+ * <p/>
+ * Colors are 32-bit. The value of a color which has been {@link #release(TransmissionBuffer) released} is handed out
+ * again by {@link #getNewColorFromHead(TransmissionBuffer)}, but only once the buffer has wrapped all the way around
+ * since the release, so that no segment still marked with the old color can be seen by the new owner.
  *
  * @author Mike Brock
  */
 public class BufferColor {
   // an automatic counter to ensure each buffer has a unique color
   private static final AtomicInteger bufferColorCounter = new AtomicInteger();
-  private static final BufferColor allBuffersColor = new BufferColor(Short.MIN_VALUE);
+  private static final BufferColor allBuffersColor = new BufferColor(Integer.MIN_VALUE);
 
   /**
    * The current tail position for this buffer color.
@@ -39,7 +43,7 @@ public class BufferColor {
   /**
    * The color.
    */
-  final short color;
+  final int color;
 
   /**
    * Lock for reads and writes on this buffer color.
@@ -51,7 +55,39 @@ public class BufferColor {
    */
   final Condition dataWaiting = lock.newCondition();
 
+  /**
+   * The number of chunks written with and read for this color. Guarded by {@link #lock}.
+   */
+  long chunksWritten;
+  long chunksRead;
+
+  /**
+   * The number of chunks written with the {@link #getAllBuffersColor() all buffers color} which this color has read
+   * or skipped. Guarded by {@link #lock}.
+   */
+  long broadcastChunksRead;
+
+  /**
+   * Set once the color has been released. Guarded by {@link #lock}.
+   */
+  boolean released;
+
+  /**
+   * The number of messages of this color which were overwritten before they could be read.
+   */
+  final AtomicLong lostMessages = new AtomicLong();
+
+  /**
+   * Returns the low 16 bits of this color. Colors are 32-bit, so use {@link #getColorValue()} to tell them apart.
+   */
   public short getColor() {
+    return (short) color;
+  }
+
+  /**
+   * Returns the 32-bit value of this color.
+   */
+  public int getColorValue() {
     return color;
   }
 
@@ -77,7 +113,44 @@ public class BufferColor {
     return lock;
   }
 
-  private BufferColor(final short color) {
+  /**
+   * Returns the total number of messages of this color which were overwritten by the writer before they were read.
+   *
+   * @return the number of lost messages.
+   */
+  public long getLostMessageCount() {
+    return lostMessages.get();
+  }
+
+  /**
+   * Releases this color. Any reader waiting on the color is woken up, and all further reads and writes of this
+   * instance do nothing. The color value is then made available for re-use by
+   * {@link #getNewColorFromHead(TransmissionBuffer)} on the same buffer.
+   *
+   * @param buffer
+   *     the buffer the color was used with.
+   */
+  public void release(final TransmissionBuffer buffer) {
+    if (this == allBuffersColor) {
+      return;
+    }
+
+    lock.lock();
+    try {
+      if (released) {
+        return;
+      }
+      released = true;
+      dataWaiting.signalAll();
+    }
+    finally {
+      lock.unlock();
+    }
+
+    buffer.recycleColor(color);
+  }
+
+  private BufferColor(final int color) {
     this.color = color;
   }
 
@@ -89,12 +162,12 @@ public class BufferColor {
    * @see #getNewColorFromHead(TransmissionBuffer)
    */
   public static BufferColor getNewColor() {
-    short val = (short) bufferColorCounter.incrementAndGet();
+    int val = bufferColorCounter.incrementAndGet();
 
     // in a long-running system, do not allow it to recycle over the global
     // color.
-    if (val == Short.MIN_VALUE) {
-      val = (short) bufferColorCounter.incrementAndGet();
+    if (val == Integer.MIN_VALUE) {
+      val = bufferColorCounter.incrementAndGet();
     }
 
     return new BufferColor(val);
@@ -109,8 +182,17 @@ public class BufferColor {
    * @return a new unique BufferColor instance.
    */
   public static BufferColor getNewColorFromHead(final TransmissionBuffer buffer) {
-    final BufferColor color = getNewColor();
-    color.sequence.set(buffer.getHeadSequence());
+    final int recycled = buffer.takeRecycledColor();
+    final BufferColor color = recycled == Integer.MIN_VALUE ? getNewColor() : new BufferColor(recycled);
+    // broadcasts are committed under the lock of the all buffers color, so this sees them together with the head.
+    allBuffersColor.lock.lock();
+    try {
+      color.broadcastChunksRead = buffer.getBroadcastChunkCount();
+      color.sequence.set(buffer.getHeadSequence());
+    }
+    finally {
+      allBuffersColor.lock.unlock();
+    }
     return color;
   }
 
@@ -22,6 +22,8 @@ import java.io.IOException;
  * @author Mike Brock
  */
 public class BufferOverflowException extends IOException {
+  private long lostMessageCount;
+
   public BufferOverflowException() {
     super();
   }
@@ -37,4 +39,16 @@ public class BufferOverflowException extends IOException {
   public BufferOverflowException(Throwable cause) {
     super(cause);
   }
+
+  public BufferOverflowException(String message, long lostMessageCount) {
+    super(message);
+    this.lostMessageCount = lostMessageCount;
+  }
+
+  /**
+   * Returns the number of messages which were overwritten before they could be read.
+   */
+  public long getLostMessageCount() {
+    return lostMessageCount;
+  }
 }
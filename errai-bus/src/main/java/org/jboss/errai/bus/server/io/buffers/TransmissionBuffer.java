@@ -24,7 +24,10 @@ import java.io.PrintWriter;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.ReentrantLock;
 
@@ -40,6 +43,9 @@ import java.util.concurrent.locks.ReentrantLock;
  * <p/>
  * The amount of free space available in the buffer at any time is the delta between the head and maximum physical
  * extent of the buffer, plus the delta from the beginning of the physical buffer in memory to the closest tail.
+ * <p/>
+ * If the writer laps a color's tail, the messages of that color which were overwritten are counted and the read
+ * fails with a {@link BufferOverflowException}, leaving the tail at the head of the buffer.
  * </p>
  *
  * @author Mike Brock
@@ -55,6 +61,18 @@ public class TransmissionBuffer implements Buffer {
 
   private static final int SEGMENT_HEADER_SIZE = 4;                      /* to accommodate a 32-bit integer  */
 
+  private static final int MAX_RECYCLED_COLORS = 1024 * 64;
+
+  /**
+   * Scratch space used to move data from an <tt>InputStream</tt> into a direct buffer.
+   */
+  private static final ThreadLocal<byte[]> copyScratch = new ThreadLocal<byte[]>() {
+    @Override
+    protected byte[] initialValue() {
+      return new byte[DEFAULT_SEGMENT_SIZE];
+    }
+  };
+
   /**
    * The main buffer where the data is stored
    */
@@ -63,7 +81,7 @@ public class TransmissionBuffer implements Buffer {
   /**
    * The segment map where allocation data is stored
    */
-  private final short[] segmentMap;
+  private final int[] segmentMap;
 
   /**
    * The absolute size (in bytes) of the buffer
@@ -104,6 +122,21 @@ public class TransmissionBuffer implements Buffer {
    */
   private volatile long headSequence = STARTING_SEQUENCE;
 
+  /**
+   * Colors which have been released and may be re-used once the buffer has wrapped around past them.
+   */
+  private final Queue<RecycledColor> recycledColors = new ConcurrentLinkedQueue<RecycledColor>();
+  private final AtomicInteger recycledColorCount = new AtomicInteger();
+
+  private final AtomicLong overrunCount = new AtomicLong();
+  private final AtomicLong lostMessageCount = new AtomicLong();
+  private final AtomicLong droppedWriteCount = new AtomicLong();
+
+  /**
+   * The number of chunks written to this buffer with the {@link BufferColor#getAllBuffersColor() all buffers color}.
+   */
+  private final AtomicLong broadcastChunksWritten = new AtomicLong();
+
   private TransmissionBuffer(final boolean directBuffer, final int segmentSize, final int segments) {
     this.segmentSize = segmentSize;
     this.bufferSize = segmentSize * segments;
@@ -118,8 +151,7 @@ public class TransmissionBuffer implements Buffer {
 
     _buffer.put(0, (byte) 0);
 
-    segmentMap = new short[segments];
-    segmentMap[0] = (short) 0;
+    segmentMap = new int[segments];
   }
 
   /**
@@ -204,44 +236,123 @@ public class TransmissionBuffer implements Buffer {
                     final InputStream inputStream,
                     final BufferColor bufferColor) throws IOException {
 
-    if (writeSize > bufferSize) {
-      throw new IOException("write size larger than buffer can fit");
-    }
+    checkWriteSize(writeSize);
 
     final ReentrantLock lock = bufferColor.lock;
     lock.lock();
     try {
-      final int allocSize = ((writeSize + SEGMENT_HEADER_SIZE) / segmentSize) + 1;
-      final long writeHead = writeSequenceNumber.getAndAdd(allocSize);
-      final int seq = (int) writeHead % segments;
+      if (bufferColor.released) {
+        droppedWriteCount.incrementAndGet();
+        return;
+      }
 
-      int writeCursor = seq * segmentSize;
+      final long writeHead = allocate(writeSize, bufferColor);
+      final int writeCursor = dataPosition(writeHead);
+      final int initialWrite = Math.min(writeSize, bufferSize - writeCursor);
 
-      // write the chunk size header for the data we're about to write
-      writeChunkSize(writeCursor, writeSize);
+      copyFrom(inputStream, writeCursor, initialWrite);
+      if (initialWrite < writeSize) {
+        copyFrom(inputStream, 0, writeSize - initialWrite);
+      }
+
+      commit(writeHead, writeSize, bufferColor);
+    }
+    finally {
+      bufferColor.wake();
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Writes the specified range of a byte array into the buffer.
+   *
+   * @param bytes
+   *     the array holding the data to be inserted.
+   * @param offset
+   *     the offset of the data in the array.
+   * @param length
+   *     the size of the data in bytes.
+   * @param bufferColor
+   *     the color of the data to be inserted.
+   *
+   * @throws IOException
+   */
+  @Override
+  public void write(final byte[] bytes,
+                    final int offset,
+                    final int length,
+                    final BufferColor bufferColor) throws IOException {
 
-      final int end = (writeCursor += SEGMENT_HEADER_SIZE) + writeSize;
-      final int initialRead = end > bufferSize ? bufferSize : end;
+    checkWriteSize(length);
 
-      /*
-      * Allocate the segments to the this color
-      */
-      final short color = bufferColor.color;
-      for (int i = 0; i < allocSize; i++) {
-        segmentMap[((seq + i) % segments)] = color;
+    final ReentrantLock lock = bufferColor.lock;
+    lock.lock();
+    try {
+      if (bufferColor.released) {
+        droppedWriteCount.incrementAndGet();
+        return;
       }
 
-      for (; writeCursor < initialRead; writeCursor++) {
-        _buffer.put(writeCursor, (byte) inputStream.read());
+      final long writeHead = allocate(length, bufferColor);
+      final int writeCursor = dataPosition(writeHead);
+      final int initialWrite = Math.min(length, bufferSize - writeCursor);
+
+      copyFrom(bytes, offset, writeCursor, initialWrite);
+      if (initialWrite < length) {
+        copyFrom(bytes, offset + initialWrite, 0, length - initialWrite);
       }
 
-      if (writeCursor < end) {
-        for (int i = 0; i < end - bufferSize; i++) {
-          _buffer.put(i, (byte) inputStream.read());
-        }
+      commit(writeHead, length, bufferColor);
+    }
+    finally {
+      bufferColor.wake();
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Writes the remaining bytes of the specified <tt>ByteBuffer</tt> into the buffer. The position of the source
+   * is advanced to its limit.
+   *
+   * @param source
+   *     the data to be inserted.
+   * @param bufferColor
+   *     the color of the data to be inserted.
+   *
+   * @throws IOException
+   */
+  @Override
+  public void write(final ByteBuffer source, final BufferColor bufferColor) throws IOException {
+    final int length = source.remaining();
+
+    checkWriteSize(length);
+
+    final ReentrantLock lock = bufferColor.lock;
+    lock.lock();
+    try {
+      if (bufferColor.released) {
+        droppedWriteCount.incrementAndGet();
+        return;
+      }
+
+      final long writeHead = allocate(length, bufferColor);
+      final int writeCursor = dataPosition(writeHead);
+      final int initialWrite = Math.min(length, bufferSize - writeCursor);
+
+      final ByteBuffer target = _buffer.duplicate();
+      final int limit = source.limit();
+
+      source.limit(source.position() + initialWrite);
+      target.position(writeCursor);
+      target.put(source);
+      source.limit(limit);
+
+      if (initialWrite < length) {
+        target.position(0);
+        target.put(source);
       }
 
-      headSequence = writeHead + allocSize;
+      commit(writeHead, length, bufferColor);
     }
     finally {
       bufferColor.wake();
@@ -249,6 +360,94 @@ public class TransmissionBuffer implements Buffer {
     }
   }
 
+  private void checkWriteSize(final int writeSize) throws IOException {
+    if (writeSize > bufferSize - SEGMENT_HEADER_SIZE) {
+      throw new IOException("write size larger than buffer can fit");
+    }
+  }
+
+  /**
+   * Allocates enough segments to hold a chunk of the specified size for the specified color, and writes the chunk
+   * size header. Must be called while holding the color's lock.
+   *
+   * @return the sequence number of the first allocated segment.
+   */
+  private long allocate(final int writeSize, final BufferColor bufferColor) {
+    final int allocSize = ((writeSize + SEGMENT_HEADER_SIZE) / segmentSize) + 1;
+    final long writeHead = writeSequenceNumber.getAndAdd(allocSize);
+    final int seq = (int) (writeHead % segments);
+
+    // write the chunk size header for the data we're about to write
+    writeChunkSize(seq * segmentSize, writeSize);
+
+    /*
+    * Allocate the segments to the this color
+    */
+    final int color = bufferColor.color;
+    for (int i = 0; i < allocSize; i++) {
+      segmentMap[((seq + i) % segments)] = color;
+    }
+
+    return writeHead;
+  }
+
+  /**
+   * Makes a chunk written at the specified sequence visible to the readers.
+   */
+  private void commit(final long writeHead, final int writeSize, final BufferColor bufferColor) {
+    bufferColor.chunksWritten++;
+    if (bufferColor == BufferColor.getAllBuffersColor()) {
+      broadcastChunksWritten.incrementAndGet();
+    }
+    headSequence = writeHead + ((writeSize + SEGMENT_HEADER_SIZE) / segmentSize) + 1;
+  }
+
+  private int dataPosition(final long sequence) {
+    return ((int) (sequence % segments)) * segmentSize + SEGMENT_HEADER_SIZE;
+  }
+
+  private void copyFrom(final byte[] bytes, final int offset, final int position, final int length) {
+    if (_buffer.hasArray()) {
+      System.arraycopy(bytes, offset, _buffer.array(), _buffer.arrayOffset() + position, length);
+    }
+    else {
+      final ByteBuffer target = _buffer.duplicate();
+      target.position(position);
+      target.put(bytes, offset, length);
+    }
+  }
+
+  private void copyFrom(final InputStream inputStream, int position, final int length) throws IOException {
+    final int end = position + length;
+
+    if (_buffer.hasArray()) {
+      final byte[] array = _buffer.array();
+      final int arrayOffset = _buffer.arrayOffset();
+
+      while (position < end) {
+        final int read = inputStream.read(array, arrayOffset + position, end - position);
+        if (read == -1) {
+          return;
+        }
+        position += read;
+      }
+    }
+    else {
+      final byte[] scratch = copyScratch.get();
+      final ByteBuffer target = _buffer.duplicate();
+      target.position(position);
+
+      while (position < end) {
+        final int read = inputStream.read(scratch, 0, Math.min(scratch.length, end - position));
+        if (read == -1) {
+          return;
+        }
+        target.put(scratch, 0, read);
+        position += read;
+      }
+    }
+  }
+
   /**
    * Reads all the available data of the specified color from the buffer into the provided <tt>OutputStream</tt>
    *
@@ -266,26 +465,29 @@ public class TransmissionBuffer implements Buffer {
     // obtain this color's read lock
     bufferColor.lock.lock();
 
-    // get the current head position.
-    final long writeHead = headSequence;
+    try {
+      checkOverrun(bufferColor);
 
-    // get the tail position for the color.
-    long read = bufferColor.sequence.get();
-    long lastSeq = read;
+      // get the current head position.
+      final long writeHead = headSequence;
 
-    // checkOverflow(read);
+      // get the tail position for the color.
+      long read = bufferColor.sequence.get();
+      long lastSeq = read;
 
-    try {
-      while ((read = readNextChunk(writeHead, read, bufferColor, outputStream, null)) != -1)
-        lastSeq = read;
+      try {
+        while ((read = readNextChunk(writeHead, read, bufferColor, outputStream, null)) != -1)
+          lastSeq = read;
 
-      return lastSeq != read;
+        return lastSeq != read;
+      }
+      finally {
+        // move the tail sequence for this color up.
+        if (lastSeq != -1)
+          bufferColor.sequence.set(lastSeq);
+      }
     }
     finally {
-      // move the tail sequence for this color up.
-      if (lastSeq != -1)
-        bufferColor.sequence.set(lastSeq);
-
       // release the read lock on this color/
       bufferColor.lock.unlock();
     }
@@ -311,7 +513,7 @@ public class TransmissionBuffer implements Buffer {
                       final BufferColor bufferColor,
                       final BufferFilter callback) throws IOException {
 
-    return read(outputStream, bufferColor, callback, (int) headSequence % segments);
+    return read(outputStream, bufferColor, callback, headSequence % segments);
   }
 
   /**
@@ -340,14 +542,14 @@ public class TransmissionBuffer implements Buffer {
     // attempt to obtain this color's read lock
     if (bufferColor.lock.tryLock()) {
       try {
+        checkOverrun(bufferColor);
+
         // get the current head position.
         final long writeHead = headSequence;
 
         // get the current tail position for this color.
         long read = bufferColor.sequence.get();
 
-        // checkOverflow(read);
-
         long lastSeq = read;
 
         // if you need to do something before we write to output, do it now mr. callback.
@@ -396,8 +598,12 @@ public class TransmissionBuffer implements Buffer {
 
     try {
       for (; ; ) {
+        if (bufferColor.released) {
+          return false;
+        }
+        checkOverrun(bufferColor);
+
         long read = bufferColor.sequence.get();
-        //checkOverflow(read);
         long lastRead = -1;
 
         while ((read = readNextChunk(headSequence, read, bufferColor, outputStream, null)) != -1) {
@@ -459,8 +665,12 @@ public class TransmissionBuffer implements Buffer {
 
     try {
       for (; ; ) {
+        if (bufferColor.released) {
+          return false;
+        }
+        checkOverrun(bufferColor);
+
         long read = bufferColor.sequence.get();
-        //checkOverflow(read);
         long lastRead = -1;
 
         while ((read = readNextChunk(headSequence, read, bufferColor, outputStream, null)) != -1) {
@@ -547,8 +757,13 @@ public class TransmissionBuffer implements Buffer {
       callback.before(outputStream);
 
       for (; ; ) {
+        if (bufferColor.released) {
+          callback.after(outputStream);
+          return false;
+        }
+        checkOverrun(bufferColor);
+
         long read = bufferColor.sequence.get();
-        //checkOverflow(read);
         long lastRead = -1;
         while ((read = readNextChunk(headSequence, read, bufferColor, outputStream, callback)) != -1) {
           lastRead = read;
@@ -582,9 +797,19 @@ public class TransmissionBuffer implements Buffer {
     return headSequence;
   }
 
+  /**
+   * Returns the sequence number up to which segments have been allocated to writers. This is ahead of the
+   * {@link #getHeadSequence() head sequence} while writes are in progress.
+   *
+   * @return the write sequence number.
+   */
+  public long getWriteSequence() {
+    return writeSequenceNumber.get();
+  }
+
   @Override
   public int getHeadPositionBytes() {
-    return ((int) headSequence % segments) * segmentSize;
+    return ((int) (headSequence % segments)) * segmentSize;
   }
 
   @Override
@@ -602,6 +827,175 @@ public class TransmissionBuffer implements Buffer {
     return segmentSize;
   }
 
+  /**
+   * Returns the number of times a reader found that the writer had lapped its color and overwritten unread
+   * messages.
+   *
+   * @return the number of overruns.
+   */
+  public long getOverrunCount() {
+    return overrunCount.get();
+  }
+
+  /**
+   * Returns the total number of messages, across all colors, which were overwritten before they were read. A message
+   * written with the {@link BufferColor#getAllBuffersColor() all buffers color} is counted once for every color which
+   * lost it.
+   *
+   * @return the number of lost messages.
+   */
+  public long getLostMessageCount() {
+    return lostMessageCount.get();
+  }
+
+  /**
+   * Returns the number of writes which were discarded because their color had been released.
+   *
+   * @return the number of discarded writes.
+   */
+  public long getDroppedWriteCount() {
+    return droppedWriteCount.get();
+  }
+
+  /**
+   * Returns the number of bytes of data of the specified color, and of data written with the
+   * {@link BufferColor#getAllBuffersColor() all buffers color}, which the color has not read yet. Data of other colors
+   * is not counted, and neither is data which the writer has overwritten, since the next read discards it.
+   *
+   * @param bufferColor
+   *     the buffer color
+   *
+   * @return the number of unread bytes.
+   */
+  public long getUnreadBytes(final BufferColor bufferColor) {
+    bufferColor.lock.lock();
+    try {
+      final long tail = bufferColor.sequence.get();
+      final long head = headSequence;
+      final int color = bufferColor.color;
+
+      long bytes = 0;
+      long seq = tail;
+      while (seq < head) {
+        final int seg = segmentMap[(int) (seq % segments)];
+        if (seg == color || seg == Integer.MIN_VALUE) {
+          final int size = readChunkSize((int) (seq % segments) * segmentSize);
+          bytes += size;
+          seq += Math.max(1, ((size + SEGMENT_HEADER_SIZE) / segmentSize) + 1);
+        }
+        else {
+          seq++;
+        }
+      }
+
+      // if the writer has lapped the color meanwhile, the chunk headers read above may have been overwritten.
+      return writeSequenceNumber.get() - tail > segments ? 0 : bytes;
+    }
+    finally {
+      bufferColor.lock.unlock();
+    }
+  }
+
+  /**
+   * Wakes the readers of the specified color if the buffer holds data of that color, or data written with the
+   * {@link BufferColor#getAllBuffersColor() all buffers color}, which the color has not read yet.
+   *
+   * @param bufferColor
+   *     the buffer color
+   *
+   * @return true if there was unread data and the readers were woken, false if nothing was done.
+   */
+  public boolean wakeIfDataWaiting(final BufferColor bufferColor) {
+    bufferColor.lock.lock();
+    try {
+      if (bufferColor.released || (bufferColor.chunksRead == bufferColor.chunksWritten
+          && bufferColor.broadcastChunksRead == broadcastChunksWritten.get())) {
+        return false;
+      }
+      bufferColor.wake();
+      return true;
+    }
+    finally {
+      bufferColor.lock.unlock();
+    }
+  }
+
+  /**
+   * Returns the number of chunks written with the {@link BufferColor#getAllBuffersColor() all buffers color}.
+   */
+  long getBroadcastChunkCount() {
+    return broadcastChunksWritten.get();
+  }
+
+  /**
+   * Makes the value of a released color available for re-use once every segment in the buffer has been allocated
+   * again since the release.
+   */
+  void recycleColor(final int color) {
+    if (recycledColorCount.incrementAndGet() <= MAX_RECYCLED_COLORS) {
+      recycledColors.offer(new RecycledColor(color, writeSequenceNumber.get() + segments));
+    }
+    else {
+      recycledColorCount.decrementAndGet();
+    }
+  }
+
+  /**
+   * Returns a released color value which is safe to re-use, or {@link Integer#MIN_VALUE} if there is none.
+   */
+  int takeRecycledColor() {
+    final RecycledColor recycled = recycledColors.peek();
+    if (recycled != null && headSequence >= recycled.reusableFrom && recycledColors.remove(recycled)) {
+      recycledColorCount.decrementAndGet();
+      return recycled.color;
+    }
+    return Integer.MIN_VALUE;
+  }
+
+  /**
+   * Checks whether the writer has lapped the tail of the specified color since it was last read. If so, the tail is
+   * moved up to the head of the buffer, and if any messages of the color, or messages written with the all buffers
+   * color, were overwritten a {@link BufferOverflowException} reporting the number of lost messages is thrown. Must
+   * be called while holding the color's lock.
+   *
+   * @param bufferColor
+   *     the buffer color
+   *
+   * @throws BufferOverflowException
+   *     if unread messages of the color were overwritten.
+   */
+  private void checkOverrun(final BufferColor bufferColor) throws BufferOverflowException {
+    if (writeSequenceNumber.get() - bufferColor.sequence.get() <= segments) {
+      return;
+    }
+
+    final long broadcastChunks;
+    // broadcasts are committed under the lock of the all buffers color, so this sees them together with the head.
+    final ReentrantLock broadcastLock = BufferColor.getAllBuffersColor().lock;
+    broadcastLock.lock();
+    try {
+      broadcastChunks = broadcastChunksWritten.get();
+      bufferColor.sequence.set(headSequence);
+    }
+    finally {
+      broadcastLock.unlock();
+    }
+
+    final long lost = bufferColor.chunksWritten - bufferColor.chunksRead
+        + broadcastChunks - bufferColor.broadcastChunksRead;
+    bufferColor.chunksRead = bufferColor.chunksWritten;
+    bufferColor.broadcastChunksRead = broadcastChunks;
+
+    if (lost > 0) {
+      bufferColor.lostMessages.addAndGet(lost);
+      overrunCount.incrementAndGet();
+      lostMessageCount.addAndGet(lost);
+
+      throw new BufferOverflowException("buffer overrun for color " + bufferColor.color + ": "
+          + lost + " message(s) were overwritten before being read", lost);
+    }
+  }
+
   /**
    * Returns the next segment containing data for the specified {@param bufferColor}, up to the specified
    * {@param head} position, from the specified {@param segment} position.
@@ -616,10 +1010,19 @@ public class TransmissionBuffer implements Buffer {
    * @return returns an long representing the initial sequence to read from
    */
   private long getNextSegment(final BufferColor bufferColor, final long headSeq, long colorSeq) {
-    for (final int color = bufferColor.getColor(); colorSeq < headSeq; colorSeq++) {
-      final short seg = segmentMap[((int) colorSeq % segments)];
+    if (bufferColor.released) {
+      return -1;
+    }
+
+    for (final int color = bufferColor.color; colorSeq < headSeq; colorSeq++) {
+      final int seg = segmentMap[((int) (colorSeq % segments))];
 
-      if (seg == color || seg == Short.MIN_VALUE) {
+      if (seg == color) {
+        bufferColor.chunksRead++;
+        return colorSeq;
+      }
+      else if (seg == Integer.MIN_VALUE) {
+        bufferColor.broadcastChunksRead++;
         return colorSeq;
       }
     }
@@ -656,7 +1059,7 @@ public class TransmissionBuffer implements Buffer {
 
     final long sequenceToRead = getNextSegment(color, head, sequence);
     if (sequenceToRead != -1) {
-      int readCursor = ((int) sequenceToRead % segments) * segmentSize;
+      int readCursor = ((int) (sequenceToRead % segments)) * segmentSize;
 
       final int readSize = readChunkSize(readCursor);
 
@@ -793,4 +1196,14 @@ public class TransmissionBuffer implements Buffer {
     }
     return list;
   }
+
+  private static class RecycledColor {
+    private final int color;
+    private final long reusableFrom;
+
+    private RecycledColor(final int color, final long reusableFrom) {
+      this.color = color;
+      this.reusableFrom = reusableFrom;
+    }
+  }
 }
@@ -17,16 +17,58 @@
 package org.jboss.errai.bus.server.io.websockets;
 
 import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelOutboundBuffer;
 import io.netty.handler.codec.http.websocketx.TextWebSocketFrame;
-import org.jboss.errai.bus.server.io.QueueChannel;
+import org.jboss.errai.bus.server.io.FlowControlledChannel;
+import org.jboss.errai.marshalling.server.util.UTF8EncodingUtil;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
+ * A queue channel for a Netty WebSocket connection. Payloads written from any thread are collected and written by
+ * the channel's event loop, which joins all payloads collected in one pass into a single frame.
+ * <p/>
+ * The channel reports itself as unwritable while Netty's outbound buffer is above its high water mark, and also while
+ * the payloads that have been written to this channel but not yet sent exceed that mark, including those that are
+ * still waiting for the event loop. The latter clears a user-defined writability flag of the Netty channel, so that
+ * the channel becomes writable again, and fires the usual writability event, once the pending payloads have fallen
+ * under the low water mark.
+ *
  * @author Mike Brock
  * @author Christian Sadilek <csadilek@redhat.com>
  */
-public class NettyQueueChannel implements QueueChannel {
+public class NettyQueueChannel implements FlowControlledChannel {
+  /**
+   * The approximate number of characters after which a coalesced frame is written and a new one is started.
+   */
+  private static final int MAX_FRAME_CHARS = 1024 * 64;
+
+  /**
+   * The index of the user-defined writability flag that is cleared while too many payloads are pending.
+   */
+  private static final int PENDING_WRITABILITY_INDEX = 1;
+
   final Channel channel;
 
+  private final Queue<String> pending = new ConcurrentLinkedQueue<String>();
+  private final AtomicBoolean flushScheduled = new AtomicBoolean();
+
+  private final AtomicLong pendingBytes = new AtomicLong();
+  private final AtomicLong messagesWritten = new AtomicLong();
+  private final AtomicLong framesWritten = new AtomicLong();
+
+  private final Runnable flushTask = new Runnable() {
+    @Override
+    public void run() {
+      flushPending();
+    }
+  };
+
   public NettyQueueChannel(Channel channel) {
     this.channel = channel;
   }
@@ -36,9 +78,137 @@ public class NettyQueueChannel implements QueueChannel {
     return channel.isActive();
   }
 
+  @Override
+  public boolean isWritable() {
+    return channel.isWritable();
+  }
+
   @Override
   public void write(String data) {
-    channel.writeAndFlush(new TextWebSocketFrame(data));
+    // counted before the payload is queued, so that it cannot be sent and counted off first.
+    addPendingBytes(UTF8EncodingUtil.length(data));
+    pending.offer(data);
+
+    if (flushScheduled.compareAndSet(false, true)) {
+      channel.eventLoop().execute(flushTask);
+    }
+  }
+
+  /**
+   * Writes all collected payloads. Payloads which are JSON arrays are merged into one array per frame; anything
+   * else is written as a frame of its own.
+   */
+  private void flushPending() {
+    flushScheduled.set(false);
+
+    StringBuilder frame = null;
+    int frameSize = 0;
+
+    String data;
+    while ((data = pending.poll()) != null) {
+      messagesWritten.incrementAndGet();
+
+      final int end = data.length() - 1;
+      if (end < 1 || data.charAt(0) != '[' || data.charAt(end) != ']') {
+        if (frame != null) {
+          writeFrame(frame.append(']').toString(), frameSize);
+          frame = null;
+          frameSize = 0;
+        }
+        writeFrame(data, UTF8EncodingUtil.length(data));
+        continue;
+      }
+
+      if (isEmptyArray(data)) {
+        addPendingBytes(-UTF8EncodingUtil.length(data));
+        continue;
+      }
+
+      frameSize += UTF8EncodingUtil.length(data);
+
+      if (frame == null) {
+        frame = new StringBuilder(Math.min(MAX_FRAME_CHARS, data.length() * 2)).append('[');
+      }
+      else {
+        frame.append(',');
+      }
+      frame.append(data, 1, end);
+
+      if (frame.length() >= MAX_FRAME_CHARS) {
+        writeFrame(frame.append(']').toString(), frameSize);
+        frame = null;
+        frameSize = 0;
+      }
+    }
+
+    if (frame != null) {
+      writeFrame(frame.append(']').toString(), frameSize);
+    }
+
+    channel.flush();
+  }
+
+  private void writeFrame(final String frame, final int size) {
+    framesWritten.incrementAndGet();
+    channel.write(new TextWebSocketFrame(frame)).addListener(new ChannelFutureListener() {
+      @Override
+      public void operationComplete(final ChannelFuture future) throws Exception {
+        addPendingBytes(-size);
+      }
+    });
+  }
+
+  /**
+   * Adds to the number of pending bytes, and clears or sets the pending writability flag when the total crosses the
+   * high or low water mark of the channel.
+   */
+  private void addPendingBytes(final long delta) {
+    final long total = pendingBytes.addAndGet(delta);
+    if (delta > 0 && total > channel.config().getWriteBufferHighWaterMark()) {
+      setPendingWritability(false);
+    }
+    else if (delta < 0 && total < channel.config().getWriteBufferLowWaterMark()) {
+      setPendingWritability(true);
+    }
+  }
+
+  private void setPendingWritability(final boolean writable) {
+    final ChannelOutboundBuffer outboundBuffer = channel.unsafe().outboundBuffer();
+    // the buffer is gone once the channel has been closed.
+    if (outboundBuffer != null) {
+      outboundBuffer.setUserDefinedWritability(PENDING_WRITABILITY_INDEX, writable);
+    }
+  }
+
+  private static boolean isEmptyArray(final String data) {
+    for (int i = 1; i < data.length() - 1; i++) {
+      if (!Character.isWhitespace(data.charAt(i))) {
+        return false;
+      }
+    }
+    return true;
   }
 
+  /**
+   * Returns the number of bytes of the payloads written to this channel which have not yet been flushed to the
+   * socket, counted as UTF-8.
+   */
+  @Override
+  public long getPendingBytes() {
+    return pendingBytes.get();
+  }
+
+  /**
+   * Returns the number of payloads written to this channel.
+   */
+  public long getMessagesWritten() {
+    return messagesWritten.get();
+  }
+
+  /**
+   * Returns the number of WebSocket frames the written payloads were coalesced into.
+   */
+  public long getFramesWritten() {
+    return framesWritten.get();
+  }
 }
@@ -0,0 +1,148 @@
+/*
+ * Copyright (C) 2016 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.jboss.errai.bus.server.io.websockets;
+
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.ServerChannel;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The Netty transport used by the {@link WebSocketServer}. The native epoll transport is looked up reflectively, so
+ * that it is only used when <tt>netty-transport-native-epoll</tt> is on the classpath and its native library can be
+ * loaded on this platform.
+ */
+public final class NettyTransport {
+  private static final Logger log = LoggerFactory.getLogger(NettyTransport.class);
+
+  private static final String EPOLL_CLASS = "io.netty.channel.epoll.Epoll";
+  private static final String EPOLL_EVENT_LOOP_GROUP_CLASS = "io.netty.channel.epoll.EpollEventLoopGroup";
+  private static final String EPOLL_SERVER_CHANNEL_CLASS = "io.netty.channel.epoll.EpollServerSocketChannel";
+  private static final String EPOLL_CHANNEL_CLASS = "io.netty.channel.epoll.EpollSocketChannel";
+
+  private static final NettyTransport NIO
+      = new NettyTransport("nio", null, NioServerSocketChannel.class, NioSocketChannel.class);
+
+  private final String name;
+  private final Class<? extends EventLoopGroup> eventLoopGroupClass;
+  private final Class<? extends ServerChannel> serverChannelClass;
+  private final Class<? extends SocketChannel> channelClass;
+
+  private NettyTransport(final String name,
+                         final Class<? extends EventLoopGroup> eventLoopGroupClass,
+                         final Class<? extends ServerChannel> serverChannelClass,
+                         final Class<? extends SocketChannel> channelClass) {
+    this.name = name;
+    this.eventLoopGroupClass = eventLoopGroupClass;
+    this.serverChannelClass = serverChannelClass;
+    this.channelClass = channelClass;
+  }
+
+  /**
+   * Selects the transport for the specified setting.
+   *
+   * @param setting
+   *     <tt>epoll</tt> to require the native transport, <tt>nio</tt> to always use NIO, or <tt>auto</tt> (or
+   *     <tt>null</tt>) to use epoll where it is available and NIO otherwise.
+   *
+   * @return the selected transport.
+   */
+  public static NettyTransport select(final String setting) {
+    if ("nio".equalsIgnoreCase(setting)) {
+      return NIO;
+    }
+
+    final NettyTransport epoll = loadEpoll();
+    if (epoll != null) {
+      return epoll;
+    }
+
+    if ("epoll".equalsIgnoreCase(setting)) {
+      throw new IllegalStateException("the epoll transport was requested but is not available on this platform "
+          + "(is netty-transport-native-epoll on the classpath?)");
+    }
+    return NIO;
+  }
+
+  @SuppressWarnings("unchecked")
+  private static NettyTransport loadEpoll() {
+    try {
+      final ClassLoader classLoader = NettyTransport.class.getClassLoader();
+      final Class<?> epoll = Class.forName(EPOLL_CLASS, true, classLoader);
+
+      if (!(Boolean) epoll.getMethod("isAvailable").invoke(null)) {
+        log.debug("epoll transport is not available", (Throwable) epoll.getMethod("unavailabilityCause").invoke(null));
+        return null;
+      }
+
+      return new NettyTransport("epoll",
+          (Class<? extends EventLoopGroup>) Class.forName(EPOLL_EVENT_LOOP_GROUP_CLASS, true, classLoader),
+          (Class<? extends ServerChannel>) Class.forName(EPOLL_SERVER_CHANNEL_CLASS, true, classLoader),
+          (Class<? extends SocketChannel>) Class.forName(EPOLL_CHANNEL_CLASS, true, classLoader));
+    }
+    catch (ClassNotFoundException e) {
+      return null;
+    }
+    catch (Throwable t) {
+      log.debug("could not load the epoll transport", t);
+      return null;
+    }
+  }
+
+  /**
+   * Creates an event loop group for this transport.
+   *
+   * @param threads
+   *     the number of threads, or 0 to use Netty's default of twice the number of processors.
+   *
+   * @return a new event loop group.
+   */
+  public EventLoopGroup newEventLoopGroup(final int threads) {
+    if (eventLoopGroupClass == null) {
+      return new NioEventLoopGroup(threads);
+    }
+
+    try {
+      return eventLoopGroupClass.getConstructor(int.class).newInstance(threads);
+    }
+    catch (Exception e) {
+      throw new RuntimeException("could not create " + name + " event loop group", e);
+    }
+  }
+
+  public Class<? extends ServerChannel> getServerChannelClass() {
+    return serverChannelClass;
+  }
+
+  public Class<? extends SocketChannel> getChannelClass() {
+    return channelClass;
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  @Override
+  public String toString() {
+    return name;
+  }
+}
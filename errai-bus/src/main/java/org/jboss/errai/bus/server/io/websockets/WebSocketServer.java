@@ -18,13 +18,21 @@ package org.jboss.errai.bus.server.io.websockets;
 
 import static org.slf4j.LoggerFactory.getLogger;
 import io.netty.bootstrap.ServerBootstrap;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.buffer.UnpooledByteBufAllocator;
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelFuture;
 import io.netty.channel.ChannelInitializer;
-import io.netty.channel.nio.NioEventLoopGroup;
-import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.WriteBufferWaterMark;
 import io.netty.handler.codec.http.HttpObjectAggregator;
 import io.netty.handler.codec.http.HttpServerCodec;
+import io.netty.handler.codec.http.websocketx.WebSocketFrame;
+import io.netty.handler.codec.http.websocketx.extensions.WebSocketExtensionFilter;
+import io.netty.handler.codec.http.websocketx.extensions.WebSocketExtensionFilterProvider;
+import io.netty.handler.codec.http.websocketx.extensions.WebSocketServerExtensionHandler;
+import io.netty.handler.codec.http.websocketx.extensions.compression.PerMessageDeflateServerExtensionHandshaker;
 import io.netty.handler.ssl.SslHandler;
 
 import org.jboss.errai.bus.server.io.websockets.ssl.SslHandlerFactory;
@@ -50,14 +58,29 @@ public class WebSocketServer {
     final ErraiServiceConfigurator esc = svc.getConfiguration();
     useSecureWebSocket = ErraiConfigAttribs.SECURE_WEB_SOCKET_SERVER.getBoolean(esc);
     final int port = ErraiConfigAttribs.WEB_SOCKET_PORT.getInt(esc);
+    final int maxFrameSize = ErraiConfigAttribs.WEB_SOCKET_MAX_FRAME_SIZE.getInt(esc);
+    final boolean compression = ErraiConfigAttribs.WEB_SOCKET_COMPRESSION.getBoolean(esc);
+    final int compressionLevel = ErraiConfigAttribs.WEB_SOCKET_COMPRESSION_LEVEL.getInt(esc);
+    final int compressionThreshold = ErraiConfigAttribs.WEB_SOCKET_COMPRESSION_THRESHOLD.getInt(esc);
+    final NettyTransport transport = NettyTransport.select(ErraiConfigAttribs.WEB_SOCKET_TRANSPORT.get(esc));
+
     final ServerBootstrap bootstrap = new ServerBootstrap();
-    final WebSocketServerHandler webSocketHandler = new WebSocketServerHandler(svc);
+    final WebSocketServerHandler webSocketHandler = new WebSocketServerHandler(svc, maxFrameSize, compression);
 
     try {
-      final NioEventLoopGroup bossGroup = new NioEventLoopGroup();
-      final NioEventLoopGroup workerGroup = new NioEventLoopGroup();
-      final ChannelFuture channelFuture = bootstrap.group(bossGroup, workerGroup).channel(NioServerSocketChannel.class)
-              .childHandler(new ChannelInitializer() {
+      final EventLoopGroup bossGroup
+          = transport.newEventLoopGroup(ErraiConfigAttribs.WEB_SOCKET_BOSS_THREADS.getInt(esc));
+      final EventLoopGroup workerGroup
+          = transport.newEventLoopGroup(ErraiConfigAttribs.WEB_SOCKET_WORKER_THREADS.getInt(esc));
+
+      bootstrap.group(bossGroup, workerGroup).channel(transport.getServerChannelClass())
+          .childOption(ChannelOption.ALLOCATOR, ErraiConfigAttribs.WEB_SOCKET_POOLED_BUFFERS.getBoolean(esc)
+              ? PooledByteBufAllocator.DEFAULT : UnpooledByteBufAllocator.DEFAULT)
+          .childOption(ChannelOption.WRITE_BUFFER_WATER_MARK, new WriteBufferWaterMark(
+              ErraiConfigAttribs.WEB_SOCKET_WRITE_BUFFER_LOW_WATER_MARK.getInt(esc),
+              ErraiConfigAttribs.WEB_SOCKET_WRITE_BUFFER_HIGH_WATER_MARK.getInt(esc)));
+
+      final ChannelFuture channelFuture = bootstrap.childHandler(new ChannelInitializer() {
                 @Override
                 protected void initChannel(Channel ch) throws Exception {
                   if (useSecureWebSocket) {
@@ -65,7 +88,12 @@ public class WebSocketServer {
                     ch.pipeline().addLast("ssl", sslHandler);
                   }
                   ch.pipeline().addLast("codec-http", new HttpServerCodec());
-                  ch.pipeline().addLast("aggregator", new HttpObjectAggregator(65536));
+                  ch.pipeline().addLast("aggregator", new HttpObjectAggregator(maxFrameSize));
+                  if (compression) {
+                    ch.pipeline().addLast("compression", new WebSocketServerExtensionHandler(
+                        new PerMessageDeflateServerExtensionHandshaker(compressionLevel, false, 15, false, false,
+                            new CompressionThresholdFilterProvider(compressionThreshold))));
+                  }
                   ch.pipeline().addLast("handler", webSocketHandler);
                 }
 
@@ -93,6 +121,33 @@ public class WebSocketServer {
     catch (Throwable t) {
       throw new RuntimeException(t);
     }
-    log.info("started web socket server on port: " + port);
+    log.info("started web socket server on port: " + port + " (transport: " + transport
+        + (compression ? "; permessage-deflate enabled" : "") + ")");
+  }
+
+  /**
+   * Leaves frames smaller than the threshold uncompressed, which the permessage-deflate extension permits.
+   */
+  private static class CompressionThresholdFilterProvider implements WebSocketExtensionFilterProvider {
+    private final WebSocketExtensionFilter encoderFilter;
+
+    private CompressionThresholdFilterProvider(final int threshold) {
+      this.encoderFilter = new WebSocketExtensionFilter() {
+        @Override
+        public boolean mustSkip(final WebSocketFrame frame) {
+          return frame.content().readableBytes() < threshold;
+        }
+      };
+    }
+
+    @Override
+    public WebSocketExtensionFilter encoderFilter() {
+      return encoderFilter;
+    }
+
+    @Override
+    public WebSocketExtensionFilter decoderFilter() {
+      return WebSocketExtensionFilter.NEVER_SKIP;
+    }
   }
 }
@@ -16,8 +16,6 @@
 
 package org.jboss.errai.bus.server.io.websockets;
 
-import static io.netty.handler.codec.http.HttpHeaders.isKeepAlive;
-import static io.netty.handler.codec.http.HttpHeaders.setContentLength;
 import static io.netty.handler.codec.http.HttpMethod.GET;
 import static io.netty.handler.codec.http.HttpResponseStatus.FORBIDDEN;
 import static io.netty.handler.codec.http.HttpVersion.HTTP_1_1;
@@ -32,8 +30,10 @@ import io.netty.channel.SimpleChannelInboundHandler;
 import io.netty.handler.codec.http.DefaultFullHttpResponse;
 import io.netty.handler.codec.http.FullHttpRequest;
 import io.netty.handler.codec.http.FullHttpResponse;
-import io.netty.handler.codec.http.HttpHeaders;
+import io.netty.handler.codec.http.HttpHeaderNames;
 import io.netty.handler.codec.http.HttpRequest;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.HttpUtil;
 import io.netty.handler.codec.http.websocketx.CloseWebSocketFrame;
 import io.netty.handler.codec.http.websocketx.PingWebSocketFrame;
 import io.netty.handler.codec.http.websocketx.PongWebSocketFrame;
@@ -41,6 +41,7 @@ import io.netty.handler.codec.http.websocketx.TextWebSocketFrame;
 import io.netty.handler.codec.http.websocketx.WebSocketFrame;
 import io.netty.handler.codec.http.websocketx.WebSocketServerHandshaker;
 import io.netty.handler.codec.http.websocketx.WebSocketServerHandshakerFactory;
+import io.netty.util.AttributeKey;
 import io.netty.util.CharsetUtil;
 
 import java.io.BufferedReader;
@@ -67,15 +68,19 @@ import javax.servlet.http.Cookie;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import javax.servlet.http.HttpSession;
+import javax.servlet.http.HttpUpgradeHandler;
 import javax.servlet.http.Part;
 
 import org.jboss.errai.bus.client.api.QueueSession;
 import org.jboss.errai.bus.client.api.messaging.Message;
 import org.jboss.errai.bus.client.protocols.BusCommand;
+import org.jboss.errai.bus.client.protocols.CompactWireCodec;
 import org.jboss.errai.bus.server.api.MessageQueue;
 import org.jboss.errai.bus.server.io.DirectDeliveryHandler;
 import org.jboss.errai.bus.server.io.MessageFactory;
+import org.jboss.errai.bus.server.io.QueueChannel;
 import org.jboss.errai.bus.server.service.ErraiService;
+import org.jboss.errai.bus.server.servlet.websocket.WebSocketNegotiationHandler;
 import org.jboss.errai.bus.server.util.LocalContext;
 import org.jboss.errai.common.client.protocols.MessageParts;
 import org.jboss.errai.marshalling.client.api.json.EJObject;
@@ -93,13 +98,26 @@ public class WebSocketServerHandler extends SimpleChannelInboundHandler {
   public static final String WEBSOCKET_ACTIVE = "Active";
   public static final String WEBSOCKET_PATH = "/websocket.bus";
 
+  /**
+   * The codec of a channel which uses the compact wire protocol.
+   */
+  private static final AttributeKey<CompactWireCodec> WIRE_CODEC = AttributeKey.valueOf("errai.bus.wireCodec");
+
   private final Map<Channel, QueueSession> activeChannels = new ConcurrentHashMap<Channel, QueueSession>();
 
   private WebSocketServerHandshaker handshaker = null;
   private ErraiService svc;
+  private final int maxFrameSize;
+  private final boolean allowExtensions;
 
   public WebSocketServerHandler(final ErraiService bus) {
+    this(bus, 65536, false);
+  }
+
+  public WebSocketServerHandler(final ErraiService bus, final int maxFrameSize, final boolean allowExtensions) {
     this.svc = bus;
+    this.maxFrameSize = maxFrameSize;
+    this.allowExtensions = allowExtensions;
   }
 
   @Override
@@ -117,19 +135,36 @@ public class WebSocketServerHandler extends SimpleChannelInboundHandler {
     ctx.flush();
   }
 
+  /**
+   * Wakes the queue of an active channel once Netty's outbound buffer, and the payloads pending in its
+   * {@link NettyQueueChannel}, have drained below the low water mark, so that any messages held back in the queue's
+   * buffer are written.
+   */
+  @Override
+  public void channelWritabilityChanged(ChannelHandlerContext ctx) throws Exception {
+    final QueueSession session = activeChannels.get(ctx.channel());
+    if (session != null && ctx.channel().isWritable()) {
+      final MessageQueue queue = svc.getBus().getQueueBySession(session.getSessionId());
+      if (queue != null) {
+        queue.wake();
+      }
+    }
+    super.channelWritabilityChanged(ctx);
+  }
+
   private void handleHttpRequest(final ChannelHandlerContext ctx, final FullHttpRequest req) throws Exception {
     // Allow only GET methods.
-    if (req.getMethod() != GET) {
+    if (!GET.equals(req.method())) {
       sendHttpResponse(ctx, req, new DefaultFullHttpResponse(HTTP_1_1, FORBIDDEN));
       return;
     }
 
     // Handshake
     final WebSocketServerHandshakerFactory wsFactory = new WebSocketServerHandshakerFactory(
-        this.getWebSocketLocation(req), null, false);
+        this.getWebSocketLocation(req), null, allowExtensions, maxFrameSize);
     this.handshaker = wsFactory.newHandshaker(req);
     if (this.handshaker == null) {
-      wsFactory.sendUnsupportedWebSocketVersionResponse(ctx.channel());
+      WebSocketServerHandshakerFactory.sendUnsupportedVersionResponse(ctx.channel());
     }
     else {
       this.handshaker.handshake(ctx.channel(), req);
@@ -153,7 +188,13 @@ public class WebSocketServerHandler extends SimpleChannelInboundHandler {
           .getName()));
     }
 
-    @SuppressWarnings("unchecked") final EJValue val = JSONDecoder.decode(((TextWebSocketFrame) frame).text());
+    String text = ((TextWebSocketFrame) frame).text();
+    final CompactWireCodec wireCodec = ctx.channel().attr(WIRE_CODEC).get();
+    if (wireCodec != null) {
+      text = wireCodec.decode(text);
+    }
+
+    @SuppressWarnings("unchecked") final EJValue val = JSONDecoder.decode(text);
 
     final QueueSession session;
 
@@ -190,7 +231,10 @@ public class WebSocketServerHandler extends SimpleChannelInboundHandler {
               WEBSOCKET_ACTIVE.equals(localContext.getAttribute(String.class, SESSION_ATTR_WS_STATUS))) {
 
             final MessageQueue queueBySession = svc.getBus().getQueueBySession(sessionKey);
-            queueBySession.setDeliveryHandler(DirectDeliveryHandler.createFor(new NettyQueueChannel(ctx.channel())));
+            final QueueChannel queueChannel = WebSocketNegotiationHandler.negotiateWireProtocol(ejObject, session,
+                new NettyQueueChannel(ctx.channel()), svc);
+            queueBySession.setDeliveryHandler(DirectDeliveryHandler.createFor(queueChannel));
+            ctx.channel().attr(WIRE_CODEC).set(WebSocketNegotiationHandler.getWireCodec(session));
 
             // open the channel
             activeChannels.put(ctx.channel(), session);
@@ -258,23 +302,24 @@ public class WebSocketServerHandler extends SimpleChannelInboundHandler {
 
   private void sendHttpResponse(final ChannelHandlerContext ctx, final FullHttpRequest req, final FullHttpResponse res) {
     // Generate an error page if response status code is not OK (200).
-    if (res.getStatus().code() != 200) {
-      ByteBuf buf = Unpooled.copiedBuffer(res.getStatus().toString(), CharsetUtil.UTF_8);
+    final HttpResponseStatus status = res.status();
+    if (status.code() != 200) {
+      ByteBuf buf = Unpooled.copiedBuffer(status.toString(), CharsetUtil.UTF_8);
       res.content().writeBytes(buf);
       buf.release();
-      setContentLength(res, res.content().readableBytes());
+      HttpUtil.setContentLength(res, res.content().readableBytes());
     }
 
     // Send the response and close the connection if necessary.
-    final ChannelFuture f = ctx.channel().write(res);
-    if (!isKeepAlive(req) || res.getStatus().code() != 200) {
+    final ChannelFuture f = ctx.channel().writeAndFlush(res);
+    if (!HttpUtil.isKeepAlive(req) || status.code() != 200) {
       f.addListener(ChannelFutureListener.CLOSE);
     }
   }
 
 
   private String getWebSocketLocation(final HttpRequest req) {
-    return "ws://" + req.headers().get(HttpHeaders.Names.HOST) + WEBSOCKET_PATH;
+    return "ws://" + req.headers().get(HttpHeaderNames.HOST) + WEBSOCKET_PATH;
   }
 
   public static void sendMessage(final ChannelHandlerContext ctx, final String message) {
@@ -344,6 +389,11 @@ public class WebSocketServerHandler extends SimpleChannelInboundHandler {
       return 0;
     }
 
+    @Override
+    public long getContentLengthLong() {
+      return 0;
+    }
+
     @Override
     public String getContentType() {
       return null;
@@ -458,6 +508,7 @@ public class WebSocketServerHandler extends SimpleChannelInboundHandler {
     }
 
     @Override
+    @Deprecated
     public String getRealPath(final String path) {
       return null;
     }
@@ -622,6 +673,11 @@ public class WebSocketServerHandler extends SimpleChannelInboundHandler {
       return null;
     }
 
+    @Override
+    public String changeSessionId() {
+      return null;
+    }
+
     @Override
     public boolean isRequestedSessionIdValid() {
       return false;
@@ -638,6 +694,7 @@ public class WebSocketServerHandler extends SimpleChannelInboundHandler {
     }
 
     @Override
+    @Deprecated
     public boolean isRequestedSessionIdFromUrl() {
       return false;
     }
@@ -664,6 +721,11 @@ public class WebSocketServerHandler extends SimpleChannelInboundHandler {
     public Part getPart(final String name) throws IOException, ServletException {
       return null;
     }
+
+    @Override
+    public <T extends HttpUpgradeHandler> T upgrade(final Class<T> handlerClass) throws IOException, ServletException {
+      return null;
+    }
   }
 }
 
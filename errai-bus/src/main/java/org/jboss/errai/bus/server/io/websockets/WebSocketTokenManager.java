@@ -43,9 +43,9 @@ public final class WebSocketTokenManager {
   @GuardedBy("session")
   public static String getNewOneTimeToken(final QueueSession session) {
     synchronized (session) {
-      List tokenStore = session.getAttribute(List.class, TOKEN_STORE);
+      List<String> tokenStore = session.getAttribute(List.class, TOKEN_STORE);
       if (tokenStore == null) {
-        session.setAttribute(TOKEN_STORE, tokenStore = new ArrayList());
+        session.setAttribute(TOKEN_STORE, tokenStore = new ArrayList<String>());
       }
 
       if (tokenStore.size() == 6) {
@@ -61,13 +61,13 @@ public final class WebSocketTokenManager {
     }
   }
 
-  @SuppressWarnings("SynchronizationOnLocalVariableOrMethodParameter")
+  @SuppressWarnings({"unchecked", "SynchronizationOnLocalVariableOrMethodParameter"})
   @GuardedBy("session")
   public static boolean verifyOneTimeToken(final QueueSession session, final String token) {
     synchronized (session) {
       final boolean tokenRemoved;
       if (session.hasAttribute(TOKEN_STORE)) {
-        final List tokenStore = session.getAttribute(List.class, TOKEN_STORE);
+        final List<String> tokenStore = session.getAttribute(List.class, TOKEN_STORE);
         tokenRemoved = tokenStore.remove(token);
         if (tokenStore.isEmpty()) {
           session.removeAttribute(TOKEN_STORE);
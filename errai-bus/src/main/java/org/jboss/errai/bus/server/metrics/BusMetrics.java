@@ -0,0 +1,241 @@
+/*
+ * Copyright (C) 2016 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.errai.bus.server.metrics;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.jboss.errai.bus.server.MessageQueueImpl;
+import org.jboss.errai.bus.server.api.MessageQueue;
+import org.jboss.errai.bus.server.io.buffers.Buffer;
+import org.jboss.errai.bus.server.io.buffers.TransmissionBuffer;
+import org.jboss.errai.bus.server.service.ErraiConfigAttribs;
+import org.jboss.errai.bus.server.service.ErraiServiceConfigurator;
+
+/**
+ * Counts the messages, queue deliveries and bytes sent per subject and the time it takes queues to drain. The counters are striped
+ * {@link LongAdder}s, so recording is cheap enough to be left on in production. Gauges, such as per-session buffer
+ * occupancy and the worker queue depth, are only sampled when a {@link #snapshot(Collection, Map) snapshot} is taken.
+ * <p/>
+ * Like {@link org.jboss.errai.bus.server.io.PageUtil}, the counters are shared by all buses in the VM.
+ */
+public final class BusMetrics {
+  /**
+   * The subject under which messages are counted once metrics are kept for the maximum number of subjects.
+   */
+  public static final String OTHER_SUBJECTS = "(other)";
+
+  private static volatile boolean enabled = true;
+  private static volatile int maxSubjects = 1000;
+
+  private static final ConcurrentMap<String, SubjectCounters> subjects
+      = new ConcurrentHashMap<String, SubjectCounters>();
+  private static final LatencyHistogram deliveryLatency = new LatencyHistogram();
+  private static final ConcurrentMap<String, Gauge> gauges = new ConcurrentHashMap<String, Gauge>();
+
+  private BusMetrics() {
+  }
+
+  /**
+   * Reads whether metrics are kept, and for how many subjects, from the specified configuration.
+   */
+  public static void configure(final ErraiServiceConfigurator config) {
+    enabled = ErraiConfigAttribs.BUS_METRICS_ENABLED.getBoolean(config);
+    maxSubjects = ErraiConfigAttribs.BUS_METRICS_MAX_SUBJECTS.getInt(config);
+  }
+
+  public static boolean isEnabled() {
+    return enabled;
+  }
+
+  public static void setEnabled(final boolean enabled) {
+    BusMetrics.enabled = enabled;
+  }
+
+  /**
+   * Counts a message sent to the specified subject. A message is counted once, when it is sent to the bus, however many
+   * queues it is delivered to.
+   */
+  public static void recordMessage(final String subject) {
+    if (enabled && subject != null) {
+      countersFor(subject).messages.increment();
+    }
+  }
+
+  /**
+   * Counts the deliveries of a message sent to the specified subject to the specified number of outbound queues.
+   */
+  public static void recordDeliveries(final String subject, final int queues) {
+    if (enabled && subject != null) {
+      countersFor(subject).deliveries.add(queues);
+    }
+  }
+
+  /**
+   * Counts the bytes written to an outbound queue for a message sent to the specified subject.
+   */
+  public static void recordBytes(final String subject, final long bytes) {
+    if (enabled && subject != null) {
+      countersFor(subject).bytes.add(bytes);
+    }
+  }
+
+  /**
+   * Records the time, in nanoseconds, from a message being offered to a queue until the queue had drained.
+   */
+  public static void recordDeliveryLatency(final long nanos) {
+    if (enabled) {
+      deliveryLatency.record(nanos);
+    }
+  }
+
+  public static LatencyHistogram getDeliveryLatency() {
+    return deliveryLatency;
+  }
+
+  /**
+   * Registers a value to be sampled whenever a snapshot is taken, replacing any gauge registered under the same name.
+   */
+  public static void registerGauge(final String name, final Gauge gauge) {
+    gauges.put(name, gauge);
+  }
+
+  public static void unregisterGauge(final String name) {
+    gauges.remove(name);
+  }
+
+  /**
+   * Samples the registered gauges.
+   */
+  public static Map<String, Long> getGaugeValues() {
+    final Map<String, Long> values = new TreeMap<String, Long>();
+    for (final Map.Entry<String, Gauge> entry : gauges.entrySet()) {
+      values.put(entry.getKey(), entry.getValue().getValue());
+    }
+    return values;
+  }
+
+  /**
+   * Returns the number of messages sent per subject.
+   */
+  public static Map<String, Long> getMessageCounts() {
+    final Map<String, Long> counts = new TreeMap<String, Long>();
+    for (final Map.Entry<String, SubjectCounters> entry : subjects.entrySet()) {
+      counts.put(entry.getKey(), entry.getValue().messages.sum());
+    }
+    return counts;
+  }
+
+  /**
+   * Returns the number of deliveries to outbound queues per subject.
+   */
+  public static Map<String, Long> getDeliveryCounts() {
+    final Map<String, Long> counts = new TreeMap<String, Long>();
+    for (final Map.Entry<String, SubjectCounters> entry : subjects.entrySet()) {
+      counts.put(entry.getKey(), entry.getValue().deliveries.sum());
+    }
+    return counts;
+  }
+
+  /**
+   * Returns the number of bytes written to outbound queues per subject.
+   */
+  public static Map<String, Long> getByteCounts() {
+    final Map<String, Long> counts = new TreeMap<String, Long>();
+    for (final Map.Entry<String, SubjectCounters> entry : subjects.entrySet()) {
+      counts.put(entry.getKey(), entry.getValue().bytes.sum());
+    }
+    return counts;
+  }
+
+  /**
+   * Takes a snapshot of the counters, sampling the state of the specified queues.
+   *
+   * @param queues
+   *     the queues of the sessions to include.
+   * @param busGauges
+   *     values sampled by the caller, by name. These are reported along with the registered gauges.
+   */
+  public static MetricsSnapshot snapshot(final Collection<MessageQueue> queues, final Map<String, Long> busGauges) {
+    final Map<String, MetricsSnapshot.SubjectStatistics> subjectStats
+        = new TreeMap<String, MetricsSnapshot.SubjectStatistics>();
+    for (final Map.Entry<String, SubjectCounters> entry : subjects.entrySet()) {
+      subjectStats.put(entry.getKey(), new MetricsSnapshot.SubjectStatistics(
+          entry.getValue().messages.sum(), entry.getValue().deliveries.sum(), entry.getValue().bytes.sum()));
+    }
+
+    final Map<String, MetricsSnapshot.SessionStatistics> sessionStats
+        = new HashMap<String, MetricsSnapshot.SessionStatistics>();
+    for (final MessageQueue queue : queues) {
+      final long messages = queue instanceof MessageQueueImpl ? ((MessageQueueImpl) queue).getOfferedMessageCount() : 0;
+      sessionStats.put(queue.getSession().getSessionId(),
+          new MetricsSnapshot.SessionStatistics(messages, getBufferedBytes(queue), queue.isPaged()));
+    }
+
+    final Map<String, Long> gaugeValues = getGaugeValues();
+    gaugeValues.putAll(busGauges);
+
+    return new MetricsSnapshot(System.currentTimeMillis(), subjectStats, sessionStats, deliveryLatency, gaugeValues);
+  }
+
+  /**
+   * Returns the number of bytes waiting in the bus buffer for the specified queue: the data of the queue's color and the
+   * broadcasts which it has not read yet.
+   */
+  public static long getBufferedBytes(final MessageQueue queue) {
+    final Buffer buffer = queue.getBuffer();
+    if (buffer instanceof TransmissionBuffer) {
+      return ((TransmissionBuffer) buffer).getUnreadBytes(queue.getBufferColor());
+    }
+    return 0;
+  }
+
+  /**
+   * Clears all counters.
+   */
+  public static void reset() {
+    subjects.clear();
+    deliveryLatency.reset();
+  }
+
+  private static SubjectCounters countersFor(final String subject) {
+    SubjectCounters counters = subjects.get(subject);
+    if (counters == null) {
+      final String key = subjects.size() < maxSubjects ? subject : OTHER_SUBJECTS;
+      counters = subjects.get(key);
+      if (counters == null) {
+        final SubjectCounters newCounters = new SubjectCounters();
+        counters = subjects.putIfAbsent(key, newCounters);
+        if (counters == null) {
+          counters = newCounters;
+        }
+      }
+    }
+    return counters;
+  }
+
+  private static class SubjectCounters {
+    private final LongAdder messages = new LongAdder();
+    private final LongAdder deliveries = new LongAdder();
+    private final LongAdder bytes = new LongAdder();
+  }
+}
@@ -0,0 +1,57 @@
+/*
+ * Copyright (C) 2016 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.errai.bus.server.metrics;
+
+import java.util.Map;
+
+/**
+ * The management interface of the bus metrics, registered as <tt>org.jboss.errai.bus:type=BusMetrics</tt>. Latencies
+ * are in nanoseconds.
+ */
+public interface BusMetricsMXBean {
+  Map<String, Long> getSubjectMessageCounts();
+
+  /**
+   * Returns the number of times messages were delivered to outbound queues, by subject. A broadcast counts once for
+   * every queue it is delivered to.
+   */
+  Map<String, Long> getSubjectDeliveryCounts();
+
+  Map<String, Long> getSubjectByteCounts();
+
+  /**
+   * Returns the number of bytes waiting in the bus buffer for each session, by session id.
+   */
+  Map<String, Long> getSessionBufferedBytes();
+
+  long getDeliveryCount();
+
+  long getDeliveryLatencyMean();
+
+  long getDeliveryLatency50();
+
+  long getDeliveryLatency99();
+
+  long getDeliveryLatencyMax();
+
+  Map<String, Long> getGauges();
+
+  /**
+   * Clears the counters.
+   */
+  void reset();
+}
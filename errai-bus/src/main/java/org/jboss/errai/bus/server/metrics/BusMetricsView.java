@@ -0,0 +1,137 @@
+/*
+ * Copyright (C) 2016 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.errai.bus.server.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.jboss.errai.bus.server.ServerMessageBusImpl;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Exposes the metrics of a bus through JMX.
+ */
+public class BusMetricsView implements BusMetricsMXBean {
+  private static final Logger log = LoggerFactory.getLogger(BusMetricsView.class);
+
+  private static final String OBJECT_NAME = "org.jboss.errai.bus:type=BusMetrics";
+
+  private final ServerMessageBusImpl bus;
+
+  public BusMetricsView(final ServerMessageBusImpl bus) {
+    this.bus = bus;
+  }
+
+  /**
+   * Registers the metrics of the specified bus with the platform MBean server.
+   *
+   * @return the name the view was registered under, or null if it could not be registered, for instance because the
+   *         metrics of another bus in the same VM are registered already.
+   */
+  public static ObjectName register(final ServerMessageBusImpl bus) {
+    try {
+      final ObjectName name = new ObjectName(OBJECT_NAME);
+      ManagementFactory.getPlatformMBeanServer().registerMBean(new BusMetricsView(bus), name);
+      return name;
+    }
+    catch (InstanceAlreadyExistsException e) {
+      log.debug("bus metrics are already registered with the MBean server");
+    }
+    catch (JMException e) {
+      log.warn("could not register bus metrics with the MBean server", e);
+    }
+    return null;
+  }
+
+  public static void unregister(final ObjectName name) {
+    final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    try {
+      if (server.isRegistered(name)) {
+        server.unregisterMBean(name);
+      }
+    }
+    catch (JMException e) {
+      log.warn("could not unregister bus metrics from the MBean server", e);
+    }
+  }
+
+  @Override
+  public Map<String, Long> getSubjectMessageCounts() {
+    return BusMetrics.getMessageCounts();
+  }
+
+  @Override
+  public Map<String, Long> getSubjectDeliveryCounts() {
+    return BusMetrics.getDeliveryCounts();
+  }
+
+  @Override
+  public Map<String, Long> getSubjectByteCounts() {
+    return BusMetrics.getByteCounts();
+  }
+
+  @Override
+  public Map<String, Long> getSessionBufferedBytes() {
+    final Map<String, Long> bufferedBytes = new TreeMap<String, Long>();
+    for (final Map.Entry<String, MetricsSnapshot.SessionStatistics> entry : bus.getMetrics().getSessions().entrySet()) {
+      bufferedBytes.put(entry.getKey(), entry.getValue().getBufferedBytes());
+    }
+    return bufferedBytes;
+  }
+
+  @Override
+  public long getDeliveryCount() {
+    return BusMetrics.getDeliveryLatency().getCount();
+  }
+
+  @Override
+  public long getDeliveryLatencyMean() {
+    return BusMetrics.getDeliveryLatency().getMean();
+  }
+
+  @Override
+  public long getDeliveryLatency50() {
+    return BusMetrics.getDeliveryLatency().getValueAtPercentile(50);
+  }
+
+  @Override
+  public long getDeliveryLatency99() {
+    return BusMetrics.getDeliveryLatency().getValueAtPercentile(99);
+  }
+
+  @Override
+  public long getDeliveryLatencyMax() {
+    return BusMetrics.getDeliveryLatency().getMax();
+  }
+
+  @Override
+  public Map<String, Long> getGauges() {
+    return bus.getMetricGauges();
+  }
+
+  @Override
+  public void reset() {
+    BusMetrics.reset();
+  }
+}
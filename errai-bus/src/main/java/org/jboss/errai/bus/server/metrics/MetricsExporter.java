@@ -0,0 +1,35 @@
+/*
+ * Copyright (C) 2016 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.errai.bus.server.metrics;
+
+/**
+ * Publishes the bus metrics to a monitoring system. Implementations are named in
+ * <tt>errai.bus.metrics.exporters</tt>, must have a public default constructor, and are handed a
+ * {@link MetricsSnapshot} every <tt>errai.bus.metrics.export_interval</tt> seconds from the bus scheduler thread.
+ */
+public interface MetricsExporter {
+  /**
+   * Publishes the specified snapshot. Implementations should not block for long, as housekeeping of the bus runs on
+   * the same thread.
+   */
+  void export(MetricsSnapshot snapshot);
+
+  /**
+   * Called when the bus is stopped.
+   */
+  void stop();
+}
@@ -0,0 +1,185 @@
+/*
+ * Copyright (C) 2016 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.errai.bus.server.metrics;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * An immutable view of the bus metrics at one point in time, as handed to {@link MetricsExporter}s.
+ */
+public final class MetricsSnapshot {
+  private final long timestamp;
+  private final Map<String, SubjectStatistics> subjects;
+  private final Map<String, SessionStatistics> sessions;
+  private final long deliveryCount;
+  private final long deliveryLatencyMean;
+  private final long deliveryLatency50;
+  private final long deliveryLatency99;
+  private final long deliveryLatencyMax;
+  private final Map<String, Long> gauges;
+
+  MetricsSnapshot(final long timestamp,
+                  final Map<String, SubjectStatistics> subjects,
+                  final Map<String, SessionStatistics> sessions,
+                  final LatencyHistogram deliveryLatency,
+                  final Map<String, Long> gauges) {
+    this.timestamp = timestamp;
+    this.subjects = Collections.unmodifiableMap(subjects);
+    this.sessions = Collections.unmodifiableMap(sessions);
+    this.deliveryCount = deliveryLatency.getCount();
+    this.deliveryLatencyMean = deliveryLatency.getMean();
+    this.deliveryLatency50 = deliveryLatency.getValueAtPercentile(50);
+    this.deliveryLatency99 = deliveryLatency.getValueAtPercentile(99);
+    this.deliveryLatencyMax = deliveryLatency.getMax();
+    this.gauges = Collections.unmodifiableMap(gauges);
+  }
+
+  /**
+   * Returns the time the snapshot was taken, in milliseconds since the epoch.
+   */
+  public long getTimestamp() {
+    return timestamp;
+  }
+
+  /**
+   * Returns the statistics of every subject messages were sent to, by subject.
+   */
+  public Map<String, SubjectStatistics> getSubjects() {
+    return subjects;
+  }
+
+  /**
+   * Returns the statistics of every open queue, by session id.
+   */
+  public Map<String, SessionStatistics> getSessions() {
+    return sessions;
+  }
+
+  /**
+   * Returns the number of times a queue has drained, which is the number of delivery latencies recorded.
+   */
+  public long getDeliveryCount() {
+    return deliveryCount;
+  }
+
+  /**
+   * Returns the mean time, in nanoseconds, from a message being offered to a queue until the queue had drained.
+   */
+  public long getDeliveryLatencyMean() {
+    return deliveryLatencyMean;
+  }
+
+  /**
+   * Returns the median time, in nanoseconds, from a message being offered to a queue until the queue had drained.
+   */
+  public long getDeliveryLatency50() {
+    return deliveryLatency50;
+  }
+
+  /**
+   * Returns the 99th percentile of the time, in nanoseconds, from a message being offered to a queue until the queue
+   * had drained.
+   */
+  public long getDeliveryLatency99() {
+    return deliveryLatency99;
+  }
+
+  /**
+   * Returns the longest time, in nanoseconds, from a message being offered to a queue until the queue had drained.
+   */
+  public long getDeliveryLatencyMax() {
+    return deliveryLatencyMax;
+  }
+
+  /**
+   * Returns the bus-wide values sampled when the snapshot was taken, such as the worker queue depth and the retry and
+   * page-out counts, by name.
+   */
+  public Map<String, Long> getGauges() {
+    return gauges;
+  }
+
+  /**
+   * The number of messages sent to a subject, the number of times they were delivered to outbound queues and the number
+   * of bytes written for them to outbound queues.
+   */
+  public static final class SubjectStatistics {
+    private final long messages;
+    private final long deliveries;
+    private final long bytes;
+
+    SubjectStatistics(final long messages, final long deliveries, final long bytes) {
+      this.messages = messages;
+      this.deliveries = deliveries;
+      this.bytes = bytes;
+    }
+
+    public long getMessages() {
+      return messages;
+    }
+
+    public long getDeliveries() {
+      return deliveries;
+    }
+
+    public long getBytes() {
+      return bytes;
+    }
+
+    @Override
+    public String toString() {
+      return "{messages=" + messages + ", deliveries=" + deliveries + ", bytes=" + bytes + "}";
+    }
+  }
+
+  /**
+   * The number of messages offered to the queue of a session, and the number of bytes waiting for it in the bus buffer.
+   */
+  public static final class SessionStatistics {
+    private final long messages;
+    private final long bufferedBytes;
+    private final boolean paged;
+
+    SessionStatistics(final long messages, final long bufferedBytes, final boolean paged) {
+      this.messages = messages;
+      this.bufferedBytes = bufferedBytes;
+      this.paged = paged;
+    }
+
+    public long getMessages() {
+      return messages;
+    }
+
+    /**
+     * Returns the number of bytes of the messages and broadcasts in the bus buffer which the queue's
+     * {@link org.jboss.errai.bus.server.io.buffers.BufferColor} has not read yet.
+     */
+    public long getBufferedBytes() {
+      return bufferedBytes;
+    }
+
+    public boolean isPaged() {
+      return paged;
+    }
+
+    @Override
+    public String toString() {
+      return "{messages=" + messages + ", bufferedBytes=" + bufferedBytes + ", paged=" + paged + "}";
+    }
+  }
+}
@@ -64,6 +64,79 @@ public enum ErraiConfigAttribs {
    */
   BUS_BUFFER_ALLOCATION_MODE("errai.bus.buffer_allocation_mode", "direct"),
 
+  /**
+   * The maximum amount of queue data, in megabytes, that may be paged out to disk across all queues. Once the quota
+   * is exhausted, queues are paged out according to {@link #BUS_PAGING_EVICTION_POLICY}.
+   * <p/>
+   * Default value: 256
+   */
+  BUS_PAGING_DISK_QUOTA("errai.bus.paging.disk_quota", "256"),
+
+  /**
+   * What to do with a queue that cannot be paged out within {@link #BUS_PAGING_DISK_QUOTA} ('KeepInBuffer' or
+   * 'DiscardPaged'). With 'KeepInBuffer' the waiting data stays in the bus buffer, where it may be overwritten by
+   * newer data. With 'DiscardPaged' the data already paged out for that queue is discarded to make room.
+   * <p/>
+   * Default value: 'KeepInBuffer'
+   */
+  BUS_PAGING_EVICTION_POLICY("errai.bus.paging.eviction_policy", "KeepInBuffer"),
+
+  /**
+   * The maximum number of messages that may be waiting, at any one time, to have their delivery re-attempted because
+   * nobody was subscribed to their subject when they were sent. Messages that would exceed this limit fail
+   * immediately with a {@link org.jboss.errai.bus.client.api.base.NoSubscribersToDeliverTo} error.
+   * <p/>
+   * Default value: 50000
+   */
+  BUS_RETRY_CAPACITY("errai.bus.retry_capacity", "50000"),
+
+  /**
+   * Whether the bus keeps per-subject and per-session metrics (see
+   * {@link org.jboss.errai.bus.server.metrics.BusMetrics}).
+   * <p/>
+   * Default value: true
+   */
+  BUS_METRICS_ENABLED("errai.bus.metrics.enabled", "true"),
+
+  /**
+   * Whether the bus metrics are registered as an MXBean under
+   * <tt>org.jboss.errai.bus:type=BusMetrics</tt>.
+   * <p/>
+   * Default value: true
+   */
+  BUS_METRICS_JMX("errai.bus.metrics.jmx", "true"),
+
+  /**
+   * A comma-separated list of {@link org.jboss.errai.bus.server.metrics.MetricsExporter} implementations which are
+   * handed a snapshot of the bus metrics every {@link #BUS_METRICS_EXPORT_INTERVAL} seconds.
+   */
+  BUS_METRICS_EXPORTERS("errai.bus.metrics.exporters"),
+
+  /**
+   * The interval, in seconds, at which the bus metrics are handed to the {@link #BUS_METRICS_EXPORTERS}.
+   * <p/>
+   * Default value: 60
+   */
+  BUS_METRICS_EXPORT_INTERVAL("errai.bus.metrics.export_interval", "60"),
+
+  /**
+   * The maximum number of subjects metrics are kept for individually. Messages to subjects seen after the limit
+   * was reached are counted together under <tt>(other)</tt>.
+   * <p/>
+   * Default value: 1000
+   */
+  BUS_METRICS_MAX_SUBJECTS("errai.bus.metrics.max_subjects", "1000"),
+
+  /**
+   * How messages dispatched asynchronously are handed to the worker threads: 'SharedQueue' (all workers take
+   * messages from one queue), 'WorkStealing' (every worker has its own queue and idle workers take messages from the
+   * queues of busy ones) or 'ThreadPerMessage' (every message is delivered on a virtual thread where available, or
+   * else on a thread from a pool that grows as needed; suited to services that block).
+   * <p/>
+   * Default value: 'SharedQueue'
+   */
+  ASYNC_DISPATCH_MODE("errai.async.dispatch_mode", "SharedQueue"),
+
   HOSTED_MODE_TESTING("errai.hosted_mode_testing", "false"),
   DO_LONG_POLL("org.jboss.errai.bus.do_long_poll", "true"),
   LONG_POLL_TIMEOUT("errai.bus.long_poll_timeout", "45000"),
@@ -71,6 +144,15 @@ public enum ErraiConfigAttribs {
   ENABLE_SSE_SUPPORT("errai.bus.enable_sse_support", "true"),
   SSE_TIMEOUT("errai.bus.servlet_sse_timeout", "45000"),
 
+  /**
+   * Whether the {@link org.jboss.errai.bus.server.servlet.StandardAsyncServlet} uses the non-blocking I/O of Servlet
+   * 3.1. Waiting long polls and server-sent event streams then hold no container thread, and messages are only
+   * written once the connection can take them. Requires a Servlet 3.1 container.
+   * <p/>
+   * Default value: false
+   */
+  SERVLET_NON_BLOCKING_IO("errai.bus.servlet_non_blocking_io", "false"),
+
   ENABLE_WEB_SOCKET_SERVER("errai.bus.enable_web_socket_server", "false"),
   WEB_SOCKET_URL("errai.bus.web_socket_url", "/websocket.bus"),
   WEB_SOCKET_PORT("errai.bus.web_socket_port", "8085"),
@@ -80,10 +162,103 @@ public enum ErraiConfigAttribs {
   WEB_SOCKET_KEYSTORE_PASSWORD("errai.bus.web_socket_keystore_password"),
   WEB_SOCKET_KEY_PASSWORD("errai.bus.web_socket_key_password"),
 
+  /**
+   * The transport used by the standalone web socket server: 'epoll' (the native Linux transport, which requires
+   * netty-transport-native-epoll on the classpath), 'nio', or 'auto' to use epoll where it is available.
+   * <p/>
+   * Default value: 'auto'
+   */
+  WEB_SOCKET_TRANSPORT("errai.bus.web_socket_transport", "auto"),
+
+  /**
+   * The number of threads accepting connections for the standalone web socket server.
+   * <p/>
+   * Default value: 1
+   */
+  WEB_SOCKET_BOSS_THREADS("errai.bus.web_socket_boss_threads", "1"),
+
+  /**
+   * The number of threads serving web socket connections. 0 uses twice the number of available processors.
+   * <p/>
+   * Default value: 0
+   */
+  WEB_SOCKET_WORKER_THREADS("errai.bus.web_socket_worker_threads", "0"),
+
+  /**
+   * Whether the web socket server allocates its I/O buffers from a pool of direct memory, rather than allocating a
+   * new buffer for every read and write.
+   * <p/>
+   * Default value: true
+   */
+  WEB_SOCKET_POOLED_BUFFERS("errai.bus.web_socket_pooled_buffers", "true"),
+
+  /**
+   * The largest web socket frame, in bytes, that the server accepts from a client.
+   * <p/>
+   * Default value: 65536
+   */
+  WEB_SOCKET_MAX_FRAME_SIZE("errai.bus.web_socket_max_frame_size", "65536"),
+
+  /**
+   * Once more than this many bytes are waiting to be written to a web socket connection, the connection is treated
+   * as unwritable and further messages for it are held in the bus buffer. It becomes writable again when the
+   * backlog falls under the low water mark.
+   * <p/>
+   * Default value: 65536
+   */
+  WEB_SOCKET_WRITE_BUFFER_HIGH_WATER_MARK("errai.bus.web_socket_write_buffer_high_water_mark", "65536"),
+  WEB_SOCKET_WRITE_BUFFER_LOW_WATER_MARK("errai.bus.web_socket_write_buffer_low_water_mark", "32768"),
+
+  /**
+   * Whether the web socket server offers the permessage-deflate extension to clients.
+   * <p/>
+   * Default value: false
+   */
+  WEB_SOCKET_COMPRESSION("errai.bus.web_socket_compression", "false"),
+
+  /**
+   * The deflate compression level (1-9) used when permessage-deflate has been negotiated.
+   * <p/>
+   * Default value: 6
+   */
+  WEB_SOCKET_COMPRESSION_LEVEL("errai.bus.web_socket_compression_level", "6"),
+
+  /**
+   * Frames smaller than this many bytes are sent uncompressed, even when permessage-deflate has been negotiated.
+   * <p/>
+   * Default value: 1024
+   */
+  WEB_SOCKET_COMPRESSION_THRESHOLD("errai.bus.web_socket_compression_threshold", "1024"),
+
   WEBSOCKET_SERVLET_ENABLED("errai.bus.websocket.servlet.enabled", "false"),
   WEBSOCKET_SERVLET_CONTEXT_PATH("errai.bus.websocket.servlet.path", "in.erraiBusWebSocket"),
   FORCE_SECURE_WEBSOCKET("errai.bus.websocket.force.secure", "false"),
 
+  /**
+   * Whether clients may switch a web socket to the compact wire protocol, which replaces repeated part names, type
+   * names and subjects with short tokens. Applies to the web socket server as well as the web socket servlets.
+   * <p/>
+   * Default value: false
+   */
+  WEBSOCKET_COMPACT_PROTOCOL("errai.bus.websocket.compact_protocol", "false"),
+
+  /**
+   * The number of outbound payloads the JSR-356 WebSocket channel queues per session while an asynchronous send is
+   * in flight. Queued payloads are coalesced into a single frame once the send completes.
+   * <p/>
+   * Default value: 256
+   */
+  WEBSOCKET_SERVLET_SEND_QUEUE_SIZE("errai.bus.websocket.servlet.send_queue_size", "256"),
+
+  /**
+   * What the JSR-356 WebSocket channel does when a session's send queue is full: <tt>buffer</tt> holds further
+   * messages in the bus buffer until the queue has drained, <tt>drop</tt> discards them and <tt>disconnect</tt>
+   * closes the session.
+   * <p/>
+   * Default value: buffer
+   */
+  WEBSOCKET_SERVLET_OVERFLOW_POLICY("errai.bus.websocket.servlet.overflow_policy", "buffer"),
+
   AUTO_DISCOVER_SERVICES("errai.bus.auto_discover_services", "false"),
 
   CLUSTER_PORT("errai.clustering.port", "6446"),
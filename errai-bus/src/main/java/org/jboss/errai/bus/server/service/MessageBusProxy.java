@@ -51,6 +51,7 @@ public class MessageBusProxy implements ServerMessageBus {
   private Multimap<String, MessageCallback> heldLocalSubscribe = LinkedHashMultimap.create();
   private List<SubscribeListener> heldSubscribeListener = new ArrayList<SubscribeListener>();
   private List<UnsubscribeListener> heldUnsubscribeListener = new ArrayList<UnsubscribeListener>();
+  private Map<String, String> heldConflations = new LinkedHashMap<String, String>();
   private BusMonitor heldBusMonitor;
   // END: ONly referenced in synchronized methods.
 
@@ -279,6 +280,27 @@ public class MessageBusProxy implements ServerMessageBus {
     return proxied.hasRemoteSubscriptions(subject);
   }
 
+  @Override
+  public void conflate(String subject, String keyPart) {
+    if (proxyClosed || !offerConflate(subject, keyPart)) {
+      proxied.conflate(subject, keyPart);
+    }
+  }
+
+  private synchronized boolean offerConflate(String subject, String keyPart) {
+    if (proxyClosed) {
+      return false;
+    } else {
+      heldConflations.put(subject, keyPart);
+      return true;
+    }
+  }
+
+  @Override
+  public long getConflatedMessageCount(String subject) {
+    return proxyClosed ? proxied.getConflatedMessageCount(subject) : 0;
+  }
+
   @Override
   public boolean hasRemoteSubscription(String sessionId, String subject) {
     return proxied.hasRemoteSubscription(sessionId, subject);
@@ -335,6 +357,10 @@ public class MessageBusProxy implements ServerMessageBus {
       bus.attachMonitor(heldBusMonitor);
     }
 
+    for (Map.Entry<String, String> entry : heldConflations.entrySet()) {
+      bus.conflate(entry.getKey(), entry.getValue());
+    }
+
     for (Map.Entry<String, MessageCallback> entry : heldSubscribe.entries()) {
       bus.subscribe(entry.getKey(), entry.getValue());
     }
@@ -368,6 +394,7 @@ public class MessageBusProxy implements ServerMessageBus {
     this.heldLocalSubscribe = null;
     this.heldSubscribeListener = null;
     this.heldUnsubscribeListener = null;
+    this.heldConflations = null;
     this.heldMessages = null;
     this.heldGlobalMessages = null;
     this.heldMessageFireListener = null;
@@ -146,6 +146,10 @@ public class ServiceProcessor implements MetaDataProcessor<BootstrapContext> {
     if (svc != null) {
       MessageCallback callback = svcParser.getCallback(svc);
       if (callback != null) {
+        if (svcParser.getConflationKey() != null) {
+          context.getBus().conflate(svcParser.getServiceName(), svcParser.getConflationKey());
+        }
+
         if (svcParser.isLocal()) {
           context.getBus().subscribeLocal(svcParser.getServiceName(), callback);
         }
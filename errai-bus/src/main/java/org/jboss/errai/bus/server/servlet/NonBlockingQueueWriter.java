@@ -0,0 +1,243 @@
+/*
+ * Copyright (C) 2016 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.errai.bus.server.servlet;
+
+import static org.slf4j.LoggerFactory.getLogger;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+
+import org.jboss.errai.bus.server.api.MessageQueue;
+import org.jboss.errai.bus.server.api.QueueActivationCallback;
+import org.jboss.errai.bus.server.io.OutputStreamWriteAdapter;
+import org.jboss.errai.marshalling.server.util.UnwrappedByteArrayOutputStream;
+import org.slf4j.Logger;
+
+/**
+ * Writes the messages of a {@link MessageQueue} to the response of an asynchronous request, using the non-blocking
+ * output of Servlet 3.1. The writer is both the {@link WriteListener} of the response and the activation callback of
+ * the queue, and only takes messages from the queue while the output stream is ready to accept them. Neither a
+ * container thread nor the thread delivering a message ever waits for a slow client.
+ * <p/>
+ * A long poll is completed as soon as a payload has been written. A server-sent event stream keeps writing events
+ * until the request times out, after which the client reconnects.
+ */
+public class NonBlockingQueueWriter implements WriteListener, QueueActivationCallback, AsyncListener {
+  private static final Logger log = getLogger(NonBlockingQueueWriter.class);
+
+  private static final byte[] SSE_DATA = "data: ".getBytes();
+  private static final byte[] SSE_TERMINATION = "\n\n".getBytes();
+
+  private final AsyncContext asyncContext;
+  private final MessageQueue queue;
+  private final ServletOutputStream outputStream;
+  private final boolean sse;
+  private final boolean wait;
+
+  /**
+   * Counts the requests to write. Only the thread which raises it from zero uses the output stream; the requests that
+   * arrive meanwhile make that thread go round once more.
+   */
+  private final AtomicInteger pendingWrites = new AtomicInteger();
+
+  // only accessed by the thread holding pendingWrites.
+  private final UnwrappedByteArrayOutputStream payload = new UnwrappedByteArrayOutputStream();
+  private boolean payloadReady;
+  private boolean flushNeeded;
+  private boolean responseWritten;
+
+  private volatile boolean timedOut;
+  private volatile boolean done;
+
+  private NonBlockingQueueWriter(final AsyncContext asyncContext,
+                                 final MessageQueue queue,
+                                 final boolean sse,
+                                 final boolean wait) throws IOException {
+    this.asyncContext = asyncContext;
+    this.queue = queue;
+    this.outputStream = asyncContext.getResponse().getOutputStream();
+    this.sse = sse;
+    this.wait = wait;
+  }
+
+  /**
+   * Starts writing the messages of the queue to the response of the specified request.
+   *
+   * @param asyncContext
+   *     the context of the request, which must have been put into asynchronous mode.
+   * @param queue
+   *     the queue whose messages are written.
+   * @param sse
+   *     true if the response is a server-sent event stream, false if it is a long poll.
+   * @param wait
+   *     true if a long poll waits for messages to arrive, false if it is completed right away with whatever is in
+   *     the queue.
+   */
+  public static NonBlockingQueueWriter start(final AsyncContext asyncContext,
+                                             final MessageQueue queue,
+                                             final boolean sse,
+                                             final boolean wait) throws IOException {
+    final NonBlockingQueueWriter writer = new NonBlockingQueueWriter(asyncContext, queue, sse, wait);
+    asyncContext.addListener(writer);
+    writer.outputStream.setWriteListener(writer);
+
+    synchronized (queue.getActivationLock()) {
+      queue.setActivationCallback(writer);
+    }
+
+    // messages may have arrived before the callback was set, in which case nothing else will wake us.
+    writer.write();
+    return writer;
+  }
+
+  @Override
+  public void activate(final MessageQueue queue) {
+    write();
+  }
+
+  @Override
+  public void onWritePossible() throws IOException {
+    write();
+  }
+
+  @Override
+  public void onError(final Throwable t) {
+    log.debug("Closing queue with id: " + queue.getSession().getSessionId() + " due to write error", t);
+    complete();
+  }
+
+  @Override
+  public void onTimeout(final AsyncEvent event) throws IOException {
+    timedOut = true;
+    write();
+  }
+
+  @Override
+  public void onError(final AsyncEvent event) throws IOException {
+    onError(event.getThrowable());
+  }
+
+  @Override
+  public void onComplete(final AsyncEvent event) throws IOException {
+    done = true;
+    clearActivationCallback();
+  }
+
+  @Override
+  public void onStartAsync(final AsyncEvent event) throws IOException {
+  }
+
+  private void write() {
+    if (pendingWrites.getAndIncrement() != 0) {
+      return;
+    }
+
+    int requested = 1;
+    do {
+      try {
+        writeWhileReady();
+      }
+      catch (IOException e) {
+        log.debug("Closing queue with id: " + queue.getSession().getSessionId() + " due to IOException", e);
+        complete();
+      }
+      catch (Throwable t) {
+        log.debug("Problem when writing messages of queue with id: " + queue.getSession().getSessionId(), t);
+        complete();
+      }
+      requested = pendingWrites.addAndGet(-requested);
+    } while (requested != 0);
+  }
+
+  private void writeWhileReady() throws IOException {
+    while (!done) {
+      if (timedOut) {
+        complete();
+        return;
+      }
+
+      if (!outputStream.isReady()) {
+        // the container calls onWritePossible() once the client has caught up.
+        return;
+      }
+
+      if (payloadReady) {
+        outputStream.write(payload.toByteArray(), 0, payload.size());
+        payloadReady = false;
+        flushNeeded = sse;
+        responseWritten = !sse;
+      }
+      else if (flushNeeded) {
+        outputStream.flush();
+        flushNeeded = false;
+      }
+      else if (responseWritten) {
+        complete();
+        return;
+      }
+      else if (!takeFromQueue()) {
+        return;
+      }
+    }
+  }
+
+  private boolean takeFromQueue() throws IOException {
+    payload.reset();
+    if (sse) {
+      payload.write(SSE_DATA);
+    }
+
+    final boolean messagesTaken = queue.poll(new OutputStreamWriteAdapter(payload));
+    if (!messagesTaken && (sse || wait)) {
+      return false;
+    }
+
+    if (sse) {
+      payload.write(SSE_TERMINATION);
+    }
+    queue.heartBeat();
+    payloadReady = true;
+    return true;
+  }
+
+  private void complete() {
+    if (done) return;
+    done = true;
+
+    clearActivationCallback();
+    try {
+      asyncContext.complete();
+    }
+    catch (IllegalStateException e) {
+      // the request has already been completed by the container.
+    }
+  }
+
+  private void clearActivationCallback() {
+    synchronized (queue.getActivationLock()) {
+      if (queue.getActivationCallback() == this) {
+        queue.setActivationCallback(null);
+      }
+    }
+  }
+}
@@ -19,12 +19,16 @@ package org.jboss.errai.bus.server.servlet;
 import static org.jboss.errai.bus.server.io.MessageFactory.createCommandMessage;
 import static org.slf4j.LoggerFactory.getLogger;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 
 import javax.servlet.AsyncContext;
 import javax.servlet.AsyncEvent;
 import javax.servlet.AsyncListener;
+import javax.servlet.ReadListener;
+import javax.servlet.ServletConfig;
 import javax.servlet.ServletException;
+import javax.servlet.ServletInputStream;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
@@ -33,10 +37,16 @@ import org.jboss.errai.bus.server.QueueUnavailableException;
 import org.jboss.errai.bus.server.api.MessageQueue;
 import org.jboss.errai.bus.server.api.QueueActivationCallback;
 import org.jboss.errai.bus.server.io.OutputStreamWriteAdapter;
+import org.jboss.errai.bus.server.service.ErraiConfigAttribs;
+import org.jboss.errai.marshalling.server.util.UnwrappedByteArrayOutputStream;
 import org.slf4j.Logger;
 
 /**
  * An implementation of {@link AbstractErraiServlet} leveraging asynchronous support of Servlet 3.0.
+ * <p/>
+ * When <tt>errai.bus.servlet_non_blocking_io</tt> is enabled, requests are read and responses are written with the
+ * non-blocking I/O of Servlet 3.1 (see {@link NonBlockingQueueWriter}), and server-sent events are supported. No
+ * container thread is then held by an idle long poll or event stream, nor by a client which reads slowly.
  *
  * @author Christian Sadilek <csadilek@redhat.com>
  * @author Mike Brock
@@ -45,8 +55,21 @@ public class StandardAsyncServlet extends AbstractErraiServlet {
   private static final Logger log = getLogger(StandardAsyncServlet.class);
   private static final long serialVersionUID = 1L;
 
+  private boolean nonBlocking;
+
+  @Override
+  public void init(final ServletConfig config) throws ServletException {
+    super.init(config);
+    nonBlocking = ErraiConfigAttribs.SERVLET_NON_BLOCKING_IO.getBoolean(service.getConfiguration());
+  }
+
   @Override
   protected void doGet(final HttpServletRequest request, final HttpServletResponse response) throws ServletException {
+    if (nonBlocking) {
+      doGetNonBlocking(request, response);
+      return;
+    }
+
     final QueueSession session = sessionProvider.createOrGetSession(request.getSession(), getClientId(request));
     session.setAttribute("NoSSE", Boolean.TRUE);
     
@@ -135,6 +158,11 @@ public class StandardAsyncServlet extends AbstractErraiServlet {
 
   @Override
   protected void doPost(final HttpServletRequest request, final HttpServletResponse response) throws ServletException {
+    if (nonBlocking) {
+      doPostNonBlocking(request, response);
+      return;
+    }
+
     final QueueSession session = sessionProvider.createOrGetSession(request.getSession(), getClientId(request));
     session.setAttribute("NoSSE", Boolean.TRUE);
     try {
@@ -175,6 +203,119 @@ public class StandardAsyncServlet extends AbstractErraiServlet {
     }
   }
   
+  private void doGetNonBlocking(final HttpServletRequest request, final HttpServletResponse response) {
+    final QueueSession session = sessionProvider.createOrGetSession(request.getSession(), getClientId(request));
+
+    try {
+      final MessageQueue queue = service.getBus().getQueue(session);
+      if (queue == null) {
+        switch (getConnectionPhase(request)) {
+          case CONNECTING:
+          case DISCONNECTING:
+            return;
+        }
+        sendDisconnectDueToSessionExpiry(response);
+        return;
+      }
+      queue.heartBeat();
+
+      final boolean sse = isSSERequest(request);
+      final AsyncContext asyncContext = request.startAsync();
+      if (sse) {
+        asyncContext.setTimeout(getSSETimeout());
+        prepareSSE(response);
+      }
+      else {
+        asyncContext.setTimeout(60000);
+      }
+      queue.setTimeout(65000);
+
+      NonBlockingQueueWriter.start(asyncContext, queue, sse, true);
+    }
+    catch (IOException ioe) {
+      log.debug("Problem when polling for new messages", ioe);
+    }
+  }
+
+  private void doPostNonBlocking(final HttpServletRequest request, final HttpServletResponse response) {
+    final QueueSession session = sessionProvider.createOrGetSession(request.getSession(), getClientId(request));
+    final AsyncContext asyncContext = request.startAsync();
+    asyncContext.setTimeout(60000);
+
+    try {
+      final ServletInputStream inputStream = request.getInputStream();
+      final UnwrappedByteArrayOutputStream body = new UnwrappedByteArrayOutputStream();
+
+      inputStream.setReadListener(new ReadListener() {
+        private final byte[] chunk = new byte[4096];
+
+        @Override
+        public void onDataAvailable() throws IOException {
+          int read;
+          while (inputStream.isReady() && (read = inputStream.read(chunk)) != -1) {
+            body.write(chunk, 0, read);
+          }
+        }
+
+        @Override
+        public void onAllDataRead() throws IOException {
+          storeAndRespond(asyncContext, session, request, response,
+              new ByteArrayInputStream(body.toByteArray(), 0, body.size()));
+        }
+
+        @Override
+        public void onError(final Throwable t) {
+          log.debug("Problem when reading message", t);
+          asyncContext.complete();
+        }
+      });
+    }
+    catch (IOException ioe) {
+      log.debug("Problem when reading message", ioe);
+      asyncContext.complete();
+    }
+  }
+
+  private void storeAndRespond(final AsyncContext asyncContext,
+                               final QueueSession session,
+                               final HttpServletRequest request,
+                               final HttpServletResponse response,
+                               final ByteArrayInputStream body) {
+    try {
+      try {
+        service.store(createCommandMessage(session, request, body));
+      }
+      catch (QueueUnavailableException e) {
+        sendDisconnectDueToSessionExpiry(response);
+        asyncContext.complete();
+        return;
+      }
+
+      final MessageQueue queue = service.getBus().getQueue(session);
+      if (queue == null) {
+        asyncContext.complete();
+        return;
+      }
+
+      NonBlockingQueueWriter.start(asyncContext, queue, false, shouldWait(request));
+    }
+    catch (final Exception e) {
+      final String message = e.getMessage();
+      if (message == null) {
+        log.debug("Problem when storing message", e);
+      }
+      else if (!message.contains("expired")) {
+        try {
+          writeExceptionToOutputStream(response, e);
+        }
+        catch (IOException ioe) {
+          log.debug("Couldn't write exception to output stream", ioe);
+        }
+      }
+      asyncContext.complete();
+    }
+  }
+
   private void clearActivationCallback(final MessageQueue queue) {
     synchronized (queue.getActivationLock()) {
       queue.setActivationCallback(null);
@@ -18,11 +18,14 @@ package org.jboss.errai.bus.server.servlet.websocket;
 
 import org.jboss.errai.bus.client.api.QueueSession;
 import org.jboss.errai.bus.client.protocols.BusCommand;
+import org.jboss.errai.bus.client.protocols.CompactWireCodec;
 import org.jboss.errai.bus.server.api.MessageQueue;
+import org.jboss.errai.bus.server.io.CompactWireChannel;
 import org.jboss.errai.bus.server.io.DirectDeliveryHandler;
 import org.jboss.errai.bus.server.io.QueueChannel;
 import org.jboss.errai.bus.server.io.websockets.WebSocketServerHandler;
 import org.jboss.errai.bus.server.io.websockets.WebSocketTokenManager;
+import org.jboss.errai.bus.server.service.ErraiConfigAttribs;
 import org.jboss.errai.bus.server.service.ErraiService;
 import org.jboss.errai.bus.server.util.LocalContext;
 import org.jboss.errai.common.client.protocols.MessageParts;
@@ -69,7 +72,8 @@ public class WebSocketNegotiationHandler {
 
           // set the session queue into direct channel mode.
           final MessageQueue queue = service.getBus().getQueueBySession(sessionKey);
-          queue.setDeliveryHandler(DirectDeliveryHandler.createFor(queueChannel));
+          queue.setDeliveryHandler(DirectDeliveryHandler.createFor(
+                  negotiateWireProtocol(ejObject, session, queueChannel, service)));
           LOGGER.debug("set direct delivery handler on session: {}", session.getSessionId());
 
           //See ERRAI-873: In case a connection failure has occurred make sure 
@@ -117,6 +121,37 @@ public class WebSocketNegotiationHandler {
     return null;
   }
 
+  /**
+   * Returns the channel through which the messages of an associated session should be delivered. If the client
+   * asked for the compact wire protocol in its association message and the server has it enabled, the returned
+   * channel encodes all payloads, and the codec is kept with the session so that payloads received from the client
+   * can be decoded, see {@link #getWireCodec(QueueSession)}.
+   */
+  public static QueueChannel negotiateWireProtocol(final EJObject associate, final QueueSession session,
+          final QueueChannel channel, final ErraiService service) {
+    final LocalContext localContext = LocalContext.get(session);
+    localContext.removeAttribute(CompactWireCodec.class);
+
+    final EJString protocol = associate.get(MessageParts.WireProtocol.name()).isString();
+    if (protocol == null || !CompactWireCodec.PROTOCOL_NAME.equals(protocol.stringValue())
+            || !ErraiConfigAttribs.WEBSOCKET_COMPACT_PROTOCOL.getBoolean(service.getConfiguration())) {
+      return channel;
+    }
+
+    LOGGER.debug("using compact wire protocol for session: {}", session.getSessionId());
+    final CompactWireCodec codec = new CompactWireCodec();
+    localContext.setAttribute(CompactWireCodec.class, codec);
+    return new CompactWireChannel(channel, codec);
+  }
+
+  /**
+   * Returns the codec for the compact wire protocol negotiated for the session's web socket, or null if the web
+   * socket uses plain JSON.
+   */
+  public static CompactWireCodec getWireCodec(final QueueSession session) {
+    return LocalContext.get(session).getAttribute(CompactWireCodec.class);
+  }
+
   public static void sendMessage(final QueueChannel channel, final String message) throws IOException {
     channel.write(message);
   }
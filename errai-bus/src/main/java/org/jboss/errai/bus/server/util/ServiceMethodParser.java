@@ -24,6 +24,7 @@ import java.util.Map;
 import org.jboss.errai.bus.client.api.Local;
 import org.jboss.errai.bus.client.api.messaging.MessageCallback;
 import org.jboss.errai.bus.server.annotations.Command;
+import org.jboss.errai.bus.server.annotations.Conflate;
 import org.jboss.errai.bus.server.annotations.Service;
 import org.jboss.errai.bus.server.io.CommandBindingsCallback;
 import org.jboss.errai.bus.server.io.ServiceMethodCallback;
@@ -51,6 +52,7 @@ public class ServiceMethodParser extends ServiceParser {
     svcName = ("".equals(method.getAnnotation(Service.class).value())) ? method.getName() : method.getAnnotation(
             Service.class).value();
     local = method.isAnnotationPresent(Local.class);
+    conflationKey = method.isAnnotationPresent(Conflate.class) ? method.getAnnotation(Conflate.class).key() : null;
     commandPoints = Collections.unmodifiableMap(getCommandPoints(method));
   }
   
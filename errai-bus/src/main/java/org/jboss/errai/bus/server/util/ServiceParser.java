@@ -22,6 +22,7 @@ import java.util.Map;
 import org.jboss.errai.bus.client.api.Local;
 import org.jboss.errai.bus.client.api.messaging.MessageCallback;
 import org.jboss.errai.bus.server.annotations.Command;
+import org.jboss.errai.bus.server.annotations.Conflate;
 import org.jboss.errai.bus.server.annotations.Service;
 
 /**
@@ -34,6 +35,7 @@ public abstract class ServiceParser {
 
   protected boolean local;
   protected String svcName;
+  protected String conflationKey;
   protected Map<String, Method> commandPoints;
 
   /**
@@ -59,6 +61,14 @@ public abstract class ServiceParser {
     return svcName;
   }
 
+  /**
+   * @return The message part by which messages to this service's subject are conflated, an empty string if they are
+   *         conflated by subject alone, or {@code null} if the service is not annotated with {@link Conflate}.
+   */
+  public String getConflationKey() {
+    return conflationKey;
+  }
+
   /**
    * @return True iff this is a {@link Local} service.
    */
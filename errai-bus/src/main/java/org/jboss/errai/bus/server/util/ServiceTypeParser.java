@@ -24,6 +24,7 @@ import java.util.Map;
 import org.jboss.errai.bus.client.api.Local;
 import org.jboss.errai.bus.client.api.messaging.MessageCallback;
 import org.jboss.errai.bus.server.annotations.Command;
+import org.jboss.errai.bus.server.annotations.Conflate;
 import org.jboss.errai.bus.server.annotations.Remote;
 import org.jboss.errai.bus.server.annotations.Service;
 import org.jboss.errai.bus.server.io.CommandBindingsCallback;
@@ -53,6 +54,7 @@ public class ServiceTypeParser extends ServiceParser {
 
     local = clazz.isAnnotationPresent(Local.class);
     svcName = resolveServiceName(clazz);
+    conflationKey = clazz.isAnnotationPresent(Conflate.class) ? clazz.getAnnotation(Conflate.class).key() : null;
 
     this.commandPoints = Collections.unmodifiableMap(getCommandPoints(clazz));
   }
@@ -0,0 +1,250 @@
+/*
+ * Copyright (C) 2016 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.errai.bus.client.framework;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.jboss.errai.bus.client.api.base.CommandMessage;
+import org.jboss.errai.bus.client.api.messaging.Message;
+import org.jboss.errai.bus.client.framework.transports.TransportHandler;
+import org.jboss.errai.bus.client.util.BusToolsCli;
+import org.jboss.errai.common.client.api.ResourceProvider;
+import org.jboss.errai.common.client.protocols.MessageParts;
+import org.jboss.errai.marshalling.server.MappingContextSingleton;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import com.google.gwt.core.client.Scheduler;
+
+/**
+ * Tests that the {@link OutboundMessageBatcher} hands a batch to the transport when the event loop turn ends or when
+ * the batch reaches its size limit, and that messages are only encoded once.
+ */
+public class OutboundMessageBatcherTest {
+  private final List<List<Message>> transmitted = new ArrayList<List<Message>>();
+  private final FinallyScheduler scheduler = new FinallyScheduler();
+  private ResourceProvider<TransportHandler> transportHandler;
+
+  @BeforeClass
+  public static void setUpMarshalling() {
+    // ensure the marshalling system has been setup.
+    MappingContextSingleton.get();
+  }
+
+  @Before
+  public void setUp() {
+    final TransportHandler transport = mock(TransportHandler.class);
+    doAnswer(new Answer<Void>() {
+      @Override
+      @SuppressWarnings("unchecked")
+      public Void answer(final InvocationOnMock invocation) {
+        transmitted.add(new ArrayList<Message>((List<Message>) invocation.getArguments()[0]));
+        return null;
+      }
+    }).when(transport).transmit(any(List.class));
+
+    transportHandler = new ResourceProvider<TransportHandler>() {
+      @Override
+      public TransportHandler get() {
+        return transport;
+      }
+    };
+  }
+
+  @Test
+  public void testBatchIsFlushedWhenEventLoopTurnEnds() {
+    final OutboundMessageBatcher batcher = new OutboundMessageBatcher(transportHandler, 64 * 1024, scheduler);
+    final Message first = message("Foo", "first");
+    final Message second = message("Bar", "second");
+    final Message third = message("Foo", "third");
+
+    batcher.add(first);
+    batcher.add(second);
+    batcher.add(third);
+    assertEquals(0, transmitted.size());
+    assertEquals(3, batcher.getPendingMessages());
+    assertEquals("the flush must only be scheduled once per turn", 1, scheduler.scheduled.size());
+
+    scheduler.endTurn();
+    assertEquals(1, transmitted.size());
+    assertEquals(Arrays.asList(first, second, third), transmitted.get(0));
+    assertEquals(0, batcher.getPendingMessages());
+    assertEquals(1, batcher.getBatchesSent());
+    assertEquals(3, batcher.getMessagesBatched());
+    assertEquals(0, batcher.getSizeLimitFlushes());
+
+    batcher.add(message("Foo", "next turn"));
+    assertEquals(1, scheduler.scheduled.size());
+    scheduler.endTurn();
+    assertEquals(2, transmitted.size());
+  }
+
+  @Test
+  public void testBatchIsFlushedEarlyWhenSizeLimitIsReached() {
+    final Message first = message("Foo", "first");
+    final Message second = message("Foo", "second");
+    final Message third = message("Foo", "third");
+    final int twoMessages = BusToolsCli.encodeMessage(first).length() + BusToolsCli.encodeMessage(second).length();
+    final OutboundMessageBatcher batcher = new OutboundMessageBatcher(transportHandler, twoMessages, scheduler);
+
+    batcher.add(first);
+    batcher.add(second);
+    assertEquals(0, transmitted.size());
+
+    batcher.add(third);
+    assertEquals(1, transmitted.size());
+    assertEquals(Arrays.asList(first, second), transmitted.get(0));
+    assertEquals(1, batcher.getPendingMessages());
+    assertEquals(1, batcher.getSizeLimitFlushes());
+
+    scheduler.endTurn();
+    assertEquals(2, transmitted.size());
+    assertEquals(Collections.singletonList(third), transmitted.get(1));
+    assertEquals(2, batcher.getBatchesSent());
+  }
+
+  @Test
+  public void testMessageLargerThanLimitIsSentInItsOwnBatch() {
+    final OutboundMessageBatcher batcher = new OutboundMessageBatcher(transportHandler, 1, scheduler);
+    final Message first = message("Foo", "first");
+    final Message second = message("Foo", "second");
+
+    batcher.add(first);
+    batcher.add(second);
+    scheduler.endTurn();
+
+    assertEquals(Arrays.asList(Collections.singletonList(first), Collections.singletonList(second)), transmitted);
+  }
+
+  @Test
+  public void testMessageWithExtraUriParametersIsSentAlone() {
+    final OutboundMessageBatcher batcher = new OutboundMessageBatcher(transportHandler, 64 * 1024, scheduler);
+    final Message pending = message("Foo", "pending");
+    final Message special = message("Foo", "special");
+    special.setResource(TransportHandler.EXTRA_URI_PARMS_RESOURCE, new HashMap<String, String>());
+
+    batcher.add(pending);
+    batcher.add(special);
+
+    assertEquals(Arrays.asList(Collections.singletonList(pending), Collections.singletonList(special)), transmitted);
+  }
+
+  @Test
+  public void testTransportReusesEncodingOfBatchedMessage() {
+    final OutboundMessageBatcher batcher = new OutboundMessageBatcher(transportHandler, 64 * 1024, scheduler);
+    final CountingMessage message = new CountingMessage("Foo", "payload");
+    final String expected = BusToolsCli.encodeMessage(new CountingMessage("Foo", "payload"));
+
+    batcher.add(message);
+    scheduler.endTurn();
+    assertEquals(1, message.encodings);
+
+    assertEquals("[" + expected + "]", BusToolsCli.encodeMessages(transmitted.get(0)));
+    assertEquals("the transport must not encode the message again", 1, message.encodings);
+  }
+
+  private static Message message(final String subject, final String value) {
+    return CommandMessage.create().toSubject(subject).set(MessageParts.Value, value);
+  }
+
+  /**
+   * Counts how often the message's parts are read for encoding.
+   */
+  private static class CountingMessage extends CommandMessage {
+    private int encodings;
+
+    private CountingMessage(final String subject, final String value) {
+      super(new HashMap<String, Object>(), 0);
+      toSubject(subject);
+      set(MessageParts.Value, value);
+    }
+
+    @Override
+    public Map<String, Object> getParts() {
+      encodings++;
+      return super.getParts();
+    }
+  }
+
+  /**
+   * Collects the commands scheduled to run when the current event loop turn ends.
+   */
+  private static class FinallyScheduler extends Scheduler {
+    private final List<ScheduledCommand> scheduled = new ArrayList<ScheduledCommand>();
+
+    void endTurn() {
+      final List<ScheduledCommand> commands = new ArrayList<ScheduledCommand>(scheduled);
+      scheduled.clear();
+      for (final ScheduledCommand command : commands) {
+        command.execute();
+      }
+    }
+
+    @Override
+    public void scheduleFinally(final ScheduledCommand cmd) {
+      scheduled.add(cmd);
+    }
+
+    @Override
+    public void scheduleFinally(final RepeatingCommand cmd) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void scheduleDeferred(final ScheduledCommand cmd) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void scheduleEntry(final RepeatingCommand cmd) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void scheduleEntry(final ScheduledCommand cmd) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void scheduleFixedDelay(final RepeatingCommand cmd, final int delayMs) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void scheduleFixedPeriod(final RepeatingCommand cmd, final int delayMs) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void scheduleIncremental(final RepeatingCommand cmd) {
+      throw new UnsupportedOperationException();
+    }
+  }
+}
@@ -0,0 +1,253 @@
+/*
+ * Copyright (C) 2016 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.errai.bus.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Map;
+
+import org.jboss.errai.bus.client.api.QueueSession;
+import org.jboss.errai.bus.client.api.base.CommandMessage;
+import org.jboss.errai.bus.client.api.messaging.Message;
+import org.jboss.errai.bus.client.framework.BuiltInServices;
+import org.jboss.errai.bus.client.protocols.BusCommand;
+import org.jboss.errai.bus.server.api.MessageQueue;
+import org.jboss.errai.bus.server.io.Drainable;
+import org.jboss.errai.bus.server.io.MessageDeliveryHandler;
+import org.jboss.errai.bus.server.io.OutputStreamWriteAdapter;
+import org.jboss.errai.bus.server.io.buffers.BufferColor;
+import org.jboss.errai.bus.server.io.buffers.TransmissionBuffer;
+import org.jboss.errai.bus.server.metrics.BusMetrics;
+import org.jboss.errai.bus.server.metrics.Gauge;
+import org.jboss.errai.bus.server.metrics.LatencyHistogram;
+import org.jboss.errai.bus.server.metrics.MetricsSnapshot;
+import org.jboss.errai.bus.server.mock.MockErraiService;
+import org.jboss.errai.bus.server.service.ErraiServiceConfiguratorImpl;
+import org.jboss.errai.common.client.protocols.MessageParts;
+import org.jboss.errai.common.client.protocols.Resources;
+import org.jboss.errai.marshalling.server.MappingContextSingleton;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Tests the counters kept by {@link BusMetrics}, the messages and deliveries counted by {@link ServerMessageBusImpl} and
+ * the latencies recorded by {@link MessageQueueImpl}.
+ */
+public class BusMetricsTest {
+
+  @BeforeClass
+  public static void setUpMarshalling() {
+    // broadcasts are encoded, so the marshalling system has to be set up.
+    MappingContextSingleton.get();
+  }
+
+  @Before
+  public void setUp() {
+    BusMetrics.setEnabled(true);
+    BusMetrics.reset();
+  }
+
+  @Test
+  public void testHistogramPercentiles() {
+    final LatencyHistogram histogram = new LatencyHistogram();
+    for (int i = 1; i <= 1000; i++) {
+      histogram.record(i * 1000L);
+    }
+
+    assertEquals(1000, histogram.getCount());
+    assertEquals(1000000, histogram.getMax());
+    assertEquals(500500, histogram.getMean());
+    assertWithin(500000, histogram.getValueAtPercentile(50));
+    assertWithin(990000, histogram.getValueAtPercentile(99));
+    assertEquals(1000000, histogram.getValueAtPercentile(100));
+
+    histogram.reset();
+    assertEquals(0, histogram.getCount());
+    assertEquals(0, histogram.getValueAtPercentile(99));
+  }
+
+  @Test
+  public void testSubjectCounters() {
+    BusMetrics.recordMessage("PriceTicker");
+    BusMetrics.recordMessage("PriceTicker");
+    BusMetrics.recordBytes("PriceTicker", 100);
+    BusMetrics.recordMessage("News");
+
+    assertEquals(Long.valueOf(2), BusMetrics.getMessageCounts().get("PriceTicker"));
+    assertEquals(Long.valueOf(100), BusMetrics.getByteCounts().get("PriceTicker"));
+    assertEquals(Long.valueOf(1), BusMetrics.getMessageCounts().get("News"));
+
+    BusMetrics.setEnabled(false);
+    BusMetrics.recordMessage("News");
+    assertEquals(Long.valueOf(1), BusMetrics.getMessageCounts().get("News"));
+  }
+
+  @Test
+  public void testBusCountsMessageOnceAndEachQueueDelivery() {
+    final ServerMessageBusImpl bus = new ServerMessageBusImpl(new MockErraiService(), new ErraiServiceConfiguratorImpl());
+    try {
+      final QueueSession first = associate(bus, "Orders");
+      associate(bus, "Orders");
+
+      // every queue listens, so the message is broadcast.
+      bus.sendGlobal(CommandMessage.create().toSubject("Orders"));
+      assertEquals(Long.valueOf(1), BusMetrics.getMessageCounts().get("Orders"));
+      assertEquals(Long.valueOf(2), BusMetrics.getDeliveryCounts().get("Orders"));
+
+      // now the message is offered to each listening queue in turn.
+      associate(bus, "Inventory");
+      bus.sendGlobal(CommandMessage.create().toSubject("Orders"));
+      assertEquals(Long.valueOf(2), BusMetrics.getMessageCounts().get("Orders"));
+      assertEquals(Long.valueOf(4), BusMetrics.getDeliveryCounts().get("Orders"));
+
+      bus.send(CommandMessage.create().toSubject("Orders").set(MessageParts.SessionID, first.getSessionId()));
+      assertEquals(Long.valueOf(3), BusMetrics.getMessageCounts().get("Orders"));
+      assertEquals(Long.valueOf(5), BusMetrics.getDeliveryCounts().get("Orders"));
+
+      final MetricsSnapshot.SubjectStatistics orders = bus.getMetrics().getSubjects().get("Orders");
+      assertEquals(3, orders.getMessages());
+      assertEquals(5, orders.getDeliveries());
+    }
+    finally {
+      bus.stop();
+    }
+  }
+
+  @Test
+  public void testQueueRecordsDeliveryLatencyOnceDrained() throws IOException {
+    final DrainableDeliveryHandler handler = new DrainableDeliveryHandler();
+    final MessageQueueImpl queue = new MessageQueueImpl(TransmissionBuffer.create(),
+        MockQueueSessionFactory.newSession(), 60);
+    queue.setDeliveryHandler(handler);
+
+    queue.offer(CommandMessage.create().toSubject("PriceTicker").set("price", 1));
+    queue.offer(CommandMessage.create().toSubject("PriceTicker").set("price", 2));
+
+    MetricsSnapshot snapshot = snapshotOf(queue);
+    assertEquals(2, snapshot.getSessions().get(queue.getSession().getSessionId()).getMessages());
+    assertEquals(0, snapshot.getDeliveryCount());
+
+    handler.drained = true;
+    queue.wake();
+
+    snapshot = snapshotOf(queue);
+    assertEquals(1, snapshot.getDeliveryCount());
+    assertTrue(snapshot.getDeliveryLatencyMax() > 0);
+  }
+
+  @Test
+  public void testBufferedBytesFollowReadPosition() throws IOException {
+    final MessageQueueImpl queue = new MessageQueueImpl(TransmissionBuffer.create(),
+        MockQueueSessionFactory.newSession(), 60);
+    final byte[] payload = new byte[100];
+
+    assertEquals(0, BusMetrics.getBufferedBytes(queue));
+
+    queue.getBuffer().write(payload, 0, payload.length, queue.getBufferColor());
+    assertEquals(payload.length, BusMetrics.getBufferedBytes(queue));
+
+    queue.getBuffer().read(new OutputStreamWriteAdapter(new ByteArrayOutputStream()), queue.getBufferColor());
+    assertEquals(0, BusMetrics.getBufferedBytes(queue));
+  }
+
+  @Test
+  public void testBufferedBytesCountOwnColorAndBroadcasts() throws IOException {
+    final TransmissionBuffer buffer = TransmissionBuffer.create(64, 64);
+    final MessageQueueImpl queue = new MessageQueueImpl(buffer, MockQueueSessionFactory.newSession(), 60);
+    final MessageQueueImpl other = new MessageQueueImpl(buffer, MockQueueSessionFactory.newSession(), 60);
+
+    // data of other queues is not waiting for this one, however large.
+    final byte[] large = new byte[500];
+    buffer.write(large, 0, large.length, other.getBufferColor());
+    assertEquals(0, BusMetrics.getBufferedBytes(queue));
+    assertEquals(large.length, BusMetrics.getBufferedBytes(other));
+
+    buffer.write(new byte[30], 0, 30, BufferColor.getAllBuffersColor());
+    buffer.write(new byte[20], 0, 20, queue.getBufferColor());
+    assertEquals(50, BusMetrics.getBufferedBytes(queue));
+    assertEquals(large.length + 30, BusMetrics.getBufferedBytes(other));
+
+    buffer.read(new OutputStreamWriteAdapter(new ByteArrayOutputStream()), queue.getBufferColor());
+    assertEquals(0, BusMetrics.getBufferedBytes(queue));
+  }
+
+  @Test
+  public void testSnapshotIncludesGauges() {
+    BusMetrics.registerGauge("test.gauge", new Gauge() {
+      @Override
+      public long getValue() {
+        return 42;
+      }
+    });
+
+    try {
+      final Map<String, Long> gauges = BusMetrics.snapshot(Collections.<MessageQueue>emptyList(),
+          Collections.singletonMap("bus.gauge", 7L)).getGauges();
+
+      assertEquals(Long.valueOf(42), gauges.get("test.gauge"));
+      assertEquals(Long.valueOf(7), gauges.get("bus.gauge"));
+    }
+    finally {
+      BusMetrics.unregisterGauge("test.gauge");
+    }
+    assertFalse(BusMetrics.getGaugeValues().containsKey("test.gauge"));
+  }
+
+  private static QueueSession associate(final ServerMessageBusImpl bus, final String remoteServices) {
+    final QueueSession session = MockQueueSessionFactory.newSession();
+    final Message message = CommandMessage.create()
+        .toSubject(BuiltInServices.ServerBus.name())
+        .command(BusCommand.Associate)
+        .set(MessageParts.RemoteServices, remoteServices);
+    message.setResource(Resources.Session.name(), session);
+    bus.sendGlobal(message);
+    return session;
+  }
+
+  private static MetricsSnapshot snapshotOf(final MessageQueue queue) {
+    return BusMetrics.snapshot(Collections.singleton(queue), Collections.<String, Long>emptyMap());
+  }
+
+  private static void assertWithin(final long expected, final long actual) {
+    assertTrue("expected about " + expected + " but was " + actual,
+        actual >= expected && actual <= expected + expected / 4);
+  }
+
+  private static class DrainableDeliveryHandler implements MessageDeliveryHandler, Drainable {
+    private volatile boolean drained = false;
+
+    @Override
+    public boolean deliver(final MessageQueue queue, final Message message) {
+      return true;
+    }
+
+    @Override
+    public void noop(final MessageQueue queue) {
+    }
+
+    @Override
+    public boolean isDrained(final MessageQueue queue) {
+      return drained;
+    }
+  }
+}
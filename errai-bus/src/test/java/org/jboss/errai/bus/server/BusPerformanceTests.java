@@ -16,17 +16,33 @@
 
 package org.jboss.errai.bus.server;
 
+import org.jboss.errai.bus.client.api.CallableFuture;
 import org.jboss.errai.bus.client.api.messaging.Message;
 import org.jboss.errai.bus.client.api.messaging.MessageCallback;
+import org.jboss.errai.bus.client.api.base.CommandMessage;
 import org.jboss.errai.bus.client.api.base.MessageBuilder;
+import org.jboss.errai.bus.client.protocols.CompactWireCodec;
+import org.jboss.errai.bus.server.io.AbstractByteWriteAdapter;
+import org.jboss.errai.bus.server.io.MethodInvoker;
+import org.jboss.errai.bus.server.io.buffers.BufferColor;
+import org.jboss.errai.bus.server.io.buffers.BufferOverflowException;
+import org.jboss.errai.bus.server.io.buffers.TransmissionBuffer;
 import org.jboss.errai.bus.server.mock.MockErraiService;
 import org.jboss.errai.bus.server.mock.MockErraiServiceConfigurator;
+import org.jboss.errai.bus.server.service.ErraiServiceConfiguratorImpl;
 import org.junit.Assert;
 import org.junit.Ignore;
 import org.junit.Test;
 
+import java.lang.reflect.Method;
 import java.text.DecimalFormat;
 import java.text.NumberFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * @author Mike Brock
@@ -68,4 +84,260 @@ public class BusPerformanceTests {
 
     Assert.assertEquals(iterations, callback.calls);
   }
+
+  /**
+   * Measures {@link ServerMessageBusImpl#sendGlobal(Message)} throughput with 1, 8 and 32 concurrent senders, all
+   * sending to a subject with both a global and a local subscriber.
+   */
+  @Test
+  @Ignore
+  public void testSendGlobalThroughputUnderContention() throws Exception {
+    final ServerMessageBusImpl bus = new ServerMessageBusImpl(new MockErraiService(), new ErraiServiceConfiguratorImpl());
+    final AtomicLong received = new AtomicLong();
+    final MessageCallback callback = new MessageCallback() {
+      @Override
+      public void callback(final Message message) {
+        received.incrementAndGet();
+      }
+    };
+    bus.subscribe("Foo", callback);
+    bus.subscribeLocal("Foo", callback);
+
+    final int iterationsPerThread = 2000000;
+    final NumberFormat nf = new DecimalFormat("###,###.###");
+
+    for (final int threads : new int[]{1, 8, 32}) {
+      received.set(0);
+      final CountDownLatch start = new CountDownLatch(1);
+      final CountDownLatch done = new CountDownLatch(threads);
+
+      for (int t = 0; t < threads; t++) {
+        new Thread() {
+          @Override
+          public void run() {
+            try {
+              start.await();
+              for (int i = 0; i < iterationsPerThread; i++) {
+                bus.sendGlobal(CommandMessage.create().toSubject("Foo"));
+              }
+            }
+            catch (InterruptedException e) {
+              Thread.currentThread().interrupt();
+            }
+            finally {
+              done.countDown();
+            }
+          }
+        }.start();
+      }
+
+      final long startTime = System.nanoTime();
+      start.countDown();
+      done.await();
+      final double secs = (System.nanoTime() - startTime) / 1e9d;
+
+      System.out.println("Threads: " + threads + "; sendGlobal rate: "
+          + nf.format(((long) threads * iterationsPerThread) / secs) + " per second.");
+
+      Assert.assertEquals((long) threads * iterationsPerThread, received.get());
+    }
+
+    bus.stop();
+  }
+
+  public static class InvocationBenchmarkService {
+    private long calls;
+
+    public void voidCall(final String s) {
+      calls++;
+    }
+
+    public String valueCall(final String s, final Integer i) {
+      calls++;
+      return s;
+    }
+
+    public CallableFuture<String> futureCall(final String s) {
+      calls++;
+      return null;
+    }
+  }
+
+  /**
+   * Compares invoking void, value and {@link CallableFuture} RPC endpoints through {@link Method#invoke} (the way
+   * endpoints used to be called, with a fresh argument array per call) and through {@link MethodInvoker}.
+   */
+  @Test
+  @Ignore
+  public void testRpcInvocationReflectiveVsMethodInvoker() throws Exception {
+    final InvocationBenchmarkService service = new InvocationBenchmarkService();
+    final Method[] methods = {
+        InvocationBenchmarkService.class.getMethod("voidCall", String.class),
+        InvocationBenchmarkService.class.getMethod("valueCall", String.class, Integer.class),
+        InvocationBenchmarkService.class.getMethod("futureCall", String.class)
+    };
+    final List<List<Object>> parms = new ArrayList<List<Object>>();
+    parms.add(Arrays.<Object>asList("foo"));
+    parms.add(Arrays.<Object>asList("foo", 42));
+    parms.add(Arrays.<Object>asList("foo"));
+
+    final int iterations = 50000000;
+    final NumberFormat nf = new DecimalFormat("###,###.###");
+
+    for (int round = 0; round < 3; round++) {
+      for (int m = 0; m < methods.length; m++) {
+        final Method method = methods[m];
+        final MethodInvoker invoker = MethodInvoker.of(method);
+        final List<Object> args = parms.get(m);
+
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+          method.invoke(service, args.toArray(new Object[args.size()]));
+        }
+        final double reflective = (System.nanoTime() - start) / 1e9d;
+
+        start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+          invoker.invoke(service, args);
+        }
+        final double handle = (System.nanoTime() - start) / 1e9d;
+
+        System.out.println(method.getName() + " -- reflective: " + nf.format(iterations / reflective)
+            + " per second; method invoker: " + nf.format(iterations / handle) + " per second.");
+      }
+    }
+
+    Assert.assertEquals(3L * 2 * methods.length * iterations, service.calls);
+  }
+
+  /**
+   * Measures {@link TransmissionBuffer} throughput for a single writer spreading messages over a number of colors,
+   * each drained by its own reader, at different segment sizes.
+   */
+  @Test
+  @Ignore
+  public void testTransmissionBufferThroughput() throws Exception {
+    final int messages = 2000000;
+    final byte[] payload = new byte[256];
+    Arrays.fill(payload, (byte) 'x');
+
+    final NumberFormat nf = new DecimalFormat("###,###.###");
+
+    for (final int segmentSize : new int[]{64, 1024, 16 * 1024}) {
+      for (final int readers : new int[]{1, 4, 16}) {
+        final TransmissionBuffer buffer = TransmissionBuffer.create(segmentSize, (32 * 1024 * 1024) / segmentSize);
+        final BufferColor[] colors = new BufferColor[readers];
+        final AtomicLong bytesRead = new AtomicLong();
+        final AtomicLong lost = new AtomicLong();
+        final CountDownLatch done = new CountDownLatch(readers);
+        final long expectedBytes = (long) messages * payload.length;
+
+        for (int r = 0; r < readers; r++) {
+          final BufferColor color = colors[r] = BufferColor.getNewColorFromHead(buffer);
+          new Thread() {
+            long count;
+
+            final AbstractByteWriteAdapter counter = new AbstractByteWriteAdapter() {
+              @Override
+              public void write(final byte b) {
+                count++;
+              }
+
+              @Override
+              public void flush() {
+              }
+            };
+
+            @Override
+            public void run() {
+              try {
+                while (bytesRead.get() + lost.get() * payload.length < expectedBytes) {
+                  try {
+                    count = 0;
+                    buffer.readWait(TimeUnit.MILLISECONDS, 10, counter, color);
+                    bytesRead.addAndGet(count);
+                  }
+                  catch (BufferOverflowException e) {
+                    lost.addAndGet(e.getLostMessageCount());
+                  }
+                }
+              }
+              catch (Exception e) {
+                e.printStackTrace();
+              }
+              finally {
+                done.countDown();
+              }
+            }
+          }.start();
+        }
+
+        final long startTime = System.nanoTime();
+        for (int i = 0; i < messages; i++) {
+          buffer.write(payload, 0, payload.length, colors[i % readers]);
+        }
+        done.await(60, TimeUnit.SECONDS);
+        final double secs = (System.nanoTime() - startTime) / 1e9d;
+
+        System.out.println("Segment size: " + segmentSize + "; readers: " + readers + "; "
+            + nf.format(messages / secs) + " messages per second ("
+            + nf.format(expectedBytes / secs / (1024 * 1024)) + " MB/s); lost: " + lost.get());
+      }
+    }
+  }
+
+  @Test
+  @Ignore
+  public void testCompactWireProtocol() {
+    final String[] payloads = {
+        "[{\"ToSubject\":\"cdi.event:org.example.shop.OrderPlaced\",\"CommandType\":\"CDIEvent\","
+            + "\"BeanType\":\"org.example.shop.OrderPlaced\",\"BeanReference\":{\"^EncodedType\":"
+            + "\"org.example.shop.OrderPlaced\",\"^ObjectID\":\"1\",\"orderId\":{\"^EncodedType\":"
+            + "\"java.lang.Long\",\"^ObjectID\":\"2\",\"^NumVal\":\"4711\"},\"status\":{\"^EncodedType\":"
+            + "\"org.example.shop.OrderStatus\",\"^EnumStringValue\":\"PLACED\"}},\"FromClient\":\"1\"}]",
+
+        "[{\"ToSubject\":\"org.example.shop.CatalogService:RPC\",\"CommandType\":\"findProducts:java.lang.String:\","
+            + "\"ReplyTo\":\"org.example.shop.CatalogService:RPC.findProducts:java.lang.String::1:RespondTo:RPC\","
+            + "\"ErrorTo\":\"org.example.shop.CatalogService:RPC.findProducts:java.lang.String::1:Errors:RPC\","
+            + "\"MethodParms\":{\"^EncodedType\":\"java.util.Arrays$ArrayList\",\"^ObjectID\":\"1\","
+            + "\"^Value\":[\"shoes\"]}}]",
+
+        "[{\"ToSubject\":\"org.example.shop.CatalogService:RPC.findProducts:java.lang.String::1:RespondTo:RPC\","
+            + "\"MethodReply\":{\"^EncodedType\":\"java.util.ArrayList\",\"^ObjectID\":\"1\",\"^Value\":["
+            + "{\"^EncodedType\":\"org.example.shop.Product\",\"^ObjectID\":\"2\",\"name\":\"Runner\","
+            + "\"price\":{\"^EncodedType\":\"java.math.BigDecimal\",\"^ObjectID\":\"3\",\"^NumVal\":\"79.90\"}},"
+            + "{\"^EncodedType\":\"org.example.shop.Product\",\"^ObjectID\":\"4\",\"name\":\"Trail\","
+            + "\"price\":{\"^EncodedType\":\"java.math.BigDecimal\",\"^ObjectID\":\"5\",\"^NumVal\":\"99.90\"}}"
+            + "]}}]"
+    };
+    final int iterations = 200000;
+    final NumberFormat nf = new DecimalFormat("###,###.###");
+
+    for (final String payload : payloads) {
+      final CompactWireCodec sender = new CompactWireCodec();
+      final CompactWireCodec receiver = new CompactWireCodec();
+
+      final String first = sender.encode(payload);
+      final String steadyState = sender.encode(payload);
+      Assert.assertEquals(payload, receiver.decode(first));
+      Assert.assertEquals(payload, receiver.decode(steadyState));
+
+      long start = System.nanoTime();
+      String encoded = null;
+      for (int i = 0; i < iterations; i++) {
+        encoded = sender.encode(payload);
+      }
+      final double encodeNanos = (System.nanoTime() - start) / (double) iterations;
+
+      start = System.nanoTime();
+      for (int i = 0; i < iterations; i++) {
+        receiver.decode(encoded);
+      }
+      final double decodeNanos = (System.nanoTime() - start) / (double) iterations;
+
+      System.out.println("JSON: " + payload.length() + " chars; compact: " + first.length() + " chars first, "
+          + steadyState.length() + " chars after (" + nf.format(100d * steadyState.length() / payload.length())
+          + "%); encode: " + nf.format(encodeNanos) + " ns; decode: " + nf.format(decodeNanos) + " ns");
+    }
+  }
 }
@@ -0,0 +1,124 @@
+/*
+ * Copyright (C) 2016 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.errai.bus.server;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.jboss.errai.bus.client.api.QueueSession;
+import org.jboss.errai.bus.client.api.base.CommandMessage;
+import org.jboss.errai.bus.client.api.messaging.Message;
+import org.jboss.errai.bus.client.framework.BuiltInServices;
+import org.jboss.errai.bus.client.protocols.BusCommand;
+import org.jboss.errai.bus.server.api.MessageQueue;
+import org.jboss.errai.bus.server.mock.MockErraiService;
+import org.jboss.errai.bus.server.service.ErraiServiceConfiguratorImpl;
+import org.jboss.errai.common.client.protocols.MessageParts;
+import org.jboss.errai.common.client.protocols.Resources;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests that closing a queue removes its sessions and remote subscriptions from the {@link ServerMessageBusImpl},
+ * and nothing that belongs to other queues.
+ */
+public class CloseQueueTest {
+  private ServerMessageBusImpl bus;
+
+  @Before
+  public void setUp() {
+    bus = new ServerMessageBusImpl(new MockErraiService(), new ErraiServiceConfiguratorImpl());
+  }
+
+  @After
+  public void tearDown() {
+    bus.stop();
+  }
+
+  @Test
+  public void testCloseQueueRemovesSessionsAndSubscriptions() {
+    final QueueSession first = associate("Orders,Inventory");
+    final QueueSession second = associate("Orders");
+    final MessageQueue queue = bus.getQueue(first);
+    assertNotNull(queue);
+    assertTrue(bus.hasRemoteSubscription(first.getSessionId(), "Inventory"));
+
+    final QueueSession associated = MockQueueSessionFactory.newSession();
+    bus.associateNewQueue(first, associated);
+    assertSame(queue, bus.getQueueBySession(associated.getSessionId()));
+
+    bus.closeQueue(queue);
+
+    assertNull(bus.getQueue(first));
+    assertNull(bus.getQueue(associated));
+    assertNull(bus.getSessionBySessionId(first.getSessionId()));
+    assertNull(bus.getSessionBySessionId(associated.getSessionId()));
+    assertFalse("a subject without queues must be unsubscribed", bus.hasRemoteSubscriptions("Inventory"));
+
+    assertTrue(bus.hasRemoteSubscriptions("Orders"));
+    assertTrue(bus.hasRemoteSubscription(second.getSessionId(), "Orders"));
+    assertNotNull(bus.getQueue(second));
+  }
+
+  @Test
+  public void testClosingReplacedQueueKeepsSessionOfNewQueue() {
+    final QueueSession session = associate("Orders");
+    final MessageQueue replaced = bus.getQueue(session);
+
+    associate(session, "Orders");
+    final MessageQueue queue = bus.getQueue(session);
+    assertNotSame(replaced, queue);
+
+    bus.closeQueue(replaced);
+
+    assertSame(queue, bus.getQueue(session));
+    assertSame(session, bus.getSessionBySessionId(session.getSessionId()));
+    assertTrue(bus.hasRemoteSubscription(session.getSessionId(), "Orders"));
+  }
+
+  @Test
+  public void testSubjectUnsubscribedByClientIsRemovedWhenQueueCloses() {
+    final QueueSession session = associate("Orders");
+    final MessageQueue queue = bus.getQueue(session);
+
+    bus.remoteUnsubscribe(session, queue, "Orders");
+    assertTrue(bus.hasRemoteSubscriptions("Orders"));
+
+    bus.closeQueue(queue);
+    assertFalse(bus.hasRemoteSubscriptions("Orders"));
+  }
+
+  private QueueSession associate(final String remoteServices) {
+    final QueueSession session = MockQueueSessionFactory.newSession();
+    associate(session, remoteServices);
+    return session;
+  }
+
+  private void associate(final QueueSession session, final String remoteServices) {
+    final Message message = CommandMessage.create()
+        .toSubject(BuiltInServices.ServerBus.name())
+        .command(BusCommand.Associate)
+        .set(MessageParts.RemoteServices, remoteServices);
+    message.setResource(Resources.Session.name(), session);
+    bus.sendGlobal(message);
+  }
+}
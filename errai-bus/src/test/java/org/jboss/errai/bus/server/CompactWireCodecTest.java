@@ -0,0 +1,229 @@
+/*
+ * Copyright (C) 2016 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.jboss.errai.bus.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.jboss.errai.bus.client.protocols.CompactWireCodec;
+import org.jboss.errai.bus.server.io.CompactWireChannel;
+import org.jboss.errai.bus.server.io.FlowControlledChannel;
+import org.junit.Test;
+
+/**
+ * Tests the dictionary encoding of the compact wire protocol and the {@link CompactWireChannel}.
+ */
+public class CompactWireCodecTest {
+  private static final String EVENT = "[{\"ToSubject\":\"cdi.event:org.example.OrderPlaced\",\"CommandType\":\"CDIEvent\","
+      + "\"BeanType\":\"org.example.OrderPlaced\",\"BeanReference\":{\"^EncodedType\":\"org.example.OrderPlaced\","
+      + "\"^ObjectID\":\"1\",\"orderId\":{\"^EncodedType\":\"java.lang.Long\",\"^ObjectID\":\"2\",\"^NumVal\":\"42\"},"
+      + "\"customer\":\"J. \\\"Doe\\\"\"},\"FromClient\":\"1\"}]";
+
+  @Test
+  public void testRoundTrip() {
+    final CompactWireCodec sender = new CompactWireCodec();
+    final CompactWireCodec receiver = new CompactWireCodec();
+
+    for (int i = 0; i < 3; i++) {
+      final String encoded = sender.encode(EVENT);
+      assertEquals(EVENT, receiver.decode(encoded));
+    }
+  }
+
+  @Test
+  public void testRepeatedStringsAreReplacedByReferences() {
+    final CompactWireCodec sender = new CompactWireCodec();
+
+    final String first = sender.encode(EVENT);
+    final String second = sender.encode(EVENT);
+
+    assertTrue(first.length() < EVENT.length());
+    assertTrue(second.length() < first.length());
+    assertFalse(second.contains("cdi.event:"));
+    assertFalse(second.contains("ToSubject"));
+    assertFalse(second.contains("^EncodedType"));
+    assertTrue("values of other parts are not tokenized", second.contains("J. \\\"Doe\\\""));
+  }
+
+  @Test
+  public void testPlainPayloadDecodesToItself() {
+    final CompactWireCodec receiver = new CompactWireCodec();
+    assertSame(EVENT, receiver.decode(EVENT));
+  }
+
+  @Test
+  public void testMarkerCharactersInDataAreEscaped() {
+    final CompactWireCodec sender = new CompactWireCodec();
+    final CompactWireCodec receiver = new CompactWireCodec();
+
+    final String payload = "[{\"Value\":\"" + CompactWireCodec.REFERENCE + "12\",\"Other\":\""
+        + CompactWireCodec.DEFINITION + "abcd\"}]";
+    final String decoded = receiver.decode(sender.encode(payload));
+
+    assertEquals("[{\"Value\":\"\\u008012\",\"Other\":\"\\u0081abcd\"}]", decoded);
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void testUndefinedReferenceIsRejected() {
+    new CompactWireCodec().decode("[{\"" + CompactWireCodec.REFERENCE + "zzz\":1}]");
+  }
+
+  @Test
+  public void testNewStringIsDefinedOnFirstUseAndReferencedAfterwards() {
+    final CompactWireCodec sender = new CompactWireCodec();
+    final CompactWireCodec receiver = new CompactWireCodec();
+    final String payload = subjectPayload("InventoryService");
+
+    final String first = sender.encode(payload);
+    assertTrue(first.contains(CompactWireCodec.DEFINITION + "InventoryService"));
+    assertFalse("known part names are referenced from the start", first.contains("ToSubject"));
+
+    final String second = sender.encode(payload);
+    assertFalse(second.contains("InventoryService"));
+    assertEquals(-1, second.indexOf(CompactWireCodec.DEFINITION));
+    assertTrue(second.indexOf(CompactWireCodec.REFERENCE) != -1);
+
+    assertEquals(payload, receiver.decode(first));
+    assertEquals(payload, receiver.decode(second));
+  }
+
+  @Test
+  public void testShortStringsAreNotDefined() {
+    final CompactWireCodec sender = new CompactWireCodec();
+    final String payload = subjectPayload("Foo");
+
+    sender.encode(payload);
+    final String second = sender.encode(payload);
+    assertTrue(second.contains("\"Foo\""));
+    assertEquals(-1, second.indexOf(CompactWireCodec.DEFINITION));
+  }
+
+  @Test
+  public void testDictionaryGrowsUpToItsLimit() {
+    final CompactWireCodec sender = new CompactWireCodec();
+    final CompactWireCodec receiver = new CompactWireCodec();
+
+    String last = null;
+    for (int i = 0; i < 5000; i++) {
+      final String payload = subjectPayload("Service" + i);
+      last = sender.encode(payload);
+      assertEquals(payload, receiver.decode(last));
+    }
+    assertTrue("strings beyond the limit are sent in full", last.contains("\"Service4999\""));
+    assertEquals(-1, last.indexOf(CompactWireCodec.DEFINITION));
+
+    final String early = sender.encode(subjectPayload("Service0"));
+    assertFalse("entries defined before the limit are still referenced", early.contains("Service0"));
+    assertEquals(subjectPayload("Service0"), receiver.decode(early));
+  }
+
+  @Test
+  public void testSkippingPayloadWithoutDefinitionsKeepsDictionariesInSync() {
+    final CompactWireCodec sender = new CompactWireCodec();
+    final CompactWireCodec receiver = new CompactWireCodec();
+
+    receiver.decode(sender.encode(subjectPayload("InventoryService")));
+    final String referencesOnly = sender.encode(subjectPayload("InventoryService"));
+    assertEquals(-1, referencesOnly.indexOf(CompactWireCodec.DEFINITION));
+
+    final String payload = "[{\"ToSubject\":\"InventoryService\",\"ReplyTo\":\"OrderService\"}]";
+    assertEquals(payload, receiver.decode(sender.encode(payload)));
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void testSkippingPayloadWithDefinitionsBreaksLaterReferences() {
+    final CompactWireCodec sender = new CompactWireCodec();
+    final CompactWireCodec receiver = new CompactWireCodec();
+
+    sender.encode(subjectPayload("InventoryService"));
+    receiver.decode(sender.encode(subjectPayload("InventoryService")));
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void testOverlongDefinitionIsRejected() {
+    final StringBuilder raw = new StringBuilder();
+    for (int i = 0; i < 200; i++) {
+      raw.append('x');
+    }
+    new CompactWireCodec().decode("[{\"ToSubject\":\"" + CompactWireCodec.DEFINITION + raw + "\"}]");
+  }
+
+  @Test
+  public void testChannelEncodesInWriteOrder() throws IOException {
+    final RecordingChannel target = new RecordingChannel();
+    final CompactWireChannel channel = new CompactWireChannel(target, new CompactWireCodec());
+    final CompactWireCodec receiver = new CompactWireCodec();
+
+    channel.write(EVENT);
+    channel.write(subjectPayload("InventoryService"));
+    channel.write(EVENT);
+
+    assertEquals(3, target.written.size());
+    assertEquals(EVENT, receiver.decode(target.written.get(0)));
+    assertEquals(subjectPayload("InventoryService"), receiver.decode(target.written.get(1)));
+    assertEquals(EVENT, receiver.decode(target.written.get(2)));
+  }
+
+  @Test
+  public void testChannelReportsFlowControlOfUnderlyingChannel() {
+    final RecordingChannel target = new RecordingChannel();
+    final CompactWireChannel channel = new CompactWireChannel(target, new CompactWireCodec());
+
+    target.writable = false;
+    target.pendingBytes = 1234;
+    assertFalse(channel.isWritable());
+    assertEquals(1234, channel.getPendingBytes());
+    assertTrue(channel.isConnected());
+  }
+
+  private static String subjectPayload(final String subject) {
+    return "[{\"ToSubject\":\"" + subject + "\",\"Value\":\"x\"}]";
+  }
+
+  private static class RecordingChannel implements FlowControlledChannel {
+    private final List<String> written = new ArrayList<String>();
+    private boolean writable = true;
+    private long pendingBytes;
+
+    @Override
+    public boolean isConnected() {
+      return true;
+    }
+
+    @Override
+    public void write(final String data) {
+      written.add(data);
+    }
+
+    @Override
+    public boolean isWritable() {
+      return writable;
+    }
+
+    @Override
+    public long getPendingBytes() {
+      return pendingBytes;
+    }
+  }
+}
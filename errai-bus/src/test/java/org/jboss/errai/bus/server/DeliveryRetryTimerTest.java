@@ -0,0 +1,210 @@
+/*
+ * Copyright (C) 2016 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.errai.bus.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.jboss.errai.bus.client.api.base.CommandMessage;
+import org.jboss.errai.bus.client.api.base.NoSubscribersToDeliverTo;
+import org.jboss.errai.bus.client.api.messaging.Message;
+import org.jboss.errai.bus.client.framework.SubscriptionEvent;
+import org.jboss.errai.bus.server.mock.MockErraiService;
+import org.jboss.errai.bus.server.service.ErraiServiceConfiguratorImpl;
+import org.jboss.errai.common.client.api.ErrorCallback;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests that the {@link DeliveryRetryTimer} runs retries when they fall due or when their subject gets a subscriber,
+ * and that undeliverable messages are given up on.
+ */
+public class DeliveryRetryTimerTest {
+  private static final long TICK_MILLIS = 10;
+
+  private DeliveryRetryTimer timer;
+
+  @Before
+  public void setUp() {
+    timer = new DeliveryRetryTimer(TICK_MILLIS, 4, new Executor() {
+      @Override
+      public void execute(final Runnable command) {
+        command.run();
+      }
+    });
+  }
+
+  @Test
+  public void testRetryRunsWhenDue() {
+    final AtomicInteger runs = new AtomicInteger();
+    assertTrue(timer.schedule("Foo", 3 * TICK_MILLIS, new CountingTask(runs)));
+    assertEquals(1, timer.getPendingRetryCount());
+
+    timer.tick();
+    timer.tick();
+    assertEquals(0, runs.get());
+
+    timer.tick();
+    assertEquals(1, runs.get());
+    assertEquals(0, timer.getPendingRetryCount());
+
+    tick(200);
+    assertEquals("a retry must only run once", 1, runs.get());
+  }
+
+  @Test
+  public void testRetryLongerThanOneRotationWaitsForItsDeadline() {
+    final AtomicInteger runs = new AtomicInteger();
+    timer.schedule("Foo", 100 * TICK_MILLIS, new CountingTask(runs));
+
+    tick(99);
+    assertEquals("the slot comes up before the deadline and must be skipped", 0, runs.get());
+
+    tick(1);
+    assertEquals(1, runs.get());
+  }
+
+  @Test
+  public void testSubscribeRunsPendingRetriesForSubject() {
+    final AtomicInteger fooRuns = new AtomicInteger();
+    final AtomicInteger barRuns = new AtomicInteger();
+    timer.schedule("Foo", 5 * TICK_MILLIS, new CountingTask(fooRuns));
+    timer.schedule("Foo", 5 * TICK_MILLIS, new CountingTask(fooRuns));
+    timer.schedule("Bar", 5 * TICK_MILLIS, new CountingTask(barRuns));
+
+    timer.onSubscribe(new SubscriptionEvent(false, null, 1, true, "Foo"));
+    assertEquals(2, fooRuns.get());
+    assertEquals(0, barRuns.get());
+    assertEquals(1, timer.getPendingRetryCount());
+
+    tick(5);
+    assertEquals("retries run on subscribe must not run again when due", 2, fooRuns.get());
+    assertEquals(1, barRuns.get());
+    assertEquals(0, timer.getPendingRetryCount());
+  }
+
+  @Test
+  public void testLocalSubscriptionRunsPendingRetries() {
+    final AtomicInteger runs = new AtomicInteger();
+    timer.schedule("Foo", 5 * TICK_MILLIS, new CountingTask(runs));
+
+    timer.onSubscribe(new SubscriptionEvent(false, null, 1, true, "local:Foo"));
+    assertEquals(1, runs.get());
+  }
+
+  @Test
+  public void testSubscribeWithoutPendingRetriesDoesNothing() {
+    final AtomicInteger runs = new AtomicInteger();
+    timer.schedule("Foo", 5 * TICK_MILLIS, new CountingTask(runs));
+
+    timer.onSubscribe(new SubscriptionEvent(false, null, 1, true, "Bar"));
+    assertEquals(0, runs.get());
+    assertEquals(1, timer.getPendingRetryCount());
+  }
+
+  @Test
+  public void testRetriesBeyondCapacityAreRefused() {
+    final AtomicInteger runs = new AtomicInteger();
+    for (int i = 0; i < 4; i++) {
+      assertTrue(timer.schedule("Foo", TICK_MILLIS, new CountingTask(runs)));
+    }
+    assertFalse(timer.schedule("Foo", TICK_MILLIS, new CountingTask(runs)));
+    assertEquals(4, timer.getPendingRetryCount());
+    assertEquals(4, timer.getRetryCount());
+    assertEquals(1, timer.getRetryDropCount());
+
+    timer.tick();
+    assertEquals(4, runs.get());
+    assertTrue("capacity must be released once retries have run",
+        timer.schedule("Foo", TICK_MILLIS, new CountingTask(runs)));
+  }
+
+  @Test
+  public void testFailingRetryDoesNotStopTheTimer() {
+    final AtomicInteger runs = new AtomicInteger();
+    timer.schedule("Foo", TICK_MILLIS, new Runnable() {
+      @Override
+      public void run() {
+        throw new RuntimeException("delivery failed");
+      }
+    });
+    timer.schedule("Foo", TICK_MILLIS, new CountingTask(runs));
+
+    timer.tick();
+    assertEquals(1, runs.get());
+    assertEquals(0, timer.getPendingRetryCount());
+  }
+
+  @Test
+  public void testBusGivesUpOnMessageWithoutSubscribers() throws Exception {
+    final ServerMessageBusImpl bus = new ServerMessageBusImpl(new MockErraiService(), new ErraiServiceConfiguratorImpl());
+    final CountDownLatch failed = new CountDownLatch(1);
+    final AtomicInteger errorCalls = new AtomicInteger();
+    final AtomicReference<Throwable> error = new AtomicReference<Throwable>();
+
+    try {
+      final Message message = CommandMessage.create().toSubject("NobodyListens");
+      message.errorsCall(new ErrorCallback<Message>() {
+        @Override
+        public boolean error(final Message message, final Throwable throwable) {
+          errorCalls.incrementAndGet();
+          error.set(throwable);
+          failed.countDown();
+          return false;
+        }
+      });
+      bus.sendGlobal(message);
+
+      assertTrue("the bus did not give up on the message", failed.await(10, TimeUnit.SECONDS));
+      assertTrue(error.get() instanceof NoSubscribersToDeliverTo);
+
+      // give a further retry, if one was wrongly scheduled, the time to run.
+      Thread.sleep(1000);
+      assertEquals(1, errorCalls.get());
+      assertEquals(0, bus.getPendingRetryCount());
+    }
+    finally {
+      bus.stop();
+    }
+  }
+
+  private void tick(final int ticks) {
+    for (int i = 0; i < ticks; i++) {
+      timer.tick();
+    }
+  }
+
+  private static class CountingTask implements Runnable {
+    private final AtomicInteger runs;
+
+    private CountingTask(final AtomicInteger runs) {
+      this.runs = runs;
+    }
+
+    @Override
+    public void run() {
+      runs.incrementAndGet();
+    }
+  }
+}
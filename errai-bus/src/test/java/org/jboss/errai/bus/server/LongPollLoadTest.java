@@ -0,0 +1,218 @@
+/*
+ * Copyright (C) 2016 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.errai.bus.server;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.text.DecimalFormat;
+import java.text.NumberFormat;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.nio.SelectChannelConnector;
+import org.eclipse.jetty.servlet.ServletContextHandler;
+import org.eclipse.jetty.servlet.ServletHolder;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+import org.jboss.errai.bus.server.api.MessageQueue;
+import org.jboss.errai.bus.server.io.OutputStreamWriteAdapter;
+import org.jboss.errai.bus.server.io.buffers.BufferColor;
+import org.jboss.errai.bus.server.io.buffers.TransmissionBuffer;
+import org.jboss.errai.bus.server.servlet.NonBlockingQueueWriter;
+import org.junit.Assume;
+import org.junit.Ignore;
+import org.junit.Test;
+
+/**
+ * Load test for long polling. Opens a number of idle long polls against an embedded Jetty, whose servlet waits on a
+ * message queue per request the way the bus servlets do, and reports the number of threads the server needs to hold
+ * them. A message is then broadcast to all queues and the time until every poll has been answered is reported.
+ * <p/>
+ * The servlet either parks a container thread in the queue like
+ * {@link org.jboss.errai.bus.server.servlet.DefaultBlockingServlet} does (<tt>errai.loadtest.mode=blocking</tt>), or
+ * writes with {@link NonBlockingQueueWriter} like the {@link org.jboss.errai.bus.server.servlet.StandardAsyncServlet}
+ * does in non-blocking mode (<tt>errai.loadtest.mode=non-blocking</tt>, the default). The number of polls is set with
+ * <tt>errai.loadtest.pollers</tt> (default 1000). Runs with 10000 polls need a raised open file limit.
+ * <p/>
+ * The non-blocking mode needs a Servlet 3.1 container. It is skipped on the Jetty 8 that gwt-dev bundles, so put a
+ * Jetty 9 ahead of gwt-dev on the test class path to run it.
+ */
+public class LongPollLoadTest {
+  private static final int PORT = 8096;
+  private static final String PATH = "/in.erraiBus";
+
+  @Test
+  @Ignore
+  public void testManyIdlePollers() throws Exception {
+    final int pollers = Integer.getInteger("errai.loadtest.pollers", 1000);
+    final boolean nonBlocking = !"blocking".equals(System.getProperty("errai.loadtest.mode", "non-blocking"));
+    final NumberFormat nf = new DecimalFormat("###,###.###");
+
+    final TransmissionBuffer buffer = TransmissionBuffer.create();
+    final Queue<MessageQueue> queues = new ConcurrentLinkedQueue<MessageQueue>();
+    final AtomicInteger waiting = new AtomicInteger();
+
+    final ServletContextHandler context = new ServletContextHandler();
+    final int servletMajor = context.getServletContext().getMajorVersion();
+    final int servletMinor = context.getServletContext().getMinorVersion();
+    Assume.assumeTrue(!nonBlocking || servletMajor > 3 || (servletMajor == 3 && servletMinor >= 1));
+
+    final QueuedThreadPool threadPool = new QueuedThreadPool(pollers + 200);
+    threadPool.setMinThreads(8);
+    final Server server = new Server();
+    server.setThreadPool(threadPool);
+    final SelectChannelConnector connector = new SelectChannelConnector();
+    connector.setPort(PORT);
+    connector.setAcceptQueueSize(pollers);
+    connector.setMaxIdleTime((int) TimeUnit.MINUTES.toMillis(5));
+    server.addConnector(connector);
+
+    final ServletHolder holder = new ServletHolder(new HttpServlet() {
+      @Override
+      protected void doGet(final HttpServletRequest request, final HttpServletResponse response)
+          throws ServletException, IOException {
+        final MessageQueueImpl queue = new MessageQueueImpl(buffer, MockQueueSessionFactory.newSession(), 300);
+        queue.finishInit();
+        queues.add(queue);
+        waiting.incrementAndGet();
+
+        if (nonBlocking) {
+          final AsyncContext asyncContext = request.startAsync();
+          asyncContext.setTimeout(TimeUnit.MINUTES.toMillis(5));
+          NonBlockingQueueWriter.start(asyncContext, queue, false, true);
+        }
+        else {
+          queue.poll(TimeUnit.MINUTES, 5, new OutputStreamWriteAdapter(response.getOutputStream()));
+        }
+      }
+    });
+    holder.setAsyncSupported(true);
+    context.addServlet(holder, PATH);
+    server.setHandler(context);
+    server.start();
+
+    final Selector selector = Selector.open();
+    final List<SocketChannel> channels = new ArrayList<SocketChannel>(pollers);
+
+    try {
+      final int threadsBefore = ManagementFactory.getThreadMXBean().getThreadCount();
+      final ByteBuffer request = ByteBuffer.wrap(("GET " + PATH + "?wait=1 HTTP/1.1\r\nHost: localhost\r\n\r\n")
+          .getBytes());
+
+      final long connectStart = System.nanoTime();
+      for (int i = 0; i < pollers; i++) {
+        final SocketChannel channel = SocketChannel.open(new InetSocketAddress("localhost", PORT));
+        channel.write(request.duplicate());
+        channel.configureBlocking(false);
+        channel.register(selector, SelectionKey.OP_READ);
+        channels.add(channel);
+      }
+      awaitCount(waiting, pollers, 2, TimeUnit.MINUTES);
+      final double connectSecs = (System.nanoTime() - connectStart) / 1e9d;
+
+      // let the server settle, so that only the threads holding polls remain busy.
+      Thread.sleep(2000);
+      final int threadsIdle = ManagementFactory.getThreadMXBean().getThreadCount();
+      final int busyThreads = threadPool.getThreads() - threadPool.getIdleThreads();
+
+      final long broadcastStart = System.nanoTime();
+      buffer.write(new ByteArrayInputStream("{\"ToSubject\":\"LoadTest\",\"Value\":\"tick\"}".getBytes()),
+          BufferColor.getAllBuffersColor());
+      // the bus wakes each queue after a broadcast, which also knocks a blocked poll loose.
+      for (final MessageQueue queue : queues) {
+        queue.wake();
+      }
+      final int answered = readResponses(selector, pollers, TimeUnit.MINUTES.toMillis(2));
+      final double broadcastSecs = (System.nanoTime() - broadcastStart) / 1e9d;
+
+      System.out.println("Mode: " + (nonBlocking ? "non-blocking" : "blocking") + "; idle polls: " + pollers);
+      System.out.println("  connect rate: " + nf.format(pollers / connectSecs) + " per second");
+      System.out.println("  JVM threads: " + threadsBefore + " before, " + threadsIdle + " while polls are idle");
+      System.out.println("  busy container threads while polls are idle: " + busyThreads);
+      System.out.println("  polls answered after broadcast: " + answered + " in " + nf.format(broadcastSecs) + " s");
+
+      if (answered != pollers) {
+        throw new AssertionError((pollers - answered) + " of " + pollers + " polls were not answered");
+      }
+    }
+    finally {
+      for (final SocketChannel channel : channels) {
+        channel.close();
+      }
+      selector.close();
+      server.stop();
+    }
+  }
+
+  private static void awaitCount(final AtomicInteger count, final int expected, final long time, final TimeUnit unit)
+      throws InterruptedException {
+    final long deadline = System.nanoTime() + unit.toNanos(time);
+    while (count.get() < expected) {
+      if (System.nanoTime() > deadline) {
+        throw new AssertionError(count.get() + " of " + expected + " polls reached the server");
+      }
+      Thread.sleep(10);
+    }
+  }
+
+  /**
+   * Reads from the channels until each of them has received data or was closed, and returns the number that received
+   * data.
+   */
+  private static int readResponses(final Selector selector, final int expected, final long timeoutMillis)
+      throws IOException {
+    final ByteBuffer readBuffer = ByteBuffer.allocate(8192);
+    final long deadline = System.currentTimeMillis() + timeoutMillis;
+    int answered = 0;
+
+    while (answered < expected && System.currentTimeMillis() < deadline) {
+      if (selector.select(100) == 0) continue;
+
+      for (final Iterator<SelectionKey> iter = selector.selectedKeys().iterator(); iter.hasNext(); ) {
+        final SelectionKey key = iter.next();
+        iter.remove();
+
+        readBuffer.clear();
+        final int read = ((SocketChannel) key.channel()).read(readBuffer);
+        if (read != 0) {
+          key.cancel();
+        }
+        if (read > 0) {
+          answered++;
+        }
+      }
+    }
+    return answered;
+  }
+}
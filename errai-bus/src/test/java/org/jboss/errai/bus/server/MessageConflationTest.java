@@ -0,0 +1,137 @@
+/*
+ * Copyright (C) 2016 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.errai.bus.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.jboss.errai.bus.client.api.base.CommandMessage;
+import org.jboss.errai.bus.client.api.messaging.Message;
+import org.jboss.errai.bus.server.api.MessageQueue;
+import org.jboss.errai.bus.server.io.Drainable;
+import org.jboss.errai.bus.server.io.MessageConflator;
+import org.jboss.errai.bus.server.io.MessageDeliveryHandler;
+import org.jboss.errai.bus.server.io.buffers.TransmissionBuffer;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests that a {@link MessageQueueImpl} only keeps the latest message per conflation key pending until it drains.
+ */
+public class MessageConflationTest {
+  private MessageConflator conflator;
+  private RecordingDeliveryHandler handler;
+  private MessageQueueImpl queue;
+
+  @Before
+  public void setUp() {
+    conflator = new MessageConflator();
+    conflator.conflate("PriceTicker", "symbol");
+
+    handler = new RecordingDeliveryHandler();
+    queue = new MessageQueueImpl(TransmissionBuffer.create(), MockQueueSessionFactory.newSession(), 60, conflator);
+    queue.setDeliveryHandler(handler);
+  }
+
+  @Test
+  public void testDrainedQueueDeliversImmediately() throws IOException {
+    queue.offer(tick("RHT", 1));
+    queue.offer(tick("RHT", 2));
+
+    assertEquals(2, handler.delivered.size());
+    assertEquals(0, conflator.getConflatedCount("PriceTicker"));
+  }
+
+  @Test
+  public void testOnlyLatestMessagePerKeyRemainsPending() throws IOException {
+    handler.drained = false;
+
+    queue.offer(tick("RHT", 1));
+    queue.offer(tick("IBM", 1));
+    queue.offer(tick("RHT", 2));
+    queue.offer(tick("RHT", 3));
+    queue.offer(tick("IBM", 2));
+
+    assertTrue(handler.delivered.isEmpty());
+    assertEquals(3, conflator.getConflatedCount("PriceTicker"));
+
+    handler.drained = true;
+    queue.wake();
+
+    assertEquals(2, handler.delivered.size());
+    assertEquals("RHT", handler.delivered.get(0).get(String.class, "symbol"));
+    assertEquals(Integer.valueOf(3), handler.delivered.get(0).get(Integer.class, "price"));
+    assertEquals("IBM", handler.delivered.get(1).get(String.class, "symbol"));
+    assertEquals(Integer.valueOf(2), handler.delivered.get(1).get(Integer.class, "price"));
+  }
+
+  @Test
+  public void testUnconflatedMessagesAreNotHeldBack() throws IOException {
+    handler.drained = false;
+
+    queue.offer(CommandMessage.create().toSubject("News").set("symbol", "RHT"));
+    queue.offer(CommandMessage.create().toSubject("PriceTicker").set("price", 1));
+    queue.offer(CommandMessage.create().toSubject("PriceTicker").set("price", 2));
+
+    assertEquals(3, handler.delivered.size());
+    assertEquals(0, conflator.getConflatedCount("PriceTicker"));
+  }
+
+  @Test
+  public void testConflationBySubject() throws IOException {
+    conflator.conflate("Clock", "");
+    handler.drained = false;
+
+    queue.offer(CommandMessage.create().toSubject("Clock").set("time", 1));
+    queue.offer(CommandMessage.create().toSubject("Clock").set("time", 2));
+
+    handler.drained = true;
+    queue.wake();
+
+    assertEquals(1, handler.delivered.size());
+    assertEquals(Integer.valueOf(2), handler.delivered.get(0).get(Integer.class, "time"));
+    assertEquals(1, conflator.getConflatedCount("Clock"));
+  }
+
+  private static Message tick(final String symbol, final int price) {
+    return CommandMessage.create().toSubject("PriceTicker").set("symbol", symbol).set("price", price);
+  }
+
+  private static class RecordingDeliveryHandler implements MessageDeliveryHandler, Drainable {
+    private final List<Message> delivered = new ArrayList<Message>();
+    private volatile boolean drained = true;
+
+    @Override
+    public boolean deliver(final MessageQueue queue, final Message message) {
+      delivered.add(message);
+      return true;
+    }
+
+    @Override
+    public void noop(final MessageQueue queue) {
+    }
+
+    @Override
+    public boolean isDrained(final MessageQueue queue) {
+      return drained;
+    }
+  }
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright (C) 2016 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.jboss.errai.bus.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.WriteBufferWaterMark;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.http.websocketx.TextWebSocketFrame;
+import org.jboss.errai.bus.server.io.websockets.NettyQueueChannel;
+import org.junit.Test;
+
+/**
+ * Tests the coalescing of writes to a Netty WebSocket queue channel, and its writability.
+ */
+public class NettyQueueChannelTest {
+
+  @Test
+  public void testWritesInOnePassAreCoalescedIntoOneFrame() {
+    final EmbeddedChannel embeddedChannel = new EmbeddedChannel();
+    final NettyQueueChannel channel = new NettyQueueChannel(embeddedChannel);
+
+    channel.write("[{\"a\":1}]");
+    channel.write("[]");
+    channel.write("[{\"b\":\"[x]\"},{\"c\":3}]");
+    assertEquals("[{\"a\":1}]".length() + "[]".length() + "[{\"b\":\"[x]\"},{\"c\":3}]".length(),
+        channel.getPendingBytes());
+
+    embeddedChannel.runPendingTasks();
+
+    final TextWebSocketFrame frame = (TextWebSocketFrame) embeddedChannel.readOutbound();
+    assertEquals("[{\"a\":1},{\"b\":\"[x]\"},{\"c\":3}]", frame.text());
+    frame.release();
+    assertNull(embeddedChannel.readOutbound());
+
+    assertEquals(3, channel.getMessagesWritten());
+    assertEquals(1, channel.getFramesWritten());
+    assertEquals(0, channel.getPendingBytes());
+  }
+
+  @Test
+  public void testNonArrayPayloadKeepsItsPlaceInOrder() {
+    final EmbeddedChannel embeddedChannel = new EmbeddedChannel();
+    final NettyQueueChannel channel = new NettyQueueChannel(embeddedChannel);
+
+    channel.write("[1]");
+    channel.write("{\"raw\":true}");
+    channel.write("[2]");
+
+    embeddedChannel.runPendingTasks();
+
+    final String[] expected = {"[1]", "{\"raw\":true}", "[2]"};
+    for (final String text : expected) {
+      final TextWebSocketFrame frame = (TextWebSocketFrame) embeddedChannel.readOutbound();
+      assertEquals(text, frame.text());
+      frame.release();
+    }
+    assertNull(embeddedChannel.readOutbound());
+  }
+
+  @Test
+  public void testPendingBytesAreCountedInUtf8() {
+    final EmbeddedChannel embeddedChannel = new EmbeddedChannel();
+    final NettyQueueChannel channel = new NettyQueueChannel(embeddedChannel);
+
+    channel.write("[\"\u00e9\u2603\"]");
+    assertEquals(9, channel.getPendingBytes());
+
+    embeddedChannel.runPendingTasks();
+    ((TextWebSocketFrame) embeddedChannel.readOutbound()).release();
+    assertEquals(0, channel.getPendingBytes());
+  }
+
+  @Test
+  public void testChannelIsUnwritableWhilePendingPayloadsExceedHighWaterMark() {
+    final List<Boolean> writabilityChanges = new ArrayList<Boolean>();
+    final EmbeddedChannel embeddedChannel = new EmbeddedChannel(new ChannelInboundHandlerAdapter() {
+      @Override
+      public void channelWritabilityChanged(final ChannelHandlerContext ctx) {
+        writabilityChanges.add(ctx.channel().isWritable());
+      }
+    });
+    embeddedChannel.config().setWriteBufferWaterMark(new WriteBufferWaterMark(8, 16));
+    final NettyQueueChannel channel = new NettyQueueChannel(embeddedChannel);
+
+    channel.write("[1,2,3,4]");
+    assertTrue(channel.isWritable());
+    channel.write("[5,6,7,8]");
+    assertFalse("payloads waiting for the event loop count towards the limit", channel.isWritable());
+
+    embeddedChannel.runPendingTasks();
+    TextWebSocketFrame frame;
+    while ((frame = embeddedChannel.readOutbound()) != null) {
+      frame.release();
+    }
+    embeddedChannel.runPendingTasks();
+
+    assertEquals(0, channel.getPendingBytes());
+    assertTrue(channel.isWritable());
+    assertEquals(Arrays.asList(false, true), writabilityChanges);
+  }
+}
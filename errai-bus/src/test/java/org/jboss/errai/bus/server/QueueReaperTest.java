@@ -0,0 +1,129 @@
+/*
+ * Copyright (C) 2016 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.errai.bus.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.jboss.errai.bus.server.api.MessageQueue;
+import org.jboss.errai.bus.server.io.buffers.TransmissionBuffer;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests that the {@link QueueReaper} expires idle queues without checking queues that are not due.
+ */
+public class QueueReaperTest {
+  private static final long TICK_MILLIS = 10;
+
+  private final List<MessageQueue> expired = new ArrayList<MessageQueue>();
+  private TransmissionBuffer buffer;
+  private QueueReaper reaper;
+
+  @Before
+  public void setUp() {
+    buffer = TransmissionBuffer.create();
+    reaper = new QueueReaper(TICK_MILLIS, 60000, new QueueReaper.ExpiryListener() {
+      @Override
+      public void onExpired(final MessageQueue queue) {
+        expired.add(queue);
+      }
+    });
+  }
+
+  @Test
+  public void testIdleQueueExpires() throws InterruptedException {
+    final MessageQueue queue = newQueue(50);
+    reaper.add(queue);
+
+    tickFor(200);
+
+    assertEquals(1, expired.size());
+    assertSame(queue, expired.get(0));
+    assertEquals(1, reaper.getExpiredCount());
+    assertEquals(0, reaper.getQueueCount());
+  }
+
+  @Test
+  public void testHeartbeatKeepsQueueAlive() throws InterruptedException {
+    final MessageQueue queue = newQueue(50);
+    reaper.add(queue);
+
+    for (int i = 0; i < 20; i++) {
+      queue.heartBeat();
+      tickFor(TICK_MILLIS);
+    }
+
+    assertTrue(expired.isEmpty());
+    assertTrue(reaper.getRescheduleCount() > 0);
+    assertEquals(1, reaper.getQueueCount());
+  }
+
+  @Test
+  public void testRemovedQueueIsNotExpired() throws InterruptedException {
+    final MessageQueue queue = newQueue(50);
+    reaper.add(queue);
+    reaper.remove(queue);
+
+    tickFor(200);
+
+    assertTrue(expired.isEmpty());
+    assertEquals(0, reaper.getQueueCount());
+  }
+
+  @Test
+  public void testOnlyDueQueuesAreChecked() throws InterruptedException {
+    for (int i = 0; i < 1000; i++) {
+      reaper.add(newQueue(60000));
+    }
+    final MessageQueue idle = newQueue(50);
+    reaper.add(idle);
+
+    int checks = 0;
+    final long end = System.currentTimeMillis() + 200;
+    while (System.currentTimeMillis() < end) {
+      Thread.sleep(TICK_MILLIS);
+      reaper.tick();
+      checks += reaper.getLastTickCheckCount();
+    }
+
+    assertEquals(1, expired.size());
+    assertSame(idle, expired.get(0));
+    assertEquals(1, checks);
+    assertEquals(1000, reaper.getQueueCount());
+  }
+
+  private MessageQueue newQueue(final long timeoutMillis) {
+    final MessageQueue queue = new MessageQueueImpl(buffer, MockQueueSessionFactory.newSession(), 0);
+    queue.setTimeout(timeoutMillis);
+    queue.heartBeat();
+    return queue;
+  }
+
+  private void tickFor(final long millis) throws InterruptedException {
+    final long end = System.currentTimeMillis() + millis;
+    do {
+      Thread.sleep(TICK_MILLIS);
+      reaper.tick();
+    }
+    while (System.currentTimeMillis() < end);
+  }
+}
@@ -20,6 +20,7 @@ import junit.framework.TestCase;
 import org.jboss.errai.bus.client.tests.support.RandomProvider;
 import org.jboss.errai.bus.server.io.OutputStreamWriteAdapter;
 import org.jboss.errai.bus.server.io.buffers.BufferColor;
+import org.jboss.errai.bus.server.io.buffers.BufferOverflowException;
 import org.jboss.errai.bus.server.io.buffers.TransmissionBuffer;
 
 import java.io.BufferedOutputStream;
@@ -33,6 +34,7 @@ import java.io.OutputStream;
 import java.io.PrintWriter;
 import java.math.BigDecimal;
 import java.math.MathContext;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
@@ -339,8 +341,10 @@ public class TransmissionBufferTests extends TestCase {
 
   @SuppressWarnings({"ResultOfMethodCallIgnored", "ConstantConditions"})
   public void testMultithreadedBufferUse() throws Exception {
-    final File logFile = new File("multithread_test.log");
-    final File rawBufferFile = new File("raw_buffer.log");
+    final File logDir = new File("target");
+    logDir.mkdirs();
+    final File logFile = new File(logDir, "multithread_test.log");
+    final File rawBufferFile = new File(logDir, "raw_buffer.log");
     if (!logFile.exists()) logFile.createNewFile();
     if (!rawBufferFile.exists()) rawBufferFile.createNewFile();
 
@@ -631,14 +635,197 @@ public class TransmissionBufferTests extends TestCase {
   public void testBufferColorCyclesAroundCorrectly() throws IOException {
     final int loopMax = Short.MAX_VALUE * 2 + 10;
 
-    final short allBufferColor = BufferColor.getAllBuffersColor().getColor();
+    final int allBufferColor = BufferColor.getAllBuffersColor().getColorValue();
     for (int i = 0; i < loopMax; i++) {
-      if (BufferColor.getNewColor().getColor() == allBufferColor) {
+      if (BufferColor.getNewColor().getColorValue() == allBufferColor) {
         fail("a new color should never be the all-buffers color!");
       }
     }
   }
 
+  public void testBulkWritesWrapAroundBuffer() throws IOException {
+    final TransmissionBuffer heapBuffer = TransmissionBuffer.create(10, 7);
+    final TransmissionBuffer directBuffer = TransmissionBuffer.createDirect(10, 7);
+
+    for (final TransmissionBuffer buffer : new TransmissionBuffer[]{heapBuffer, directBuffer}) {
+      final BufferColor color = BufferColor.getNewColor();
+      final Random random = new Random(4221);
+
+      for (int i = 0; i < 10000; i++) {
+        final StringBuilder builder = new StringBuilder();
+        final int length = random.nextInt(60);
+        for (int c = 0; c < length; c++) {
+          builder.append((char) ('a' + random.nextInt(26)));
+        }
+        final String s = builder.toString();
+
+        if (i % 2 == 0) {
+          buffer.write(s.getBytes(), 0, s.length(), color);
+        }
+        else {
+          final ByteBuffer source = ByteBuffer.wrap(s.getBytes());
+          buffer.write(source, color);
+          assertEquals(0, source.remaining());
+        }
+
+        final ByteArrayOutputStream bOutputStream = new ByteArrayOutputStream();
+        buffer.read(new OutputStreamWriteAdapter(bOutputStream), color);
+        assertEquals(s, new String(bOutputStream.toByteArray()));
+      }
+    }
+  }
+
+  public void testOverrunReportsLostMessages() throws IOException {
+    final TransmissionBuffer buffer = TransmissionBuffer.create(10, 10);
+
+    final BufferColor lapped = BufferColor.getNewColorFromHead(buffer);
+    final BufferColor idle = BufferColor.getNewColorFromHead(buffer);
+
+    for (int i = 0; i < 25; i++) {
+      buffer.write("abc".getBytes(), 0, 3, lapped);
+    }
+
+    try {
+      buffer.read(new OutputStreamWriteAdapter(new ByteArrayOutputStream()), lapped);
+      fail("expected the overrun to be reported");
+    }
+    catch (BufferOverflowException e) {
+      assertEquals(25, e.getLostMessageCount());
+    }
+
+    assertEquals(25, lapped.getLostMessageCount());
+    assertEquals(25, buffer.getLostMessageCount());
+    assertEquals(1, buffer.getOverrunCount());
+
+    // a color which had nothing to lose is moved up silently.
+    final ByteArrayOutputStream bOutputStream = new ByteArrayOutputStream();
+    buffer.read(new OutputStreamWriteAdapter(bOutputStream), idle);
+    assertEquals(0, bOutputStream.size());
+    assertEquals(0, idle.getLostMessageCount());
+
+    buffer.write("def".getBytes(), 0, 3, lapped);
+    buffer.read(new OutputStreamWriteAdapter(bOutputStream), lapped);
+    assertEquals("def", new String(bOutputStream.toByteArray()));
+  }
+
+  public void testOverrunReportsLostBroadcastMessages() throws IOException {
+    final TransmissionBuffer buffer = TransmissionBuffer.create(10, 10);
+    final BufferColor broadcast = BufferColor.getAllBuffersColor();
+
+    final BufferColor reader = BufferColor.getNewColorFromHead(buffer);
+    for (int i = 0; i < 3; i++) {
+      buffer.write("abc".getBytes(), 0, 3, broadcast);
+    }
+    final ByteArrayOutputStream bOutputStream = new ByteArrayOutputStream();
+    buffer.read(new OutputStreamWriteAdapter(bOutputStream), reader);
+    assertEquals("abcabcabc", new String(bOutputStream.toByteArray()));
+
+    final BufferColor idle = BufferColor.getNewColorFromHead(buffer);
+    for (int i = 0; i < 25; i++) {
+      buffer.write("def".getBytes(), 0, 3, broadcast);
+    }
+    buffer.write("ghi".getBytes(), 0, 3, reader);
+
+    try {
+      buffer.read(new OutputStreamWriteAdapter(new ByteArrayOutputStream()), reader);
+      fail("expected the overrun to be reported");
+    }
+    catch (BufferOverflowException e) {
+      assertEquals("the broadcasts read before the overrun are not lost", 26, e.getLostMessageCount());
+    }
+
+    // a color only counts the broadcasts written after it was created.
+    try {
+      buffer.read(new OutputStreamWriteAdapter(new ByteArrayOutputStream()), idle);
+      fail("expected the overrun to be reported");
+    }
+    catch (BufferOverflowException e) {
+      assertEquals(25, e.getLostMessageCount());
+    }
+
+    assertEquals(26, reader.getLostMessageCount());
+    assertEquals(25, idle.getLostMessageCount());
+    assertEquals(51, buffer.getLostMessageCount());
+    assertEquals(2, buffer.getOverrunCount());
+
+    final BufferColor late = BufferColor.getNewColorFromHead(buffer);
+    buffer.write("jkl".getBytes(), 0, 3, broadcast);
+    bOutputStream.reset();
+    buffer.read(new OutputStreamWriteAdapter(bOutputStream), late);
+    assertEquals("jkl", new String(bOutputStream.toByteArray()));
+    assertEquals(0, late.getLostMessageCount());
+  }
+
+  public void testReleasedColorIsRecycledAfterBufferWraps() throws IOException {
+    final TransmissionBuffer buffer = TransmissionBuffer.create(10, 10);
+
+    final BufferColor released = BufferColor.getNewColorFromHead(buffer);
+    buffer.write("old".getBytes(), 0, 3, released);
+    released.release(buffer);
+
+    // writes to a released color are discarded.
+    final long head = buffer.getHeadSequence();
+    buffer.write("late".getBytes(), 0, 4, released);
+    assertEquals(head, buffer.getHeadSequence());
+    assertEquals(1, buffer.getDroppedWriteCount());
+
+    assertTrue(BufferColor.getNewColorFromHead(buffer).getColorValue() != released.getColorValue());
+
+    final BufferColor other = BufferColor.getNewColor();
+    for (int i = 0; i < 10; i++) {
+      buffer.write("abc".getBytes(), 0, 3, other);
+    }
+
+    final BufferColor recycled = BufferColor.getNewColorFromHead(buffer);
+    assertEquals(released.getColorValue(), recycled.getColorValue());
+
+    final ByteArrayOutputStream bOutputStream = new ByteArrayOutputStream();
+    buffer.read(new OutputStreamWriteAdapter(bOutputStream), recycled);
+    assertEquals(0, bOutputStream.size());
+  }
+
+  public void testWakeIfDataWaiting() throws IOException {
+    final TransmissionBuffer buffer = TransmissionBuffer.create(10, 10);
+    final BufferColor color = BufferColor.getNewColorFromHead(buffer);
+    assertFalse(buffer.wakeIfDataWaiting(color));
+
+    buffer.write("abc".getBytes(), 0, 3, BufferColor.getAllBuffersColor());
+    assertTrue(buffer.wakeIfDataWaiting(color));
+    assertFalse("broadcasts written before the color was created are not waiting",
+        buffer.wakeIfDataWaiting(BufferColor.getNewColorFromHead(buffer)));
+
+    buffer.write("def".getBytes(), 0, 3, color);
+    buffer.read(new OutputStreamWriteAdapter(new ByteArrayOutputStream()), color);
+    assertFalse(buffer.wakeIfDataWaiting(color));
+
+    buffer.write("ghi".getBytes(), 0, 3, color);
+    color.release(buffer);
+    assertFalse(buffer.wakeIfDataWaiting(color));
+  }
+
+  public void testWakingMoreQueuesThanSegmentsKeepsBroadcast() throws IOException {
+    final TransmissionBuffer buffer = TransmissionBuffer.create(64, 16);
+    final List<MessageQueueImpl> queues = new ArrayList<MessageQueueImpl>();
+    for (int i = 0; i < 40; i++) {
+      queues.add(new MessageQueueImpl(buffer, MockQueueSessionFactory.newSession(), 60));
+    }
+
+    final byte[] message = "{\"ToSubject\":\"Test\",\"Value\":\"tick\"}".getBytes();
+    buffer.write(message, 0, message.length, BufferColor.getAllBuffersColor());
+
+    // the bus wakes every queue after a broadcast. this must not take segments which the broadcast is still in.
+    for (final MessageQueueImpl queue : queues) {
+      queue.wake();
+    }
+
+    for (final MessageQueueImpl queue : queues) {
+      final ByteArrayOutputStream bOutputStream = new ByteArrayOutputStream();
+      assertTrue(queue.poll(new OutputStreamWriteAdapter(bOutputStream)));
+      assertTrue(new String(bOutputStream.toByteArray()).contains("tick"));
+    }
+    assertEquals(0, buffer.getOverrunCount());
+  }
+
   public static String createGiantString() {
     final int size = TransmissionBuffer.DEFAULT_SEGMENT_SIZE * 3;
     final StringBuilder sb = new StringBuilder(size + 10);
@@ -0,0 +1,184 @@
+/*
+ * Copyright (C) 2016 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.jboss.errai.bus.server;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.handler.codec.http.DefaultHttpHeaders;
+import io.netty.handler.codec.http.HttpClientCodec;
+import io.netty.handler.codec.http.HttpObjectAggregator;
+import io.netty.handler.codec.http.HttpServerCodec;
+import io.netty.handler.codec.http.websocketx.TextWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.WebSocketClientHandshakerFactory;
+import io.netty.handler.codec.http.websocketx.WebSocketClientProtocolHandler;
+import io.netty.handler.codec.http.websocketx.WebSocketServerProtocolHandler;
+import io.netty.handler.codec.http.websocketx.WebSocketVersion;
+import org.jboss.errai.bus.server.io.websockets.NettyTransport;
+import org.jboss.errai.bus.server.io.websockets.WebSocketServerHandler;
+import org.junit.Ignore;
+import org.junit.Test;
+
+import java.net.URI;
+import java.text.DecimalFormat;
+import java.text.NumberFormat;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Load test for the web socket transport. Opens a number of local web socket connections against an echo server
+ * built on the same transport and buffer settings as {@link org.jboss.errai.bus.server.io.websockets.WebSocketServer}
+ * and reports the connect rate, the heap used per connection (client and server side together) and the echo
+ * throughput.
+ * <p/>
+ * The size of the run is set with the system properties <tt>errai.loadtest.connections</tt> (default 2000) and
+ * <tt>errai.loadtest.messages</tt> (messages per connection, default 100), and the transport with
+ * <tt>errai.loadtest.transport</tt> (auto, epoll or nio). Large runs need a raised open file limit.
+ */
+public class WebSocketLoadTest {
+  private static final int PORT = 8095;
+
+  @Test
+  @Ignore
+  public void testManyConcurrentConnections() throws Exception {
+    final int connections = Integer.getInteger("errai.loadtest.connections", 2000);
+    final int messages = Integer.getInteger("errai.loadtest.messages", 100);
+    final NettyTransport transport = NettyTransport.select(System.getProperty("errai.loadtest.transport", "auto"));
+    final NumberFormat nf = new DecimalFormat("###,###.###");
+
+    final EventLoopGroup serverGroup = transport.newEventLoopGroup(0);
+    final EventLoopGroup clientGroup = transport.newEventLoopGroup(0);
+
+    try {
+      final Channel serverChannel = new ServerBootstrap()
+          .group(serverGroup)
+          .channel(transport.getServerChannelClass())
+          .childOption(ChannelOption.ALLOCATOR, PooledByteBufAllocator.DEFAULT)
+          .childHandler(new ChannelInitializer<Channel>() {
+            @Override
+            protected void initChannel(final Channel ch) throws Exception {
+              ch.pipeline().addLast(new HttpServerCodec());
+              ch.pipeline().addLast(new HttpObjectAggregator(65536));
+              ch.pipeline().addLast(new WebSocketServerProtocolHandler(WebSocketServerHandler.WEBSOCKET_PATH));
+              ch.pipeline().addLast(new SimpleChannelInboundHandler<TextWebSocketFrame>() {
+                @Override
+                protected void channelRead0(final ChannelHandlerContext ctx, final TextWebSocketFrame frame) {
+                  ctx.writeAndFlush(frame.retain());
+                }
+              });
+            }
+          })
+          .bind(PORT).sync().channel();
+
+      final URI uri = new URI("ws://localhost:" + PORT + WebSocketServerHandler.WEBSOCKET_PATH);
+      final CountDownLatch connected = new CountDownLatch(connections);
+      final CountDownLatch echoed = new CountDownLatch(connections * messages);
+
+      final Bootstrap client = new Bootstrap()
+          .group(clientGroup)
+          .channel(transport.getChannelClass())
+          .option(ChannelOption.ALLOCATOR, PooledByteBufAllocator.DEFAULT)
+          .handler(new ChannelInitializer<Channel>() {
+            @Override
+            protected void initChannel(final Channel ch) throws Exception {
+              ch.pipeline().addLast(new HttpClientCodec());
+              ch.pipeline().addLast(new HttpObjectAggregator(65536));
+              ch.pipeline().addLast(new WebSocketClientProtocolHandler(WebSocketClientHandshakerFactory
+                  .newHandshaker(uri, WebSocketVersion.V13, null, false, new DefaultHttpHeaders())));
+              ch.pipeline().addLast(new SimpleChannelInboundHandler<TextWebSocketFrame>() {
+                @Override
+                protected void channelRead0(final ChannelHandlerContext ctx, final TextWebSocketFrame frame) {
+                  echoed.countDown();
+                }
+
+                @Override
+                public void userEventTriggered(final ChannelHandlerContext ctx, final Object evt) throws Exception {
+                  if (evt == WebSocketClientProtocolHandler.ClientHandshakeStateEvent.HANDSHAKE_COMPLETE) {
+                    connected.countDown();
+                  }
+                  super.userEventTriggered(ctx, evt);
+                }
+              });
+            }
+          });
+
+      final long heapBefore = usedHeap();
+      final List<Channel> channels = new ArrayList<Channel>(connections);
+
+      final long connectStart = System.nanoTime();
+      for (int i = 0; i < connections; i++) {
+        channels.add(client.connect(uri.getHost(), PORT).sync().channel());
+      }
+      if (!connected.await(2, TimeUnit.MINUTES)) {
+        throw new AssertionError((connections - connected.getCount()) + " of " + connections + " connected");
+      }
+      final double connectSecs = (System.nanoTime() - connectStart) / 1e9d;
+
+      final long heapPerConnection = (usedHeap() - heapBefore) / connections;
+
+      final String payload = "[{\"ToSubject\":\"LoadTest\",\"Value\":\"" + new String(new char[200]).replace('\0', 'x')
+          + "\"}]";
+
+      final long sendStart = System.nanoTime();
+      for (int m = 0; m < messages; m++) {
+        for (final Channel channel : channels) {
+          channel.write(new TextWebSocketFrame(payload));
+        }
+        for (final Channel channel : channels) {
+          channel.flush();
+        }
+      }
+      if (!echoed.await(5, TimeUnit.MINUTES)) {
+        throw new AssertionError(echoed.getCount() + " messages were not echoed");
+      }
+      final double sendSecs = (System.nanoTime() - sendStart) / 1e9d;
+
+      System.out.println("Transport: " + transport + "; connections: " + connections);
+      System.out.println("  connect rate: " + nf.format(connections / connectSecs) + " per second");
+      System.out.println("  heap per connection (client and server): " + nf.format(heapPerConnection) + " bytes");
+      System.out.println("  echo throughput: " + nf.format(((long) connections * messages) / sendSecs)
+          + " messages per second");
+
+      for (final Channel channel : channels) {
+        channel.close();
+      }
+      serverChannel.close().sync();
+    }
+    finally {
+      clientGroup.shutdownGracefully();
+      serverGroup.shutdownGracefully();
+    }
+  }
+
+  private static long usedHeap() throws InterruptedException {
+    final Runtime runtime = Runtime.getRuntime();
+    for (int i = 0; i < 3; i++) {
+      System.gc();
+      Thread.sleep(100);
+    }
+    return runtime.totalMemory() - runtime.freeMemory();
+  }
+}
@@ -0,0 +1,244 @@
+/*
+ * Copyright (C) 2016 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.errai.bus.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.jboss.errai.bus.client.api.base.CommandMessage;
+import org.jboss.errai.bus.client.api.messaging.Message;
+import org.jboss.errai.bus.server.api.ServerMessageBus;
+import org.jboss.errai.bus.server.metrics.BusMetrics;
+import org.jboss.errai.bus.server.mock.MockErraiService;
+import org.jboss.errai.bus.server.service.ErraiConfigAttribs;
+import org.jboss.errai.bus.server.service.ErraiServiceConfigurator;
+import org.jboss.errai.bus.server.service.ErraiServiceConfiguratorImpl;
+import org.jboss.errai.common.client.protocols.MessageParts;
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * Tests that the workers of a {@link WorkerFactory} in {@link WorkerFactory.DispatchMode#WorkStealing} mode take
+ * messages from each other's queues, are woken when messages arrive and keep the order of the messages in a queue.
+ */
+public class WorkerFactoryTest {
+  private static final String BLOCKING = "Blocking";
+  private static final String WORK = "Work";
+
+  private final BlockingQueue<Delivery> deliveries = new LinkedBlockingQueue<Delivery>();
+  private final CountDownLatch blocking = new CountDownLatch(1);
+  private final CountDownLatch release = new CountDownLatch(1);
+
+  private WorkerFactory factory;
+
+  @After
+  public void tearDown() {
+    release.countDown();
+    BusMetrics.setEnabled(true);
+    if (factory != null) {
+      factory.stopPool();
+    }
+  }
+
+  @Test
+  public void testIdleWorkerStealsFromBusyWorker() throws InterruptedException {
+    factory = workStealingFactory(2);
+
+    factory.deliverGlobal(message(BLOCKING, -1));
+    assertTrue("the blocking message was not delivered", blocking.await(5, TimeUnit.SECONDS));
+    final Delivery blocked = deliveries.take();
+
+    for (int i = 0; i < 20; i++) {
+      factory.deliverGlobal(message(WORK, i));
+    }
+
+    // the messages offered to the queue of the blocked worker can only be delivered by stealing them.
+    final Set<Integer> delivered = new HashSet<Integer>();
+    for (int i = 0; i < 20; i++) {
+      final Delivery delivery = deliveries.poll(5, TimeUnit.SECONDS);
+      assertTrue("only " + i + " messages were delivered while a worker was blocked", delivery != null);
+      assertNotSame(blocked.thread, delivery.thread);
+      delivered.add(delivery.value);
+    }
+    assertEquals(20, delivered.size());
+    assertEquals(0, factory.getQueueDepth());
+  }
+
+  @Test
+  public void testIdleWorkersAreWokenWhenMessagesArrive() throws InterruptedException {
+    factory = workStealingFactory(4);
+
+    for (int i = 0; i < 200; i++) {
+      if (i % 50 == 0) {
+        // let all workers go idle.
+        Thread.sleep(50);
+      }
+      factory.deliverGlobal(message(WORK, i));
+      final Delivery delivery = deliveries.poll(5, TimeUnit.SECONDS);
+      assertTrue("message " + i + " was not delivered", delivery != null);
+      assertEquals(i, delivery.value);
+    }
+    assertEquals(200, factory.getDispatchCount());
+  }
+
+  @Test
+  public void testMessagesOfOneQueueAreDeliveredInOrder() throws InterruptedException {
+    factory = workStealingFactory(1);
+
+    factory.deliverGlobal(message(BLOCKING, -1));
+    assertTrue(blocking.await(5, TimeUnit.SECONDS));
+    deliveries.take();
+
+    for (int i = 0; i < 50; i++) {
+      factory.deliverGlobal(message(WORK, i));
+    }
+    release.countDown();
+
+    for (int i = 0; i < 50; i++) {
+      final Delivery delivery = deliveries.poll(5, TimeUnit.SECONDS);
+      assertTrue("message " + i + " was not delivered", delivery != null);
+      assertEquals(i, delivery.value);
+    }
+  }
+
+  @Test
+  public void testEveryMessageIsDeliveredOnceByConcurrentProducers() throws InterruptedException {
+    factory = workStealingFactory(4);
+
+    final List<Thread> producers = new ArrayList<Thread>();
+    for (int p = 0; p < 4; p++) {
+      final int offset = p * 250;
+      producers.add(new Thread() {
+        @Override
+        public void run() {
+          try {
+            for (int i = 0; i < 250; i++) {
+              factory.deliverGlobal(message(WORK, offset + i));
+            }
+          }
+          catch (InterruptedException e) {
+            throw new RuntimeException(e);
+          }
+        }
+      });
+    }
+    for (final Thread producer : producers) {
+      producer.start();
+    }
+    for (final Thread producer : producers) {
+      producer.join();
+    }
+
+    final Set<Integer> delivered = new HashSet<Integer>();
+    for (int i = 0; i < 1000; i++) {
+      final Delivery delivery = deliveries.poll(5, TimeUnit.SECONDS);
+      assertTrue("only " + i + " messages were delivered", delivery != null);
+      assertTrue("message " + delivery.value + " was delivered twice", delivered.add(delivery.value));
+    }
+  }
+
+  @Test
+  public void testDispatchLatencyIsOnlyMeasuredWithMetricsEnabled() throws InterruptedException {
+    factory = workStealingFactory(2);
+
+    BusMetrics.setEnabled(false);
+    final Message unmeasured = message(WORK, 0);
+    factory.deliverGlobal(unmeasured);
+    deliveries.poll(5, TimeUnit.SECONDS);
+    assertFalse(unmeasured.hasResource(WorkerFactory.ENQUEUED_AT));
+    assertEquals(1, factory.getDispatchCount());
+    assertEquals(0, factory.getMeanDispatchLatencyNanos());
+
+    BusMetrics.setEnabled(true);
+    final Message measured = message(WORK, 1);
+    factory.deliverGlobal(measured);
+    deliveries.poll(5, TimeUnit.SECONDS);
+    assertTrue(measured.hasResource(WorkerFactory.ENQUEUED_AT));
+    assertEquals(2, factory.getDispatchCount());
+  }
+
+  private WorkerFactory workStealingFactory(final int workers) {
+    final ErraiServiceConfigurator config = new ErraiServiceConfiguratorImpl();
+    config.setProperty("errai.async.thread_pool_size", String.valueOf(workers));
+    ErraiConfigAttribs.ASYNC_DISPATCH_MODE.set(config, WorkerFactory.DispatchMode.WorkStealing.name());
+
+    final ServerMessageBus bus = (ServerMessageBus) Proxy.newProxyInstance(getClass().getClassLoader(),
+        new Class<?>[] { ServerMessageBus.class }, new InvocationHandler() {
+          @Override
+          public Object invoke(final Object proxy, final Method method, final Object[] args) {
+            if (!"sendGlobal".equals(method.getName())) {
+              throw new UnsupportedOperationException(method.getName());
+            }
+            final Message message = (Message) args[0];
+            deliveries.add(new Delivery(Thread.currentThread(), message.get(Integer.class, MessageParts.Value)));
+            if (BLOCKING.equals(message.getSubject())) {
+              blocking.countDown();
+              try {
+                release.await();
+              }
+              catch (InterruptedException e) {
+                // the pool is being stopped.
+                Thread.currentThread().interrupt();
+              }
+            }
+            return null;
+          }
+        });
+
+    final WorkerFactory factory = new WorkerFactory(new MockErraiService<Object>() {
+      @Override
+      public ServerMessageBus getBus() {
+        return bus;
+      }
+
+      @Override
+      public ErraiServiceConfigurator getConfiguration() {
+        return config;
+      }
+    });
+    assertEquals(WorkerFactory.DispatchMode.WorkStealing, factory.getDispatchMode());
+    return factory;
+  }
+
+  private static Message message(final String subject, final int value) {
+    return CommandMessage.create().toSubject(subject).set(MessageParts.Value, value);
+  }
+
+  private static class Delivery {
+    private final Thread thread;
+    private final int value;
+
+    private Delivery(final Thread thread, final int value) {
+      this.thread = thread;
+      this.value = value;
+    }
+  }
+}
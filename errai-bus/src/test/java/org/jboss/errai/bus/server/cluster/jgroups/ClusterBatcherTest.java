@@ -0,0 +1,204 @@
+/*
+ * Copyright (C) 2016 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.errai.bus.server.cluster.jgroups;
+
+import static org.jboss.errai.bus.server.cluster.ClusterParts.MessageId;
+import static org.jboss.errai.bus.server.cluster.ClusterParts.Payload;
+import static org.jboss.errai.bus.server.cluster.ClusterParts.SessId;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.jboss.errai.bus.client.api.base.CommandMessage;
+import org.jboss.errai.bus.client.api.messaging.Message;
+import org.jboss.errai.bus.server.cluster.ClusterCommands;
+import org.jboss.errai.marshalling.server.MappingContextSingleton;
+import org.jgroups.JChannel;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+/**
+ * Tests that the {@link ClusterBatcher} sends the messages for a destination in order, measures batches in UTF-8
+ * bytes, and sends messages in the JSON format unless batching is turned on.
+ */
+public class ClusterBatcherTest {
+  private static final String CLUSTER_SERVICE = "ClusterService";
+
+  private final List<org.jgroups.Message> sent
+      = Collections.synchronizedList(new ArrayList<org.jgroups.Message>());
+  private JChannel channel;
+
+  @BeforeClass
+  public static void setUpMarshalling() {
+    // ensure the marshalling system has been setup.
+    MappingContextSingleton.get();
+  }
+
+  @Before
+  public void setUp() throws Exception {
+    channel = mock(JChannel.class);
+    doAnswer(new Answer<Void>() {
+      @Override
+      public Void answer(final InvocationOnMock invocation) {
+        sent.add((org.jgroups.Message) invocation.getArguments()[0]);
+        return null;
+      }
+    }).when(channel).send(any(org.jgroups.Message.class));
+  }
+
+  @Test
+  public void testMessagesAreSentAsJsonWithoutBatching() {
+    final ClusterBatcher batcher = new ClusterBatcher(channel, 1, 65536);
+    assertFalse(batcher.isBatching());
+
+    batcher.send(null, message(1));
+    batcher.send(null, message(2));
+
+    assertEquals(2, sent.size());
+    for (int i = 0; i < 2; i++) {
+      final org.jgroups.Message jgroupsMessage = sent.get(i);
+      assertFalse(ClusterFrame.isFrame(jgroupsMessage.getRawBuffer(), jgroupsMessage.getOffset(),
+          jgroupsMessage.getLength()));
+
+      final Message decoded = JGroupsClusteringProvider.getErraiMessage(jgroupsMessage);
+      assertEquals(ClusterCommands.MessageForward.name(), decoded.getCommandType());
+      assertEquals(String.valueOf(i + 1), decoded.get(String.class, MessageId));
+    }
+    assertEquals(2, batcher.getMessagesSent());
+    assertEquals(0, batcher.getFramesSent());
+  }
+
+  @Test
+  public void testFullBatchIsSentAndRestOnFlush() {
+    final ClusterBatcher batcher = new ClusterBatcher(channel, 3, 65536);
+    assertTrue(batcher.isBatching());
+
+    for (int i = 0; i < 4; i++) {
+      batcher.send(null, message(i));
+    }
+    assertEquals(1, sent.size());
+    assertEquals(ids(0, 3), decodeIds(sent.get(0)));
+
+    batcher.flush();
+    assertEquals(2, sent.size());
+    assertEquals(ids(3, 4), decodeIds(sent.get(1)));
+
+    batcher.flush();
+    assertEquals("nothing is pending", 2, sent.size());
+    assertEquals(4, batcher.getMessagesSent());
+    assertEquals(2, batcher.getFramesSent());
+  }
+
+  @Test
+  public void testBatchSizeIsMeasuredInUtf8Bytes() {
+    final String payload = "éééééé";
+    assertEquals(12, ClusterBatcher.utf8Length(payload));
+    assertEquals(4, ClusterBatcher.utf8Length("😀"));
+    assertEquals(3, ClusterBatcher.utf8Length("☃"));
+
+    final ClusterBatcher batcher = new ClusterBatcher(channel, 64, 10);
+    batcher.send(null, message(0).set(Payload, payload));
+    assertEquals("six characters take up twelve bytes", 1, sent.size());
+  }
+
+  @Test
+  public void testMessagesForADestinationStayInOrderWhileFlushing() throws InterruptedException {
+    final ClusterBatcher batcher = new ClusterBatcher(channel, 4, 65536);
+    final int producers = 4;
+    final int messagesPerProducer = 2000;
+
+    final List<Thread> threads = new ArrayList<Thread>();
+    for (int p = 0; p < producers; p++) {
+      final int producer = p;
+      threads.add(new Thread() {
+        @Override
+        public void run() {
+          for (int i = 0; i < messagesPerProducer; i++) {
+            batcher.send(null, message(producer * messagesPerProducer + i));
+          }
+        }
+      });
+    }
+
+    final Thread flusher = new Thread() {
+      @Override
+      public void run() {
+        while (!isInterrupted()) {
+          batcher.flush();
+        }
+      }
+    };
+    flusher.start();
+    for (final Thread thread : threads) {
+      thread.start();
+    }
+    for (final Thread thread : threads) {
+      thread.join();
+    }
+    flusher.interrupt();
+    flusher.join();
+    batcher.flush();
+
+    final Map<Integer, Integer> lastSeen = new HashMap<Integer, Integer>();
+    int count = 0;
+    for (final org.jgroups.Message jgroupsMessage : sent) {
+      for (final int id : decodeIds(jgroupsMessage)) {
+        final Integer last = lastSeen.put(id / messagesPerProducer, id);
+        assertTrue("message " + id + " was sent after message " + last, last == null || last < id);
+        count++;
+      }
+    }
+    assertEquals(producers * messagesPerProducer, count);
+  }
+
+  private static Message message(final int id) {
+    return CommandMessage.create()
+        .toSubject(CLUSTER_SERVICE)
+        .command(ClusterCommands.MessageForward)
+        .set(SessId, "session")
+        .set(MessageId, String.valueOf(id));
+  }
+
+  private static List<Integer> decodeIds(final org.jgroups.Message jgroupsMessage) {
+    final List<Integer> ids = new ArrayList<Integer>();
+    for (final Message message : ClusterFrame.decode(jgroupsMessage.getRawBuffer(), jgroupsMessage.getOffset(),
+        jgroupsMessage.getLength(), CLUSTER_SERVICE)) {
+      ids.add(Integer.valueOf(message.get(String.class, MessageId)));
+    }
+    return ids;
+  }
+
+  private static List<Integer> ids(final int from, final int to) {
+    final List<Integer> ids = new ArrayList<Integer>();
+    for (int i = from; i < to; i++) {
+      ids.add(i);
+    }
+    return ids;
+  }
+}
@@ -0,0 +1,155 @@
+/*
+ * Copyright (C) 2016 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.errai.bus.server.cluster.jgroups;
+
+import static org.jboss.errai.bus.server.cluster.ClusterParts.BusId;
+import static org.jboss.errai.bus.server.cluster.ClusterParts.MessageId;
+import static org.jboss.errai.bus.server.cluster.ClusterParts.Payload;
+import static org.jboss.errai.bus.server.cluster.ClusterParts.SessId;
+import static org.jboss.errai.bus.server.cluster.ClusterParts.Subject;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.jboss.errai.bus.client.api.RoutingFlag;
+import org.jboss.errai.bus.client.api.base.CommandMessage;
+import org.jboss.errai.bus.client.api.messaging.Message;
+import org.jboss.errai.bus.server.cluster.ClusterCommands;
+import org.jboss.errai.bus.server.cluster.IntrabusQueueSession;
+import org.junit.Test;
+
+/**
+ * Tests that {@link ClusterFrame} messages survive an encode/decode round trip and that commands keep their wire
+ * codes.
+ */
+public class ClusterFrameTest {
+  private static final String CLUSTER_SERVICE = "ClusterService";
+
+  @Test
+  public void testRoundTripOfAllParts() {
+    final Message message = message(ClusterCommands.MessageForward, "bus-1")
+        .set(SessId, "session").set(MessageId, "id-42").set(Subject, "Orders")
+        .set(Payload, "[{\"ToSubject\":\"Orders\",\"Value\":\"caf\u00e9 \u2603 \ud83d\ude00\"}]");
+
+    final byte[] frame = ClusterFrame.encode(Collections.singletonList(message));
+    assertTrue(ClusterFrame.isFrame(frame, 0, frame.length));
+
+    final List<Message> decoded = ClusterFrame.decode(frame, 0, frame.length, CLUSTER_SERVICE);
+    assertEquals(1, decoded.size());
+
+    final Message copy = decoded.get(0);
+    assertEquals(CLUSTER_SERVICE, copy.getSubject());
+    assertEquals(ClusterCommands.MessageForward.name(), copy.getCommandType());
+    for (final Enum<?> part : Arrays.<Enum<?>>asList(BusId, SessId, MessageId, Subject, Payload)) {
+      assertEquals(part.name(), message.get(String.class, part), copy.get(String.class, part));
+    }
+    assertSame(IntrabusQueueSession.INSTANCE, copy.getResource(Object.class, "Session"));
+    assertTrue(copy.isFlagSet(RoutingFlag.FromRemote));
+  }
+
+  @Test
+  public void testRoundTripWithoutOptionalParts() {
+    final Message withoutBusId = CommandMessage.create().command(ClusterCommands.WhoHandles).set(SessId, "session");
+    final Message withBusIdOnly = message(ClusterCommands.SessionReleased, "bus-2");
+
+    final byte[] frame = ClusterFrame.encode(Arrays.asList(withoutBusId, withBusIdOnly));
+    final List<Message> decoded = ClusterFrame.decode(frame, 0, frame.length, CLUSTER_SERVICE);
+    assertEquals(2, decoded.size());
+
+    assertEquals(ClusterCommands.WhoHandles.name(), decoded.get(0).getCommandType());
+    assertFalse("a message without bus id must stay without one", decoded.get(0).hasPart(BusId));
+    assertEquals("session", decoded.get(0).get(String.class, SessId));
+
+    assertEquals(ClusterCommands.SessionReleased.name(), decoded.get(1).getCommandType());
+    assertEquals("bus-2", decoded.get(1).get(String.class, BusId));
+    for (final Enum<?> part : Arrays.<Enum<?>>asList(SessId, MessageId, Subject, Payload)) {
+      assertFalse(part.name(), decoded.get(1).hasPart(part));
+    }
+  }
+
+  @Test
+  public void testEmptyPayloadIsKept() {
+    final Message message = message(ClusterCommands.MessageForward, "bus-1").set(Payload, "");
+
+    final byte[] frame = ClusterFrame.encode(Collections.singletonList(message));
+    assertEquals("", ClusterFrame.decode(frame, 0, frame.length, CLUSTER_SERVICE).get(0).get(String.class, Payload));
+  }
+
+  @Test
+  public void testDecodeAtOffset() {
+    final byte[] frame = ClusterFrame.encode(Collections.singletonList(message(ClusterCommands.NotifyOwner, "bus-1")));
+    final byte[] buf = new byte[frame.length + 7];
+    System.arraycopy(frame, 0, buf, 3, frame.length);
+
+    assertTrue(ClusterFrame.isFrame(buf, 3, frame.length));
+    final List<Message> decoded = ClusterFrame.decode(buf, 3, frame.length, CLUSTER_SERVICE);
+    assertEquals(ClusterCommands.NotifyOwner.name(), decoded.get(0).getCommandType());
+  }
+
+  @Test
+  public void testJsonIsNotAFrame() {
+    final byte[] json = "[{\"ToSubject\":\"ClusterService\"}]".getBytes(Charset.forName("UTF-8"));
+    assertFalse(ClusterFrame.isFrame(json, 0, json.length));
+    assertFalse(ClusterFrame.isFrame(null, 0, 0));
+  }
+
+  @Test
+  public void testCommandCodesAreStable() {
+    assertEquals(0, ClusterFrame.codeOf(ClusterCommands.WhoHandles));
+    assertEquals(1, ClusterFrame.codeOf(ClusterCommands.NotifyOwner));
+    assertEquals(2, ClusterFrame.codeOf(ClusterCommands.MessageForward));
+    assertEquals(3, ClusterFrame.codeOf(ClusterCommands.InvalidRoute));
+    assertEquals(4, ClusterFrame.codeOf(ClusterCommands.SessionOwned));
+    assertEquals(5, ClusterFrame.codeOf(ClusterCommands.SessionReleased));
+
+    final Set<Integer> codes = new HashSet<Integer>();
+    for (final ClusterCommands command : ClusterCommands.values()) {
+      final int code = ClusterFrame.codeOf(command);
+      assertTrue("duplicate code " + code, codes.add(code));
+      assertSame(command, ClusterFrame.commandOf(code));
+    }
+    assertNull(ClusterFrame.commandOf(255));
+  }
+
+  @Test
+  public void testMessageWithUnknownCommandIsSkipped() {
+    final Message unknown = message(ClusterCommands.MessageForward, "bus-1").set(Payload, "[]");
+    final Message known = message(ClusterCommands.InvalidRoute, "bus-1").set(SessId, "session");
+
+    final byte[] frame = ClusterFrame.encode(Arrays.asList(unknown, known));
+    // the command of the first message follows the magic, the version and the message count.
+    frame[4] = (byte) 200;
+
+    final List<Message> decoded = ClusterFrame.decode(frame, 0, frame.length, CLUSTER_SERVICE);
+    assertEquals(1, decoded.size());
+    assertEquals(ClusterCommands.InvalidRoute.name(), decoded.get(0).getCommandType());
+    assertEquals("session", decoded.get(0).get(String.class, SessId));
+  }
+
+  private static Message message(final ClusterCommands command, final String busId) {
+    return CommandMessage.create().toSubject(CLUSTER_SERVICE).command(command).set(BusId, busId);
+  }
+}
@@ -0,0 +1,140 @@
+/*
+ * Copyright (C) 2016 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.errai.bus.server.io;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * Tests that {@link MethodInvoker} accepts and rejects the same arguments as {@link Method#invoke(Object, Object...)}.
+ */
+public class MethodInvokerTest {
+
+  public static class Service {
+    public String primitives(final short s, final int i, final long l, final float f, final double d) {
+      return s + "," + i + "," + l + "," + f + "," + d;
+    }
+
+    public long addLong(final long a, final long b) {
+      return a + b;
+    }
+
+    public int charValue(final int c) {
+      return c;
+    }
+
+    public char echoChar(final char c) {
+      return c;
+    }
+
+    public static String join(final String a, final Object b) {
+      return a + b;
+    }
+
+    public void raise(final String message) {
+      throw new IllegalStateException(message);
+    }
+  }
+
+  private final Service service = new Service();
+
+  @Test
+  public void testBoxedArgumentsAreWidenedToPrimitiveParameters() throws Exception {
+    final Method method = method("primitives", short.class, int.class, long.class, float.class, double.class);
+    final Object[] args = { (byte) 1, (short) 2, 3, 4L, 5f };
+
+    assertEquals(method.invoke(service, args.clone()), MethodInvoker.of(method).invoke(service, args.clone()));
+    assertEquals("1,2,3,4.0,5.0", MethodInvoker.of(method).invoke(service, new ArrayList<Object>(Arrays.asList(args))));
+  }
+
+  @Test
+  public void testIntegerIsAcceptedForLongParameter() throws Exception {
+    assertEquals(3L, MethodInvoker.of(method("addLong", long.class, long.class)).invoke(service, 1, 2L));
+    assertEquals(65, MethodInvoker.of(method("charValue", int.class)).invoke(service, 'A'));
+  }
+
+  @Test
+  public void testNarrowingIsRejected() throws Exception {
+    assertMismatch(method("charValue", int.class), 1L);
+    assertMismatch(method("echoChar", char.class), (short) 65);
+    assertMismatch(method("echoChar", char.class), (byte) 65);
+    assertMismatch(method("addLong", long.class, long.class), 1f, 2L);
+    assertMismatch(method("addLong", long.class, long.class), "1", 2L);
+  }
+
+  @Test
+  public void testNullIsRejectedForPrimitiveParameter() throws Exception {
+    assertMismatch(method("addLong", long.class, long.class), null, 2L);
+  }
+
+  @Test
+  public void testArgumentsAreConvertedWhenRequested() throws Exception {
+    final List<Object> args = new ArrayList<Object>(Arrays.asList((Object) "1", 2L));
+
+    assertEquals(3L, MethodInvoker.withConversion(method("addLong", long.class, long.class)).invoke(service, args));
+    assertEquals("converted values are written back", 1L, args.get(0));
+  }
+
+  @Test
+  public void testStaticMethodIgnoresTarget() throws Exception {
+    assertEquals("a1", MethodInvoker.of(Service.class.getMethod("join", String.class, Object.class))
+        .invoke(null, "a", 1));
+  }
+
+  @Test
+  public void testExceptionOfMethodIsWrapped() throws Exception {
+    try {
+      MethodInvoker.of(method("raise", String.class)).invoke(service, "failed");
+      fail("expected an InvocationTargetException");
+    }
+    catch (InvocationTargetException e) {
+      assertTrue(e.getCause() instanceof IllegalStateException);
+      assertEquals("failed", e.getCause().getMessage());
+    }
+  }
+
+  private static Method method(final String name, final Class<?>... parameterTypes) throws NoSuchMethodException {
+    return Service.class.getMethod(name, parameterTypes);
+  }
+
+  private void assertMismatch(final Method method, final Object... args) throws Exception {
+    try {
+      method.invoke(service, args.clone());
+      fail("Method.invoke accepted " + Arrays.toString(args));
+    }
+    catch (IllegalArgumentException e) {
+      // expected
+    }
+
+    try {
+      MethodInvoker.of(method).invoke(service, args);
+      fail("expected an IllegalArgumentException for " + Arrays.toString(args));
+    }
+    catch (IllegalArgumentException e) {
+      // expected
+    }
+  }
+}
@@ -0,0 +1,240 @@
+/*
+ * Copyright (C) 2016 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.errai.bus.server.io;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.jboss.errai.bus.server.MockQueueSessionFactory;
+import org.jboss.errai.bus.server.MessageQueueImpl;
+import org.jboss.errai.bus.server.api.MessageQueue;
+import org.jboss.errai.bus.server.io.buffers.BufferFilter;
+import org.jboss.errai.bus.server.io.buffers.TransmissionBuffer;
+import org.jboss.errai.bus.server.service.ErraiConfigAttribs;
+import org.jboss.errai.bus.server.service.ErraiServiceConfigurator;
+import org.jboss.errai.bus.server.service.ErraiServiceConfiguratorImpl;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests that {@link PageUtil} pages queue data out and back in, and keeps to the disk quota under each
+ * {@link PageUtil.EvictionPolicy}.
+ */
+public class PageUtilTest {
+  private static final int MB = 1024 * 1024;
+
+  private final List<MessageQueue> queues = new ArrayList<MessageQueue>();
+
+  @Before
+  public void setUp() {
+    configure("1", PageUtil.EvictionPolicy.KeepInBuffer);
+  }
+
+  @After
+  public void tearDown() {
+    for (final MessageQueue queue : queues) {
+      PageUtil.discardPageData(queue);
+    }
+    configure("256", PageUtil.EvictionPolicy.KeepInBuffer);
+  }
+
+  @Test
+  public void testPageOutAndIn() throws IOException {
+    final long usage = PageUtil.getDiskUsage();
+    final long pageIns = PageUtil.getPageInCount();
+    final MessageQueue queue = newQueue();
+    final byte[] data = write(queue, 100 * 1024, 'a');
+
+    assertFalse(PageUtil.pageWaitingToDisk(queue));
+    assertTrue(queue.isPaged());
+    assertEquals(usage + data.length, PageUtil.getDiskUsage());
+
+    assertArrayEquals(data, readIn(queue));
+    assertFalse(queue.isPaged());
+    assertFalse("the page file must be deleted once read in", new File(PageUtil.getPageFileName(queue)).exists());
+    assertEquals(usage, PageUtil.getDiskUsage());
+    assertEquals(pageIns + 1, PageUtil.getPageInCount());
+  }
+
+  @Test
+  public void testRepeatedPageOutsAreAppended() throws IOException {
+    final MessageQueue queue = newQueue();
+    final byte[] first = write(queue, 10 * 1024, 'a');
+    assertFalse(PageUtil.pageWaitingToDisk(queue));
+
+    final byte[] second = write(queue, 5 * 1024, 'b');
+    assertTrue(PageUtil.pageWaitingToDisk(queue));
+
+    assertArrayEquals(concat(first, second), readIn(queue));
+  }
+
+  @Test
+  public void testKeepInBufferRejectsPageOutOnceQuotaIsExhausted() throws IOException {
+    final long rejected = PageUtil.getRejectedPageOuts();
+    final long evicted = PageUtil.getEvictedBytes();
+
+    // the quota is checked before paging, so this single page-out may go beyond it.
+    final MessageQueue large = newQueue();
+    write(large, MB + MB / 2, 'a');
+    assertFalse(PageUtil.pageWaitingToDisk(large));
+    assertTrue(PageUtil.getDiskUsage() >= PageUtil.getDiskQuota());
+
+    final MessageQueue small = newQueue();
+    final byte[] data = write(small, 10 * 1024, 'b');
+    assertFalse(PageUtil.pageWaitingToDisk(small));
+    assertFalse(small.isPaged());
+    assertEquals(rejected + 1, PageUtil.getRejectedPageOuts());
+
+    write(large, 1024, 'c');
+    assertTrue("a paged queue must keep its page data", PageUtil.pageWaitingToDisk(large));
+    assertTrue(large.isPaged());
+    assertEquals(rejected + 2, PageUtil.getRejectedPageOuts());
+    assertEquals(evicted, PageUtil.getEvictedBytes());
+
+    assertArrayEquals("rejected data must stay in the buffer", data, drainBuffer(small));
+  }
+
+  @Test
+  public void testDiscardPagedReplacesPageDataOfQueue() throws IOException {
+    configure("1", PageUtil.EvictionPolicy.DiscardPaged);
+    final long usage = PageUtil.getDiskUsage();
+    final long evicted = PageUtil.getEvictedBytes();
+
+    final MessageQueue queue = newQueue();
+    final byte[] discarded = write(queue, MB + MB / 2, 'a');
+    assertFalse(PageUtil.pageWaitingToDisk(queue));
+
+    final byte[] data = write(queue, 10 * 1024, 'b');
+    assertFalse("the earlier page data was discarded", PageUtil.pageWaitingToDisk(queue));
+    assertTrue(queue.isPaged());
+    assertEquals(evicted + discarded.length, PageUtil.getEvictedBytes());
+    assertEquals(usage + data.length, PageUtil.getDiskUsage());
+
+    assertArrayEquals(data, readIn(queue));
+  }
+
+  @Test
+  public void testDiscardPagedRejectsPageOutIfEvictionDoesNotFreeEnough() throws IOException {
+    configure("1", PageUtil.EvictionPolicy.DiscardPaged);
+    final long evicted = PageUtil.getEvictedBytes();
+    final long rejected = PageUtil.getRejectedPageOuts();
+
+    final MessageQueue small = newQueue();
+    final byte[] discarded = write(small, 10 * 1024, 'a');
+    assertFalse(PageUtil.pageWaitingToDisk(small));
+
+    final MessageQueue large = newQueue();
+    write(large, MB + MB / 2, 'b');
+    assertFalse(PageUtil.pageWaitingToDisk(large));
+
+    final byte[] data = write(small, 1024, 'c');
+    assertFalse(PageUtil.pageWaitingToDisk(small));
+    assertFalse(small.isPaged());
+    assertEquals(evicted + discarded.length, PageUtil.getEvictedBytes());
+    assertEquals(rejected + 1, PageUtil.getRejectedPageOuts());
+
+    assertArrayEquals(data, drainBuffer(small));
+    assertTrue("other queues must keep their page data", large.isPaged());
+  }
+
+  @Test
+  public void testDiscardPagedDoesNotEvictOtherQueues() throws IOException {
+    configure("1", PageUtil.EvictionPolicy.DiscardPaged);
+    final long rejected = PageUtil.getRejectedPageOuts();
+
+    final MessageQueue large = newQueue();
+    final byte[] paged = write(large, MB + MB / 2, 'a');
+    assertFalse(PageUtil.pageWaitingToDisk(large));
+
+    final MessageQueue unpaged = newQueue();
+    write(unpaged, 1024, 'b');
+    assertFalse(PageUtil.pageWaitingToDisk(unpaged));
+    assertFalse(unpaged.isPaged());
+    assertEquals(rejected + 1, PageUtil.getRejectedPageOuts());
+
+    assertArrayEquals(paged, readIn(large));
+  }
+
+  @Test(expected = RuntimeException.class)
+  public void testUnknownEvictionPolicyIsRejected() {
+    final ErraiServiceConfigurator config = new ErraiServiceConfiguratorImpl();
+    ErraiConfigAttribs.BUS_PAGING_EVICTION_POLICY.set(config, "DiscardEverything");
+    PageUtil.configure(config);
+  }
+
+  private static void configure(final String quotaMegabytes, final PageUtil.EvictionPolicy policy) {
+    final ErraiServiceConfigurator config = new ErraiServiceConfiguratorImpl();
+    ErraiConfigAttribs.BUS_PAGING_DISK_QUOTA.set(config, quotaMegabytes);
+    ErraiConfigAttribs.BUS_PAGING_EVICTION_POLICY.set(config, policy.name());
+    PageUtil.configure(config);
+  }
+
+  private MessageQueue newQueue() {
+    final MessageQueue queue = new MessageQueueImpl(TransmissionBuffer.create(TransmissionBuffer.DEFAULT_SEGMENT_SIZE, 256),
+        MockQueueSessionFactory.newSession(), 60);
+    queues.add(queue);
+    return queue;
+  }
+
+  private static byte[] write(final MessageQueue queue, final int length, final char fill) throws IOException {
+    final byte[] data = new byte[length];
+    Arrays.fill(data, (byte) fill);
+    queue.getBuffer().write(data, 0, data.length, queue.getBufferColor());
+    return data;
+  }
+
+  private static byte[] readIn(final MessageQueue queue) {
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    PageUtil.readInPageFile(queue, new OutputStreamWriteAdapter(out), new BufferFilter() {
+      @Override
+      public void before(final ByteWriteAdapter writer) {
+      }
+
+      @Override
+      public int each(final int i, final ByteWriteAdapter writer) {
+        return i;
+      }
+
+      @Override
+      public void after(final ByteWriteAdapter writer) {
+      }
+    });
+    return out.toByteArray();
+  }
+
+  private static byte[] drainBuffer(final MessageQueue queue) throws IOException {
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    queue.getBuffer().read(new OutputStreamWriteAdapter(out), queue.getBufferColor());
+    return out.toByteArray();
+  }
+
+  private static byte[] concat(final byte[] first, final byte[] second) {
+    final byte[] result = Arrays.copyOf(first, first.length + second.length);
+    System.arraycopy(second, 0, result, first.length, second.length);
+    return result;
+  }
+}
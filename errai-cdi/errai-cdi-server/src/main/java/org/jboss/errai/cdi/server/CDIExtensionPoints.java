@@ -57,6 +57,7 @@ import org.jboss.errai.bus.server.ServerMessageBusImpl;
 import org.jboss.errai.bus.server.SimpleDispatcher;
 import org.jboss.errai.bus.server.annotations.Remote;
 import org.jboss.errai.bus.server.annotations.Service;
+import org.jboss.errai.bus.server.api.ServerMessageBus;
 import org.jboss.errai.bus.server.io.RPCEndpointFactory;
 import org.jboss.errai.bus.server.io.RemoteServiceCallback;
 import org.jboss.errai.bus.server.io.ServiceInstanceProvider;
@@ -347,6 +348,10 @@ public class CDIExtensionPoints implements Extension {
           }
           final MessageCallback callback = svcParser.getCallback(delegateInstance);
           if (callback != null) {
+            if (svcParser.getConflationKey() != null && bus instanceof ServerMessageBus) {
+              ((ServerMessageBus) bus).conflate(svcParser.getServiceName(), svcParser.getConflationKey());
+            }
+
             if (svcParser.isLocal()) {
               bus.subscribeLocal(svcParser.getServiceName(), callback);
             }
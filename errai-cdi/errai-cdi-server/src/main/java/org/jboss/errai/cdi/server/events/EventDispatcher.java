@@ -20,12 +20,14 @@ import static org.jboss.errai.enterprise.client.cdi.api.CDI.getSubjectNameByType
 
 import java.lang.annotation.Annotation;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.enterprise.inject.spi.BeanManager;
 import javax.enterprise.inject.spi.EventMetadata;
@@ -38,6 +40,8 @@ import org.jboss.errai.bus.client.api.base.MessageBuilder;
 import org.jboss.errai.bus.client.api.messaging.Message;
 import org.jboss.errai.bus.client.api.messaging.MessageBus;
 import org.jboss.errai.bus.client.api.messaging.MessageCallback;
+import org.jboss.errai.bus.server.io.EncodedPayload;
+import org.jboss.errai.bus.server.io.PreEncodedMessage;
 import org.jboss.errai.bus.server.util.LocalContext;
 import org.jboss.errai.cdi.server.CDIServerUtil;
 import org.jboss.errai.common.client.protocols.MessageParts;
@@ -66,6 +70,10 @@ public class EventDispatcher implements MessageCallback {
   private final Set<String> observedEvents;
   private final Map<String, Annotation> allQualifiers;
 
+  private final AtomicLong broadcastCount = new AtomicLong();
+  private final AtomicLong bytesEncoded = new AtomicLong();
+  private final AtomicLong bytesDelivered = new AtomicLong();
+
   private final Set<ClientObserverMetadata> clientObservers = Collections
           .newSetFromMap(new ConcurrentHashMap<ClientObserverMetadata, Boolean>());
 
@@ -215,9 +223,57 @@ public class EventDispatcher implements MessageCallback {
       messagebus.send(CommandMessage.createWithParts(messageParts));
     }
     else {
-      for (final String id : eventRoutingTable.getQueueIdsForRoute(eventType.getName(), qualifierTypes)) {
-        messagebus.send(CommandMessage.createWithParts(new RoutingMap(messageParts, id)));
+      final Collection<String> queueIds = eventRoutingTable.getQueueIdsForRoute(eventType.getName(), qualifierTypes);
+      if (queueIds.size() > 1) {
+        broadcastEventToClients(messageParts, queueIds);
+      }
+      else {
+        for (final String id : queueIds) {
+          messagebus.send(CommandMessage.createWithParts(new RoutingMap(messageParts, id)));
+        }
       }
     }
   }
+
+  /**
+   * Sends the same event to many sessions. The event is marshalled once and the encoded payload is shared by the
+   * messages routed to each session, since the per-session routing part is never part of the encoding.
+   */
+  private void broadcastEventToClients(final Map<String, Object> messageParts, final Collection<String> queueIds) {
+    final EncodedPayload payload = EncodedPayload.encode(messageParts, bytesDelivered);
+
+    for (final String id : queueIds) {
+      messagebus.send(new PreEncodedMessage(new RoutingMap(messageParts, id), payload));
+    }
+
+    final long encoded = bytesEncoded.addAndGet(payload.getLength());
+
+    final long broadcasts = broadcastCount.incrementAndGet();
+    if (log.isDebugEnabled() && broadcasts % 1000 == 0) {
+      log.debug(broadcasts + " events have been broadcast to clients: " + encoded + " bytes encoded, "
+          + bytesDelivered.get() + " bytes delivered so far");
+    }
+  }
+
+  /**
+   * Returns the number of events that were broadcast to more than one client.
+   */
+  public long getBroadcastCount() {
+    return broadcastCount.get();
+  }
+
+  /**
+   * Returns the number of bytes marshalled for events that were broadcast to more than one client.
+   */
+  public long getBytesEncoded() {
+    return bytesEncoded.get();
+  }
+
+  /**
+   * Returns the number of bytes written to client queues for events that were broadcast to more than one client. The
+   * bytes are counted as the bus writes the events to the queues, which may be after they were sent.
+   */
+  public long getBytesDelivered() {
+    return bytesDelivered.get();
+  }
 }
@@ -0,0 +1,163 @@
+/*
+ * Copyright (C) 2016 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.errai.cdi.server.events;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+
+import org.jboss.errai.bus.client.api.QueueSession;
+import org.jboss.errai.bus.client.api.RoutingFlag;
+import org.jboss.errai.bus.client.api.base.CommandMessage;
+import org.jboss.errai.bus.client.api.messaging.Message;
+import org.jboss.errai.bus.client.api.messaging.MessageBus;
+import org.jboss.errai.bus.server.MockQueueSessionFactory;
+import org.jboss.errai.bus.server.io.EncodedPayload;
+import org.jboss.errai.bus.server.io.PreEncodedMessage;
+import org.jboss.errai.common.client.protocols.MessageParts;
+import org.jboss.errai.enterprise.client.cdi.CDICommands;
+import org.jboss.errai.enterprise.client.cdi.CDIProtocol;
+import org.jboss.errai.marshalling.server.MappingContextSingleton;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Tests that the {@link EventDispatcher} encodes an event broadcast to many clients only once, and that its
+ * broadcast counters are kept whatever the log level and however late the bus writes the events to their queues.
+ */
+public class EventDispatcherTest {
+  private final List<Message> sent = new ArrayList<Message>();
+  private final List<EncodedPayload> undelivered = new ArrayList<EncodedPayload>();
+  private EventDispatcher dispatcher;
+
+  @BeforeClass
+  public static void setUpMarshalling() {
+    // ensure the marshalling system has been setup.
+    MappingContextSingleton.get();
+  }
+
+  @Before
+  public void setUp() {
+    final MessageBus messageBus = (MessageBus) Proxy.newProxyInstance(getClass().getClassLoader(),
+        new Class<?>[] { MessageBus.class }, new InvocationHandler() {
+          @Override
+          public Object invoke(final Object proxy, final Method method, final Object[] args) {
+            if (!"send".equals(method.getName())) {
+              throw new UnsupportedOperationException(method.getName());
+            }
+            final Message message = (Message) args[0];
+            if (message instanceof PreEncodedMessage) {
+              // like the bus, write the message to its queue after send() has returned.
+              undelivered.add(((PreEncodedMessage) message).getEncodedPayload());
+            }
+            sent.add(message);
+            return null;
+          }
+        });
+
+    dispatcher = new EventDispatcher(null, new EventRoutingTable(), messageBus, Collections.<String> emptySet(),
+        Collections.<String, Annotation> emptyMap());
+  }
+
+  @Test
+  public void testBroadcastIsEncodedOnceAndCounted() throws InterruptedException {
+    final List<String> sessionIds = new ArrayList<String>();
+    for (int i = 0; i < 3; i++) {
+      sessionIds.add(subscribe().getSessionId());
+    }
+
+    dispatcher.sendEventToClients("event", null);
+
+    assertEquals(3, sent.size());
+    final EncodedPayload payload = ((PreEncodedMessage) sent.get(0)).getEncodedPayload();
+    final List<String> routedTo = new ArrayList<String>();
+    for (final Message message : sent) {
+      assertSame("all sessions must share one encoding", payload, ((PreEncodedMessage) message).getEncodedPayload());
+      routedTo.add(message.get(String.class, MessageParts.SessionID));
+    }
+    assertTrue(routedTo.containsAll(sessionIds));
+
+    assertEquals(1, dispatcher.getBroadcastCount());
+    assertEquals(payload.getLength(), dispatcher.getBytesEncoded());
+    assertEquals("nothing has been written to a queue yet", 0, dispatcher.getBytesDelivered());
+
+    deliverOnOtherThread();
+    assertEquals(3L * payload.getLength(), dispatcher.getBytesDelivered());
+
+    dispatcher.sendEventToClients("another event", null);
+    assertEquals(6, sent.size());
+    assertEquals(2, dispatcher.getBroadcastCount());
+
+    final EncodedPayload another = ((PreEncodedMessage) sent.get(3)).getEncodedPayload();
+    deliverOnOtherThread();
+    assertEquals(3L * payload.getLength() + 3L * another.getLength(), dispatcher.getBytesDelivered());
+  }
+
+  @Test
+  public void testEventForSingleClientIsNotCountedAsBroadcast() {
+    final QueueSession session = subscribe();
+
+    dispatcher.sendEventToClients("event", null);
+
+    assertEquals(1, sent.size());
+    assertTrue(!(sent.get(0) instanceof PreEncodedMessage));
+    assertEquals(session.getSessionId(), sent.get(0).get(String.class, MessageParts.SessionID));
+    assertEquals(0, dispatcher.getBroadcastCount());
+    assertEquals(0, dispatcher.getBytesEncoded());
+    assertEquals(0, dispatcher.getBytesDelivered());
+  }
+
+  /**
+   * Marks the payloads sent so far as written to their queues, from another thread, the way the bus workers do.
+   */
+  private void deliverOnOtherThread() throws InterruptedException {
+    final List<EncodedPayload> payloads = new ArrayList<EncodedPayload>(undelivered);
+    undelivered.clear();
+
+    final Thread deliverer = new Thread() {
+      @Override
+      public void run() {
+        for (final EncodedPayload payload : payloads) {
+          payload.markDelivered();
+        }
+      }
+    };
+    deliverer.start();
+    deliverer.join();
+  }
+
+  private QueueSession subscribe() {
+    final QueueSession session = MockQueueSessionFactory.newSession();
+    final Message message = CommandMessage.create().command(CDICommands.RemoteSubscribe)
+        .set(CDIProtocol.BeanType, String.class.getName()).set(CDIProtocol.Qualifiers, new HashSet<String>());
+    message.setFlag(RoutingFlag.FromRemote);
+    message.setResource("Session", session);
+
+    dispatcher.callback(message);
+    return session;
+  }
+}
@@ -30,7 +30,7 @@ import org.jboss.errai.common.client.api.Assert;
  */
 public abstract class AbstractHasAnnotations implements HasAnnotations {
 
-  private Set<String> annotationPresentCache = null;
+  private volatile Set<String> annotationPresentCache = null;
 
   /**
    * Checks if the provided annotation is present on this element (type, method,
@@ -43,13 +43,15 @@ public abstract class AbstractHasAnnotations implements HasAnnotations {
   @Override
   public boolean isAnnotationPresent(final Class<? extends Annotation> annotation) {
     Assert.notNull(annotation);
-    if (annotationPresentCache == null) {
-      annotationPresentCache = new HashSet<String>();
+    Set<String> present = annotationPresentCache;
+    if (present == null) {
+      present = new HashSet<String>();
       for (final Annotation a : getAnnotations()) {
-        annotationPresentCache.add(a.annotationType().getName());
+        present.add(a.annotationType().getName());
       }
+      annotationPresentCache = present;
     }
 
-    return annotationPresentCache.contains(annotation.getName());
+    return present.contains(annotation.getName());
   }
 }
@@ -16,13 +16,16 @@
 
 package org.jboss.errai.codegen.meta;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 
 import org.jboss.errai.common.rebind.CacheStore;
@@ -48,26 +51,44 @@ public class MetaClassCache implements CacheStore {
   private final Set<MetaClass> added = Collections.newSetFromMap(new ConcurrentHashMap<MetaClass, Boolean>());
   private final Set<String> removed =  Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
   private final Map<String, CacheEntry> backupClassCache = new ConcurrentHashMap<String, MetaClassCache.CacheEntry>();
+  private final AtomicInteger version = new AtomicInteger();
+
+  /**
+   * The classes added by {@link #pushCache(String, MetaClass)} since the version last changed, in the order they were
+   * added. Guarded by itself, as is every change of the version.
+   */
+  private final List<MetaClass> additions = new ArrayList<MetaClass>();
 
   @Override
   public void clear() {
-    backupClassCache.clear();
-    backupClassCache.putAll(PRIMARY_CLASS_CACHE);
+    synchronized (additions) {
+      backupClassCache.clear();
+      backupClassCache.putAll(PRIMARY_CLASS_CACHE);
 
-    invalidated.clear();
-    removed.clear();
-    added.clear();
+      invalidated.clear();
+      removed.clear();
+      added.clear();
 
-    PRIMARY_CLASS_CACHE.clear();
-    ERASED_CLASS_CACHE.clear();
+      PRIMARY_CLASS_CACHE.clear();
+      ERASED_CLASS_CACHE.clear();
 
-    PRIMARY_CLASS_CACHE.putAll(PERMANENT_CLASS_CACHE);
+      PRIMARY_CLASS_CACHE.putAll(PERMANENT_CLASS_CACHE);
+      newVersion();
+    }
   }
 
   public void updateCache(Map<String, MetaClass> mapToPush) {
     logger.debug("updateCache called for " + mapToPush.size() + " MetaClasses.");
-    addNewOrUpdatedToInvalidated(mapToPush);
-    addRemoved();
+    synchronized (additions) {
+      addNewOrUpdatedToInvalidated(mapToPush);
+      addRemoved();
+      newVersion();
+    }
+  }
+
+  private void newVersion() {
+    additions.clear();
+    version.incrementAndGet();
   }
 
   private void addRemoved() {
@@ -103,10 +124,12 @@ public class MetaClassCache implements CacheStore {
 
   public void pushCache(final String fqcn, final MetaClass clazz) {
     logger.trace("Creating new " + clazz.getClass().getSimpleName() + " cache entry for " + fqcn);
-    if (!PRIMARY_CLASS_CACHE.containsKey(fqcn)) {
-      PRIMARY_CLASS_CACHE.put(fqcn, new CacheEntry(clazz, CacheEntry.PLACE_HOLDER));
-      if (!backupClassCache.containsKey(clazz.getFullyQualifiedName())) {
-        invalidated.add(fqcn);
+    synchronized (additions) {
+      if (PRIMARY_CLASS_CACHE.putIfAbsent(fqcn, new CacheEntry(clazz, CacheEntry.PLACE_HOLDER)) == null) {
+        if (!backupClassCache.containsKey(clazz.getFullyQualifiedName())) {
+          invalidated.add(fqcn);
+        }
+        additions.add(clazz);
       }
     }
   }
@@ -159,6 +182,43 @@ public class MetaClassCache implements CacheStore {
     return PRIMARY_CLASS_CACHE.size();
   }
 
+  /**
+   * @return a number that changes whenever classes are replaced in or cleared from this cache. Data derived from
+   *         {@link #getAllCached()} can be kept up to date with {@link #getAdditionsSince(int, int)} for as long as
+   *         this value stays the same.
+   */
+  public int getVersion() {
+    return version.get();
+  }
+
+  /**
+   * @return the number of classes added to this cache since its version last changed. Every one of them is already
+   *         included in {@link #getAllCached()}.
+   */
+  public int getAdditionCount() {
+    synchronized (additions) {
+      return additions.size();
+    }
+  }
+
+  /**
+   * @param version
+   *     the {@link #getVersion() version} the caller's data was derived at.
+   * @param count
+   *     the {@link #getAdditionCount() number of additions} the caller's data already includes.
+   *
+   * @return the classes added since, in the order they were added, or null if the version has changed, in which case
+   *         the caller has to start over from {@link #getAllCached()}.
+   */
+  public List<MetaClass> getAdditionsSince(final int version, final int count) {
+    synchronized (additions) {
+      if (version != this.version.get() || count > additions.size()) {
+        return null;
+      }
+      return new ArrayList<MetaClass>(additions.subList(count, additions.size()));
+    }
+  }
+
   public boolean isKnownType(String fqcn) {
     return PRIMARY_CLASS_CACHE.containsKey(fqcn);
   }
@@ -110,7 +110,7 @@ public final class MetaClassFactory {
     });
   }
 
-  private static MetaClassCache cache;
+  private static volatile MetaClassCache cache;
 
   public static MetaClassCache getMetaClassCache() {
     if (cache == null) {
@@ -31,6 +31,7 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 
 import org.jboss.errai.codegen.meta.BeanDescriptor;
@@ -65,7 +66,7 @@ public abstract class AbstractMetaClass<T> extends MetaClass {
   private final T enclosedMetaObject;
   protected MetaParameterizedType parameterizedType;
   protected MetaParameterizedType genericSuperClass;
-  private final Map<MetaClass, Boolean> ASSIGNABLE_CACHE = new HashMap<MetaClass, Boolean>();
+  private final Map<MetaClass, Boolean> ASSIGNABLE_CACHE = new ConcurrentHashMap<MetaClass, Boolean>();
   private MetaMethod[] staticMethodCache;
 
   protected AbstractMetaClass(final T enclosedMetaObject) {
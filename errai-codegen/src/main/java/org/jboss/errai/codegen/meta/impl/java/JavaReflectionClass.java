@@ -27,12 +27,12 @@ import java.lang.reflect.ParameterizedType;
 import java.lang.reflect.Type;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import javax.enterprise.util.TypeLiteral;
 
@@ -455,7 +455,7 @@ public class JavaReflectionClass extends AbstractMetaClass<Class> {
     return getEnclosedMetaObject().isAnonymousClass();
   }
 
-  private final Map<Integer, MetaClass> _arrayTypeCache = new HashMap<Integer, MetaClass>();
+  private final Map<Integer, MetaClass> _arrayTypeCache = new ConcurrentHashMap<Integer, MetaClass>();
 
   @Override
   public MetaClass asArrayOf(final int dimensions) {
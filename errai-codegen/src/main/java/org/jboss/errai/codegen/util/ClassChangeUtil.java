@@ -24,7 +24,15 @@ import org.jboss.errai.common.metadata.MetaDataScanner;
 import org.jboss.errai.common.metadata.RebindUtils;
 import org.slf4j.Logger;
 
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.FileObject;
+import javax.tools.ForwardingJavaFileManager;
 import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.StandardLocation;
 import javax.tools.ToolProvider;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
@@ -32,11 +40,17 @@ import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.io.PrintWriter;
+import java.lang.ref.WeakReference;
+import java.net.URI;
 import java.net.URL;
+import java.nio.charset.Charset;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Enumeration;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -49,11 +63,19 @@ import java.util.regex.Pattern;
 public class ClassChangeUtil {
   private static final String USE_NATIVE_JAVA_COMPILER = "errai.marshalling.use_native_javac";
   private static final String CLASSLOADING_MODE_PROPERTY = "errai.marshalling.classloading.mode";
+  private static final String COMPILE_IN_MEMORY = "errai.marshalling.compile_in_memory";
 
   private static final String classLoadingMode;
   private static final boolean useNativeJavac = Boolean.getBoolean(USE_NATIVE_JAVA_COMPILER);
+  private static final boolean compileInMemory = Boolean.parseBoolean(System.getProperty(COMPILE_IN_MEMORY, "true"));
   private static Logger log = getLogger("ErraiMarshalling");
 
+  /**
+   * The classpath used for compiling generated classes. Discovering it means walking every errai config stub and
+   * manifest visible to the context class loader, so it is only done again when that loader changes.
+   */
+  private static ClasspathIndex classpathIndex;
+
   static {
     if (System.getProperty(CLASSLOADING_MODE_PROPERTY) != null) {
       classLoadingMode = System.getProperty(CLASSLOADING_MODE_PROPERTY);
@@ -183,27 +205,13 @@ public class ClassChangeUtil {
       }
 
       final StringBuilder sb = new StringBuilder(4096);
-      final List<URL> configUrls = MetaDataScanner.getConfigUrls();
-      final List<File> classpathElements = new ArrayList<File>(configUrls.size());
-      classpathElements.add(new File(outputPath));
-
-      log.debug(">>> Searching for all jars by " + MetaDataScanner.ERRAI_CONFIG_STUB_NAME);
-      for (final URL url : configUrls) {
-        final File file = getFileIfExists(url.getFile());
-        if (file != null) {
-          classpathElements.add(file);
-        }
-      }
-      log.debug("<<< Done searching for all jars by " + MetaDataScanner.ERRAI_CONFIG_STUB_NAME);
-
-      for (final File file : classpathElements) {
-        sb.append(file.getAbsolutePath()).append(File.pathSeparator);
+      sb.append(new File(outputPath).getAbsolutePath());
+      for (final File file : getClasspathIndex().elements) {
+        sb.append(File.pathSeparator).append(file.getPath());
       }
 
-      sb.append(System.getProperty("java.class.path"));
-      sb.append(findAllJarsByManifest());
-
       final String classPath = sb.toString();
+      final long start = System.currentTimeMillis();
 
       /**
        * Attempt to run the compiler without any classpath specified.
@@ -220,6 +228,8 @@ public class ClassChangeUtil {
         return null;
       }
 
+      log.info("compiled " + className + " to " + outputPath + " in " + (System.currentTimeMillis() - start) + "ms");
+
       return new File(classOutputDir.getAbsolutePath() + File.separatorChar
           + className + ".class").getAbsolutePath();
     }
@@ -239,9 +249,7 @@ public class ClassChangeUtil {
     final String classBase = path.substring(0, path.length() - ".class".length());
 
     final BootstrapClassloader clsLoader = new BootstrapClassloader(new File(path).getParentFile().getAbsolutePath(),
-        "system".equals(classLoadingMode) ?
-            ClassLoader.getSystemClassLoader() :
-            Thread.currentThread().getContextClassLoader());
+        getParentClassLoader());
 
     final String fqcn;
     if ("".equals(packageName)) {
@@ -337,6 +345,241 @@ public class ClassChangeUtil {
     return mainClass;
   }
 
+  /**
+   * @return true if {@link #compileAndLoadFromSource(String, String, String)} can be used in this environment. This
+   *         requires the JDK compiler to be available (i.e. not running on a plain JRE) and can be switched off with
+   *         the <tt>errai.marshalling.compile_in_memory</tt> system property.
+   */
+  public static boolean canCompileInMemory() {
+    return compileInMemory && ToolProvider.getSystemJavaCompiler() != null;
+  }
+
+  /**
+   * Compiles the given source using the JDK compiler and loads the resulting class without touching the file system:
+   * the source is read from memory, the class files are written to memory, and the classes are defined directly from
+   * those bytes. The classpath and the compiler's file manager (including the jar archives it has opened) are reused
+   * across invocations.
+   *
+   * @param packageName
+   *     the package of the class being compiled.
+   * @param className
+   *     the simple name of the class being compiled.
+   * @param source
+   *     the Java source of the class.
+   *
+   * @return the loaded class, or null if the source failed to compile.
+   */
+  public static Class compileAndLoadFromSource(final String packageName,
+                                               final String className,
+                                               final String source) {
+    final JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+    if (compiler == null) {
+      throw new IllegalStateException("in-memory compilation requires a JDK, but no system java compiler is available");
+    }
+
+    final String fqcn = "".equals(packageName) ? className : packageName + "." + className;
+    final DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<JavaFileObject>();
+    final long start = System.currentTimeMillis();
+    final MemoryFileManager fileManager;
+
+    synchronized (ClassChangeUtil.class) {
+      fileManager = new MemoryFileManager(getClasspathIndex().getFileManager(compiler));
+      final Boolean success = compiler.getTask(null, fileManager, diagnostics, Arrays.asList("-proc:none"), null,
+          Collections.singletonList(new MemorySourceFile(fqcn, source))).call();
+
+      if (!Boolean.TRUE.equals(success)) {
+        System.out.println("*** FAILED TO COMPILE CLASS ***");
+        System.out.println("*** Classpath Used: " + getClasspathIndex().elements);
+
+        for (final Diagnostic<? extends JavaFileObject> diagnostic : diagnostics.getDiagnostics()) {
+          System.out.println(diagnostic);
+        }
+        return null;
+      }
+    }
+
+    log.info("compiled " + className + " in memory in " + (System.currentTimeMillis() - start) + "ms");
+
+    try {
+      return new MemoryClassLoader(fileManager.getClassDefinitions(), getParentClassLoader()).loadClass(fqcn);
+    }
+    catch (ClassNotFoundException e) {
+      throw new RuntimeException("failed to load class: " + fqcn, e);
+    }
+  }
+
+  private static ClassLoader getParentClassLoader() {
+    return "system".equals(classLoadingMode) ?
+        ClassLoader.getSystemClassLoader() :
+        Thread.currentThread().getContextClassLoader();
+  }
+
+  private static synchronized ClasspathIndex getClasspathIndex() {
+    final ClassLoader loader = Thread.currentThread().getContextClassLoader();
+    if (classpathIndex == null || classpathIndex.loader.get() != loader) {
+      if (classpathIndex != null) {
+        classpathIndex.close();
+      }
+      classpathIndex = new ClasspathIndex(loader, findClasspathElements());
+    }
+    return classpathIndex;
+  }
+
+  private static List<File> findClasspathElements() {
+    final Set<File> classpathElements = new LinkedHashSet<File>();
+
+    log.debug(">>> Searching for all jars by " + MetaDataScanner.ERRAI_CONFIG_STUB_NAME);
+    for (final URL url : MetaDataScanner.getConfigUrls()) {
+      final File file = getFileIfExists(url.getFile());
+      if (file != null) {
+        classpathElements.add(file.getAbsoluteFile());
+      }
+    }
+    log.debug("<<< Done searching for all jars by " + MetaDataScanner.ERRAI_CONFIG_STUB_NAME);
+
+    for (final String entry : System.getProperty("java.class.path").split(Pattern.quote(File.pathSeparator))) {
+      if (entry.length() > 0) {
+        classpathElements.add(new File(entry));
+      }
+    }
+
+    classpathElements.addAll(findAllJarsByManifest());
+    return new ArrayList<File>(classpathElements);
+  }
+
+  private static class ClasspathIndex {
+    private final WeakReference<ClassLoader> loader;
+    private final List<File> elements;
+    private StandardJavaFileManager fileManager;
+
+    private ClasspathIndex(final ClassLoader loader, final List<File> elements) {
+      this.loader = new WeakReference<ClassLoader>(loader);
+      this.elements = Collections.unmodifiableList(elements);
+    }
+
+    private StandardJavaFileManager getFileManager(final JavaCompiler compiler) {
+      if (fileManager == null) {
+        fileManager = compiler.getStandardFileManager(null, null, Charset.forName("UTF-8"));
+        try {
+          fileManager.setLocation(StandardLocation.CLASS_PATH, elements);
+        }
+        catch (IOException e) {
+          throw new RuntimeException("failed to set compiler classpath", e);
+        }
+      }
+      return fileManager;
+    }
+
+    private void close() {
+      if (fileManager != null) {
+        try {
+          fileManager.close();
+        }
+        catch (IOException e) {
+          log.warn("failed to close compiler file manager", e);
+        }
+      }
+    }
+  }
+
+  private static class MemorySourceFile extends SimpleJavaFileObject {
+    private final String source;
+
+    private MemorySourceFile(final String fqcn, final String source) {
+      super(URI.create("string:///" + fqcn.replace('.', '/') + Kind.SOURCE.extension), Kind.SOURCE);
+      this.source = source;
+    }
+
+    @Override
+    public CharSequence getCharContent(final boolean ignoreEncodingErrors) {
+      return source;
+    }
+  }
+
+  private static class MemoryClassFile extends SimpleJavaFileObject {
+    private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+    private MemoryClassFile(final String fqcn) {
+      super(URI.create("bytes:///" + fqcn.replace('.', '/') + Kind.CLASS.extension), Kind.CLASS);
+    }
+
+    @Override
+    public OutputStream openOutputStream() {
+      return bytes;
+    }
+  }
+
+  private static class MemoryFileManager extends ForwardingJavaFileManager<StandardJavaFileManager> {
+    private final Map<String, MemoryClassFile> classFiles = new HashMap<String, MemoryClassFile>();
+
+    private MemoryFileManager(final StandardJavaFileManager fileManager) {
+      super(fileManager);
+    }
+
+    @Override
+    public JavaFileObject getJavaFileForOutput(final Location location,
+                                               final String className,
+                                               final JavaFileObject.Kind kind,
+                                               final FileObject sibling) {
+      final MemoryClassFile classFile = new MemoryClassFile(className);
+      classFiles.put(className, classFile);
+      return classFile;
+    }
+
+    @Override
+    public void close() {
+      // the underlying file manager is shared between compilations and is closed along with its ClasspathIndex
+    }
+
+    private Map<String, byte[]> getClassDefinitions() {
+      final Map<String, byte[]> classDefinitions = new HashMap<String, byte[]>();
+      for (final Map.Entry<String, MemoryClassFile> entry : classFiles.entrySet()) {
+        classDefinitions.put(entry.getKey(), entry.getValue().bytes.toByteArray());
+      }
+      return classDefinitions;
+    }
+  }
+
+  /**
+   * Defines classes compiled in memory. Classes it holds a definition for are never delegated to the parent, so a
+   * stale copy of a generated class elsewhere on the classpath cannot shadow the one that was just compiled.
+   */
+  private static class MemoryClassLoader extends ClassLoader {
+    private final Map<String, byte[]> classDefinitions;
+
+    private MemoryClassLoader(final Map<String, byte[]> classDefinitions, final ClassLoader parent) {
+      super(parent);
+      this.classDefinitions = classDefinitions;
+    }
+
+    @Override
+    protected Class<?> loadClass(final String name, final boolean resolve) throws ClassNotFoundException {
+      if (!classDefinitions.containsKey(name)) {
+        return super.loadClass(name, resolve);
+      }
+
+      synchronized (getClassLoadingLock(name)) {
+        Class<?> cls = findLoadedClass(name);
+        if (cls == null) {
+          cls = findClass(name);
+        }
+        if (resolve) {
+          resolveClass(cls);
+        }
+        return cls;
+      }
+    }
+
+    @Override
+    protected Class<?> findClass(final String name) throws ClassNotFoundException {
+      final byte[] classDefinition = classDefinitions.get(name);
+      if (classDefinition == null) {
+        throw new ClassNotFoundException(name);
+      }
+      return defineClass(name, classDefinition, 0, classDefinition.length);
+    }
+  }
+
   private static class BootstrapClassloader extends ClassLoader {
     private String searchPath;
 
@@ -385,8 +628,8 @@ public class ClassChangeUtil {
     }
   }
 
-  private static String findAllJarsByManifest() {
-    final StringBuilder cp = new StringBuilder();
+  private static List<File> findAllJarsByManifest() {
+    final List<File> cp = new ArrayList<File>();
     try {
       log.debug(">>> Searching for all jars by " + JarFile.MANIFEST_NAME);
       final Enumeration[] enumerations = new Enumeration[]
@@ -400,7 +643,7 @@ public class ClassChangeUtil {
           try {
             final File file = getFileIfExists(((URL) resEnum.nextElement()).getFile());
             if (file != null) {
-              cp.append(File.pathSeparator).append(file.getAbsolutePath());
+              cp.add(file.getAbsoluteFile());
             }
           }
           catch (Exception e) {
@@ -417,7 +660,7 @@ public class ClassChangeUtil {
       log.debug("<<< Done searching for all jars by " + JarFile.MANIFEST_NAME);
     }
 
-    return cp.toString();
+    return cp;
   }
 
   public static File getFileIfExists(String path) {
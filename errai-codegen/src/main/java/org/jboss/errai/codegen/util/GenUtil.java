@@ -53,19 +53,26 @@ import org.mvel2.util.NullType;
  */
 public class GenUtil {
   private static final String PERMISSIVE_PROPERTY = "errai.codegen.permissive";
-  private static boolean PERMISSIVE_MODE;
-
-  static {
-    PERMISSIVE_MODE = System.getProperty(PERMISSIVE_PROPERTY) != null
-        && Boolean.getBoolean(PERMISSIVE_PROPERTY);
-  }
+  private static final boolean DEFAULT_PERMISSIVE_MODE = System.getProperty(PERMISSIVE_PROPERTY) != null
+      && Boolean.getBoolean(PERMISSIVE_PROPERTY);
+
+  /**
+   * Permissive mode is switched on and off around parts of the rendering, so it is kept per thread to allow classes
+   * to be generated concurrently.
+   */
+  private static final ThreadLocal<Boolean> PERMISSIVE_MODE = new ThreadLocal<Boolean>() {
+    @Override
+    protected Boolean initialValue() {
+      return DEFAULT_PERMISSIVE_MODE;
+    }
+  };
 
   public static boolean isPermissiveMode() {
-    return PERMISSIVE_MODE;
+    return PERMISSIVE_MODE.get();
   }
 
   public static void setPermissiveMode(final boolean permissiveMode) {
-    PERMISSIVE_MODE = permissiveMode;
+    PERMISSIVE_MODE.set(permissiveMode);
   }
 
   public static Statement[] generateCallParameters(final Context context, final Object... parameters) {
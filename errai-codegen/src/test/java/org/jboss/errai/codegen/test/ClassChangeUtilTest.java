@@ -0,0 +1,79 @@
+/*
+ * Copyright (C) 2016 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.errai.codegen.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.Callable;
+
+import org.jboss.errai.codegen.test.model.Person;
+import org.jboss.errai.codegen.util.ClassChangeUtil;
+import org.junit.Test;
+
+public class ClassChangeUtilTest {
+
+  @Test
+  public void testCompileAndLoadFromSourceDefinesNestedAndAnonymousClasses() throws Exception {
+    assertTrue(ClassChangeUtil.canCompileInMemory());
+
+    final String source =
+        "package org.jboss.errai.codegen.test.gen;\n" +
+        "public class InMemory implements java.util.concurrent.Callable<String> {\n" +
+        "  static class Nested { String value() { return \"nested\"; } }\n" +
+        "  public String call() {\n" +
+        "    final StringBuilder sb = new StringBuilder();\n" +
+        "    new Runnable() { public void run() { sb.append(new Nested().value()); } }.run();\n" +
+        "    return sb.toString();\n" +
+        "  }\n" +
+        "}\n";
+
+    final Class<?> cls = ClassChangeUtil.compileAndLoadFromSource("org.jboss.errai.codegen.test.gen", "InMemory", source);
+
+    assertNotNull(cls);
+    assertEquals("org.jboss.errai.codegen.test.gen.InMemory", cls.getName());
+    assertEquals("nested", ((Callable<?>) cls.newInstance()).call());
+  }
+
+  @Test
+  public void testCompileAndLoadFromSourceResolvesClasspathTypes() throws Exception {
+    final String source =
+        "package org.jboss.errai.codegen.test.gen;\n" +
+        "public class UsesClasspath implements " + Person.class.getName() + " {\n" +
+        "  public String getName() { return \"compiled\"; }\n" +
+        "  public int getAge() { return 0; }\n" +
+        "  public " + Person.class.getName() + " getMother() { return null; }\n" +
+        "}\n";
+
+    final Class<?> cls =
+        ClassChangeUtil.compileAndLoadFromSource("org.jboss.errai.codegen.test.gen", "UsesClasspath", source);
+
+    assertNotNull(cls);
+    assertEquals("compiled", ((Person) cls.newInstance()).getName());
+  }
+
+  @Test
+  public void testCompileAndLoadFromSourceReturnsNullOnCompileError() throws Exception {
+    final String source =
+        "package org.jboss.errai.codegen.test.gen;\n" +
+        "public class Broken { int x = \"not an int\"; }\n";
+
+    assertNull(ClassChangeUtil.compileAndLoadFromSource("org.jboss.errai.codegen.test.gen", "Broken", source));
+  }
+}
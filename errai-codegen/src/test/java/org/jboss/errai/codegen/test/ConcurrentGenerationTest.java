@@ -0,0 +1,109 @@
+/*
+ * Copyright (C) 2016 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.errai.codegen.test;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.jboss.errai.codegen.builder.impl.ClassBuilder;
+import org.jboss.errai.codegen.util.GenUtil;
+import org.jboss.errai.codegen.util.Stmt;
+import org.junit.Test;
+
+/**
+ * Tests that classes can be built and rendered on several threads at once, as long as each class stays on the thread
+ * that created it.
+ */
+public class ConcurrentGenerationTest extends AbstractCodegenTest {
+
+  private static String generate(final String name) {
+    return ClassBuilder.define("org.foo." + name)
+        .publicScope()
+        .implementsInterface(Serializable.class)
+        .body()
+        .privateField("name", String.class)
+        .finish()
+        .privateField("values", Map.class)
+        .finish()
+        .publicMethod(String.class, "getName")
+        .append(Stmt.loadClassMember("name").returnValue())
+        .finish()
+        .toJavaString();
+  }
+
+  @Test
+  public void testClassesRenderedConcurrentlyMatchSequentialOutput() throws Exception {
+    final int count = 64;
+    final List<String> expected = new ArrayList<String>(count);
+    for (int i = 0; i < count; i++) {
+      expected.add(generate("Bar" + i));
+    }
+
+    final ExecutorService executor = Executors.newFixedThreadPool(8);
+    try {
+      final List<Future<String>> results = new ArrayList<Future<String>>(count);
+      for (int i = 0; i < count; i++) {
+        final String name = "Bar" + i;
+        results.add(executor.submit(new Callable<String>() {
+          @Override
+          public String call() throws Exception {
+            return generate(name);
+          }
+        }));
+      }
+
+      for (int i = 0; i < count; i++) {
+        assertEquals(expected.get(i), results.get(i).get());
+      }
+    }
+    finally {
+      executor.shutdown();
+    }
+  }
+
+  @Test
+  public void testPermissiveModeIsPerThread() throws Exception {
+    GenUtil.setPermissiveMode(true);
+    try {
+      final ExecutorService executor = Executors.newSingleThreadExecutor();
+      try {
+        assertFalse(executor.submit(new Callable<Boolean>() {
+          @Override
+          public Boolean call() throws Exception {
+            return GenUtil.isPermissiveMode();
+          }
+        }).get());
+      }
+      finally {
+        executor.shutdown();
+      }
+      assertTrue(GenUtil.isPermissiveMode());
+    }
+    finally {
+      GenUtil.setPermissiveMode(false);
+    }
+  }
+}
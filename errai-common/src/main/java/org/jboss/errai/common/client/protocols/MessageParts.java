@@ -123,5 +123,10 @@ public enum MessageParts {
 
   WebSocketURL,
 
-  WebSocketToken
+  WebSocketToken,
+
+  /**
+   * Used during web socket negotiation to agree on a wire format other than plain JSON for the web socket.
+   */
+  WireProtocol
 }
@@ -49,8 +49,12 @@ public class ExtendedTypeAnnotationScanner extends TypeAnnotationsScanner {
         if (cls instanceof ClassFile) {
           Set<SortableClassFileWrapper> classes = cache.ANNOTATIONS_TO_CLASS.get(annotationType);
           if (classes == null) {
-            cache.ANNOTATIONS_TO_CLASS.put(annotationType, classes = 
-                    Collections.synchronizedSet(new TreeSet<SortableClassFileWrapper>()));
+            final Set<SortableClassFileWrapper> newClasses =
+                    Collections.synchronizedSet(new TreeSet<SortableClassFileWrapper>());
+            classes = cache.ANNOTATIONS_TO_CLASS.putIfAbsent(annotationType, newClasses);
+            if (classes == null) {
+              classes = newClasses;
+            }
           }
           classes.add(new SortableClassFileWrapper(className, (ClassFile) cls));
         }
@@ -19,19 +19,29 @@ package org.jboss.errai.common.metadata;
 import java.io.ByteArrayOutputStream;
 import java.io.DataOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.lang.annotation.Annotation;
 import java.lang.annotation.Inherited;
 import java.lang.reflect.Field;
 import java.lang.reflect.Method;
+import java.net.URISyntaxException;
 import java.net.URL;
 import java.net.URLDecoder;
 import java.security.MessageDigest;
 import java.util.*;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.Executors;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.regex.Pattern;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
 
 import org.jboss.errai.common.rebind.CacheStore;
 import org.jboss.errai.common.rebind.CacheUtil;
@@ -40,6 +50,8 @@ import org.jboss.errai.reflections.Reflections;
 import org.jboss.errai.reflections.ReflectionsException;
 import org.jboss.errai.reflections.scanners.FieldAnnotationsScanner;
 import org.jboss.errai.reflections.scanners.MethodAnnotationsScanner;
+import org.jboss.errai.reflections.scanners.Scanner;
+import org.jboss.errai.reflections.serializers.BinarySerializer;
 import org.jboss.errai.reflections.util.ConfigurationBuilder;
 import org.jboss.errai.reflections.vfs.Vfs;
 import org.slf4j.Logger;
@@ -67,24 +79,36 @@ public class MetaDataScanner extends Reflections {
   private static final String EXTENSION_KEY = "errai.class_scanning_extension";
 
   public static class CacheHolder implements CacheStore {
-    final Map<String, Set<SortableClassFileWrapper>> ANNOTATIONS_TO_CLASS = new ConcurrentHashMap<String, Set<SortableClassFileWrapper>>();
+    final ConcurrentMap<String, Set<SortableClassFileWrapper>> ANNOTATIONS_TO_CLASS = new ConcurrentHashMap<String, Set<SortableClassFileWrapper>>();
+
+    /**
+     * Checksums of the archives that were loaded from the scan index instead of being scanned, by the annotations
+     * found on their types. Their class files are never parsed, so they stand in for them in
+     * {@link MetaDataScanner#getHashForTypesAnnotatedWith(String, Class)}.
+     */
+    final ConcurrentMap<String, Set<String>> ANNOTATIONS_TO_ARCHIVE = new ConcurrentHashMap<String, Set<String>>();
 
     @Override
     public void clear() {
       ANNOTATIONS_TO_CLASS.clear();
+      ANNOTATIONS_TO_ARCHIVE.clear();
     }
   }
 
   public static final String ERRAI_CONFIG_STUB_NAME = "ErraiApp.properties";
 
-  private static final ErraiPropertyScanner propScanner = new ErraiPropertyScanner(new Predicate<String>() {
+  private static final Predicate<String> PROPERTIES_FILTER = new Predicate<String>() {
     @Override
     public boolean apply(final String file) {
       return file.endsWith(".properties");
     }
-  });
+  };
+
+  private static final ErraiPropertyScanner propScanner = new ErraiPropertyScanner(PROPERTIES_FILTER);
+
+  private static final String INDEX_SUFFIX = ".idx";
 
-  MetaDataScanner(final List<URL> urls, File cacheFile) {
+  MetaDataScanner(final List<URL> urls, final File indexDir) {
     super(getConfiguration(urls));
     try {
       for (final Class<? extends Vfs.UrlType> cls : findExtensions()) {
@@ -99,14 +123,229 @@ public class MetaDataScanner extends Reflections {
     } catch (Throwable t) {
       t.printStackTrace();
     }
-    if (cacheFile != null) {
-      collect(cacheFile);
+    if (indexDir != null) {
+      scanWithIndex(indexDir);
     }
     else {
       scan();
     }
   }
 
+  /**
+   * Scans every url as a separate unit of work on the configured pool and merges the results. Jar files are looked up
+   * in the index directory by a checksum of their contents first, so unchanged dependencies are read from their index
+   * entry instead of being scanned. Directories are always scanned, as they are where classes change between runs.
+   */
+  private void scanWithIndex(final File indexDir) {
+    final long time = System.currentTimeMillis();
+    final ExecutorService executorService = configuration.getExecutorService();
+    final AtomicInteger fromIndex = new AtomicInteger();
+    final List<Future<Reflections>> futures = new ArrayList<Future<Reflections>>();
+
+    try {
+      for (final URL url : configuration.getUrls()) {
+        futures.add(executorService.submit(new Callable<Reflections>() {
+          @Override
+          public Reflections call() throws Exception {
+            return scanWithIndex(url, indexDir, fromIndex);
+          }
+        }));
+      }
+
+      for (final Future<Reflections> future : futures) {
+        merge(future.get());
+      }
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException("interrupted while scanning class path", e);
+    }
+    catch (ExecutionException e) {
+      throw new RuntimeException("failed to scan class path", e.getCause());
+    }
+    finally {
+      executorService.shutdown();
+    }
+
+    log.info("scanned " + (futures.size() - fromIndex.get()) + " urls and read " + fromIndex.get()
+        + " from the scan index in " + (System.currentTimeMillis() - time) + "ms");
+  }
+
+  private static Reflections scanWithIndex(final URL url, final File indexDir, final AtomicInteger fromIndex) {
+    final File archive = getArchiveFile(url);
+    if (archive == null) {
+      return new ArchiveScanner(url).scanArchive();
+    }
+
+    // the entries of an archive are named after its file name and a hash of its path, so that equally named jars in
+    // different directories do not replace each other's entries
+    final String indexName = archive.getName() + "-" + getPathHash(archive);
+    final String checksum = getChecksum(archive);
+    final File indexFile = new File(indexDir, indexName + "-" + checksum + INDEX_SUFFIX);
+
+    if (indexFile.isFile()) {
+      InputStream inputStream = null;
+      try {
+        inputStream = new FileInputStream(indexFile);
+        final Reflections reflections = new BinarySerializer().read(inputStream);
+        for (final String annotation : reflections.getStore().get(ExtendedTypeAnnotationScanner.class).keySet()) {
+          Set<String> archives = CacheUtil.getCache(CacheHolder.class).ANNOTATIONS_TO_ARCHIVE.get(annotation);
+          if (archives == null) {
+            final Set<String> newArchives = Collections.synchronizedSet(new TreeSet<String>());
+            archives = CacheUtil.getCache(CacheHolder.class).ANNOTATIONS_TO_ARCHIVE.putIfAbsent(annotation, newArchives);
+            if (archives == null) {
+              archives = newArchives;
+            }
+          }
+          archives.add(checksum);
+        }
+        fromIndex.incrementAndGet();
+        return reflections;
+      }
+      catch (Exception e) {
+        log.warn("ignoring unreadable scan index " + indexFile, e);
+      }
+      finally {
+        if (inputStream != null) {
+          try {
+            inputStream.close();
+          }
+          catch (IOException e) {
+            //
+          }
+        }
+      }
+    }
+
+    final Reflections reflections = new ArchiveScanner(url).scanArchive();
+
+    // drop the entries for previous versions of this archive, then write the new one under a temporary name so that
+    // a concurrent build never reads a partially written entry
+    final Pattern previousVersions = Pattern.compile(Pattern.quote(indexName) + "-[0-9a-f]+"
+        + Pattern.quote(INDEX_SUFFIX));
+    final File[] stale = indexDir.listFiles();
+    if (stale != null) {
+      for (final File file : stale) {
+        if (previousVersions.matcher(file.getName()).matches()) {
+          file.delete();
+        }
+      }
+    }
+
+    File tempFile = null;
+    try {
+      tempFile = File.createTempFile(indexFile.getName() + ".", ".tmp", indexDir);
+      new BinarySerializer().save(reflections, tempFile.getAbsolutePath());
+      if (!tempFile.renameTo(indexFile)) {
+        tempFile.delete();
+      }
+    }
+    catch (IOException e) {
+      log.warn("could not write scan index for " + archive, e);
+    }
+    catch (ReflectionsException e) {
+      log.warn("could not write scan index for " + archive, e);
+      tempFile.delete();
+    }
+
+    return reflections;
+  }
+
+  /**
+   * @return the jar file the given url points at, or null if it is not a local jar file.
+   */
+  private static File getArchiveFile(final URL url) {
+    String path = url.toExternalForm();
+    if (path.startsWith("jar:")) {
+      path = path.substring(4);
+      if (path.endsWith("!/")) {
+        path = path.substring(0, path.length() - 2);
+      }
+    }
+    if (!path.startsWith("file:") || !path.endsWith(".jar")) {
+      return null;
+    }
+
+    File file;
+    try {
+      file = new File(new URL(path).toURI());
+    }
+    catch (URISyntaxException e) {
+      file = new File(path.substring(5));
+    }
+    catch (IOException e) {
+      return null;
+    }
+
+    return file.isFile() ? file : null;
+  }
+
+  /**
+   * @return a short hash of the absolute path of the given archive.
+   */
+  private static String getPathHash(final File archive) {
+    try {
+      final MessageDigest md = MessageDigest.getInstance("SHA-1");
+      md.update(archive.getAbsolutePath().getBytes("UTF-8"));
+      return RebindUtils.hashToHexString(md.digest()).substring(0, 16);
+    }
+    catch (Exception e) {
+      throw new RuntimeException("could not compute path hash of " + archive, e);
+    }
+  }
+
+  /**
+   * Computes a checksum of a jar's contents from its central directory (entry names, sizes and CRCs), so that the
+   * entries themselves do not have to be read.
+   */
+  private static String getChecksum(final File archive) {
+    ZipFile zipFile = null;
+    try {
+      zipFile = new ZipFile(archive);
+      final MessageDigest md = MessageDigest.getInstance("SHA-1");
+      final Enumeration<? extends ZipEntry> entries = zipFile.entries();
+      while (entries.hasMoreElements()) {
+        final ZipEntry entry = entries.nextElement();
+        md.update(entry.getName().getBytes("UTF-8"));
+        md.update(Long.toString(entry.getSize()).getBytes("UTF-8"));
+        md.update(Long.toString(entry.getCrc()).getBytes("UTF-8"));
+      }
+      return RebindUtils.hashToHexString(md.digest());
+    }
+    catch (Exception e) {
+      throw new RuntimeException("could not compute checksum of " + archive, e);
+    }
+    finally {
+      if (zipFile != null) {
+        try {
+          zipFile.close();
+        }
+        catch (IOException e) {
+          //
+        }
+      }
+    }
+  }
+
+  private static Scanner[] createScanners() {
+    return new Scanner[] { new FieldAnnotationsScanner(), new MethodAnnotationsScanner(),
+        new ExtendedTypeAnnotationScanner(), new ErraiPropertyScanner(PROPERTIES_FILTER) };
+  }
+
+  /**
+   * Scans a single url sequentially into its own store.
+   */
+  private static class ArchiveScanner extends Reflections {
+    private ArchiveScanner(final URL url) {
+      super(new ConfigurationBuilder().setUrls(url).setScanners(createScanners()));
+    }
+
+    private Reflections scanArchive() {
+      scan();
+      return this;
+    }
+  }
+
   private List<Class<? extends Vfs.UrlType>> findExtensions() {
     final Collection<URL> erraiAppProperties = getErraiAppProperties();
 
@@ -173,18 +412,15 @@ public class MetaDataScanner extends Reflections {
   private static Configuration getConfiguration(final List<URL> urls) {
     return new ConfigurationBuilder()
             .setUrls(urls)
-            .setExecutorService(Executors.newFixedThreadPool(2))
+            .setExecutorService(new ForkJoinPool(Runtime.getRuntime().availableProcessors()))
             .setScanners(new FieldAnnotationsScanner(), new MethodAnnotationsScanner(),
                     new ExtendedTypeAnnotationScanner(), propScanner);
   }
 
   static MetaDataScanner createInstanceFromCache() {
-    try {
-      return createInstance(getConfigUrls(), RebindUtils.getCacheFile(RebindUtils.getClasspathHash() + ".cache.xml"));
-    } catch (ReflectionsException e) {
-      e.printStackTrace();
-      return createInstance();
-    }
+    final File indexDir = RebindUtils.getCacheFile("scan-index");
+    indexDir.mkdirs();
+    return createInstance(getConfigUrls(), indexDir);
   }
 
   static MetaDataScanner createInstance() {
@@ -195,12 +431,18 @@ public class MetaDataScanner extends Reflections {
     return createInstance(urls, null);
   }
 
-  public static MetaDataScanner createInstance(final List<URL> urls, final File cacheFile) {
+  /**
+   * @param urls
+   *     the config urls to scan.
+   * @param indexDir
+   *     a directory holding the per-jar scan index, or null to scan every url.
+   */
+  public static MetaDataScanner createInstance(final List<URL> urls, final File indexDir) {
     registerDefaultHandlers();
 
     final DeploymentContext ctx = new DeploymentContext(urls);
     final List<URL> actualUrls = ctx.process();
-    final MetaDataScanner scanner = new MetaDataScanner(actualUrls, cacheFile);
+    final MetaDataScanner scanner = new MetaDataScanner(actualUrls, indexDir);
     ctx.close(); // needs to closed after the scanner was created
 
     return scanner;
@@ -300,7 +542,9 @@ public class MetaDataScanner extends Reflections {
   }
 
   public String getHashForTypesAnnotatedWith(final String seed, final Class<? extends Annotation> annotation) {
-    if (!CacheUtil.getCache(CacheHolder.class).ANNOTATIONS_TO_CLASS.containsKey(annotation.getName())) {
+    final CacheHolder cache = CacheUtil.getCache(CacheHolder.class);
+    if (!cache.ANNOTATIONS_TO_CLASS.containsKey(annotation.getName())
+        && !cache.ANNOTATIONS_TO_ARCHIVE.containsKey(annotation.getName())) {
       return "0";
     }
     else {
@@ -312,13 +556,22 @@ public class MetaDataScanner extends Reflections {
         }
 
         final ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
-        for (final SortableClassFileWrapper classFileWrapper : CacheUtil.getCache(CacheHolder.class).ANNOTATIONS_TO_CLASS
-                .get(annotation.getName())) {
-          byteArrayOutputStream.reset();
-          final DataOutputStream dataOutputStream = new DataOutputStream(byteArrayOutputStream);
-          classFileWrapper.getClassFile().write(dataOutputStream);
-          dataOutputStream.flush();
-          md.update(byteArrayOutputStream.toByteArray());
+        final Set<SortableClassFileWrapper> classFiles = cache.ANNOTATIONS_TO_CLASS.get(annotation.getName());
+        if (classFiles != null) {
+          for (final SortableClassFileWrapper classFileWrapper : classFiles) {
+            byteArrayOutputStream.reset();
+            final DataOutputStream dataOutputStream = new DataOutputStream(byteArrayOutputStream);
+            classFileWrapper.getClassFile().write(dataOutputStream);
+            dataOutputStream.flush();
+            md.update(byteArrayOutputStream.toByteArray());
+          }
+        }
+
+        final Set<String> archives = cache.ANNOTATIONS_TO_ARCHIVE.get(annotation.getName());
+        if (archives != null) {
+          for (final String checksum : archives) {
+            md.update(checksum.getBytes("UTF-8"));
+          }
         }
 
         return RebindUtils.hashToHexString(md.digest());
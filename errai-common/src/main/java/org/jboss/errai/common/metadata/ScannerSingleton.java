@@ -32,8 +32,7 @@ public class ScannerSingleton {
       new Callable<MetaDataScanner>() {
         @Override
         public MetaDataScanner call() throws Exception {
-          if (Boolean.getBoolean("errai.reflections.cache")
-              && RebindUtils.cacheFileExists(RebindUtils.getClasspathHash() + ".cache.xml")) {
+          if (Boolean.getBoolean("errai.reflections.cache")) {
               return MetaDataScanner.createInstanceFromCache();
           }
 
@@ -53,10 +52,6 @@ public class ScannerSingleton {
       if (scanner == null) {
         try {
           scanner = future.get();
-
-          if (scanner != null && Boolean.getBoolean("errai.reflections.cache") ) {
-            scanner.save(RebindUtils.getCacheFile(RebindUtils.getClasspathHash() + ".cache.xml").getAbsolutePath());
-          }
         }
         catch (Throwable t) {
           t.printStackTrace();
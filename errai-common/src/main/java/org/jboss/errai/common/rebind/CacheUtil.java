@@ -19,8 +19,8 @@ package org.jboss.errai.common.rebind;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * @author Mike Brock
@@ -32,7 +32,7 @@ public abstract class CacheUtil {
   }
 
   private static final Map<Class<? extends CacheStore>, CacheStore> CACHE_STORE_MAP
-      = new HashMap<Class<? extends CacheStore>, CacheStore>();
+      = new ConcurrentHashMap<Class<? extends CacheStore>, CacheStore>();
 
   public static <T extends CacheStore> T getCache(final Class<T> type) {
     synchronized (type) {
@@ -0,0 +1,137 @@
+/*
+ * Copyright (C) 2016 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.errai.common.metadata;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.jboss.errai.common.metadata.MetaDataScanner.CacheHolder;
+import org.jboss.errai.common.rebind.CacheUtil;
+import org.jboss.shrinkwrap.api.ShrinkWrap;
+import org.jboss.shrinkwrap.api.exporter.ZipExporter;
+import org.jboss.shrinkwrap.api.spec.JavaArchive;
+import org.junit.Test;
+
+/**
+ * Tests the per-jar scan index of {@link MetaDataScanner}.
+ */
+public class MetaDataScannerIndexTest {
+
+  @Retention(RetentionPolicy.RUNTIME)
+  public @interface Indexed {
+  }
+
+  @Indexed
+  public static class IndexedType {
+  }
+
+  @Indexed
+  public static class OtherIndexedType {
+  }
+
+  @Test
+  public void testUnchangedJarIsReadFromIndex() throws Exception {
+    final File dir = Files.createTempDirectory("errai-scan").toFile();
+    final File indexDir = new File(dir, "index");
+    indexDir.mkdirs();
+    final File jar = createJar(new File(dir, "lib.jar"), IndexedType.class);
+
+    scan(jar, indexDir);
+    assertFalse("the jar was read from the index", isReadFromIndex());
+    final List<String> entries = Arrays.asList(indexDir.list());
+    assertEquals(1, entries.size());
+    assertTrue(entries.get(0).startsWith("lib.jar-"));
+    assertTrue(entries.get(0).endsWith(".idx"));
+
+    final MetaDataScanner scanner = scan(jar, indexDir);
+    assertTrue("the jar was scanned again", isReadFromIndex());
+    assertEquals(entries, Arrays.asList(indexDir.list()));
+    assertEquals(Collections.<Class<?>>singleton(IndexedType.class), scanner.getTypesAnnotatedWith(Indexed.class));
+  }
+
+  @Test
+  public void testChangedJarReplacesItsIndexEntry() throws Exception {
+    final File dir = Files.createTempDirectory("errai-scan").toFile();
+    final File indexDir = new File(dir, "index");
+    indexDir.mkdirs();
+    final File jar = createJar(new File(dir, "lib.jar"), IndexedType.class);
+
+    scan(jar, indexDir);
+    final String hash = scan(jar, indexDir).getHashForTypesAnnotatedWith(null, Indexed.class);
+    final List<String> entries = Arrays.asList(indexDir.list());
+
+    createJar(jar, IndexedType.class, OtherIndexedType.class);
+    scan(jar, indexDir);
+    assertFalse("a changed jar must be scanned", isReadFromIndex());
+    final List<String> changedEntries = Arrays.asList(indexDir.list());
+    assertEquals("the entry of the previous version was not deleted", 1, changedEntries.size());
+    assertNotEquals(entries, changedEntries);
+
+    final MetaDataScanner scanner = scan(jar, indexDir);
+    assertTrue(isReadFromIndex());
+    assertEquals(2, scanner.getTypesAnnotatedWith(Indexed.class).size());
+    assertNotEquals(hash, scanner.getHashForTypesAnnotatedWith(null, Indexed.class));
+  }
+
+  @Test
+  public void testEquallyNamedJarsHaveSeparateIndexEntries() throws Exception {
+    final File dir = Files.createTempDirectory("errai-scan").toFile();
+    final File indexDir = new File(dir, "index");
+    indexDir.mkdirs();
+    final File jar1 = createJar(new File(dir, "a/lib.jar"), IndexedType.class);
+    final File jar2 = createJar(new File(dir, "b/lib.jar"), OtherIndexedType.class);
+
+    scan(jar1, indexDir);
+    scan(jar2, indexDir);
+    assertEquals(2, indexDir.list().length);
+
+    scan(jar1, indexDir);
+    assertTrue("the entry of the first jar was replaced by the second one", isReadFromIndex());
+    scan(jar2, indexDir);
+    assertTrue("the entry of the second jar was replaced by the first one", isReadFromIndex());
+  }
+
+  private static File createJar(final File jarFile, final Class<?>... classes) {
+    jarFile.getParentFile().mkdirs();
+    ShrinkWrap.create(JavaArchive.class).addClasses(classes).as(ZipExporter.class).exportTo(jarFile, true);
+    return jarFile;
+  }
+
+  private static MetaDataScanner scan(final File jar, final File indexDir) throws IOException {
+    CacheUtil.getCache(CacheHolder.class).clear();
+    return MetaDataScanner.createInstance(Collections.singletonList(jar.toURI().toURL()), indexDir);
+  }
+
+  /**
+   * @return true if the last scan read the {@link Indexed} types from the index. The checksums of the archives read
+   *         from the index take the place of their class files.
+   */
+  private static boolean isReadFromIndex() {
+    return CacheUtil.getCache(CacheHolder.class).ANNOTATIONS_TO_ARCHIVE.containsKey(Indexed.class.getName());
+  }
+}
@@ -23,7 +23,14 @@ import java.util.Map;
  */
 public enum CommonConfigAttribs {
   LAZY_LOAD_BUILTIN_MARSHALLERS("errai.marshalling.lazy_load_builtin_marshallers", "true"),
-  MAKE_DEFAULT_ARRAY_MARSHALLERS("errai.marshalling.make_default_array_marshallers", "false");
+  MAKE_DEFAULT_ARRAY_MARSHALLERS("errai.marshalling.make_default_array_marshallers", "false"),
+
+  /**
+   * The number of threads used to generate the server-side marshallers. With more than one thread, the marshaller
+   * of every portable type is generated and rendered on its own, in parallel, and then added to the marshaller
+   * factory. This requires a meta model that is safe for concurrent reads, such as the reflection based one.
+   */
+  MARSHALLER_GENERATION_THREADS("errai.marshalling.generation_threads", "1");
 
   protected final String attributeName;
   protected final String defaultValue;
@@ -24,6 +24,7 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
@@ -32,6 +33,7 @@ import java.util.concurrent.atomic.AtomicLong;
 import java.util.regex.Pattern;
 
 import org.jboss.errai.codegen.meta.MetaClass;
+import org.jboss.errai.codegen.meta.MetaClassCache;
 import org.jboss.errai.codegen.meta.MetaClassFactory;
 import org.jboss.errai.codegen.meta.MetaField;
 import org.jboss.errai.codegen.meta.MetaMethod;
@@ -43,6 +45,8 @@ import org.jboss.errai.common.metadata.ScannerSingleton;
 import org.jboss.errai.common.rebind.CacheStore;
 import org.jboss.errai.common.rebind.CacheUtil;
 import org.mvel2.util.NullType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import com.google.gwt.core.ext.GeneratorContext;
 
@@ -56,6 +60,10 @@ public final class ClassScanner {
     final Collection<MetaClass> reloadableClasses =  new CopyOnWriteArrayList<MetaClass>();
     final Set<String> reloadableClassNames =  Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
     final Set<String> reloadablePackages =  Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+    volatile MetaClassIndex reloadableIndex;
+    volatile MetaClassIndex cachedClassesIndex;
+    volatile int cachedClassesIndexVersion;
+    volatile int cachedClassesIndexAdditions;
 
     @Override
     public void clear() {
@@ -63,6 +71,8 @@ public final class ClassScanner {
       reloadableClasses.clear();
       reloadableClassNames.clear();
       reloadablePackages.clear();
+      reloadableIndex = null;
+      cachedClassesIndex = null;
     }
   }
   final static CacheHolder cache = CacheUtil.getCache(CacheHolder.class);
@@ -74,6 +84,8 @@ public final class ClassScanner {
     }
   };
 
+  private static final Logger log = LoggerFactory.getLogger(ClassScanner.class);
+
   private static AtomicLong totalClassScanTime = new AtomicLong(0);
 
   private ClassScanner() {
@@ -85,15 +97,7 @@ public final class ClassScanner {
     final Collection<MetaParameter> result = new HashSet<MetaParameter>();
 
     if (genCtx != null) {
-      for (final MetaClass metaClass : getAllReloadableCachedClasses(genCtx)) {
-        for (final MetaMethod method : metaClass.getDeclaredMethods()) {
-          for (final MetaParameter parameter : method.getParameters()) {
-            if (parameter.isAnnotationPresent(annotation)) {
-              result.add(parameter);
-            }
-          }
-        }
-      }
+      result.addAll(getReloadableIndex(genCtx).getParametersAnnotatedWith(annotation));
       try {
         for (final Method m : ScannerSingleton.getOrCreateInstance().getMethodsWithAnyParamAnnotated(annotation)) {
           Class<?> clazz = m.getDeclaringClass();
@@ -110,15 +114,7 @@ public final class ClassScanner {
       }
     }
     else {
-      for (final MetaClass metaClass : MetaClassFactory.getAllCachedClasses()) {
-        for (final MetaMethod method : metaClass.getDeclaredMethods()) {
-          for (final MetaParameter parameter : method.getParameters()) {
-            if (parameter.isAnnotationPresent(annotation)) {
-              result.add(parameter);
-            }
-          }
-        }
-      }
+      result.addAll(getCachedClassesIndex().getParametersAnnotatedWith(annotation));
     }
 
     filterResultsParameter(result, packages, null);
@@ -136,11 +132,7 @@ public final class ClassScanner {
     final Collection<MetaClass> result = new HashSet<MetaClass>();
 
     if (genCtx != null) {
-      for (final MetaClass metaClass : getAllReloadableCachedClasses(genCtx)) {
-        if (metaClass.isAnnotationPresent(annotation)) {
-          result.add(metaClass);
-        }
-      }
+      result.addAll(getReloadableIndex(genCtx).getTypesAnnotatedWith(annotation));
       try {
         for (final Class<?> cls : ScannerSingleton.getOrCreateInstance().getTypesAnnotatedWith(annotation)) {
           if (!isReloadable(cls) && MetaClassFactory.isKnownType(cls.getName())) {
@@ -151,11 +143,7 @@ public final class ClassScanner {
       }
     }
     else {
-      for (final MetaClass metaClass : MetaClassFactory.getAllCachedClasses()) {
-        if (metaClass.isAnnotationPresent(annotation)) {
-          result.add(metaClass);
-        }
-      }
+      result.addAll(getCachedClassesIndex().getTypesAnnotatedWith(annotation));
 
       try {
         if (reflections || reflectionScanLocal.get()) {
@@ -200,13 +188,7 @@ public final class ClassScanner {
     final Collection<MetaMethod> result = new HashSet<MetaMethod>(50);
 
     if (genCtx != null) {
-      for (final MetaClass metaClass : getAllReloadableCachedClasses(genCtx)) {
-        for (final MetaMethod metaMethod : metaClass.getDeclaredMethods()) {
-          if (metaMethod.isAnnotationPresent(annotation)) {
-            result.add(metaMethod);
-          }
-        }
-      }
+      result.addAll(getReloadableIndex(genCtx).getMethodsAnnotatedWith(annotation));
       try {
         for (final Method m : ScannerSingleton.getOrCreateInstance().getMethodsAnnotatedWith(annotation)) {
           Class<?> clazz = m.getDeclaringClass();
@@ -219,13 +201,7 @@ public final class ClassScanner {
       }
     }
     else {
-      for (final MetaClass metaClass : MetaClassFactory.getAllCachedClasses()) {
-        for (final MetaMethod metaMethod : metaClass.getDeclaredMethods()) {
-          if (metaMethod.isAnnotationPresent(annotation)) {
-            result.add(metaMethod);
-          }
-        }
-      }
+      result.addAll(getCachedClassesIndex().getMethodsAnnotatedWith(annotation));
     }
 
     filterResultsMethod(result, packages, null);
@@ -237,13 +213,7 @@ public final class ClassScanner {
     final Collection<MetaField> result = new HashSet<MetaField>(50);
 
     if (genCtx != null) {
-      for (final MetaClass metaClass : getAllReloadableCachedClasses(genCtx)) {
-        for (final MetaField metaField : metaClass.getDeclaredFields()) {
-          if (metaField.isAnnotationPresent(annotation)) {
-            result.add(metaField);
-          }
-        }
-      }
+      result.addAll(getReloadableIndex(genCtx).getFieldsAnnotatedWith(annotation));
       try {
         for (final Field f : ScannerSingleton.getOrCreateInstance().getFieldsAnnotatedWith(annotation)) {
           Class<?> clazz = f.getDeclaringClass();
@@ -255,13 +225,7 @@ public final class ClassScanner {
       }
     }
     else {
-      for (final MetaClass metaClass : MetaClassFactory.getAllCachedClasses()) {
-        for (final MetaField metaField : metaClass.getDeclaredFields()) {
-          if (metaField.isAnnotationPresent(annotation)) {
-            result.add(metaField);
-          }
-        }
-      }
+      result.addAll(getCachedClassesIndex().getFieldsAnnotatedWith(annotation));
     }
 
     filterResultsField(result, packages, null);
@@ -278,12 +242,7 @@ public final class ClassScanner {
     final Set<MetaClass> result = Collections.newSetFromMap(new ConcurrentHashMap<MetaClass, Boolean>());
 
     if (!Boolean.getBoolean("org.jboss.errai.skip.reloadable.subtypes")) {
-      for (final MetaClass mc : getAllReloadableCachedClasses(genCtx)) {
-        if (!NullType.class.getName().equals(mc.getFullyQualifiedName())
-                && !root.getFullyQualifiedName().equals(mc.getFullyQualifiedName()) && root.isAssignableFrom(mc)) {
-          result.add(mc.getErased());
-        }
-      }
+      result.addAll(getReloadableIndex(genCtx).getSubTypesOf(root));
     }
 
     final Class<?> cls = root.asClass();
@@ -299,6 +258,63 @@ public final class ClassScanner {
     return result;
   }
 
+  private static MetaClassIndex getReloadableIndex(final GeneratorContext context) {
+    MetaClassIndex index = cache.reloadableIndex;
+    if (index == null) {
+      synchronized (cache) {
+        index = cache.reloadableIndex;
+        if (index == null) {
+          cache.reloadableIndex = index = buildIndex(getAllReloadableCachedClasses(context));
+        }
+      }
+    }
+    return index;
+  }
+
+  /**
+   * Returns an index over all classes in the {@link MetaClassFactory} cache. Classes are added to that cache lazily
+   * while generators run, so classes added since the last query are indexed before answering it. The index is only
+   * rebuilt when classes were replaced in or cleared from the cache.
+   */
+  private static MetaClassIndex getCachedClassesIndex() {
+    final MetaClassCache metaClassCache = MetaClassFactory.getMetaClassCache();
+    MetaClassIndex index = cache.cachedClassesIndex;
+    if (index == null || cache.cachedClassesIndexVersion != metaClassCache.getVersion()
+        || cache.cachedClassesIndexAdditions != metaClassCache.getAdditionCount()) {
+      synchronized (cache) {
+        final int version = metaClassCache.getVersion();
+        index = cache.cachedClassesIndex;
+        final List<MetaClass> additions = (index == null) ? null
+            : metaClassCache.getAdditionsSince(cache.cachedClassesIndexVersion, cache.cachedClassesIndexAdditions);
+
+        if (additions == null) {
+          // classes added while the snapshot is taken are indexed again with the next additions, which is harmless
+          // as the index skips classes it already contains.
+          final int count = metaClassCache.getAdditionCount();
+          index = buildIndex(metaClassCache.getAllCached());
+          cache.cachedClassesIndexVersion = version;
+          cache.cachedClassesIndexAdditions = count;
+          cache.cachedClassesIndex = index;
+        }
+        else if (!additions.isEmpty()) {
+          index.addAll(additions);
+          cache.cachedClassesIndexAdditions += additions.size();
+          log.debug("indexed " + additions.size() + " classes added to the MetaClass cache");
+        }
+      }
+    }
+    return index;
+  }
+
+  private static MetaClassIndex buildIndex(final Collection<MetaClass> classes) {
+    final long start = System.currentTimeMillis();
+    final MetaClassIndex index = new MetaClassIndex(classes);
+    final long time = System.currentTimeMillis() - start;
+    totalClassScanTime.addAndGet(time);
+    log.debug("indexed " + index.size() + " classes in " + time + "ms");
+    return index;
+  }
+
   private static Collection<MetaClass> getAllReloadableCachedClasses(final GeneratorContext context) {
     if (cache.reloadablePackages.isEmpty()) {
       cache.reloadablePackages.addAll(RebindUtils.getReloadablePackageNames(context));
@@ -0,0 +1,143 @@
+/*
+ * Copyright (C) 2016 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.errai.config.util;
+
+import java.lang.annotation.Annotation;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.jboss.errai.codegen.meta.HasAnnotations;
+import org.jboss.errai.codegen.meta.MetaClass;
+import org.jboss.errai.codegen.meta.MetaField;
+import org.jboss.errai.codegen.meta.MetaMethod;
+import org.jboss.errai.codegen.meta.MetaParameter;
+import org.mvel2.util.NullType;
+
+/**
+ * Inverted indexes over a set of {@link MetaClass MetaClasses}, so that {@link ClassScanner} can answer annotation and
+ * subtype queries with a lookup instead of walking every class (and every member of every class) for each query.
+ * Classes can be {@link #addAll(Collection) added} to an index after it was built, and a class is only indexed once
+ * per fully qualified name. An index is safe to share between threads; queries return snapshots.
+ */
+final class MetaClassIndex {
+  private final Map<String, Collection<MetaClass>> typesByAnnotation = new HashMap<String, Collection<MetaClass>>();
+  private final Map<String, Collection<MetaMethod>> methodsByAnnotation = new HashMap<String, Collection<MetaMethod>>();
+  private final Map<String, Collection<MetaField>> fieldsByAnnotation = new HashMap<String, Collection<MetaField>>();
+  private final Map<String, Collection<MetaParameter>> parametersByAnnotation
+      = new HashMap<String, Collection<MetaParameter>>();
+  private final Map<String, Collection<MetaClass>> subtypesBySupertype = new HashMap<String, Collection<MetaClass>>();
+  private final Set<String> indexed = new HashSet<String>();
+
+  MetaClassIndex(final Collection<MetaClass> classes) {
+    addAll(classes);
+  }
+
+  synchronized void addAll(final Collection<MetaClass> classes) {
+    for (final MetaClass metaClass : classes) {
+      if (!indexed.add(metaClass.getFullyQualifiedName())) {
+        continue;
+      }
+
+      index(typesByAnnotation, metaClass, metaClass);
+
+      for (final MetaMethod method : metaClass.getDeclaredMethods()) {
+        index(methodsByAnnotation, method, method);
+        for (final MetaParameter parameter : method.getParameters()) {
+          index(parametersByAnnotation, parameter, parameter);
+        }
+      }
+
+      for (final MetaField field : metaClass.getDeclaredFields()) {
+        index(fieldsByAnnotation, field, field);
+      }
+
+      if (!NullType.class.getName().equals(metaClass.getFullyQualifiedName())) {
+        final MetaClass erased = metaClass.getErased();
+        final Set<String> supertypes = new HashSet<String>();
+        supertypes.add(Object.class.getName());
+        collectSupertypes(erased, supertypes);
+        supertypes.remove(erased.getFullyQualifiedName());
+
+        for (final String supertype : supertypes) {
+          add(subtypesBySupertype, supertype, erased);
+        }
+      }
+    }
+  }
+
+  private static <T> void index(final Map<String, Collection<T>> index, final HasAnnotations annotated, final T value) {
+    for (final Annotation annotation : annotated.getAnnotations()) {
+      add(index, annotation.annotationType().getName(), value);
+    }
+  }
+
+  private static <T> void add(final Map<String, Collection<T>> index, final String key, final T value) {
+    Collection<T> values = index.get(key);
+    if (values == null) {
+      index.put(key, values = new ArrayList<T>());
+    }
+    values.add(value);
+  }
+
+  private static void collectSupertypes(final MetaClass type, final Set<String> supertypes) {
+    if (type == null || !supertypes.add(type.getErased().getFullyQualifiedName())) {
+      return;
+    }
+
+    collectSupertypes(type.getSuperClass(), supertypes);
+    for (final MetaClass iface : type.getInterfaces()) {
+      collectSupertypes(iface, supertypes);
+    }
+  }
+
+  private static <T> Collection<T> get(final Map<String, Collection<T>> index, final String key) {
+    final Collection<T> values = index.get(key);
+    return values == null ? Collections.<T>emptyList() : new ArrayList<T>(values);
+  }
+
+  synchronized Collection<MetaClass> getTypesAnnotatedWith(final Class<? extends Annotation> annotation) {
+    return get(typesByAnnotation, annotation.getName());
+  }
+
+  synchronized Collection<MetaMethod> getMethodsAnnotatedWith(final Class<? extends Annotation> annotation) {
+    return get(methodsByAnnotation, annotation.getName());
+  }
+
+  synchronized Collection<MetaField> getFieldsAnnotatedWith(final Class<? extends Annotation> annotation) {
+    return get(fieldsByAnnotation, annotation.getName());
+  }
+
+  synchronized Collection<MetaParameter> getParametersAnnotatedWith(final Class<? extends Annotation> annotation) {
+    return get(parametersByAnnotation, annotation.getName());
+  }
+
+  /**
+   * @return the erased types in this index that are assignable to the given type, excluding the type itself.
+   */
+  synchronized Collection<MetaClass> getSubTypesOf(final MetaClass type) {
+    return get(subtypesBySupertype, type.getErased().getFullyQualifiedName());
+  }
+
+  synchronized int size() {
+    return indexed.size();
+  }
+}
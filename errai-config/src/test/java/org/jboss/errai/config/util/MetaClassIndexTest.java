@@ -0,0 +1,300 @@
+/*
+ * Copyright (C) 2016 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.errai.config.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.annotation.Annotation;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.jboss.errai.codegen.meta.MetaClass;
+import org.jboss.errai.codegen.meta.MetaClassCache;
+import org.jboss.errai.codegen.meta.MetaClassFactory;
+import org.jboss.errai.codegen.meta.MetaField;
+import org.jboss.errai.codegen.meta.MetaMethod;
+import org.jboss.errai.codegen.meta.MetaParameter;
+import org.junit.Test;
+import org.mvel2.util.NullType;
+
+/**
+ * Tests that the queries answered by a {@link MetaClassIndex}, and by the {@link ClassScanner} through it, equal
+ * those of a linear scan over the same classes, also when classes are added after the index was built.
+ */
+public class MetaClassIndexTest {
+
+  @Retention(RetentionPolicy.RUNTIME)
+  public @interface Marked {
+  }
+
+  @Retention(RetentionPolicy.RUNTIME)
+  public @interface Unused {
+  }
+
+  public interface Shape {
+    @Marked
+    double area();
+  }
+
+  public interface Solid extends Shape {
+  }
+
+  public static abstract class AbstractShape implements Shape {
+    @Marked
+    protected String name;
+
+    public void rename(@Marked final String name) {
+      this.name = name;
+    }
+  }
+
+  @Marked
+  public static class Circle extends AbstractShape {
+    @Marked
+    private double radius;
+
+    @Override
+    public double area() {
+      return Math.PI * radius * radius;
+    }
+
+    @Marked
+    public void scale(@Marked final double factor, final double unmarked) {
+      radius *= factor;
+    }
+  }
+
+  public static class Square extends AbstractShape {
+    private double side;
+
+    @Override
+    public double area() {
+      return side * side;
+    }
+  }
+
+  @Marked
+  public static class Cube extends Square implements Solid {
+    @Marked
+    private int faces;
+  }
+
+  public static class Unrelated implements Comparable<Unrelated> {
+    @Override
+    public int compareTo(@Marked final Unrelated o) {
+      return 0;
+    }
+  }
+
+  @Marked
+  public static class Sphere extends Circle implements Solid {
+    @Marked
+    public void inflate(@Marked final double by) {
+    }
+  }
+
+  /**
+   * Only ever added to the {@link MetaClassCache} by
+   * {@link MetaClassIndexTest#testClassScannerIndexesClassesAddedToCacheWithoutRebuilding()}.
+   */
+  @Marked
+  public static class LateArrival extends Circle {
+    @Marked
+    private boolean late;
+
+    @Marked
+    public void arrive(@Marked final long at) {
+    }
+  }
+
+  private static List<MetaClass> classes(final Class<?>... classes) {
+    final List<MetaClass> metaClasses = new ArrayList<MetaClass>();
+    for (final Class<?> cls : classes) {
+      metaClasses.add(MetaClassFactory.get(cls));
+    }
+    return metaClasses;
+  }
+
+  private static List<MetaClass> fixtures() {
+    return classes(Object.class, String.class, NullType.class, Shape.class, Solid.class, AbstractShape.class,
+        Circle.class, Square.class, Cube.class, Unrelated.class);
+  }
+
+  @Test
+  public void testAnnotationQueriesEqualLinearScan() {
+    final List<MetaClass> classes = fixtures();
+    final MetaClassIndex index = new MetaClassIndex(classes);
+
+    for (final Class<? extends Annotation> annotation : Arrays.asList(Marked.class, Unused.class, Retention.class)) {
+      assertEquals(names(scanTypes(classes, annotation)), names(index.getTypesAnnotatedWith(annotation)));
+      assertEquals(scanMethods(classes, annotation), new HashSet<MetaMethod>(index.getMethodsAnnotatedWith(annotation)));
+      assertEquals(scanFields(classes, annotation), new HashSet<MetaField>(index.getFieldsAnnotatedWith(annotation)));
+      assertEquals(scanParameters(classes, annotation),
+          new HashSet<MetaParameter>(index.getParametersAnnotatedWith(annotation)));
+    }
+
+    assertEquals(2, index.getTypesAnnotatedWith(Marked.class).size());
+    assertEquals(2, index.getMethodsAnnotatedWith(Marked.class).size());
+    assertEquals(3, index.getFieldsAnnotatedWith(Marked.class).size());
+    assertEquals(3, index.getParametersAnnotatedWith(Marked.class).size());
+  }
+
+  @Test
+  public void testSubtypeQueriesEqualLinearScan() {
+    final List<MetaClass> classes = fixtures();
+    final MetaClassIndex index = new MetaClassIndex(classes);
+
+    for (final Class<?> root : Arrays.asList(Shape.class, Solid.class, AbstractShape.class, Square.class, Object.class,
+        Comparable.class, Cube.class)) {
+      final MetaClass metaClass = MetaClassFactory.get(root);
+      assertEquals("subtypes of " + root.getName(), names(scanSubtypes(classes, metaClass)),
+          names(index.getSubTypesOf(metaClass)));
+    }
+
+    assertEquals(new HashSet<String>(Arrays.asList(Solid.class.getName(), AbstractShape.class.getName(),
+        Circle.class.getName(), Square.class.getName(), Cube.class.getName())),
+        names(index.getSubTypesOf(MetaClassFactory.get(Shape.class))));
+    assertFalse(names(index.getSubTypesOf(MetaClassFactory.get(Object.class))).contains(NullType.class.getName()));
+  }
+
+  @Test
+  public void testAddedClassesEqualIndexBuiltFromAll() {
+    final List<MetaClass> all = fixtures();
+    all.add(MetaClassFactory.get(Sphere.class));
+
+    final MetaClassIndex index = new MetaClassIndex(all.subList(0, 4));
+    index.addAll(all.subList(2, 7));
+    index.addAll(all);
+    assertEquals("classes added twice must only be indexed once", all.size(), index.size());
+
+    final MetaClassIndex built = new MetaClassIndex(all);
+    assertEquals(names(built.getTypesAnnotatedWith(Marked.class)), names(index.getTypesAnnotatedWith(Marked.class)));
+    assertEquals(built.getMethodsAnnotatedWith(Marked.class).size(), index.getMethodsAnnotatedWith(Marked.class).size());
+    assertEquals(new HashSet<MetaMethod>(built.getMethodsAnnotatedWith(Marked.class)),
+        new HashSet<MetaMethod>(index.getMethodsAnnotatedWith(Marked.class)));
+    assertEquals(new HashSet<MetaField>(built.getFieldsAnnotatedWith(Marked.class)),
+        new HashSet<MetaField>(index.getFieldsAnnotatedWith(Marked.class)));
+    assertEquals(new HashSet<MetaParameter>(built.getParametersAnnotatedWith(Marked.class)),
+        new HashSet<MetaParameter>(index.getParametersAnnotatedWith(Marked.class)));
+    assertEquals(names(built.getSubTypesOf(MetaClassFactory.get(Shape.class))),
+        names(index.getSubTypesOf(MetaClassFactory.get(Shape.class))));
+  }
+
+  @Test
+  public void testClassScannerIndexesClassesAddedToCacheWithoutRebuilding() {
+    final MetaClassCache metaClassCache = MetaClassFactory.getMetaClassCache();
+    fixtures();
+
+    final Collection<MetaClass> before = ClassScanner.getTypesAnnotatedWith(Marked.class);
+    assertEquals(names(scanTypes(metaClassCache.getAllCached(), Marked.class)), names(before));
+    assertFalse(names(before).contains(LateArrival.class.getName()));
+
+    final int version = metaClassCache.getVersion();
+    final MetaClass late = MetaClassFactory.get(LateArrival.class);
+    assertEquals("adding a class must not invalidate the cache", version, metaClassCache.getVersion());
+
+    final Collection<MetaClass> cached = metaClassCache.getAllCached();
+    assertTrue(names(ClassScanner.getTypesAnnotatedWith(Marked.class)).contains(late.getFullyQualifiedName()));
+    assertEquals(names(scanTypes(cached, Marked.class)), names(ClassScanner.getTypesAnnotatedWith(Marked.class)));
+    assertEquals(scanMethods(cached, Marked.class),
+        new HashSet<MetaMethod>(ClassScanner.getMethodsAnnotatedWith(Marked.class, null, null)));
+    assertEquals(scanFields(cached, Marked.class),
+        new HashSet<MetaField>(ClassScanner.getFieldsAnnotatedWith(Marked.class, null, null)));
+    assertEquals(scanParameters(cached, Marked.class),
+        new HashSet<MetaParameter>(ClassScanner.getParametersAnnotatedWith(Marked.class, null)));
+  }
+
+  private static Set<MetaClass> scanTypes(final Collection<MetaClass> classes,
+          final Class<? extends Annotation> annotation) {
+    final Set<MetaClass> result = new HashSet<MetaClass>();
+    for (final MetaClass metaClass : classes) {
+      if (metaClass.isAnnotationPresent(annotation)) {
+        result.add(metaClass);
+      }
+    }
+    return result;
+  }
+
+  private static Set<MetaMethod> scanMethods(final Collection<MetaClass> classes,
+          final Class<? extends Annotation> annotation) {
+    final Set<MetaMethod> result = new HashSet<MetaMethod>();
+    for (final MetaClass metaClass : classes) {
+      for (final MetaMethod method : metaClass.getDeclaredMethods()) {
+        if (method.isAnnotationPresent(annotation)) {
+          result.add(method);
+        }
+      }
+    }
+    return result;
+  }
+
+  private static Set<MetaField> scanFields(final Collection<MetaClass> classes,
+          final Class<? extends Annotation> annotation) {
+    final Set<MetaField> result = new HashSet<MetaField>();
+    for (final MetaClass metaClass : classes) {
+      for (final MetaField field : metaClass.getDeclaredFields()) {
+        if (field.isAnnotationPresent(annotation)) {
+          result.add(field);
+        }
+      }
+    }
+    return result;
+  }
+
+  private static Set<MetaParameter> scanParameters(final Collection<MetaClass> classes,
+          final Class<? extends Annotation> annotation) {
+    final Set<MetaParameter> result = new HashSet<MetaParameter>();
+    for (final MetaClass metaClass : classes) {
+      for (final MetaMethod method : metaClass.getDeclaredMethods()) {
+        for (final MetaParameter parameter : method.getParameters()) {
+          if (parameter.isAnnotationPresent(annotation)) {
+            result.add(parameter);
+          }
+        }
+      }
+    }
+    return result;
+  }
+
+  private static Set<MetaClass> scanSubtypes(final Collection<MetaClass> classes, final MetaClass root) {
+    final Set<MetaClass> result = new HashSet<MetaClass>();
+    for (final MetaClass metaClass : classes) {
+      if (!NullType.class.getName().equals(metaClass.getFullyQualifiedName())
+          && !root.getFullyQualifiedName().equals(metaClass.getFullyQualifiedName())
+          && root.isAssignableFrom(metaClass)) {
+        result.add(metaClass.getErased());
+      }
+    }
+    return result;
+  }
+
+  private static Set<String> names(final Collection<MetaClass> classes) {
+    final Set<String> names = new HashSet<String>();
+    for (final MetaClass metaClass : classes) {
+      names.add(metaClass.getFullyQualifiedName());
+    }
+    return names;
+  }
+}
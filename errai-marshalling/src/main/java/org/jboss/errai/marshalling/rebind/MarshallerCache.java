@@ -0,0 +1,268 @@
+/*
+ * Copyright (C) 2016 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.errai.marshalling.rebind;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.util.Map;
+import java.util.Properties;
+import java.util.SortedMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jboss.errai.common.metadata.RebindUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A persistent cache of generated marshaller sources, kept in the Errai cache directory (see
+ * {@link RebindUtils#getErraiCacheDir()}) so that it survives across builds. Each entry is stored together with the
+ * fingerprint it was generated from and is only returned if the fingerprint still matches; a fingerprint is
+ * typically derived from {@link org.jboss.errai.marshalling.rebind.api.model.MappingDefinition#getFingerprint()}.
+ * <p>
+ * Entries come in two flavours: single marshallers, keyed by the fully qualified name of the portable type, and
+ * whole marshaller factories, which are keyed by the fingerprints of every type they contain. The latter is used for
+ * the server-side factory, whose marshallers are inner classes that share the imports of the factory and therefore
+ * cannot be reused individually.
+ * <p>
+ * Setting the system property <tt>errai.devel.nocache</tt> disables lookups; generated sources are still stored. The
+ * property is read on every lookup.
+ * <p>
+ * Files are written to a temporary file first and then renamed, so that a build which is interrupted, or which runs
+ * concurrently with another one, never leaves a partially written entry behind.
+ */
+public class MarshallerCache {
+  private static final Logger log = LoggerFactory.getLogger(MarshallerCache.class);
+
+  private static final String FINGERPRINT_HEADER = "// errai-marshaller-fingerprint: ";
+  private static final String FINGERPRINTS_SUFFIX = ".fingerprints";
+  private static final String NOCACHE_PROPERTY = "errai.devel.nocache";
+
+  private static final ConcurrentMap<MarshallerOutputTarget, MarshallerCache> caches =
+      new ConcurrentHashMap<MarshallerOutputTarget, MarshallerCache>();
+
+  private final File cacheDir;
+  private final AtomicInteger hits = new AtomicInteger();
+  private final AtomicInteger misses = new AtomicInteger();
+
+  public MarshallerCache(final File cacheDir) {
+    this.cacheDir = cacheDir;
+  }
+
+  public static MarshallerCache getFor(final MarshallerOutputTarget target) {
+    MarshallerCache cache = caches.get(target);
+    if (cache == null) {
+      final File dir = new File(RebindUtils.getErraiCacheDir(), "marshallers" + File.separator
+          + target.name().toLowerCase());
+      cache = new MarshallerCache(dir);
+      final MarshallerCache existing = caches.putIfAbsent(target, cache);
+      if (existing != null) {
+        cache = existing;
+      }
+    }
+    return cache;
+  }
+
+  /**
+   * Returns the cached marshaller source for the specified type, or null if there is none or it was generated from
+   * a different fingerprint.
+   */
+  public String get(final String typeName, final String fingerprint) {
+    final String source = isLookupDisabled() ? null : read(getSourceFile(typeName), fingerprint);
+    if (source == null) {
+      misses.incrementAndGet();
+    }
+    else {
+      hits.incrementAndGet();
+    }
+    return source;
+  }
+
+  public void put(final String typeName, final String fingerprint, final String source) {
+    write(getSourceFile(typeName), fingerprint, source);
+  }
+
+  /**
+   * Returns the cached source of the specified marshaller factory, or null if any of the fingerprints differs from
+   * the ones the cached factory was generated from, or types were added or removed since. Every type whose
+   * fingerprint is unchanged is counted as a hit and every other type as a miss.
+   *
+   * @param factoryName
+   *     the fully qualified name of the generated factory.
+   * @param fingerprints
+   *     the current fingerprint of every type (or setting) that goes into the factory.
+   */
+  public String getFactory(final String factoryName, final SortedMap<String, String> fingerprints) {
+    final Properties previous = isLookupDisabled() ? new Properties() : readFingerprints(factoryName);
+
+    int changed = 0;
+    for (final Map.Entry<String, String> entry : fingerprints.entrySet()) {
+      if (entry.getValue().equals(previous.getProperty(entry.getKey()))) {
+        hits.incrementAndGet();
+      }
+      else {
+        log.debug("fingerprint of {} changed", entry.getKey());
+        misses.incrementAndGet();
+        changed++;
+      }
+    }
+
+    if (changed > 0 || previous.size() != fingerprints.size()) {
+      return null;
+    }
+    return read(getSourceFile(factoryName), combine(fingerprints));
+  }
+
+  public void putFactory(final String factoryName, final SortedMap<String, String> fingerprints, final String source) {
+    write(getSourceFile(factoryName), combine(fingerprints), source);
+
+    final Properties properties = new Properties();
+    properties.putAll(fingerprints);
+    try {
+      final ByteArrayOutputStream out = new ByteArrayOutputStream();
+      properties.store(out, null);
+      writeAtomically(new File(cacheDir, fileNameFor(factoryName) + FINGERPRINTS_SUFFIX), out.toByteArray());
+    }
+    catch (IOException e) {
+      log.warn("could not write marshaller fingerprints for " + factoryName, e);
+    }
+  }
+
+  public int getHitCount() {
+    return hits.get();
+  }
+
+  public int getMissCount() {
+    return misses.get();
+  }
+
+  public void resetStatistics() {
+    hits.set(0);
+    misses.set(0);
+  }
+
+  private static boolean isLookupDisabled() {
+    return Boolean.getBoolean(NOCACHE_PROPERTY);
+  }
+
+  private Properties readFingerprints(final String factoryName) {
+    final Properties properties = new Properties();
+    final File file = new File(cacheDir, fileNameFor(factoryName) + FINGERPRINTS_SUFFIX);
+    if (file.exists()) {
+      try {
+        final InputStream in = new FileInputStream(file);
+        try {
+          properties.load(in);
+        }
+        finally {
+          in.close();
+        }
+      }
+      catch (IOException e) {
+        log.warn("could not read marshaller fingerprints for " + factoryName, e);
+        properties.clear();
+      }
+    }
+    return properties;
+  }
+
+  private File getSourceFile(final String name) {
+    return new File(cacheDir, fileNameFor(name) + ".java");
+  }
+
+  private String read(final File file, final String fingerprint) {
+    if (!file.exists()) {
+      return null;
+    }
+
+    final String content = RebindUtils.readFileToString(file);
+    final String header = FINGERPRINT_HEADER + fingerprint + "\n";
+    if (!content.startsWith(header)) {
+      return null;
+    }
+    return content.substring(header.length());
+  }
+
+  private void write(final File file, final String fingerprint, final String source) {
+    try {
+      writeAtomically(file, (FINGERPRINT_HEADER + fingerprint + "\n" + source).getBytes("UTF-8"));
+    }
+    catch (IOException e) {
+      log.warn("could not write cached marshaller " + file.getName(), e);
+    }
+  }
+
+  /**
+   * Writes the content to a temporary file in the cache directory and then renames it to the given file, replacing
+   * any previous version. Readers therefore see either the previous or the new content in full.
+   */
+  private void writeAtomically(final File file, final byte[] content) throws IOException {
+    //noinspection ResultOfMethodCallIgnored
+    cacheDir.mkdirs();
+    final File tempFile = File.createTempFile(file.getName() + ".", ".tmp", cacheDir);
+    try {
+      final OutputStream out = new FileOutputStream(tempFile);
+      try {
+        out.write(content);
+      }
+      finally {
+        out.close();
+      }
+
+      try {
+        Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE);
+      }
+      catch (AtomicMoveNotSupportedException e) {
+        Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+      }
+    }
+    finally {
+      //noinspection ResultOfMethodCallIgnored
+      tempFile.delete();
+    }
+  }
+
+  private static String combine(final SortedMap<String, String> fingerprints) {
+    try {
+      final MessageDigest md = MessageDigest.getInstance("SHA-1");
+      for (final Map.Entry<String, String> entry : fingerprints.entrySet()) {
+        md.update(entry.getKey().getBytes("UTF-8"));
+        md.update((byte) '=');
+        md.update(entry.getValue().getBytes("UTF-8"));
+        md.update((byte) '\n');
+      }
+      return RebindUtils.hashToHexString(md.digest());
+    }
+    catch (Exception e) {
+      throw new RuntimeException("failed to combine marshaller fingerprints", e);
+    }
+  }
+
+  private static String fileNameFor(final String name) {
+    return name.replaceAll("[^A-Za-z0-9_.$]", "_");
+  }
+}
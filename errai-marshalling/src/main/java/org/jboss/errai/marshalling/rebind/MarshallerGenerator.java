@@ -16,10 +16,7 @@
 
 package org.jboss.errai.marshalling.rebind;
 
-import java.io.File;
 import java.io.PrintWriter;
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.commons.lang3.StringUtils;
 import org.jboss.errai.codegen.builder.ClassStructureBuilder;
@@ -27,10 +24,10 @@ import org.jboss.errai.codegen.meta.MetaClass;
 import org.jboss.errai.codegen.meta.MetaClassFactory;
 import org.jboss.errai.codegen.meta.impl.AbstractMetaClass;
 import org.jboss.errai.codegen.meta.impl.build.BuildMetaClass;
-import org.jboss.errai.common.metadata.RebindUtils;
 import org.jboss.errai.marshalling.client.api.MarshallerFramework;
 import org.jboss.errai.marshalling.rebind.api.GeneratorMappingContextFactory;
 import org.jboss.errai.marshalling.rebind.api.MappingStrategy;
+import org.jboss.errai.marshalling.rebind.api.model.MappingDefinition;
 import org.jboss.errai.marshalling.rebind.util.MarshallingGenUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -46,8 +43,9 @@ import com.google.gwt.core.ext.UnableToCompleteException;
  * Generator used to generate marshallers for custom portable types
  * independently. In DevMode, generation is deferred until the marshaller is
  * actually needed. This is also an incremental generator. It will only generate
- * code when a portable type has changed or a new one has been introduced.
- * Otherwise, it will use a cached version of the generated marshaller code.
+ * code when the mapping of a portable type has changed or a new one has been
+ * introduced. Otherwise, it will use the generated marshaller code from the
+ * {@link MarshallerCache}, which persists across builds.
  *
  * @author Christian Sadilek <csadilek@redhat.com>
  */
@@ -55,11 +53,6 @@ public class MarshallerGenerator extends IncrementalGenerator {
   private static final Logger log = LoggerFactory.getLogger(MarshallerGenerator.class);
   private final String packageName = MarshallerFramework.class.getPackage().getName();
 
-  // We're keeping this cache of portable types to compare their contents and
-  // find out if they have changed since the last refresh.
-  private static Map<String, MetaClass> cachedPortableTypes = new ConcurrentHashMap<String, MetaClass>();
-  private static Map<String, String> cachedSourceByTypeName = new ConcurrentHashMap<String, String>();
-
   /*
    * A version id. Increment this as needed, when structural changes are made to
    * the generated output, specifically with respect to it's effect on the
@@ -67,7 +60,7 @@ public class MarshallerGenerator extends IncrementalGenerator {
    * generator results will be invalidated automatically if they were generated
    * by a version of this generator with a different version id.
    */
-  private static final long GENERATOR_VERSION_ID = 1L;
+  private static final long GENERATOR_VERSION_ID = 2L;
 
   @Override
   public RebindResult generateIncrementally(TreeLogger logger, GeneratorContext context, String typeName) throws UnableToCompleteException {
@@ -75,19 +68,24 @@ public class MarshallerGenerator extends IncrementalGenerator {
     final MetaClass type = MetaClassFactory.get(fullyQualifiedTypeName);
     final String className = MarshallerGeneratorFactory.getMarshallerImplClassName(type);
     final String marshallerTypeName = packageName + "." + className;
-    final MetaClass cachedType = cachedPortableTypes.get(fullyQualifiedTypeName);
 
     final PrintWriter printWriter = context.tryCreate(logger, packageName, className);
     if (printWriter != null) {
-      if (cachedType != null && cachedType.hashContent() == type.hashContent() && !type.isArray()) {
-        log.debug("Reusing cached marshaller for {}", fullyQualifiedTypeName);
-        printWriter.append(cachedSourceByTypeName.get(fullyQualifiedTypeName));
+      final long start = System.currentTimeMillis();
+      final MarshallerCache cache = MarshallerCache.getFor(MarshallerOutputTarget.GWT);
+      final String fingerprint = getFingerprint(context, type, className);
+      final String cachedSource = cache.get(fullyQualifiedTypeName, fingerprint);
+
+      if (cachedSource != null) {
+        printWriter.append(cachedSource);
         context.commit(logger, printWriter);
+        log.debug("Reusing cached marshaller for {} ({}ms, cache hits: {}, misses: {})", fullyQualifiedTypeName,
+            System.currentTimeMillis() - start, cache.getHitCount(), cache.getMissCount());
       } else {
-        log.debug("Generating marshaller for {}", fullyQualifiedTypeName);
         final String generatedSource = generateMarshaller(context, type, className, marshallerTypeName, logger, printWriter);
-        cachedPortableTypes.put(fullyQualifiedTypeName, type);
-        cachedSourceByTypeName.put(fullyQualifiedTypeName, generatedSource);
+        cache.put(fullyQualifiedTypeName, fingerprint, generatedSource);
+        log.debug("Generated marshaller for {} ({}ms, cache hits: {}, misses: {})", fullyQualifiedTypeName,
+            System.currentTimeMillis() - start, cache.getHitCount(), cache.getMissCount());
       }
 
       return new RebindResult(RebindMode.USE_ALL_NEW, marshallerTypeName);
@@ -97,6 +95,19 @@ public class MarshallerGenerator extends IncrementalGenerator {
     }
   }
 
+  /**
+   * The generated marshaller depends on the name it is generated under, the mapping definition of the (component)
+   * type and this generator's version.
+   */
+  private String getFingerprint(final GeneratorContext context, final MetaClass type, final String className) {
+    final MetaClass componentType = type.getOuterComponentType();
+    final MappingDefinition definition = GeneratorMappingContextFactory.getFor(context, MarshallerOutputTarget.GWT)
+        .getDefinitionsFactory().getDefinition(componentType);
+
+    return GENERATOR_VERSION_ID + ":" + className + ":" + type.getFullyQualifiedName() + ":"
+        + (definition != null ? definition.getFingerprint() : String.valueOf(componentType.hashContent()));
+  }
+
   private String generateMarshaller(final GeneratorContext context, final MetaClass type, final String className,
           final String marshallerTypeName, final TreeLogger logger, final PrintWriter printWriter) {
 
@@ -115,10 +126,6 @@ public class MarshallerGenerator extends IncrementalGenerator {
       gen = marshaller.toJavaString();
     }
     printWriter.append(gen);
-
-    final File tmpFile = new File(RebindUtils.getErraiCacheDir().getAbsolutePath() + "/" + className + ".java");
-    RebindUtils.writeStringToFile(tmpFile, gen);
-
     context.commit(logger, printWriter);
 
     return gen;
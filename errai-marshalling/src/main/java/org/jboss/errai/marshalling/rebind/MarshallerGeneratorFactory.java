@@ -25,10 +25,18 @@ import static org.jboss.errai.codegen.util.Stmt.loadVariable;
 import static org.jboss.errai.marshalling.rebind.util.MarshallingGenUtil.getVarName;
 
 import java.lang.annotation.Annotation;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.SortedMap;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 
 import javax.enterprise.context.Dependent;
 import javax.enterprise.util.TypeLiteral;
@@ -103,6 +111,12 @@ public class MarshallerGeneratorFactory {
   private static final UniqueNameGenerator uniqueGenerator = new UniqueNameGenerator();
   private static final Map<String, String> leasedNamesByTypeName = new HashMap<String, String>();
 
+  /**
+   * Set on a worker thread while it generates a marshaller in parallel. Additions to the factory requested by the
+   * mapping strategy are recorded in the shard and applied by the generating thread once the worker is done.
+   */
+  private final ThreadLocal<Shard> currentShard = new ThreadLocal<Shard>();
+
   long startTime;
 
   private MarshallerGeneratorFactory(final GeneratorContext context, final MarshallerOutputTarget target) {
@@ -125,11 +139,56 @@ public class MarshallerGeneratorFactory {
     if (target == MarshallerOutputTarget.GWT && refresh) {
       DefinitionsFactorySingleton.get().resetDefinitionsAndReload();
     }
-    gen = _generate(packageName, clazzName, callback);
+    if (target == MarshallerOutputTarget.Java) {
+      final MarshallerCache cache = MarshallerCache.getFor(target);
+      final String factoryName = packageName + "." + clazzName;
+      final SortedMap<String, String> fingerprints = getFactoryFingerprints(DefinitionsFactorySingleton.get());
+
+      cache.resetStatistics();
+      final String cached = cache.getFactory(factoryName, fingerprints);
+      if (cached != null) {
+        gen = cached;
+      }
+      else {
+        gen = _generate(packageName, clazzName, callback);
+        cache.putFactory(factoryName, fingerprints, gen);
+      }
+      log.info("marshaller cache: " + cache.getHitCount() + " unchanged, " + cache.getMissCount() + " changed; "
+          + (cached != null ? "reused" : "regenerated") + " server marshaller factory.");
+    }
+    else {
+      gen = _generate(packageName, clazzName, callback);
+    }
     log.info("generated marshaller factory class in " + (System.currentTimeMillis() - time) + "ms.");
     return gen;
   }
 
+  /**
+   * Collects the fingerprints of everything that goes into a marshaller factory: the mapping definition of every
+   * exposed type, the mapping aliases, the array signatures and the settings that influence code generation.
+   */
+  private static SortedMap<String, String> getFactoryFingerprints(final DefinitionsFactory definitionsFactory) {
+    final SortedMap<String, String> fingerprints = new TreeMap<String, String>();
+
+    final SortedSet<String> arraySignatures = new TreeSet<String>();
+    for (final MetaClass cls : definitionsFactory.getExposedClasses()) {
+      final MappingDefinition definition = definitionsFactory.getDefinition(cls.getOuterComponentType());
+      if (definition != null) {
+        fingerprints.put(cls.getFullyQualifiedName(), definition.getFingerprint());
+      }
+    }
+    for (final MetaClass arrayType : definitionsFactory.getArraySignatures()) {
+      arraySignatures.add(arrayType.getFullyQualifiedName());
+    }
+
+    fingerprints.put("@aliases", new TreeMap<String, String>(definitionsFactory.getMappingAliases()).toString());
+    fingerprints.put("@arrays", arraySignatures.toString());
+    fingerprints.put("@settings", "lazy=" + CommonConfigAttribs.LAZY_LOAD_BUILTIN_MARSHALLERS.getBoolean()
+        + ",defaultArrays=" + CommonConfigAttribs.MAKE_DEFAULT_ARRAY_MARSHALLERS.getBoolean()
+        + ",shortNames=" + SHORT_MARSHALLER_NAMES);
+    return fingerprints;
+  }
+
   private String _generate(final String packageName, final String clazzName, final MarshallerGenerationCallback callback) {
     startTime = System.currentTimeMillis();
 
@@ -153,6 +212,11 @@ public class MarshallerGeneratorFactory {
             if (done) {
               return getVarName(type);
             }
+            final Shard shard = currentShard.get();
+            if (shard != null) {
+              shard.arrayTypes.add(type.asBoxed());
+              return getVarName(type.asBoxed());
+            }
             return addArrayMarshaller(type.asBoxed(), target == MarshallerOutputTarget.GWT);
           }
 
@@ -285,6 +349,10 @@ public class MarshallerGeneratorFactory {
 
     boolean lazyEnabled = CommonConfigAttribs.LAZY_LOAD_BUILTIN_MARSHALLERS.getBoolean();
 
+    final int threads = (target == MarshallerOutputTarget.Java && !clashesWithJavaLang())
+        ? CommonConfigAttribs.MARSHALLER_GENERATION_THREADS.getInt() : 1;
+    final List<MetaClass> toGenerate = new ArrayList<MetaClass>();
+
     for (final MetaClass cls : exposed) {
       final MetaClass compType = cls.getOuterComponentType();
       final MappingDefinition definition = mappingContext.getDefinitionsFactory().getDefinition(compType);
@@ -302,23 +370,156 @@ public class MarshallerGeneratorFactory {
         }
       }
 
-      addMarshaller(compType);
+      if (threads > 1) {
+        toGenerate.add(compType);
+      }
+      else {
+        addMarshaller(compType);
+      }
       callback.callback(compType);
     }
+
+    if (threads > 1) {
+      generateInParallel(toGenerate, threads);
+    }
+  }
+
+  /**
+   * Generates the marshallers for the given types on a fork-join pool. Every marshaller is built and rendered on a
+   * single worker thread, since codegen contexts are confined to the thread that created them. The marshallers are
+   * added to the factory in waves: the marshallers requested by one wave (for member types and lazy types that turned
+   * out to be needed) make up the next one. Names are leased and results are added in a fixed order, so the output
+   * does not depend on thread scheduling.
+   */
+  private void generateInParallel(final List<MetaClass> types, final int threads) {
+    final ForkJoinPool pool = new ForkJoinPool(threads);
+    int generated = 0;
+    int waves = 0;
+
+    try {
+      List<MetaClass> wave = types;
+      while (!wave.isEmpty()) {
+        final List<Shard> shards = new ArrayList<Shard>();
+        for (final MetaClass type : wave) {
+          if (!mappingContext.isRendered(type)) {
+            mappingContext.markRendered(type);
+            shards.add(new Shard(type, leaseJavaMarshallerClassName(type)));
+          }
+        }
+
+        final List<ForkJoinTask<?>> tasks = new ArrayList<ForkJoinTask<?>>(shards.size());
+        for (final Shard shard : shards) {
+          tasks.add(pool.submit(new Runnable() {
+            @Override
+            public void run() {
+              generateShard(shard);
+            }
+          }));
+        }
+        for (final ForkJoinTask<?> task : tasks) {
+          task.join();
+        }
+
+        wave = new ArrayList<MetaClass>();
+        for (final Shard shard : shards) {
+          classStructureBuilder.declaresInnerClass(new InnerClass(shard.marshaller));
+          addMarshaller(shard.marshaller, shard.type);
+
+          for (final MetaClass arrayType : shard.arrayTypes) {
+            addArrayMarshaller(arrayType, false);
+          }
+          for (final MetaClass type : shard.unlazyTypes) {
+            if (markUnlazy(type)) {
+              wave.add(type);
+            }
+          }
+          wave.addAll(shard.requestedTypes);
+        }
+
+        generated += shards.size();
+        waves++;
+      }
+    }
+    finally {
+      pool.shutdown();
+    }
+
+    log.info("generated " + generated + " marshallers in " + waves + " waves on " + threads + " threads.");
+  }
+
+  private void generateShard(final Shard shard) {
+    currentShard.set(shard);
+    try {
+      final MappingStrategy strategy = MappingStrategyFactory
+          .createStrategy(false, GeneratorMappingContextFactory.getFor(context, target), shard.type);
+      final BuildMetaClass marshaller = strategy.getMapper().getMarshaller(shard.marshallerClassName)
+          .getClassDefinition();
+
+      // render while still on this thread; the result is cached in the class and embedded as is by the factory. The
+      // fresh context has no auto-import, so the source only relies on the implicit java.lang imports.
+      marshaller.setInner(true);
+      marshaller.setContext(Context.create());
+      marshaller.toJavaString();
+      shard.marshaller = marshaller;
+    }
+    finally {
+      currentShard.remove();
+    }
+  }
+
+  /**
+   * Marshallers generated in parallel refer to java.lang types by their simple names. That breaks if the factory
+   * imports a portable type with the same simple name, in which case the marshallers are generated sequentially.
+   */
+  private boolean clashesWithJavaLang() {
+    final Set<String> names = new HashSet<String>();
+    for (final MetaClass cls : mappingContext.getDefinitionsFactory().getExposedClasses()) {
+      names.add(cls.getFullyQualifiedName());
+    }
+    names.addAll(mappingContext.getDefinitionsFactory().getMappingAliases().keySet());
+
+    for (final String name : names) {
+      final String simpleName = name.substring(name.lastIndexOf('.') + 1);
+      if (!name.equals("java.lang." + simpleName) && MetaClassFactory.canLoadClass("java.lang." + simpleName)) {
+        log.info("not generating marshallers in parallel: " + name + " clashes with java.lang." + simpleName);
+        return true;
+      }
+    }
+    return false;
   }
 
   public void addOrMarkMarshallerUnlazy(final MetaClass type) {
+    final Shard shard = currentShard.get();
+    if (shard != null) {
+      shard.unlazyTypes.add(type);
+    }
+    else if (markUnlazy(type)) {
+      addMarshaller(type);
+    }
+  }
+
+  /**
+   * @return true if the type has a lazy marshaller that needs to be generated now.
+   */
+  private boolean markUnlazy(final MetaClass type) {
     final MappingDefinition definition = mappingContext.getDefinitionsFactory().getDefinition(type);
     if (definition == null) {
       unlazyMarshallers.add(type.getFullyQualifiedName());
     }
     else if (definition.isLazy()) {
       definition.setLazy(false);
-      addMarshaller(type);
+      return true;
     }
+    return false;
   }
 
   public void addMarshaller(final MetaClass type) {
+    final Shard shard = currentShard.get();
+    if (shard != null) {
+      shard.requestedTypes.add(type);
+      return;
+    }
+
     if (!mappingContext.isRendered(type)) {
       mappingContext.markRendered(type);
       BuildMetaClass customMarshaller = null;
@@ -335,16 +536,7 @@ public class MarshallerGeneratorFactory {
         final MappingStrategy strategy = MappingStrategyFactory
             .createStrategy(false, GeneratorMappingContextFactory.getFor(context, target), type);
 
-        final String marshallerClassName;
-        if (SHORT_MARSHALLER_NAMES) {
-          marshallerClassName = MarshallerGeneratorFactory.SHORT_MARSHALLER_PREFIX
-                  + uniqueGenerator.uniqueName(
-                          NameUtil.shortenDerivedIdentifier(NameUtil.derivedIdentifier(type.getFullyQualifiedName())))
-                  + "Impl";
-        } else {
-          marshallerClassName = MarshallerGeneratorFactory.MARSHALLER_NAME_PREFIX + MarshallingGenUtil.getVarName(type) + "Impl";
-        }
-
+        final String marshallerClassName = leaseJavaMarshallerClassName(type);
         final ClassStructureBuilder<?> marshaller = strategy.getMapper().getMarshaller(marshallerClassName);
         customMarshaller = marshaller.getClassDefinition();
       }
@@ -353,6 +545,17 @@ public class MarshallerGeneratorFactory {
     }
   }
 
+  private static String leaseJavaMarshallerClassName(final MetaClass type) {
+    if (SHORT_MARSHALLER_NAMES) {
+      return MarshallerGeneratorFactory.SHORT_MARSHALLER_PREFIX
+              + uniqueGenerator.uniqueName(
+                      NameUtil.shortenDerivedIdentifier(NameUtil.derivedIdentifier(type.getFullyQualifiedName())))
+              + "Impl";
+    } else {
+      return MarshallerGeneratorFactory.MARSHALLER_NAME_PREFIX + MarshallingGenUtil.getVarName(type) + "Impl";
+    }
+  }
+
   private void addMarshaller(final BuildMetaClass marshaller, final MetaClass type) {
     updateConditionalBlock(type);
 
@@ -597,4 +800,21 @@ public class MarshallerGeneratorFactory {
             .loadVariable("a0").invoke("equals", Stmt.loadLiteral(type.getFullyQualifiedName())));
     }
   }
+
+  /**
+   * The marshaller of one type generated on a worker thread, along with the additions to the factory it requested.
+   */
+  private static class Shard {
+    private final MetaClass type;
+    private final String marshallerClassName;
+    private final List<MetaClass> requestedTypes = new ArrayList<MetaClass>();
+    private final List<MetaClass> unlazyTypes = new ArrayList<MetaClass>();
+    private final List<MetaClass> arrayTypes = new ArrayList<MetaClass>();
+    private BuildMetaClass marshaller;
+
+    private Shard(final MetaClass type, final String marshallerClassName) {
+      this.type = type;
+      this.marshallerClassName = marshallerClassName;
+    }
+  }
 }
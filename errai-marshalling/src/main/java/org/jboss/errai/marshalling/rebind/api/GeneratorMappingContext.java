@@ -17,9 +17,11 @@
 package org.jboss.errai.marshalling.rebind.api;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.jboss.errai.codegen.builder.ClassStructureBuilder;
 import org.jboss.errai.codegen.meta.MetaClass;
@@ -47,7 +49,7 @@ public class GeneratorMappingContext implements ServerMappingContext {
   private final ClassStructureBuilder<?> classStructureBuilder;
   private final ArrayMarshallerCallback arrayMarshallerCallback;
 
-  private final Set<String> exposedMembers = new HashSet<String>();
+  private final Set<String> exposedMembers = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
 
   public GeneratorMappingContext(final MarshallerGeneratorFactory marshallerGeneratorFactory,
       final ClassStructureBuilder<?> classStructureBuilder,
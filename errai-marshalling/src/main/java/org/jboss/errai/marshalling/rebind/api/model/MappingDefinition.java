@@ -17,11 +17,14 @@
 package org.jboss.errai.marshalling.rebind.api.model;
 
 import org.jboss.errai.codegen.meta.MetaClass;
+import org.jboss.errai.codegen.meta.MetaClassMember;
 import org.jboss.errai.codegen.meta.impl.java.JavaReflectionClass;
+import org.jboss.errai.common.metadata.RebindUtils;
 import org.jboss.errai.marshalling.client.api.Marshaller;
 import org.jboss.errai.marshalling.rebind.api.model.impl.NoConstructMapping;
 import org.jboss.errai.marshalling.rebind.api.model.impl.SimpleConstructorMapping;
 
+import java.security.MessageDigest;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
@@ -177,6 +180,72 @@ public class MappingDefinition {
     this.lazy = lazy;
   }
 
+  /**
+   * Returns a fingerprint of everything in this definition that shapes the generated marshaller: the content of the
+   * mapped class, the instantiation and member mappings (including the content of each mapped type) and the
+   * marshaller settings. Definitions with equal fingerprints produce the same marshaller, so the fingerprint can be
+   * used to decide whether a previously generated marshaller is still valid.
+   *
+   * @return a hex encoded SHA-1 hash of this definition.
+   */
+  public String getFingerprint() {
+    final StringBuilder sb = new StringBuilder(512);
+    appendType(sb, toMap);
+    sb.append(";lazy=").append(lazy)
+        .append(";doNotGenerate=").append(doNotGenerate)
+        .append(";client=").append(clientMarshallerClass == null ? "" : clientMarshallerClass.getName())
+        .append(";server=").append(serverMarshallerClass == null ? "" : serverMarshallerClass.getName());
+
+    if (instantiationMapping != null) {
+      sb.append(";instantiation=").append(instantiationMapping.getClass().getName());
+      appendMember(sb, instantiationMapping.getMember());
+      for (final Mapping mapping : instantiationMapping.getMappings()) {
+        appendMapping(sb, mapping);
+      }
+    }
+
+    for (final MemberMapping mapping : memberMappings) {
+      appendMapping(sb, mapping);
+      // read-only and write-only mappings throw if asked for the member they don't have.
+      if (mapping.canWrite()) {
+        appendMember(sb, mapping.getBindingMember());
+      }
+      if (mapping.canRead()) {
+        appendMember(sb, mapping.getReadingMember());
+      }
+      sb.append(mapping.canRead() ? 'r' : '-').append(mapping.canWrite() ? 'w' : '-');
+    }
+
+    try {
+      final MessageDigest md = MessageDigest.getInstance("SHA-1");
+      return RebindUtils.hashToHexString(md.digest(sb.toString().getBytes("UTF-8")));
+    }
+    catch (Exception e) {
+      throw new RuntimeException("failed to generate fingerprint for " + toMap, e);
+    }
+  }
+
+  private static void appendMapping(final StringBuilder sb, final Mapping mapping) {
+    sb.append(";mapping=").append(mapping.getKey()).append(':');
+    appendType(sb, mapping.getType());
+    sb.append("->");
+    appendType(sb, mapping.getTargetType());
+  }
+
+  private static void appendMember(final StringBuilder sb, final MetaClassMember member) {
+    sb.append('@');
+    if (member != null) {
+      sb.append(member.getDeclaringClassName()).append('.').append(member.getName())
+          .append('/').append(member.getClass().getSimpleName());
+    }
+  }
+
+  private static void appendType(final StringBuilder sb, final MetaClass type) {
+    if (type != null) {
+      sb.append(type.getFullyQualifiedNameWithTypeParms()).append('#').append(type.hashContent());
+    }
+  }
+
   @Override
   public String toString() {
     return "MappingDefinition [mappingClass=" + getMappingClass() + ", clientMarshallerClass="
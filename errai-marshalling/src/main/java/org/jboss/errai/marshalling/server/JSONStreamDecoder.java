@@ -13,18 +13,16 @@
  * See the License for the specific language governing permissions and
  * limitations under the License.
  */
-
 package org.jboss.errai.marshalling.server;
 
+import org.jboss.errai.common.client.protocols.MessageParts;
+import org.jboss.errai.common.client.protocols.SerializationParts;
 import org.jboss.errai.marshalling.client.api.json.EJValue;
 import org.jboss.errai.marshalling.server.json.impl.ErraiJSONValue;
 
-import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.io.UnsupportedEncodingException;
-import java.nio.CharBuffer;
+import java.nio.charset.Charset;
 import java.util.ArrayList;
 import java.util.LinkedHashMap;
 import java.util.List;
@@ -34,17 +32,76 @@ import java.util.Map;
  * High-performance stream JSON parser. Provides the decoding algorithm to interpret the Errai Wire Protcol,
  * including serializable types.  This parser always assumes the outer payload is a Map. So it probably shouldn't
  * be used as a general parser.
+ * <p/>
+ * The parser works on UTF-8 encoded bytes directly. The input stream is read into a buffer that is pooled per thread,
+ * and characters are only decoded for the contents of string literals. Strings that match one of the keys of the
+ * Errai protocol are returned as the canonical instance of that key, without allocating a new string.
  *
  * @author Mike Brock
  * @since 1.1
  */
 public class JSONStreamDecoder {
-  private final CharBuffer buffer;
-  private final BufferedReader reader;
+  private static final Charset UTF_8 = Charset.forName("UTF-8");
+  private static final Charset ISO_8859_1 = Charset.forName("ISO-8859-1");
+
+  /**
+   * Pooled input buffers larger than this are not kept after use, so that a single large request does not pin a
+   * large buffer to a thread.
+   */
+  private static final int MAX_RETAINED_BUFFER_SIZE = 256 * 1024;
+
+  private static final ThreadLocal<byte[]> pooledBuffer = new ThreadLocal<byte[]>() {
+    @Override
+    protected byte[] initialValue() {
+      return new byte[4096];
+    }
+  };
+
+  private static final int MAX_KNOWN_KEY_LENGTH = 32;
+  private static final String[][] knownKeys = new String[MAX_KNOWN_KEY_LENGTH + 1][];
+
+  static {
+    final List<String> keys = new ArrayList<String>();
+    keys.add(SerializationParts.ENCODED_TYPE);
+    keys.add(SerializationParts.OBJECT_ID);
+    keys.add(SerializationParts.INSTANTIATE_ONLY);
+    keys.add(SerializationParts.NUMERIC_VALUE);
+    keys.add(SerializationParts.NULL_VALUE);
+    keys.add(SerializationParts.QUALIFIED_VALUE);
+    keys.add(SerializationParts.ENUM_STRING_VALUE);
+    keys.add(SerializationParts.MARSHALLED_TYPES);
+    keys.add("MethodParms");
+    for (final MessageParts part : MessageParts.values()) {
+      keys.add(part.name());
+    }
+
+    for (final String key : keys) {
+      final int len = key.length();
+      if (len > MAX_KNOWN_KEY_LENGTH) {
+        continue;
+      }
+
+      final String[] existing = knownKeys[len];
+      final String[] updated;
+      if (existing == null) {
+        updated = new String[1];
+      }
+      else {
+        updated = new String[existing.length + 1];
+        System.arraycopy(existing, 0, updated, 0, existing.length);
+      }
+      updated[updated.length - 1] = key.intern();
+      knownKeys[len] = updated;
+    }
+  }
+
+  private final InputStream inStream;
 
-  private char carry;
-  private int read;
-  private boolean initial = true;
+  private byte[] buf;
+  private int pos;
+  private int limit;
+
+  private StringBuilder scratch;
 
   /**
    * Decodes the JSON payload by reading from the given stream of UTF-8 encoded
@@ -58,53 +115,88 @@ public class JSONStreamDecoder {
    *          of the JSON message to be parsed.
    */
   public JSONStreamDecoder(final InputStream inStream) {
-    this.buffer = CharBuffer.allocate(25);
-    try {
-      this.reader = new BufferedReader(
-              new InputStreamReader(inStream, "UTF-8")
-      );
-    }
-    catch (UnsupportedEncodingException e) {
-      throw new Error("UTF-8 is not supported by this JVM?", e);
-    }
+    this.inStream = inStream;
+  }
+
+  /**
+   * Decodes the JSON payload contained in the specified range of a byte array.
+   *
+   * @param bytes
+   *          the UTF-8 encoded JSON message.
+   * @param offset
+   *          the index of the first byte of the message.
+   * @param length
+   *          the number of bytes in the message.
+   */
+  public JSONStreamDecoder(final byte[] bytes, final int offset, final int length) {
+    this.inStream = null;
+    this.buf = bytes;
+    this.pos = offset;
+    this.limit = offset + length;
   }
 
   public static EJValue decode(final InputStream instream) throws IOException {
     return new JSONStreamDecoder(instream).parse();
   }
 
-  public char read() throws IOException {
-    if (carry != 0) {
-      final char oldCarry = carry;
-      carry = 0;
-      return oldCarry;
-    }
-    if (read <= 0) {
-      if (!initial) buffer.rewind();
-      initial = false;
-      if ((read = reader.read(buffer)) <= 0) {
-        return 0;
-      }
-      buffer.rewind();
-    }
-    read--;
-    return buffer.get();
+  public static EJValue decode(final byte[] bytes, final int offset, final int length) {
+    return new JSONStreamDecoder(bytes, offset, length).parse();
   }
 
   public EJValue parse() {
     try {
-      return new ErraiJSONValue(_parse(new OuterContext()));
+      if (inStream == null) {
+        return new ErraiJSONValue(_parse(new OuterContext()));
+      }
+
+      fill();
+      try {
+        return new ErraiJSONValue(_parse(new OuterContext()));
+      }
+      finally {
+        if (buf.length <= MAX_RETAINED_BUFFER_SIZE) {
+          pooledBuffer.set(buf);
+        }
+        buf = null;
+      }
     }
     catch (Exception e) {
       throw new RuntimeException(e);
     }
   }
 
+  /**
+   * Reads the whole input stream into the pooled buffer of this thread, growing it as needed.
+   */
+  private void fill() throws IOException {
+    byte[] b = pooledBuffer.get();
+    // the buffer is handed back once parsing completes; this guards against re-entrant use on the same thread.
+    pooledBuffer.set(null);
+    if (b == null) {
+      b = new byte[4096];
+    }
+
+    int len = 0;
+    int r;
+    while ((r = inStream.read(b, len, b.length - len)) != -1) {
+      len += r;
+      if (len == b.length) {
+        final byte[] grown = new byte[b.length << 1];
+        System.arraycopy(b, 0, grown, 0, len);
+        b = grown;
+      }
+    }
+
+    buf = b;
+    pos = 0;
+    limit = len;
+  }
+
   private Object _parse(Context ctx) throws IOException {
-    char c;
-    StringBuilder appender;
-    while ((c = read()) != 0) {
-      switch (c) {
+    final byte[] buf = this.buf;
+    int c;
+    while (pos < limit) {
+      switch (c = buf[pos++]) {
         case '[':
           ctx.addValue(_parse(new ArrayContext(new ArrayList<Object>())));
           break;
@@ -123,29 +215,7 @@ public class JSONStreamDecoder {
 
         case '"':
         case '\'':
-          char term = c;
-          appender = new StringBuilder(100);
-          StrCapture:
-          while ((c = read()) != 0) {
-            switch (c) {
-              case '\\':
-                appender.append(handleEscapeSequence());
-                break;
-              case '"':
-              case '\'':
-                if (c == term) {
-                  ctx.addValue(appender.toString());
-                  term = 0;
-                  break StrCapture;
-                }
-              default:
-                appender.append(c);
-            }
-          }
-
-          if (term != 0) {
-            throw new RuntimeException("unterminated string literal");
-          }
+          ctx.addValue(parseString(c));
           break;
 
         case ':':
@@ -153,18 +223,12 @@ public class JSONStreamDecoder {
 
         default:
           if (isNumberStart(c)) {
-            carry = c;
+            pos--;
             ctx.addValue(parseDouble());
-            break;
           }
-          else if (Character.isJavaIdentifierPart(c)) {
-            appender = new StringBuilder(100).append(c);
-
-            while (((c = read()) != 0) && Character.isJavaIdentifierPart(c)) {
-              appender.append(c);
-            }
-
-            String s = appender.toString();
+          else if (c < 0 || Character.isJavaIdentifierPart(c)) {
+            pos--;
+            final String s = parseIdentifier();
 
             if (s.length() > 5) ctx.addValue(s);
             else if ("null".equals(s)) {
@@ -179,8 +243,6 @@ public class JSONStreamDecoder {
             else {
               ctx.addValue(s);
             }
-
-            if (c != 0) carry = c;
           }
       }
     }
@@ -188,9 +250,132 @@ public class JSONStreamDecoder {
     return ctx.record();
   }
 
+  /**
+   * Parses a string literal, starting just after its opening quote. Literals without escape sequences are decoded
+   * straight from the buffer; only literals with escape sequences are assembled character by character.
+   */
+  private String parseString(final int term) throws IOException {
+    final byte[] buf = this.buf;
+    final int start = pos;
+    boolean ascii = true;
+
+    while (pos < limit) {
+      final byte b = buf[pos];
+      if (b == term) {
+        final String s = newString(start, pos, ascii);
+        pos++;
+        return s;
+      }
+      else if (b == '\\') {
+        return parseEscapedString(term, start);
+      }
+      else if (b < 0) {
+        ascii = false;
+      }
+      pos++;
+    }
+
+    throw new RuntimeException("unterminated string literal");
+  }
+
+  private String parseEscapedString(final int term, final int start) throws IOException {
+    if (scratch == null) {
+      scratch = new StringBuilder(100);
+    }
+    final StringBuilder appender = scratch;
+    appender.setLength(0);
+    appender.append(new String(buf, start, pos - start, UTF_8));
+
+    int runStart = pos;
+    while (pos < limit) {
+      final byte b = buf[pos];
+      if (b == term) {
+        appendRun(appender, runStart, pos);
+        pos++;
+        return appender.toString();
+      }
+      else if (b == '\\') {
+        appendRun(appender, runStart, pos);
+        pos++;
+        appender.append(handleEscapeSequence());
+        runStart = pos;
+      }
+      else {
+        pos++;
+      }
+    }
+
+    throw new RuntimeException("unterminated string literal");
+  }
+
+  private void appendRun(final StringBuilder appender, final int start, final int end) {
+    for (int i = start; i < end; i++) {
+      if (buf[i] < 0) {
+        appender.append(new String(buf, i, end - i, UTF_8));
+        return;
+      }
+      appender.append((char) buf[i]);
+    }
+  }
+
+  private String parseIdentifier() {
+    final int start = pos;
+    boolean ascii = true;
+
+    while (pos < limit) {
+      final byte b = buf[pos];
+      if (b < 0) {
+        ascii = false;
+      }
+      else if (!Character.isJavaIdentifierPart(b)) {
+        break;
+      }
+      pos++;
+    }
+
+    return newString(start, pos, ascii);
+  }
+
+  private String newString(final int start, final int end, final boolean ascii) {
+    final int len = end - start;
+    if (ascii) {
+      final String known = knownKey(start, len);
+      if (known != null) {
+        return known;
+      }
+      return new String(buf, start, len, ISO_8859_1);
+    }
+    return new String(buf, start, len, UTF_8);
+  }
+
+  private String knownKey(final int start, final int len) {
+    if (len > MAX_KNOWN_KEY_LENGTH) {
+      return null;
+    }
+    final String[] candidates = knownKeys[len];
+    if (candidates == null) {
+      return null;
+    }
+
+    Candidates:
+    for (final String candidate : candidates) {
+      for (int i = 0; i < len; i++) {
+        if (candidate.charAt(i) != buf[start + i]) {
+          continue Candidates;
+        }
+      }
+      return candidate;
+    }
+    return null;
+  }
+
   private char handleEscapeSequence() throws IOException {
-    char c;
-    switch (c = read()) {
+    if (pos >= limit) {
+      throw new RuntimeException("unterminated string literal");
+    }
+
+    final char c;
+    switch (c = (char) buf[pos++]) {
       case '\\':
         return '\\';
       case '/':
@@ -211,16 +396,21 @@ public class JSONStreamDecoder {
         return '\"';
       case 'u':
         //handle unicode
-        char[] unicodeSeq = new char[4];
+        int value = 0;
         int i = 0;
-        for (; i < 4 && isValidHexPart(c = read()); i++) {
-          unicodeSeq[i] = c;
+        for (; i < 4 && pos < limit; i++) {
+          final int digit = Character.digit(buf[pos], 16);
+          if (digit < 0) {
+            break;
+          }
+          value = (value << 4) | digit;
+          pos++;
         }
         if (i != 4) {
           throw new RuntimeException("illegal unicode escape sequence: expected 4 hex characters after \\u");
         }
 
-        return (char) Integer.decode("0x" + new String(unicodeSeq)).intValue();
+        return (char) value;
 
       default:
         throw new RuntimeException("illegal escape sequence: " + c);
@@ -272,89 +462,101 @@ public class JSONStreamDecoder {
    * <b>'E-'</b>
    * </dl>
    *
+   * Integers of up to 15 digits, which is most of what the bus sends, are computed directly from the buffer; all
+   * other literals are handed to {@link Double#parseDouble(String)}.
+   *
    * @return The number that was parsed from the input stream.
    * <p><i>Note on side effects:</i>after this method returns, the next
    * @throws IOException
    */
   private double parseDouble() throws IOException {
-    final StringBuilder sb = new StringBuilder(25);
+    final byte[] buf = this.buf;
+    final int start = pos;
 
     State state = State.READ_SIGN;
+    boolean integral = true;
+    long integralValue = 0;
 
-    char c;
+    int c;
 
     recognize:
-    while ((c = read()) != 0) {
+    while (pos < limit) {
+      c = buf[pos];
       switch (state) {
 
       case READ_SIGN:
         if (c == '-' || ('0' <= c && c <= '9')) {
-          sb.append(c);
+          if (c != '-') {
+            integralValue = c - '0';
+          }
           state = State.READ_INT;
         }
         else {
-          throw new NumberFormatException("Found '" + c + "' but expected '-' or a digit 1-9");
+          throw new NumberFormatException("Found '" + (char) c + "' but expected '-' or a digit 1-9");
         }
         break;
 
       case READ_INT:
         if ('0' <= c && c <= '9') {
-          sb.append(c);
+          integralValue = integralValue * 10 + (c - '0');
         }
         else if (c == '.') {
-          sb.append(c);
+          integral = false;
           state = State.READ_FRAC;
         }
         else if (c == 'E' || c == 'e') {
-          sb.append(c);
+          integral = false;
           state = State.READ_EXP_SIGN;
         }
         else {
           // found the end of the numeric literal
-          carry = c;
           break recognize;
         }
         break;
 
       case READ_FRAC:
         if ('0' <= c && c <= '9') {
-          sb.append(c);
+          // keep reading
         }
         else if (c == 'E' || c == 'e') {
-          sb.append(c);
           state = State.READ_EXP_SIGN;
         }
         else {
           // found the end of the numeric literal
-          carry = c;
           break recognize;
         }
         break;
 
       case READ_EXP_SIGN:
         if (c == '-' || c == '+' || ('0' <= c && c <= '9')) {
-          sb.append(c);
           state = State.READ_EXP;
         }
         else {
-          throw new NumberFormatException("The numeric literal \"" + sb + "\" is malformed (can't end with e or E)");
+          throw new NumberFormatException("The numeric literal \""
+              + new String(buf, start, pos - start, ISO_8859_1) + "\" is malformed (can't end with e or E)");
         }
         break;
 
       case READ_EXP:
         if ('0' <= c && c <= '9') {
-          sb.append(c);
+          // keep reading
         }
         else {
           // found the end of the numeric literal
-          carry = c;
           break recognize;
         }
         break;
       }
+      pos++;
+    }
+
+    final boolean negative = buf[start] == '-';
+    final int digits = pos - start - (negative ? 1 : 0);
+    if (integral && digits > 0 && digits <= 15) {
+      return negative ? -(double) integralValue : (double) integralValue;
     }
 
-    return Double.parseDouble(sb.toString());
+    return Double.parseDouble(new String(buf, start, pos - start, ISO_8859_1));
   }
 
   /**
@@ -369,27 +571,7 @@ public class JSONStreamDecoder {
    *          the character to test
    * @return true if c is a numeric digit, '-', or '.'.
    */
-  private static boolean isNumberStart(char c) {
-    switch (c) {
-      case '.':
-      case '-':
-      case '0':
-      case '1':
-      case '2':
-      case '3':
-      case '4':
-      case '5':
-      case '6':
-      case '7':
-      case '8':
-      case '9':
-        return true;
-      default:
-        return false;
-    }
-  }
-
-  private static boolean isValidHexPart(char c) {
+  private static boolean isNumberStart(int c) {
     switch (c) {
       case '.':
       case '-':
@@ -403,12 +585,6 @@ public class JSONStreamDecoder {
       case '7':
       case '8':
       case '9':
-      case 'A':
-      case 'B':
-      case 'C':
-      case 'D':
-      case 'E':
-      case 'F':
         return true;
       default:
         return false;
@@ -16,8 +16,6 @@
 
 package org.jboss.errai.marshalling.server.marshallers;
 
-import org.jboss.errai.codegen.meta.MetaField;
-import org.jboss.errai.codegen.meta.MetaMethod;
 import org.jboss.errai.common.client.protocols.SerializationParts;
 import org.jboss.errai.marshalling.client.api.Marshaller;
 import org.jboss.errai.marshalling.client.api.MarshallingSession;
@@ -27,24 +25,18 @@ import org.jboss.errai.marshalling.client.api.json.EJValue;
 import org.jboss.errai.marshalling.client.util.MarshallUtil;
 import org.jboss.errai.marshalling.client.util.NumbersUtils;
 import org.jboss.errai.marshalling.rebind.DefinitionsFactory;
-import org.jboss.errai.marshalling.rebind.api.model.ConstructorMapping;
-import org.jboss.errai.marshalling.rebind.api.model.FactoryMapping;
-import org.jboss.errai.marshalling.rebind.api.model.InstantiationMapping;
 import org.jboss.errai.marshalling.rebind.api.model.Mapping;
 import org.jboss.errai.marshalling.rebind.api.model.MappingDefinition;
-import org.jboss.errai.marshalling.rebind.api.model.MemberMapping;
 import org.jboss.errai.marshalling.server.EncodingSession;
-import org.jboss.errai.marshalling.server.MappingContextSingleton;
 import org.jboss.errai.marshalling.server.api.ServerMarshaller;
+import org.jboss.errai.marshalling.server.util.UTF8EncodingUtil;
 import org.mvel2.DataConversion;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.lang.reflect.Array;
-import java.lang.reflect.Constructor;
 import java.lang.reflect.Field;
-import java.lang.reflect.Method;
 import java.nio.charset.Charset;
 
 /**
@@ -52,13 +44,27 @@ import java.nio.charset.Charset;
  */
 public class DefaultDefinitionMarshaller implements ServerMarshaller<Object> {
   static final Charset UTF_8 = Charset.forName("UTF-8");
+  private static final byte[] NULL_BYTES = "null".getBytes(UTF_8);
 
   private final MappingDefinition definition;
+  private volatile DefinitionAccessors accessors;
 
   public DefaultDefinitionMarshaller(final MappingDefinition definition) {
     this.definition = definition;
   }
 
+  /**
+   * The accessors are resolved on first use rather than on construction, as the definition is still being built up
+   * by the {@link DefinitionsFactory} when this marshaller is created.
+   */
+  private DefinitionAccessors getAccessors() {
+    DefinitionAccessors a = accessors;
+    if (a == null) {
+      accessors = a = new DefinitionAccessors(definition);
+    }
+    return a;
+  }
+
   public static void setProperty(final Object i, final Field f, final Object v) {
     try {
       f.setAccessible(true);
@@ -115,50 +121,24 @@ public class DefaultDefinitionMarshaller implements ServerMarshaller<Object> {
               return newInstance;
             }
 
-            final InstantiationMapping cMapping = definition.getInstantiationMapping();
-            final Object[] parms = new Object[cMapping.getMappings().length];
-            final Class[] targetTypes = cMapping.getSignature();
+            final DefinitionAccessors.Instantiator instantiator = getAccessors().instantiator;
+            final Mapping[] mappings = instantiator.mappings;
+            final Object[] parms = new Object[mappings.length];
 
-            int i = 0;
-            for (final Mapping mapping : cMapping.getMappings()) {
-              final Marshaller<Object> marshaller = ctx.getMarshallerInstance(mapping.getType().getFullyQualifiedName());
-              //noinspection unchecked
-              parms[i] = DataConversion.convert(
-                      marshaller.demarshall(oMap.get(mapping.getKey()), ctx), targetTypes[i++]);
+            for (int i = 0; i < mappings.length; i++) {
+              parms[i] = instantiator.getMarshaller(i, ctx).demarshall(oMap.get(mappings[i].getKey()), ctx);
             }
 
-            if (cMapping instanceof ConstructorMapping) {
-              final Constructor constructor = ((ConstructorMapping) cMapping).getMember().asConstructor();
-              constructor.setAccessible(true);
-              newInstance = constructor.newInstance(parms);
-            }
-            else {
-              newInstance = ((FactoryMapping) cMapping).getMember().asMethod().invoke(null, parms);
-            }
+            newInstance = instantiator.newInstance(parms);
 
             ctx.recordObject(objID, newInstance);
           }
 
-          for (final MemberMapping mapping : definition.getWritableMemberMappings()) {
-            final EJValue o1 = oMap.get(mapping.getKey());
+          for (final DefinitionAccessors.Writer writer : getAccessors().writers) {
+            final EJValue o1 = oMap.get(writer.mapping.getKey());
 
             if (!o1.isNull()) {
-              final Marshaller<Object> marshaller
-                      = ctx.getMarshallerInstance(mapping.getType().getFullyQualifiedName());
-
-              if (mapping.getBindingMember() instanceof MetaField) {
-                final MetaField f = (MetaField) mapping.getBindingMember();
-
-                setProperty(newInstance, f.asField(),
-                        marshaller.demarshall(o1, ctx));
-              }
-              else {
-                final Method m = ((MetaMethod) mapping.getBindingMember()).asMethod();
-
-                m.invoke(newInstance, DataConversion.convert(
-                        marshaller.demarshall(o1, ctx),
-                        m.getParameterTypes()[0]));
-              }
+              writer.write(newInstance, writer.getMarshaller(ctx).demarshall(o1, ctx));
             }
           }
 
@@ -194,11 +174,12 @@ public class DefaultDefinitionMarshaller implements ServerMarshaller<Object> {
   }
 
 
+  @SuppressWarnings("unchecked")
   @Override
   public void marshall(final OutputStream outstream, final Object o, final MarshallingSession mSession) throws IOException {
 
     if (o == null) {
-      outstream.write("null".getBytes(UTF_8));
+      outstream.write(NULL_BYTES);
       return;
     }
 
@@ -233,69 +214,34 @@ public class DefaultDefinitionMarshaller implements ServerMarshaller<Object> {
     int i = 0;
     boolean first = true;
 
-    outstream.write(("{\"" + SerializationParts.ENCODED_TYPE + "\":\"" + cls.getName() + "\",\""
-            + SerializationParts.OBJECT_ID + "\":\"" + hash + "\",").getBytes(UTF_8));
+    final DefinitionAccessors accessors = getAccessors();
+    outstream.write(cls == accessors.mappingClass ? accessors.typePrefix : DefinitionAccessors.typePrefix(cls));
+    outstream.write(hash.getBytes(UTF_8));
+    outstream.write('"');
+    outstream.write(',');
 
-    for (final MemberMapping mapping : definition.getReadableMemberMappings()) {
+    for (final DefinitionAccessors.Reader reader : accessors.readers) {
       if (!first) {
         outstream.write(',');
       }
 
       i++;
-      final Object v;
+      final Object v = reader.read(o);
 
-      if (mapping.getReadingMember() instanceof MetaField) {
-        final Field field = ((MetaField) mapping.getReadingMember()).asField();
-        field.setAccessible(true);
-
-        try {
-          v = field.get(o);
-        }
-        catch (Exception e) {
-          throw new RuntimeException("error accessing field: " + field, e);
-        }
-      }
-      else {
-        final Method method = ((MetaMethod) mapping.getReadingMember()).asMethod();
-        method.setAccessible(true);
-
-        try {
-          v = method.invoke(o);
-        }
-        catch (Exception e) {
-          throw new RuntimeException("error calling getter: " + method, e);
-        }
-      }
-
-      outstream.write(("\"" + mapping.getKey() + "\"").getBytes(UTF_8));
-      outstream.write(':');
+      outstream.write(reader.keyBytes);
 
       if (v == null) {
-        outstream.write("null".getBytes(UTF_8));
+        outstream.write(NULL_BYTES);
       }
       else {
-        final DefinitionsFactory definitionsFactory = MappingContextSingleton.get().getDefinitionsFactory();
+        final Marshaller<Object> marshallerInstance = reader.getMarshaller();
 
-        if (definitionsFactory == null) {
-          throw new RuntimeException("definition factory is null!");
+        if (marshallerInstance instanceof ServerMarshaller) {
+          ((ServerMarshaller<Object>) marshallerInstance).marshall(outstream, v, ctx);
         }
-
-        final MappingDefinition definition1 = definitionsFactory.getDefinition(mapping.getType());
-
-        if (definition1 == null) {
-          throw new RuntimeException("no mapping definition for: " + mapping.getType().getFullyQualifiedName());
-        }
-
-        final Marshaller<Object> marshallerInstance = definition1.getMarshallerInstance();
-
-        if (marshallerInstance == null) {
-          throw new RuntimeException("no marshaller instance for: " + mapping.getType().getFullyQualifiedName());
+        else {
+          UTF8EncodingUtil.write(outstream, marshallerInstance.marshall(v, ctx));
         }
-
-        outstream.write(
-                marshallerInstance.marshall(v, ctx)
-                        .getBytes(UTF_8)
-        );
       }
 
       first = false;
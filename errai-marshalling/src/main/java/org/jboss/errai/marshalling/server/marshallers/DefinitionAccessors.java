@@ -0,0 +1,310 @@
+/*
+ * Copyright (C) 2016 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.errai.marshalling.server.marshallers;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.charset.Charset;
+import java.util.List;
+
+import org.jboss.errai.codegen.meta.MetaField;
+import org.jboss.errai.codegen.meta.MetaMethod;
+import org.jboss.errai.common.client.protocols.SerializationParts;
+import org.jboss.errai.marshalling.client.api.Marshaller;
+import org.jboss.errai.marshalling.client.api.MarshallingSession;
+import org.jboss.errai.marshalling.rebind.DefinitionsFactory;
+import org.jboss.errai.marshalling.rebind.api.model.ConstructorMapping;
+import org.jboss.errai.marshalling.rebind.api.model.FactoryMapping;
+import org.jboss.errai.marshalling.rebind.api.model.InstantiationMapping;
+import org.jboss.errai.marshalling.rebind.api.model.Mapping;
+import org.jboss.errai.marshalling.rebind.api.model.MappingDefinition;
+import org.jboss.errai.marshalling.rebind.api.model.MemberMapping;
+import org.jboss.errai.marshalling.server.MappingContextSingleton;
+import org.mvel2.DataConversion;
+
+/**
+ * The member accessors used by a {@link DefaultDefinitionMarshaller}, resolved once per {@link MappingDefinition}
+ * rather than for every object marshalled.
+ * <p/>
+ * Fields, getters, setters, constructors and factory methods are bound to {@link MethodHandle}s, the JSON key of
+ * every member is encoded up front, and the marshaller for every member type is looked up on first use and then
+ * kept.
+ */
+final class DefinitionAccessors {
+  private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+  private static final MethodHandle FIELD_SET;
+
+  static {
+    try {
+      // Field.set is caller sensitive, which Java 8 only allows to be looked up with a full-privilege lookup
+      FIELD_SET = MethodHandles.lookup().findVirtual(Field.class, "set",
+          MethodType.methodType(void.class, Object.class, Object.class));
+    }
+    catch (Exception e) {
+      throw new RuntimeException("could not bind Field.set", e);
+    }
+  }
+
+  final Class<?> mappingClass;
+  final byte[] typePrefix;
+  final Reader[] readers;
+  final Writer[] writers;
+  final Instantiator instantiator;
+
+  DefinitionAccessors(final MappingDefinition definition) {
+    mappingClass = definition.getMappingClass().asClass();
+    typePrefix = typePrefix(mappingClass);
+
+    final List<MemberMapping> readable = definition.getReadableMemberMappings();
+    readers = new Reader[readable.size()];
+    for (int i = 0; i < readers.length; i++) {
+      readers[i] = new Reader(readable.get(i));
+    }
+
+    final List<MemberMapping> writable = definition.getWritableMemberMappings();
+    writers = new Writer[writable.size()];
+    for (int i = 0; i < writers.length; i++) {
+      writers[i] = new Writer(writable.get(i));
+    }
+
+    final InstantiationMapping instantiationMapping = definition.getInstantiationMapping();
+    instantiator = instantiationMapping == null ? null : new Instantiator(instantiationMapping);
+  }
+
+  /**
+   * Reads a member of an object and encodes it.
+   */
+  static final class Reader {
+    final MemberMapping mapping;
+    final byte[] keyBytes;
+    private final MethodHandle getter;
+    private volatile Marshaller<Object> marshaller;
+
+    private Reader(final MemberMapping mapping) {
+      this.mapping = mapping;
+      this.keyBytes = ("\"" + mapping.getKey() + "\":").getBytes(UTF_8);
+
+      try {
+        final MethodHandle handle;
+        if (mapping.getReadingMember() instanceof MetaField) {
+          final Field field = ((MetaField) mapping.getReadingMember()).asField();
+          field.setAccessible(true);
+          handle = MethodHandles.lookup().unreflectGetter(field);
+        }
+        else {
+          final Method method = ((MetaMethod) mapping.getReadingMember()).asMethod();
+          method.setAccessible(true);
+          handle = MethodHandles.lookup().unreflect(method);
+        }
+        this.getter = handle.asType(MethodType.methodType(Object.class, Object.class));
+      }
+      catch (IllegalAccessException e) {
+        throw new RuntimeException("cannot access member: " + mapping.getReadingMember(), e);
+      }
+    }
+
+    Object read(final Object instance) {
+      try {
+        return getter.invokeExact(instance);
+      }
+      catch (Throwable t) {
+        throw new RuntimeException("error reading member: " + mapping.getReadingMember(), t);
+      }
+    }
+
+    Marshaller<Object> getMarshaller() {
+      Marshaller<Object> m = marshaller;
+      if (m == null) {
+        final DefinitionsFactory definitionsFactory = MappingContextSingleton.get().getDefinitionsFactory();
+
+        if (definitionsFactory == null) {
+          throw new RuntimeException("definition factory is null!");
+        }
+
+        final MappingDefinition definition = definitionsFactory.getDefinition(mapping.getType());
+
+        if (definition == null) {
+          throw new RuntimeException("no mapping definition for: " + mapping.getType().getFullyQualifiedName());
+        }
+
+        m = definition.getMarshallerInstance();
+
+        if (m == null) {
+          throw new RuntimeException("no marshaller instance for: " + mapping.getType().getFullyQualifiedName());
+        }
+        marshaller = m;
+      }
+      return m;
+    }
+  }
+
+  /**
+   * Decodes a member and writes it to an object.
+   */
+  static final class Writer {
+    final MemberMapping mapping;
+    private final MethodHandle setter;
+    private final Class<?> targetType;
+    private final Class<?> boxedTargetType;
+    private final String marshallerFqcn;
+    private volatile Marshaller<Object> marshaller;
+
+    private Writer(final MemberMapping mapping) {
+      this.mapping = mapping;
+      this.marshallerFqcn = mapping.getType().getFullyQualifiedName();
+
+      try {
+        MethodHandle handle;
+        if (mapping.getBindingMember() instanceof MetaField) {
+          final Field field = ((MetaField) mapping.getBindingMember()).asField();
+          field.setAccessible(true);
+          targetType = field.getType();
+          try {
+            handle = MethodHandles.lookup().unreflectSetter(field);
+          }
+          catch (IllegalAccessException e) {
+            // final fields can only be written reflectively
+            handle = FIELD_SET.bindTo(field);
+          }
+        }
+        else {
+          final Method method = ((MetaMethod) mapping.getBindingMember()).asMethod();
+          method.setAccessible(true);
+          targetType = method.getParameterTypes()[0];
+          handle = MethodHandles.lookup().unreflect(method);
+        }
+        this.setter = handle.asType(MethodType.methodType(void.class, Object.class, Object.class));
+      }
+      catch (IllegalAccessException e) {
+        throw new RuntimeException("cannot access member: " + mapping.getBindingMember(), e);
+      }
+      this.boxedTargetType = MethodType.methodType(targetType).wrap().returnType();
+    }
+
+    void write(final Object instance, final Object value) {
+      final Object converted = convert(value, targetType, boxedTargetType);
+      try {
+        setter.invokeExact(instance, converted);
+      }
+      catch (Throwable t) {
+        throw new RuntimeException("could not set member (inst=" + instance + "; member="
+            + mapping.getBindingMember() + "; val=" + value + ")", t);
+      }
+    }
+
+    Marshaller<Object> getMarshaller(final MarshallingSession ctx) {
+      Marshaller<Object> m = marshaller;
+      if (m == null) {
+        m = ctx.getMarshallerInstance(marshallerFqcn);
+        marshaller = m;
+      }
+      return m;
+    }
+  }
+
+  /**
+   * Creates new instances through the constructor or factory method of an {@link InstantiationMapping}.
+   */
+  static final class Instantiator {
+    final Mapping[] mappings;
+    private final Class<?>[] targetTypes;
+    private final Class<?>[] boxedTargetTypes;
+    private final String[] marshallerFqcns;
+    private final Marshaller<Object>[] marshallers;
+    private final MethodHandle handle;
+
+    @SuppressWarnings("unchecked")
+    private Instantiator(final InstantiationMapping instantiationMapping) {
+      this.mappings = instantiationMapping.getMappings();
+      this.targetTypes = instantiationMapping.getSignature();
+      this.boxedTargetTypes = new Class<?>[targetTypes.length];
+      this.marshallerFqcns = new String[mappings.length];
+      this.marshallers = new Marshaller[mappings.length];
+
+      for (int i = 0; i < targetTypes.length; i++) {
+        boxedTargetTypes[i] = MethodType.methodType(targetTypes[i]).wrap().returnType();
+      }
+      for (int i = 0; i < mappings.length; i++) {
+        marshallerFqcns[i] = mappings[i].getType().getFullyQualifiedName();
+      }
+
+      try {
+        final MethodHandle member;
+        if (instantiationMapping instanceof ConstructorMapping) {
+          final Constructor<?> constructor = ((ConstructorMapping) instantiationMapping).getMember().asConstructor();
+          constructor.setAccessible(true);
+          member = MethodHandles.lookup().unreflectConstructor(constructor);
+        }
+        else {
+          final Method method = ((FactoryMapping) instantiationMapping).getMember().asMethod();
+          method.setAccessible(true);
+          member = MethodHandles.lookup().unreflect(method);
+        }
+        this.handle = member.asType(MethodType.genericMethodType(targetTypes.length))
+            .asSpreader(Object[].class, targetTypes.length);
+      }
+      catch (IllegalAccessException e) {
+        throw new RuntimeException("cannot access member: " + instantiationMapping.getMember(), e);
+      }
+    }
+
+    Object newInstance(final Object[] parms) {
+      for (int i = 0; i < parms.length; i++) {
+        parms[i] = convert(parms[i], targetTypes[i], boxedTargetTypes[i]);
+      }
+      try {
+        return handle.invokeExact(parms);
+      }
+      catch (Throwable t) {
+        throw new RuntimeException("could not create instance", t);
+      }
+    }
+
+    Marshaller<Object> getMarshaller(final int index, final MarshallingSession ctx) {
+      Marshaller<Object> m = marshallers[index];
+      if (m == null) {
+        m = ctx.getMarshallerInstance(marshallerFqcns[index]);
+        marshallers[index] = m;
+      }
+      return m;
+    }
+  }
+
+  /**
+   * Returns the bytes that open the encoding of an object of the specified class, up to the value of its object ID.
+   */
+  static byte[] typePrefix(final Class<?> cls) {
+    return ("{\"" + SerializationParts.ENCODED_TYPE + "\":\"" + cls.getName() + "\",\""
+        + SerializationParts.OBJECT_ID + "\":\"").getBytes(UTF_8);
+  }
+
+  /**
+   * Same as {@link DataConversion#convert(Object, Class)}, but skips the conversion lookup when the value already has
+   * the right type.
+   */
+  private static Object convert(final Object value, final Class<?> targetType, final Class<?> boxedTargetType) {
+    if (value == null || boxedTargetType.isInstance(value)) {
+      return value;
+    }
+    return DataConversion.convert(value, targetType);
+  }
+}
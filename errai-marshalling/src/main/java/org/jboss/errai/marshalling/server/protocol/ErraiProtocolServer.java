@@ -17,20 +17,105 @@
 package org.jboss.errai.marshalling.server.protocol;
 
 import java.io.ByteArrayInputStream;
-import java.io.UnsupportedEncodingException;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.util.Map;
 
+import org.jboss.errai.common.client.protocols.MessageParts;
+import org.jboss.errai.marshalling.client.Marshalling;
+import org.jboss.errai.marshalling.client.MarshallingSessionProviderFactory;
+import org.jboss.errai.marshalling.client.api.Marshaller;
+import org.jboss.errai.marshalling.client.api.MarshallingSession;
+import org.jboss.errai.marshalling.client.marshallers.StringMarshaller;
 import org.jboss.errai.marshalling.client.protocols.ErraiProtocol;
+import org.jboss.errai.marshalling.client.util.MarshallUtil;
+import org.jboss.errai.marshalling.server.api.ServerMarshaller;
+import org.jboss.errai.marshalling.server.util.UTF8EncodingUtil;
+import org.jboss.errai.marshalling.server.util.UnwrappedByteArrayOutputStream;
 
 /**
  * @author Mike Brock
  */
-public class ErraiProtocolServer extends ErraiProtocol{
+public class ErraiProtocolServer extends ErraiProtocol {
+  private static final String SESSION_ID = MessageParts.SessionID.name();
+
   public static ByteArrayInputStream encodePayloadToByteArrayInputStream(final Map<String, Object> payload) {
+    final UnwrappedByteArrayOutputStream outputStream = new UnwrappedByteArrayOutputStream();
     try {
-      return new ByteArrayInputStream(encodePayload(payload).getBytes("UTF-8"));
-    } catch (UnsupportedEncodingException e) {
-      throw new AssertionError("UTF-8 appears not to be supported by this JRE, but that's impossible");
+      encodePayload(outputStream, payload);
+    }
+    catch (IOException e) {
+      throw new AssertionError("writing to an in-memory stream cannot fail", e);
     }
+    return new ByteArrayInputStream(outputStream.toByteArray(), 0, outputStream.size());
   }
+
+  /**
+   * Encodes a standard Errai Protocol payload to the specified stream as UTF-8. The output is identical to that of
+   * {@link #encodePayload(Map)}, but the envelope, its keys and string values are written without building a
+   * <tt>String</tt>.
+   * <p/>
+   * Only values handled by a {@link ServerMarshaller}, such as the dynamic
+   * {@link org.jboss.errai.marshalling.server.marshallers.DefaultDefinitionMarshaller}, are streamed. All other
+   * marshallers, including the generated marshallers used by default, still build a <tt>String</tt> for each value,
+   * which is then written to the stream.
+   *
+   * @param stream
+   *     the stream to write the encoded payload to.
+   * @param payload
+   *     a map of the key-value pairs to be encoded.
+   *
+   * @throws IOException
+   *     if the stream cannot be written to.
+   */
+  @SuppressWarnings("unchecked")
+  public static void encodePayload(final OutputStream stream, final Map<String, Object> payload) throws IOException {
+    final MarshallingSession ctx = MarshallingSessionProviderFactory.getEncoding();
+
+    stream.write('{');
+    int i = 0;
+    for (final Map.Entry<String, Object> entry : payload.entrySet()) {
+      final String key = entry.getKey();
+      final Object val = entry.getValue();
+
+      if (SESSION_ID.equals(key))
+        continue;
+
+      if (i++ > 0) {
+        stream.write(',');
+      }
+
+      stream.write('"');
+      UTF8EncodingUtil.write(stream, key);
+      stream.write('"');
+      stream.write(':');
+
+      if (val == null) {
+        stream.write(NULL_BYTES);
+        continue;
+      }
+
+      final Marshaller<Object> valueMarshaller;
+      if (Marshalling.needsQualification(val)) {
+        valueMarshaller = MarshallUtil.getQualifiedNumberMarshaller(val);
+      }
+      else {
+        valueMarshaller = MarshallUtil.getMarshaller(val, ctx);
+      }
+
+      final Object unwrapped = MarshallUtil.maybeUnwrap(val);
+      if ((Marshaller<?>) valueMarshaller instanceof StringMarshaller) {
+        UTF8EncodingUtil.writeJSONString(stream, (String) unwrapped);
+      }
+      else if (valueMarshaller instanceof ServerMarshaller) {
+        ((ServerMarshaller<Object>) valueMarshaller).marshall(stream, unwrapped, ctx);
+      }
+      else {
+        UTF8EncodingUtil.write(stream, valueMarshaller.marshall(unwrapped, ctx));
+      }
+    }
+    stream.write('}');
+  }
+
+  private static final byte[] NULL_BYTES = {'n', 'u', 'l', 'l'};
 }
@@ -114,6 +114,10 @@ public abstract class ServerMarshallUtil {
     final String classStr = MarshallerGeneratorFactory.getFor(null, MarshallerOutputTarget.Java)
             .generate(packageName, className);
 
+    if (ClassChangeUtil.canCompileInMemory()) {
+      return ClassChangeUtil.compileAndLoadFromSource(packageName, className, classStr);
+    }
+
     final File directory =
             new File(RebindUtils.getTempDirectory()
                     + "/errai.gen/classes/" + packageName.replaceAll("\\.", "/"));
@@ -0,0 +1,182 @@
+/*
+ * Copyright (C) 2016 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.errai.marshalling.server.util;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Writes character data to an {@link OutputStream} as UTF-8 without creating an intermediate <tt>byte[]</tt> for
+ * the whole sequence, as {@link String#getBytes(java.nio.charset.Charset)} would.
+ */
+public final class UTF8EncodingUtil {
+  private UTF8EncodingUtil() {
+  }
+
+  /**
+   * Writes the specified character sequence to the stream encoded as UTF-8. Unpaired surrogates are written as
+   * <tt>'?'</tt>, which matches the replacement behaviour of the JDK encoder.
+   *
+   * @param stream
+   *     the stream to write to.
+   * @param seq
+   *     the characters to encode.
+   *
+   * @throws IOException
+   *     if the underlying stream cannot be written to.
+   */
+  public static void write(final OutputStream stream, final CharSequence seq) throws IOException {
+    final int len = seq.length();
+    for (int i = 0; i < len; i++) {
+      final char c = seq.charAt(i);
+
+      if (c < 0x80) {
+        stream.write(c);
+      }
+      else if (c < 0x800) {
+        stream.write(0xC0 | (c >> 6));
+        stream.write(0x80 | (c & 0x3F));
+      }
+      else if (Character.isHighSurrogate(c) && i + 1 < len && Character.isLowSurrogate(seq.charAt(i + 1))) {
+        final int cp = Character.toCodePoint(c, seq.charAt(++i));
+        stream.write(0xF0 | (cp >> 18));
+        stream.write(0x80 | ((cp >> 12) & 0x3F));
+        stream.write(0x80 | ((cp >> 6) & 0x3F));
+        stream.write(0x80 | (cp & 0x3F));
+      }
+      else if (Character.isSurrogate(c)) {
+        stream.write('?');
+      }
+      else {
+        stream.write(0xE0 | (c >> 12));
+        stream.write(0x80 | ((c >> 6) & 0x3F));
+        stream.write(0x80 | (c & 0x3F));
+      }
+    }
+  }
+
+  /**
+   * Returns the number of bytes that {@link #write(OutputStream, CharSequence)} writes for the specified character
+   * sequence.
+   *
+   * @param seq
+   *     the characters to measure.
+   *
+   * @return the length of the sequence encoded as UTF-8.
+   */
+  public static int length(final CharSequence seq) {
+    final int len = seq.length();
+    int bytes = len;
+    for (int i = 0; i < len; i++) {
+      final char c = seq.charAt(i);
+
+      if (c < 0x80) {
+        continue;
+      }
+      else if (c < 0x800) {
+        bytes += 1;
+      }
+      else if (Character.isHighSurrogate(c) && i + 1 < len && Character.isLowSurrogate(seq.charAt(i + 1))) {
+        // two chars, four bytes
+        bytes += 2;
+        i++;
+      }
+      else if (!Character.isSurrogate(c)) {
+        bytes += 2;
+      }
+    }
+    return bytes;
+  }
+
+  /**
+   * Writes the specified string to the stream as a quoted and escaped JSON string literal. The output is identical
+   * to that of {@link org.jboss.errai.marshalling.client.marshallers.StringMarshaller}.
+   *
+   * @param stream
+   *     the stream to write to.
+   * @param s
+   *     the string to write.
+   *
+   * @throws IOException
+   *     if the underlying stream cannot be written to.
+   */
+  public static void writeJSONString(final OutputStream stream, final String s) throws IOException {
+    stream.write('"');
+    final int len = s.length();
+    for (int i = 0; i < len; i++) {
+      final char ch = s.charAt(i);
+      switch (ch) {
+        case '"':
+          stream.write('\\');
+          stream.write('"');
+          break;
+        case '\\':
+          stream.write('\\');
+          stream.write('\\');
+          break;
+        case '\b':
+          stream.write('\\');
+          stream.write('b');
+          break;
+        case '\f':
+          stream.write('\\');
+          stream.write('f');
+          break;
+        case '\n':
+          stream.write('\\');
+          stream.write('n');
+          break;
+        case '\r':
+          stream.write('\\');
+          stream.write('r');
+          break;
+        case '\t':
+          stream.write('\\');
+          stream.write('t');
+          break;
+        case '/':
+          stream.write('\\');
+          stream.write('/');
+          break;
+        default:
+          if (ch <= 0x1F || (ch >= 0x7F && ch <= 0x9F) || ch >= 0x2000) {
+            stream.write('\\');
+            stream.write('u');
+            stream.write(HEX[(ch >> 12) & 0xF]);
+            stream.write(HEX[(ch >> 8) & 0xF]);
+            stream.write(HEX[(ch >> 4) & 0xF]);
+            stream.write(HEX[ch & 0xF]);
+          }
+          else if (ch < 0x80) {
+            stream.write(ch);
+          }
+          else if (ch < 0x800) {
+            stream.write(0xC0 | (ch >> 6));
+            stream.write(0x80 | (ch & 0x3F));
+          }
+          else {
+            stream.write(0xE0 | (ch >> 12));
+            stream.write(0x80 | ((ch >> 6) & 0x3F));
+            stream.write(0x80 | (ch & 0x3F));
+          }
+      }
+    }
+    stream.write('"');
+  }
+
+  private static final byte[] HEX = {'0', '1', '2', '3', '4', '5', '6', '7', '8', '9', 'A', 'B', 'C', 'D', 'E', 'F'};
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright (C) 2016 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.errai.marshalling.server.marshallers;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import org.jboss.errai.marshalling.server.MappingContextSingleton;
+import org.jboss.errai.marshalling.tests.res.EntityWithPublicFields;
+import org.jboss.errai.marshalling.tests.res.Outer;
+import org.junit.Test;
+
+/**
+ * Tests the member accessors that the {@link DefaultDefinitionMarshaller} uses to read, write and create objects.
+ */
+public class DefinitionAccessorsTest {
+
+  @Test
+  public void testFieldsAreReadAndWritten() {
+    final DefinitionAccessors accessors = accessorsFor(EntityWithPublicFields.class);
+    final EntityWithPublicFields entity = (EntityWithPublicFields) accessors.instantiator.newInstance(new Object[0]);
+    final ArrayList<String> values = new ArrayList<String>(Arrays.asList("a", "b"));
+
+    for (final DefinitionAccessors.Writer writer : accessors.writers) {
+      writer.write(entity, "value".equals(writer.mapping.getKey()) ? (Object) 42 : values);
+    }
+    assertEquals(Integer.valueOf(42), entity.value);
+    assertSame(values, entity.values);
+
+    for (final DefinitionAccessors.Reader reader : accessors.readers) {
+      assertSame("value".equals(reader.mapping.getKey()) ? entity.value : values, reader.read(entity));
+    }
+  }
+
+  @Test
+  public void testInstancesAreCreatedThroughConstructor() {
+    final DefinitionAccessors accessors = accessorsFor(Outer.Nested.class);
+
+    assertEquals(new Outer.Nested("x"), accessors.instantiator.newInstance(new Object[] { "x" }));
+  }
+
+  private static DefinitionAccessors accessorsFor(final Class<?> cls) {
+    return new DefinitionAccessors(MappingContextSingleton.get().getDefinitionsFactory().getDefinition(cls));
+  }
+}
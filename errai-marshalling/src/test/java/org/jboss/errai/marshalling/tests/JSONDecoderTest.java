@@ -20,12 +20,18 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
+import java.io.ByteArrayInputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
 import org.jboss.errai.marshalling.client.api.json.EJArray;
 import org.jboss.errai.marshalling.client.api.json.EJValue;
 import org.jboss.errai.marshalling.server.JSONDecoder;
+import org.jboss.errai.marshalling.server.JSONStreamDecoder;
 import org.junit.Ignore;
 import org.junit.Test;
 
@@ -273,4 +279,68 @@ public class JSONDecoderTest {
     }
     return e;
   }
+
+  @Test
+  public void testDecodeEscapedAndMultiByteStrings() throws Exception {
+    EJValue ejv = JSONDecoder.decode("{ \"a\": \"caf\u00e9 \u4e2d\", \"b\": \"x\\ty\\u00E9\\u4e2d\\\"\u00e9\" }");
+    assertEquals("caf\u00e9 \u4e2d", ejv.isObject().get("a").isString().stringValue());
+    assertEquals("x\ty\u00e9\u4e2d\"\u00e9", ejv.isObject().get("b").isString().stringValue());
+  }
+
+  @Test
+  public void testProtocolKeysAreCanonical() throws Exception {
+    EJValue ejv = JSONDecoder.decode("{ \"ToSubject\": \"Foo\", \"^EncodedType\": \"java.lang.String\" }");
+    for (String key : ejv.isObject().keySet()) {
+      assertSame(key.intern(), key);
+    }
+  }
+
+  /**
+   * Measures decoding throughput and, where the JVM supports it, allocation per payload for a mix of typical bus
+   * payloads.
+   */
+  @Test
+  @Ignore
+  public void testDecodeThroughputOnBusPayloads() throws Exception {
+    final String[] payloads = {
+        "[{\"ToSubject\":\"ServerBus\",\"CommandType\":\"ConnectToQueue\",\"PriorityProcessing\":\"1\"}]",
+        "[{\"ToSubject\":\"ClientBus\",\"CommandType\":\"RemoteSubscribe\",\"Subject\":\"ChatService\"}," +
+            "{\"ToSubject\":\"ClientBus\",\"CommandType\":\"RemoteSubscribe\",\"Subject\":\"StockTicker\"}]",
+        "[{\"ToSubject\":\"org.example.PersonService:RPC\",\"CommandType\":\"save:org.example.Person:\"," +
+            "\"ReplyTo\":\"org.example.PersonService.RPC:RespondTo:42\",\"MethodParms\":{\"^EncodedType\":" +
+            "\"java.util.Arrays$ArrayList\",\"^ObjectID\":\"1\",\"^Value\":[{\"^EncodedType\":" +
+            "\"org.example.Person\",\"^ObjectID\":\"2\",\"name\":\"Fran\\u00E7ois\",\"age\":42," +
+            "\"id\":{\"^EncodedType\":\"java.lang.Long\",\"^ObjectID\":\"3\",\"^NumVal\":\"1001\"}}]}}]"
+    };
+
+    final byte[][] encoded = new byte[payloads.length][];
+    for (int i = 0; i < payloads.length; i++) {
+      encoded[i] = payloads[i].getBytes("UTF-8");
+    }
+
+    final ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+    final boolean measureAllocation = threadBean instanceof com.sun.management.ThreadMXBean;
+    final long threadId = Thread.currentThread().getId();
+
+    final int iterations = 1000000;
+    for (int round = 0; round < 3; round++) {
+      final long allocatedBefore = measureAllocation
+          ? ((com.sun.management.ThreadMXBean) threadBean).getThreadAllocatedBytes(threadId) : 0;
+      final long start = System.nanoTime();
+
+      for (int i = 0; i < iterations; i++) {
+        final byte[] payload = encoded[i % encoded.length];
+        assertNotNull(JSONStreamDecoder.decode(new ByteArrayInputStream(payload)));
+      }
+
+      final double secs = (System.nanoTime() - start) / 1e9d;
+      System.out.print("Decoded " + (long) (iterations / secs) + " payloads per second");
+      if (measureAllocation) {
+        final long allocated = ((com.sun.management.ThreadMXBean) threadBean).getThreadAllocatedBytes(threadId)
+            - allocatedBefore;
+        System.out.print("; " + (allocated / iterations) + " bytes allocated per payload");
+      }
+      System.out.println(".");
+    }
+  }
 }
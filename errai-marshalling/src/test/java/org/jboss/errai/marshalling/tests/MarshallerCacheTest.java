@@ -0,0 +1,215 @@
+/*
+ * Copyright (C) 2016 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.errai.marshalling.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jboss.errai.marshalling.rebind.MarshallerCache;
+import org.jboss.errai.marshalling.rebind.api.model.MappingDefinition;
+import org.jboss.errai.marshalling.rebind.api.model.impl.ReadMapping;
+import org.jboss.errai.marshalling.rebind.api.model.impl.WriteMapping;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class MarshallerCacheTest {
+  private static final String NOCACHE_PROPERTY = "errai.devel.nocache";
+
+  public static class Contact {
+    private String name;
+    private String email;
+
+    public String getName() {
+      return name;
+    }
+
+    public void setEmail(final String email) {
+      this.email = email;
+    }
+  }
+
+  private File cacheDir;
+  private String nocache;
+
+  @Before
+  public void setUp() throws Exception {
+    cacheDir = Files.createTempDirectory("errai-marshaller-cache").toFile();
+    // other tests in this module disable the cache for the whole JVM.
+    nocache = System.getProperty(NOCACHE_PROPERTY);
+    System.clearProperty(NOCACHE_PROPERTY);
+  }
+
+  @After
+  public void tearDown() {
+    if (nocache == null) {
+      System.clearProperty(NOCACHE_PROPERTY);
+    }
+    else {
+      System.setProperty(NOCACHE_PROPERTY, nocache);
+    }
+  }
+
+  @Test
+  public void testMarshallerIsReusedAcrossInstancesWhileFingerprintMatches() throws Exception {
+    new MarshallerCache(cacheDir).put("org.foo.Bar", "fp1", "class Marshaller_Bar {}");
+
+    final MarshallerCache cache = new MarshallerCache(cacheDir);
+    assertEquals("class Marshaller_Bar {}", cache.get("org.foo.Bar", "fp1"));
+    assertNull(cache.get("org.foo.Bar", "fp2"));
+    assertNull(cache.get("org.foo.Baz", "fp1"));
+    assertEquals(1, cache.getHitCount());
+    assertEquals(2, cache.getMissCount());
+  }
+
+  @Test
+  public void testArrayTypeNamesAreUsableAsKeys() throws Exception {
+    final MarshallerCache cache = new MarshallerCache(cacheDir);
+    cache.put("[Lorg.foo.Bar;", "fp", "class Marshaller_Bar_1D {}");
+    assertEquals("class Marshaller_Bar_1D {}", cache.get("[Lorg.foo.Bar;", "fp"));
+  }
+
+  @Test
+  public void testFactoryIsOnlyReusedIfNoTypeChanged() throws Exception {
+    final SortedMap<String, String> fingerprints = new TreeMap<String, String>();
+    fingerprints.put("org.foo.A", "a1");
+    fingerprints.put("org.foo.B", "b1");
+    new MarshallerCache(cacheDir).putFactory("org.foo.Factory", fingerprints, "class Factory {}");
+
+    MarshallerCache cache = new MarshallerCache(cacheDir);
+    assertEquals("class Factory {}", cache.getFactory("org.foo.Factory", fingerprints));
+    assertEquals(2, cache.getHitCount());
+    assertEquals(0, cache.getMissCount());
+
+    fingerprints.put("org.foo.B", "b2");
+    cache = new MarshallerCache(cacheDir);
+    assertNull(cache.getFactory("org.foo.Factory", fingerprints));
+    assertEquals(1, cache.getHitCount());
+    assertEquals(1, cache.getMissCount());
+
+    fingerprints.put("org.foo.B", "b1");
+    fingerprints.remove("org.foo.A");
+    cache = new MarshallerCache(cacheDir);
+    assertNull("a removed type must invalidate the factory", cache.getFactory("org.foo.Factory", fingerprints));
+  }
+
+  @Test
+  public void testNocacheDisablesLookupsButNotStores() throws Exception {
+    final SortedMap<String, String> fingerprints = new TreeMap<String, String>();
+    fingerprints.put("org.foo.A", "a1");
+
+    final MarshallerCache cache = new MarshallerCache(cacheDir);
+    System.setProperty(NOCACHE_PROPERTY, "true");
+    cache.put("org.foo.Bar", "fp1", "class Marshaller_Bar {}");
+    cache.putFactory("org.foo.Factory", fingerprints, "class Factory {}");
+    assertNull(cache.get("org.foo.Bar", "fp1"));
+    assertNull(cache.getFactory("org.foo.Factory", fingerprints));
+
+    System.clearProperty(NOCACHE_PROPERTY);
+    assertEquals("class Marshaller_Bar {}", cache.get("org.foo.Bar", "fp1"));
+    assertEquals("class Factory {}", cache.getFactory("org.foo.Factory", fingerprints));
+  }
+
+  @Test
+  public void testReadersNeverSeePartiallyWrittenEntries() throws Exception {
+    final MarshallerCache cache = new MarshallerCache(cacheDir);
+    final List<String> sources = new ArrayList<String>();
+    for (int i = 0; i < 4; i++) {
+      final StringBuilder source = new StringBuilder("class Marshaller_Bar {\n");
+      for (int line = 0; line < 2000; line++) {
+        source.append("  // version ").append(i).append(", line ").append(line).append('\n');
+      }
+      sources.add(source.append("}").toString());
+    }
+    cache.put("org.foo.Bar", "fp", sources.get(0));
+
+    final AtomicInteger tornReads = new AtomicInteger();
+    final List<Thread> threads = new ArrayList<Thread>();
+    for (int i = 0; i < sources.size(); i++) {
+      final String source = sources.get(i);
+      threads.add(new Thread() {
+        @Override
+        public void run() {
+          for (int round = 0; round < 50; round++) {
+            cache.put("org.foo.Bar", "fp", source);
+          }
+        }
+      });
+    }
+    threads.add(new Thread() {
+      @Override
+      public void run() {
+        for (int round = 0; round < 1000; round++) {
+          // a missing or truncated file is read as null.
+          if (!sources.contains(cache.get("org.foo.Bar", "fp"))) {
+            tornReads.incrementAndGet();
+          }
+        }
+      }
+    });
+
+    for (final Thread thread : threads) {
+      thread.start();
+    }
+    for (final Thread thread : threads) {
+      thread.join();
+    }
+
+    assertEquals("partially written entries were read", 0, tornReads.get());
+    assertEquals("no temporary files are left behind", Arrays.asList("org.foo.Bar.java"),
+        Arrays.asList(cacheDir.list()));
+  }
+
+  @Test
+  public void testFactoryFingerprintsAreReplaced() throws Exception {
+    final SortedMap<String, String> fingerprints = new TreeMap<String, String>();
+    fingerprints.put("org.foo.A", "a1");
+    final MarshallerCache cache = new MarshallerCache(cacheDir);
+    cache.putFactory("org.foo.Factory", fingerprints, "class Factory {}");
+
+    fingerprints.put("org.foo.A", "a2");
+    cache.putFactory("org.foo.Factory", fingerprints, "class Factory2 {}");
+    assertEquals("class Factory2 {}", cache.getFactory("org.foo.Factory", fingerprints));
+
+    final List<String> files = Arrays.asList(cacheDir.list());
+    assertEquals(2, files.size());
+    assertTrue(files.contains("org.foo.Factory.fingerprints"));
+  }
+
+  @Test
+  public void testFingerprintOfReadOnlyAndWriteOnlyMappings() throws Exception {
+    final MappingDefinition readOnly = new MappingDefinition(Contact.class, false);
+    readOnly.addMemberMapping(new ReadMapping("name", String.class, "getName"));
+
+    final MappingDefinition writeOnly = new MappingDefinition(Contact.class, false);
+    writeOnly.addMemberMapping(new WriteMapping("email", String.class, "setEmail"));
+
+    assertEquals(readOnly.getFingerprint(), readOnly.getFingerprint());
+    assertNotEquals(readOnly.getFingerprint(), writeOnly.getFingerprint());
+  }
+}
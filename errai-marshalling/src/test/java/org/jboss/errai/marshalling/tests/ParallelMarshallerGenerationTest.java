@@ -0,0 +1,207 @@
+/*
+ * Copyright (C) 2016 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.errai.marshalling.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.jboss.errai.codegen.util.ClassChangeUtil;
+import org.jboss.errai.common.rebind.CacheUtil;
+import org.jboss.errai.config.rebind.CommonConfigAttribs;
+import org.jboss.errai.config.rebind.EnvUtil.EnvironmentConfigCache;
+import org.jboss.errai.marshalling.client.MarshallingSessionProviderFactory;
+import org.jboss.errai.marshalling.client.api.Marshaller;
+import org.jboss.errai.marshalling.client.api.MarshallerFactory;
+import org.jboss.errai.marshalling.client.api.MarshallingSession;
+import org.jboss.errai.marshalling.client.protocols.MarshallingSessionProvider;
+import org.jboss.errai.marshalling.rebind.DefinitionsFactory;
+import org.jboss.errai.marshalling.rebind.DefinitionsFactorySingleton;
+import org.jboss.errai.marshalling.rebind.MarshallerGeneratorFactory;
+import org.jboss.errai.marshalling.rebind.MarshallerOutputTarget;
+import org.jboss.errai.marshalling.server.DecodingSession;
+import org.jboss.errai.marshalling.server.EncodingSession;
+import org.jboss.errai.marshalling.server.MappingContextSingleton;
+import org.jboss.errai.marshalling.server.ServerMappingContext;
+import org.jboss.errai.marshalling.server.ServerMarshalling;
+import org.jboss.errai.marshalling.tests.res.EntityWithPublicFields;
+import org.jboss.errai.marshalling.tests.res.EnumContainer;
+import org.jboss.errai.marshalling.tests.res.EnumTestA;
+import org.jboss.errai.marshalling.tests.res.EnumWithState;
+import org.jboss.errai.marshalling.tests.res.Outer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Ignore;
+import org.junit.Test;
+
+/**
+ * Tests that the server marshaller factory generated on several threads is equivalent to the one generated on a
+ * single thread.
+ *
+ * @see CommonConfigAttribs#MARSHALLER_GENERATION_THREADS
+ */
+public class ParallelMarshallerGenerationTest {
+  private static final String PACKAGE_NAME = "org.jboss.errai.marshalling.tests.gen";
+
+  static {
+    System.setProperty("errai.devel.nocache", "true");
+  }
+
+  private MarshallingSessionProvider provider;
+
+  @Before
+  public void setUp() {
+    // the singleton registers the session provider used by all other tests in this JVM.
+    MappingContextSingleton.get();
+    provider = MarshallingSessionProviderFactory.getProvider();
+  }
+
+  @After
+  public void tearDown() {
+    setGenerationThreads(1);
+    MarshallingSessionProviderFactory.setMarshallingSessionProvider(provider);
+  }
+
+  @Test
+  public void testFactoriesGeneratedOnOneAndFourThreadsRoundTripTheSameEntities() throws Exception {
+    final List<Object> entities = new ArrayList<Object>();
+    entities.add(new Outer(Arrays.asList(new Outer.Nested("exp")), new Outer.Nested("x")));
+    final EnumContainer enumContainer = new EnumContainer();
+    enumContainer.setEnumA1(EnumTestA.FIRST);
+    enumContainer.setStatefulEnum1(EnumWithState.THING1);
+    entities.add(enumContainer);
+    final EntityWithPublicFields entity = new EntityWithPublicFields();
+    entity.value = 42;
+    entity.values = new ArrayList<String>(Arrays.asList("a", "b"));
+    entities.add(entity);
+
+    final List<String> serial = roundTrip(generateFactory(1), entities);
+    final List<String> parallel = roundTrip(generateFactory(4), entities);
+    assertEquals(serial, parallel);
+  }
+
+  /**
+   * Reports how long it takes to generate the server marshaller factory with different numbers of threads. The
+   * number of types is that of the portable types on the test classpath; run it from a module with more portable
+   * types to see how generation time grows with their number.
+   */
+  @Test
+  @Ignore
+  public void testGenerationTimeByThreadCount() throws Exception {
+    final int types = DefinitionsFactorySingleton.get().getExposedClasses().size();
+    final int cores = Runtime.getRuntime().availableProcessors();
+
+    for (final int threadCount : new int[] { 1, 2, 4, cores }) {
+      setGenerationThreads(threadCount);
+      for (int round = 0; round < 3; round++) {
+        final long start = System.nanoTime();
+        MarshallerGeneratorFactory.getFor(null, MarshallerOutputTarget.Java)
+            .generate(PACKAGE_NAME, "BenchmarkMarshallerFactory");
+        final long millis = (System.nanoTime() - start) / 1000000;
+        System.out.println(types + " types, " + threadCount + " of " + cores + " cores: " + millis + "ms.");
+      }
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  private static MarshallerFactory generateFactory(final int threadCount) throws Exception {
+    setGenerationThreads(threadCount);
+    final String className = "MarshallerFactoryOn" + threadCount + "Threads";
+    final String source = MarshallerGeneratorFactory.getFor(null, MarshallerOutputTarget.Java)
+        .generate(PACKAGE_NAME, className);
+
+    final Class<? extends MarshallerFactory> factoryClass
+        = ClassChangeUtil.compileAndLoadFromSource(PACKAGE_NAME, className, source);
+    assertNotNull("could not compile the factory generated on " + threadCount + " threads", factoryClass);
+    return factoryClass.newInstance();
+  }
+
+  private static void setGenerationThreads(final int threadCount) {
+    // the environment config is reloaded during generation, so the setting has to be permanent.
+    CacheUtil.getCache(EnvironmentConfigCache.class).addPermanentFrameworkProperty(
+        CommonConfigAttribs.MARSHALLER_GENERATION_THREADS.getAttributeName(), String.valueOf(threadCount));
+  }
+
+  /**
+   * Marshalls and demarshalls each entity with the given factory, and returns the JSON of each one.
+   */
+  private static List<String> roundTrip(final MarshallerFactory factory, final List<Object> entities) {
+    useFactory(factory);
+
+    final List<String> json = new ArrayList<String>();
+    for (final Object entity : entities) {
+      final String encoded = ServerMarshalling.toJSON(entity);
+      assertEquals(entity, ServerMarshalling.fromJSON(encoded));
+      json.add(encoded);
+    }
+    return json;
+  }
+
+  private static void useFactory(final MarshallerFactory factory) {
+    final ServerMappingContext context = new ServerMappingContext() {
+      @Override
+      public DefinitionsFactory getDefinitionsFactory() {
+        return DefinitionsFactorySingleton.get();
+      }
+
+      @Override
+      public Marshaller<Object> getMarshaller(final String clazz) {
+        return factory.getMarshaller(clazz);
+      }
+
+      @Override
+      public boolean hasMarshaller(final String clazzName) {
+        return factory.getMarshaller(clazzName) != null;
+      }
+
+      @Override
+      public boolean canMarshal(final String cls) {
+        return hasMarshaller(cls);
+      }
+    };
+
+    MarshallingSessionProviderFactory.setMarshallingSessionProvider(new MarshallingSessionProvider() {
+      @Override
+      public MarshallingSession getEncoding() {
+        return new EncodingSession(context);
+      }
+
+      @Override
+      public MarshallingSession getDecoding() {
+        return new DecodingSession(context);
+      }
+
+      @Override
+      public boolean hasMarshaller(final String fqcn) {
+        return factory.getMarshaller(fqcn) != null;
+      }
+
+      @Override
+      public Marshaller getMarshaller(final String fqcn) {
+        return factory.getMarshaller(fqcn);
+      }
+
+      @Override
+      public void registerMarshaller(final String fqcn, final Marshaller m) {
+        factory.registerMarshaller(fqcn, m);
+      }
+    });
+  }
+}
@@ -16,6 +16,7 @@
 
 package org.jboss.errai.marshalling.tests;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.lang.reflect.Array;
 import java.math.BigDecimal;
@@ -25,6 +26,7 @@ import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Random;
 import java.util.Set;
@@ -40,6 +42,7 @@ import org.jboss.errai.marshalling.client.api.ParserFactory;
 import org.jboss.errai.marshalling.client.api.json.EJValue;
 import org.jboss.errai.marshalling.server.MappingContextSingleton;
 import org.jboss.errai.marshalling.server.ServerMarshalling;
+import org.jboss.errai.marshalling.server.protocol.ErraiProtocolServer;
 import org.jboss.errai.marshalling.tests.res.EntityWithInheritedTypeVariable;
 import org.jboss.errai.marshalling.tests.res.EnumContainer;
 import org.jboss.errai.marshalling.tests.res.EnumContainerContainer;
@@ -52,6 +55,7 @@ import org.jboss.errai.marshalling.tests.res.Outer2;
 import org.jboss.errai.marshalling.tests.res.SType;
 import org.jboss.errai.marshalling.tests.res.shared.Role;
 import org.jboss.errai.marshalling.tests.res.shared.User;
+import org.junit.Ignore;
 import org.junit.Test;
 
 /**
@@ -657,4 +661,50 @@ public class ServerMarshallingTest {
     Outer2 outer2 = new Outer2 (key2, Arrays.asList(key2));
     testEncodeDecode(Outer2.class, outer2);
   }
+
+  @Test
+  public void testStreamingPayloadEncodingMatchesStringEncoding() throws Exception {
+    final Map<String, Object> payload = new LinkedHashMap<String, Object>();
+    payload.put("ToSubject", "Some\"Subject/\u00e9\u4e2d");
+    payload.put("CommandType", null);
+    payload.put("Count", 42);
+    payload.put("Roles", new TreeSet<String>(Arrays.asList("a", "b\n")));
+    payload.put("Outer", new Outer(Arrays.asList(new Outer.Nested("exp")), new Outer.Nested("x")));
+
+    final ByteArrayOutputStream stream = new ByteArrayOutputStream();
+    ErraiProtocolServer.encodePayload(stream, payload);
+
+    Assert.assertEquals(ErraiProtocolServer.encodePayload(payload), new String(stream.toByteArray(), "UTF-8"));
+  }
+
+  /**
+   * Measures round-trip throughput of the marshaller used for a portable type in the current mode. Run once with
+   * dynamic marshallers and once with static marshallers to compare the two.
+   */
+  @Test
+  @Ignore
+  public void testEntityRoundTripThroughput() {
+    final User user = new User();
+    user.setUserId(42);
+    user.setUserName("foo");
+    user.setPassword("bar");
+    final Set<Role> roles = new HashSet<Role>();
+    roles.add(new Role("admin"));
+    roles.add(new Role("users"));
+    user.setRoles(roles);
+
+    final int iterations = 1000000;
+    Object result = null;
+
+    for (int round = 0; round < 3; round++) {
+      final long start = System.nanoTime();
+      for (int i = 0; i < iterations; i++) {
+        result = ServerMarshalling.fromJSON(ServerMarshalling.toJSON(user));
+      }
+      final double secs = (System.nanoTime() - start) / 1e9d;
+      System.out.println("User round-trips: " + (long) (iterations / secs) + " per second.");
+    }
+
+    Assert.assertEquals(user, result);
+  }
 }
@@ -0,0 +1,202 @@
+/*
+ * Copyright (C) 2016 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.errai.reflections.serializers;
+
+import com.google.common.collect.HashMultimap;
+import com.google.common.collect.Multimap;
+import org.jboss.errai.reflections.Reflections;
+import org.jboss.errai.reflections.ReflectionsException;
+import org.jboss.errai.reflections.util.ConfigurationBuilder;
+import org.jboss.errai.reflections.util.Utils;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * compact binary serialization of Reflections
+ * <p/>
+ * <p>every distinct string (index names, keys and values) is written once to a string table, and the indexes refer to
+ * strings by their position in that table. class and member names repeat heavily across indexes, so the result is a
+ * fraction of the size of the equivalent {@link XmlSerializer} output and is read without an xml parser.
+ * <p/>
+ * <p>layout: magic, version, string table, then for every index its name and its entries (key and values).
+ * all counts and string references are written as variable length integers.
+ */
+public class BinarySerializer implements Serializer {
+  private static final int MAGIC = 0x45524946;
+  private static final int VERSION = 1;
+
+  public Reflections read(final InputStream inputStream) {
+    final Reflections reflections = new Reflections(new ConfigurationBuilder()) {
+    };
+
+    try {
+      final DataInputStream in = new DataInputStream(new BufferedInputStream(inputStream));
+      if (in.readInt() != MAGIC || in.read() != VERSION) {
+        throw new ReflectionsException("not a reflections binary index, or written by an incompatible version");
+      }
+
+      final String[] strings = new String[readVarInt(in)];
+      for (int i = 0; i < strings.length; i++) {
+        final byte[] bytes = new byte[readVarInt(in)];
+        in.readFully(bytes);
+        strings[i] = new String(bytes, "UTF-8");
+      }
+
+      final int indexCount = readVarInt(in);
+      for (int i = 0; i < indexCount; i++) {
+        final String indexName = strings[readVarInt(in)];
+        Multimap<String, String> index = reflections.getStore().getStoreMap().get(indexName);
+        if (index == null) {
+          reflections.getStore().getStoreMap().put(indexName, index = HashMultimap.<String, String>create());
+        }
+
+        final int keyCount = readVarInt(in);
+        for (int j = 0; j < keyCount; j++) {
+          final String key = strings[readVarInt(in)];
+          final int valueCount = readVarInt(in);
+          for (int k = 0; k < valueCount; k++) {
+            index.put(key, strings[readVarInt(in)]);
+          }
+        }
+      }
+    }
+    catch (IOException e) {
+      throw new ReflectionsException("could not read binary index", e);
+    }
+
+    return reflections;
+  }
+
+  public File save(final Reflections reflections, final String filename) {
+    final File file = Utils.prepareFile(filename);
+
+    OutputStream outputStream = null;
+    try {
+      outputStream = new BufferedOutputStream(new FileOutputStream(file));
+      write(reflections, outputStream);
+      outputStream.close();
+      outputStream = null;
+    }
+    catch (IOException e) {
+      throw new ReflectionsException("could not save to file " + filename, e);
+    }
+    finally {
+      if (outputStream != null) try {
+        outputStream.close();
+      }
+      catch (IOException e) {
+        //
+      }
+    }
+
+    return file;
+  }
+
+  public String toString(final Reflections reflections) {
+    final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try {
+      write(reflections, bytes);
+    }
+    catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+
+    final StringBuilder sb = new StringBuilder(bytes.size() * 2);
+    for (final byte b : bytes.toByteArray()) {
+      sb.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+    }
+    return sb.toString();
+  }
+
+  /**
+   * writes the store of the given Reflections instance to the given stream. the stream is flushed but not closed.
+   */
+  public void write(final Reflections reflections, final OutputStream outputStream) throws IOException {
+    final Map<String, Multimap<String, String>> map = reflections.getStore().getStoreMap();
+
+    final Map<String, Integer> stringIds = new HashMap<String, Integer>();
+    final List<String> strings = new ArrayList<String>();
+    for (final Map.Entry<String, Multimap<String, String>> index : map.entrySet()) {
+      intern(index.getKey(), stringIds, strings);
+      for (final Map.Entry<String, Collection<String>> entry : index.getValue().asMap().entrySet()) {
+        intern(entry.getKey(), stringIds, strings);
+        for (final String value : entry.getValue()) {
+          intern(value, stringIds, strings);
+        }
+      }
+    }
+
+    final DataOutputStream out = new DataOutputStream(outputStream);
+    out.writeInt(MAGIC);
+    out.write(VERSION);
+
+    writeVarInt(out, strings.size());
+    for (final String s : strings) {
+      final byte[] bytes = s.getBytes("UTF-8");
+      writeVarInt(out, bytes.length);
+      out.write(bytes);
+    }
+
+    writeVarInt(out, map.size());
+    for (final Map.Entry<String, Multimap<String, String>> index : map.entrySet()) {
+      writeVarInt(out, stringIds.get(index.getKey()));
+
+      final Map<String, Collection<String>> entries = index.getValue().asMap();
+      writeVarInt(out, entries.size());
+      for (final Map.Entry<String, Collection<String>> entry : entries.entrySet()) {
+        writeVarInt(out, stringIds.get(entry.getKey()));
+        writeVarInt(out, entry.getValue().size());
+        for (final String value : entry.getValue()) {
+          writeVarInt(out, stringIds.get(value));
+        }
+      }
+    }
+    out.flush();
+  }
+
+  private static void intern(final String s, final Map<String, Integer> stringIds, final List<String> strings) {
+    if (!stringIds.containsKey(s)) {
+      stringIds.put(s, strings.size());
+      strings.add(s);
+    }
+  }
+
+  private static void writeVarInt(final DataOutputStream out, int value) throws IOException {
+    while ((value & ~0x7F) != 0) {
+      out.write((value & 0x7F) | 0x80);
+      value >>>= 7;
+    }
+    out.write(value);
+  }
+
+  private static int readVarInt(final DataInputStream in) throws IOException {
+    int value = 0;
+    for (int shift = 0; shift < 32; shift += 7) {
+      final int b = in.readUnsignedByte();
+      value |= (b & 0x7F) << shift;
+      if ((b & 0x80) == 0) {
+        return value;
+      }
+    }
+    throw new ReflectionsException("malformed binary index");
+  }
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright (C) 2016 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.errai.reflections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+
+import org.jboss.errai.reflections.serializers.BinarySerializer;
+import org.jboss.errai.reflections.serializers.XmlSerializer;
+import org.jboss.errai.reflections.util.ConfigurationBuilder;
+import org.junit.Test;
+
+import com.google.common.collect.Multimap;
+
+/** */
+public class BinarySerializerTest {
+
+  private static Reflections createReflections() {
+    final Reflections reflections = new Reflections(new ConfigurationBuilder());
+    final Multimap<String, String> types = reflections.getStore().get("TypeAnnotationsScanner");
+    types.put("org.jboss.errai.reflections.TestModel$AC1", "org.jboss.errai.reflections.TestModel$C1");
+    types.put("org.jboss.errai.reflections.TestModel$AC1", "org.jboss.errai.reflections.TestModel$C2");
+    types.put("java.lang.annotation.Inherited", "org.jboss.errai.reflections.TestModel$AC1");
+
+    final Multimap<String, String> properties = reflections.getStore().get("ErraiPropertyScanner");
+    properties.put("errai.ioc.enabled.alternatives", "org.jboss.errai.reflections.TestModel$C1 \u00e9\u4e2d");
+    properties.put("empty", "");
+    return reflections;
+  }
+
+  @Test
+  public void testRoundTrip() throws Exception {
+    final Reflections reflections = createReflections();
+
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    new BinarySerializer().write(reflections, out);
+    final Reflections read = new BinarySerializer().read(new ByteArrayInputStream(out.toByteArray()));
+
+    assertEquals(reflections.getStore().getStoreMap(), read.getStore().getStoreMap());
+  }
+
+  @Test
+  public void testSaveAndCollect() throws Exception {
+    final Reflections reflections = createReflections();
+    final File file = File.createTempFile("reflections", ".idx");
+    try {
+      new BinarySerializer().save(reflections, file.getAbsolutePath());
+
+      final Reflections collected = new Reflections(new ConfigurationBuilder().setSerializer(new BinarySerializer()));
+      collected.collect(file);
+      assertEquals(reflections.getStore().getStoreMap(), collected.getStore().getStoreMap());
+    }
+    finally {
+      file.delete();
+    }
+  }
+
+  @Test
+  public void testSmallerThanXml() throws Exception {
+    final Reflections reflections = createReflections();
+
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    new BinarySerializer().write(reflections, out);
+
+    assertTrue(out.size() < new XmlSerializer().toString(reflections).length());
+  }
+}